@@ -1,10 +1,27 @@
 package com.ad.poc.config;
 
+import com.company.ra.config.DirectoryEndpointProperties;
+import com.company.ra.config.DirectoryEndpointResolver;
+import com.company.ra.config.DirectoryEndpointSelector;
+import com.company.ra.config.DirectoryFederation;
+import com.company.ra.config.DirectoryFederationProperties;
+import com.company.ra.config.DnsSrvEndpointResolver;
+import com.company.ra.config.FailoverContextSource;
+import com.company.ra.config.LdapGovernorProperties;
+import com.company.ra.config.LdapOperationGovernor;
+import com.company.ra.config.LdapPoolConfig;
+import com.company.ra.config.LdapPoolProperties;
+import com.company.ra.config.PooledLdapContextSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.ldap.core.LdapTemplate;
 import org.springframework.ldap.core.support.LdapContextSource;
+import org.springframework.ldap.pool2.validation.DefaultDirContextValidator;
 
 @Configuration
 public class LdapConfig {
@@ -22,19 +39,96 @@ public class LdapConfig {
     private String ldapPassword;
 
     @Bean
-    public LdapContextSource contextSource() {
-        LdapContextSource contextSource = new LdapContextSource();
-        contextSource.setUrl(ldapUrl);
-        contextSource.setBase(ldapBase);
-        contextSource.setUserDn(ldapUsername);
-        contextSource.setPassword(ldapPassword);
-        contextSource.setPooled(true);
-        contextSource.afterPropertiesSet();
+    @ConfigurationProperties(prefix = "ldap.endpoints")
+    public DirectoryEndpointProperties directoryEndpointProperties() {
+        return new DirectoryEndpointProperties();
+    }
+
+    // spring.ldap.urls may list several domain controllers; ldap.endpoints.srv-record discovers them instead
+    @Bean(destroyMethod = "stop")
+    public DirectoryEndpointSelector endpointSelector(DirectoryEndpointProperties directoryEndpointProperties,
+                                                      ObjectProvider<MeterRegistry> meterRegistry) {
+        String srvRecord = directoryEndpointProperties.getSrvRecord();
+        DirectoryEndpointResolver resolver = srvRecord == null || srvRecord.isEmpty()
+                ? DirectoryEndpointResolver.of(ldapUrl)
+                : new DnsSrvEndpointResolver(srvRecord, directoryEndpointProperties.getSrvScheme());
+        DirectoryEndpointSelector selector =
+                new DirectoryEndpointSelector("ad-users", resolver, directoryEndpointProperties);
+        meterRegistry.ifAvailable(selector::bindTo);
+        return selector;
+    }
+
+    @Bean
+    public FailoverContextSource contextSource(DirectoryEndpointSelector endpointSelector) {
+        FailoverContextSource contextSource = new FailoverContextSource(endpointSelector, url -> {
+            LdapContextSource source = new LdapContextSource();
+            source.setUrl(url);
+            source.setBase(ldapBase);
+            source.setUserDn(ldapUsername);
+            source.setPassword(ldapPassword);
+            // Connections are pooled by PooledLdapContextSource, not by JNDI
+            source.setPooled(false);
+            source.afterPropertiesSet();
+            return source;
+        });
+        contextSource.start();
         return contextSource;
     }
 
     @Bean
-    public LdapTemplate ldapTemplate(LdapContextSource contextSource) {
+    @ConfigurationProperties(prefix = "ldap.pool")
+    public LdapPoolProperties ldapPoolProperties() {
+        return new LdapPoolProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "ldap.governor")
+    public LdapGovernorProperties ldapGovernorProperties() {
+        return new LdapGovernorProperties();
+    }
+
+    // Outbound rate limit of this application: logins, the ad-users API, bulk jobs and index refreshes
+    @Bean
+    public LdapOperationGovernor ldapOperationGovernor(LdapGovernorProperties ldapGovernorProperties,
+                                                       ObjectProvider<MeterRegistry> meterRegistry) {
+        LdapOperationGovernor governor = new LdapOperationGovernor(ldapGovernorProperties);
+        meterRegistry.ifAvailable(governor::bindTo);
+        return governor;
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "ldap.federation")
+    public DirectoryFederationProperties directoryFederationProperties() {
+        return new DirectoryFederationProperties();
+    }
+
+    // Forests searched by AdUserLdapRepository.search; without ldap.federation.forests only spring.ldap.urls
+    @Bean(destroyMethod = "shutdown")
+    public DirectoryFederation directoryFederation(DirectoryFederationProperties directoryFederationProperties,
+                                                   LdapPoolProperties ldapPoolProperties,
+                                                   DirectoryEndpointProperties directoryEndpointProperties,
+                                                   ObjectProvider<MeterRegistry> meterRegistry) {
+        return LdapPoolConfig.federation(directoryFederationProperties, ldapUsername, ldapPassword,
+                ldapPoolProperties, directoryEndpointProperties, meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public PooledLdapContextSource pooledContextSource(FailoverContextSource contextSource,
+                                                       LdapPoolProperties ldapPoolProperties,
+                                                       ObjectProvider<MeterRegistry> meterRegistry) {
+        PooledLdapContextSource pooledContextSource =
+                new PooledLdapContextSource("ad-users", contextSource, ldapPoolProperties);
+        pooledContextSource.setDirContextValidator(contextSource.validator(new DefaultDirContextValidator()));
+        meterRegistry.ifAvailable(pooledContextSource::bindTo);
+        if (ldapPoolProperties.isWarmUp()) {
+            pooledContextSource.warmUp();
+        }
+        return pooledContextSource;
+    }
+
+    @Bean
+    public LdapTemplate ldapTemplate(PooledLdapContextSource contextSource) {
         LdapTemplate ldapTemplate = new LdapTemplate(contextSource);
         ldapTemplate.setIgnorePartialResultException(true);
         ldapTemplate.setIgnoreNameNotFoundException(true);
@@ -1,13 +1,25 @@
 package com.ad.poc.controller;
 
 import com.ad.poc.dto.AdUserDto;
+import com.ad.poc.dto.AdUserPageDto;
+import com.ad.poc.dto.BulkJobDto;
 import com.ad.poc.dto.LoginRequest;
 import com.ad.poc.dto.LoginResponse;
+import com.ad.poc.repository.AdUserLdapRepository;
+import com.ad.poc.service.AdUserBulkService;
+import com.ad.poc.service.AdUserCsvReader;
+import com.ad.poc.service.AdUserSearchIndex;
 import com.ad.poc.service.AdUserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -16,21 +28,43 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/v1/ad-users")
 public class AdUserController {
 
+    private static final Logger log = LoggerFactory.getLogger(AdUserController.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Flush the NDJSON stream about once per LDAP page
+    private static final int NDJSON_FLUSH_INTERVAL = AdUserLdapRepository.DEFAULT_PAGE_SIZE;
+
+    // Seconds a client should wait after the outbound LDAP rate limit refused its request
+    private static final int RETRY_AFTER_SECONDS = 1;
+
     private final AdUserService adUserService;
+    private final AdUserBulkService adUserBulkService;
 
-    public AdUserController(AdUserService adUserService) {
+    public AdUserController(AdUserService adUserService, AdUserBulkService adUserBulkService) {
         this.adUserService = adUserService;
+        this.adUserBulkService = adUserBulkService;
     }
 
     /**
      * LOGIN - Authenticate a user against Active Directory using username and password.
+     * Answers 503 with Retry-After, not 401, when the directory could not check the password.
      */
     @PostMapping("/login")
     public ResponseEntity<LoginResponse> login(@Valid @RequestBody LoginRequest request) {
@@ -51,26 +85,161 @@ public class AdUserController {
     }
 
     /**
-     * LIST - Get all users from Active Directory.
-     * Optional filter by department.
+     * BULK INSERT - Provision many users as a background job from a JSON array.
+     * Returns 202 with the job status; poll the Location for progress and per-item results.
+     */
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BulkJobDto> bulkCreate(@RequestBody List<AdUserDto> users) {
+        try {
+            return accepted(adUserBulkService.submit(users));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * BULK INSERT - Provision many users as a background job from CSV with a header row.
+     * The body is parsed as it is read rather than buffered.
+     */
+    @PostMapping(value = "/bulk", consumes = "text/csv")
+    public ResponseEntity<BulkJobDto> bulkCreateCsv(InputStream body) throws IOException {
+        try {
+            AdUserCsvReader reader = new AdUserCsvReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+            return accepted(adUserBulkService.submit(reader.readAll(adUserBulkService.getMaxItems())));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * BULK UPDATE - Edit many users, identified by sAMAccountName, as a background job.
+     * Only changed attributes are written; users already having the values are skipped.
+     */
+    @PutMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BulkJobDto> bulkUpdate(@RequestBody List<AdUserDto> users) {
+        try {
+            return accepted(adUserBulkService.submitUpdates(users));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * BULK STATUS - Progress of a bulk job, with per-item results unless results=false.
+     */
+    @GetMapping("/bulk/{jobId}")
+    public ResponseEntity<BulkJobDto> bulkStatus(@PathVariable String jobId,
+                                                 @RequestParam(defaultValue = "true") boolean results) {
+        return adUserBulkService.getJob(jobId, results)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * BULK CANCEL - Stop a bulk job; items not yet started are reported as failed.
+     */
+    @DeleteMapping("/bulk/{jobId}")
+    public ResponseEntity<BulkJobDto> bulkCancel(@PathVariable String jobId) {
+        return adUserBulkService.cancel(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    private ResponseEntity<BulkJobDto> accepted(BulkJobDto job) {
+        URI location = ServletUriComponentsBuilder.fromCurrentRequestUri()
+                .path("/{jobId}")
+                .buildAndExpand(job.id())
+                .toUri();
+        return ResponseEntity.accepted().location(location).body(job);
+    }
+
+    /**
+     * LIST - Get one page of users from Active Directory.
+     * Optional filter by department. Pages are addressed by an opaque cursor (ordered by
+     * sAMAccountName) or by offset; the next page is advertised in the Link header.
      */
     @GetMapping
     public ResponseEntity<List<AdUserDto>> listAll(
-            @RequestParam(required = false) String department) {
-        List<AdUserDto> users;
-        if (department != null && !department.isBlank()) {
-            users = adUserService.getByDepartment(department);
-        } else {
-            users = adUserService.listAll();
+            @RequestParam(required = false) String department,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer offset,
+            @RequestParam(defaultValue = "" + AdUserLdapRepository.MAX_PAGE_SIZE) int limit) {
+        if (limit < 1 || limit > AdUserLdapRepository.MAX_PAGE_SIZE
+                || (offset != null && (offset < 0 || offset > AdUserLdapRepository.MAX_OFFSET))) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        AdUserPageDto page;
+        try {
+            page = adUserService.listPage(department, cursor, offset, limit);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.hasNext()) {
+            ServletUriComponentsBuilder next = ServletUriComponentsBuilder.fromCurrentRequest();
+            if (page.nextCursor() != null) {
+                next.replaceQueryParam("cursor", page.nextCursor());
+                response.header("X-Next-Cursor", page.nextCursor());
+            } else {
+                next.replaceQueryParam("offset", page.nextOffset());
+            }
+            response.header(HttpHeaders.LINK, "<" + next.toUriString() + ">; rel=\"next\"");
         }
-        return ResponseEntity.ok(users);
+        return response.body(page.items());
+    }
+
+    /**
+     * LIST (streaming) - Write all users as newline-delimited JSON while they are read
+     * from Active Directory, so memory stays flat regardless of directory size.
+     * Selected with Accept: application/x-ndjson.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll(
+            @RequestParam(required = false) String department) {
+        StreamingResponseBody body = out -> {
+            int written = 0;
+            try (Stream<AdUserDto> users = adUserService.streamAll(department)) {
+                Iterator<AdUserDto> iterator = users.iterator();
+                while (iterator.hasNext()) {
+                    out.write(objectMapper.writeValueAsBytes(iterator.next()));
+                    out.write('\n');
+                    if (++written % NDJSON_FLUSH_INTERVAL == 0) {
+                        out.flush();
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Headers are already sent; the client sees a truncated stream
+                log.error("Streaming AD users failed after {} users", written, e);
+                throw e;
+            }
+            out.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     /**
      * SEARCH - Search users by keyword across multiple AD fields.
+     * mode=index serves ranked typeahead results from the in-process index, up to limit;
+     * the default mode=directory runs the substring search against Active Directory.
      */
     @GetMapping("/search")
-    public ResponseEntity<List<AdUserDto>> search(@RequestParam String q) {
+    public ResponseEntity<List<AdUserDto>> search(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "directory") String mode,
+            @RequestParam(defaultValue = "20") int limit) {
+        if ("index".equalsIgnoreCase(mode)) {
+            if (limit < 1 || limit > AdUserSearchIndex.MAX_LIMIT) {
+                return ResponseEntity.badRequest().build();
+            }
+            return ResponseEntity.ok(adUserService.searchIndex(q, limit));
+        }
+        if (!"directory".equalsIgnoreCase(mode)) {
+            return ResponseEntity.badRequest().build();
+        }
         List<AdUserDto> results = adUserService.search(q);
         return ResponseEntity.ok(results);
     }
@@ -87,12 +256,17 @@ public class AdUserController {
 
     /**
      * UPDATE - Update an existing user's attributes in Active Directory.
+     * Returns 409 if the user was changed concurrently (with ad.users.write.assertion-control).
      */
     @PutMapping("/{samAccountName}")
     public ResponseEntity<AdUserDto> update(@PathVariable String samAccountName,
                                             @Valid @RequestBody AdUserDto dto) {
-        AdUserDto updated = adUserService.update(samAccountName, dto);
-        return ResponseEntity.ok(updated);
+        try {
+            AdUserDto updated = adUserService.update(samAccountName, dto);
+            return ResponseEntity.ok(updated);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
     }
 
     /**
@@ -103,4 +277,15 @@ public class AdUserController {
         adUserService.delete(samAccountName);
         return ResponseEntity.noContent().build();
     }
+
+    /**
+     * The directory is unavailable or the outbound LDAP rate limit refused the operation: 503, retry shortly.
+     */
+    @ExceptionHandler(org.springframework.ldap.ServiceUnavailableException.class)
+    public ResponseEntity<Void> directoryUnavailable(org.springframework.ldap.ServiceUnavailableException e) {
+        log.warn("AD operation refused: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER_SECONDS))
+                .build();
+    }
 }
@@ -0,0 +1,17 @@
+package com.ad.poc.dto;
+
+import java.util.List;
+
+/**
+ * One page of AD users. Exactly one of nextCursor / nextOffset is set when
+ * another page exists, depending on how the page was requested.
+ */
+public record AdUserPageDto(
+        List<AdUserDto> items,
+        String nextCursor,
+        Integer nextOffset
+) {
+    public boolean hasNext() {
+        return nextCursor != null || nextOffset != null;
+    }
+}
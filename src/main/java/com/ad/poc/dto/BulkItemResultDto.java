@@ -0,0 +1,22 @@
+package com.ad.poc.dto;
+
+/**
+ * Outcome of one user in a bulk provisioning or edit job.
+ *
+ * @param index Position of the user in the request (0-based)
+ */
+public record BulkItemResultDto(
+        int index,
+        String samAccountName,
+        Status status,
+        String error
+) {
+    public enum Status {
+        CREATED,
+        UPDATED,
+        // Account already existed or already had the given values (or appeared earlier in the
+        // same request); nothing was changed
+        SKIPPED,
+        FAILED
+    }
+}
@@ -0,0 +1,28 @@
+package com.ad.poc.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Progress of a bulk provisioning or edit job. Results hold the users processed so far,
+ * in request order.
+ */
+public record BulkJobDto(
+        String id,
+        State state,
+        int total,
+        int processed,
+        int created,
+        int updated,
+        int skipped,
+        int failed,
+        Instant startedAt,
+        Instant finishedAt,
+        List<BulkItemResultDto> results
+) {
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        CANCELLED
+    }
+}
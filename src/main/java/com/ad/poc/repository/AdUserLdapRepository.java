@@ -1,32 +1,89 @@
 package com.ad.poc.repository;
 
 import com.ad.poc.model.AdUser;
+import com.company.ra.config.DirectoryFederation;
+import com.company.ra.config.LdapOperationGovernor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.ldap.NameNotFoundException;
+import org.springframework.ldap.control.PagedResultsDirContextProcessor;
+import org.springframework.ldap.control.SortControlDirContextProcessor;
 import org.springframework.ldap.core.AttributesMapper;
+import org.springframework.ldap.core.ContextMapper;
 import org.springframework.ldap.core.DirContextAdapter;
 import org.springframework.ldap.core.DirContextOperations;
 import org.springframework.ldap.core.LdapTemplate;
+import org.springframework.ldap.core.support.SingleContextSource;
 import org.springframework.ldap.filter.AndFilter;
 import org.springframework.ldap.filter.EqualsFilter;
+import org.springframework.ldap.filter.GreaterThanOrEqualsFilter;
 import org.springframework.ldap.filter.LikeFilter;
+import org.springframework.ldap.filter.NotFilter;
 import org.springframework.ldap.filter.OrFilter;
 import org.springframework.ldap.query.LdapQuery;
 import org.springframework.ldap.query.LdapQueryBuilder;
 import org.springframework.ldap.support.LdapNameBuilder;
+import org.springframework.ldap.support.LdapUtils;
 import org.springframework.stereotype.Repository;
 
+import javax.naming.Context;
 import javax.naming.Name;
+import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.BasicAttribute;
-import javax.naming.directory.BasicAttributes;
 import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
 import javax.naming.directory.ModificationItem;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.BasicControl;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Repository
 public class AdUserLdapRepository {
 
+    private static final Logger log = LoggerFactory.getLogger(AdUserLdapRepository.class);
+
     private static final String USER_SEARCH_BASE = "OU=Users";
+    // AD's MaxPageSize; larger pages are silently truncated by the server
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int DEFAULT_PAGE_SIZE = 500;
+    // Deepest offset served; offset pages read the directory up to the offset, beyond it use the cursor
+    public static final int MAX_OFFSET = 100_000;
+    // Scheme, host and port of each URL in a provider URL, without the base DN
+    private static final Pattern SERVER_URL = Pattern.compile("(ldaps?://[^/\\s]*)(/\\S*)?");
     private static final String[] USER_ATTRIBUTES = {
             "sAMAccountName", "cn", "displayName", "givenName", "sn",
             "mail", "department", "title", "telephoneNumber", "company",
@@ -34,27 +91,242 @@ public class AdUserLdapRepository {
             "userAccountControl"
     };
 
+    // LDAP assertion control (RFC 4528): the server applies the operation only if the entry matches a filter
+    static final String ASSERTION_CONTROL_OID = "1.3.6.1.1.12";
+    // Result code for a failed assertion
+    private static final String ASSERTION_FAILED = "error code 122";
+    // sAMAccountNames per OR-filter search when preloading, to keep each filter small
+    static final int PRELOAD_BATCH_SIZE = 100;
+    // Attributes update() may change; a null value in the update leaves the attribute as it is
+    private static final List<EditableAttribute> EDITABLE_ATTRIBUTES = List.of(
+            new EditableAttribute("displayName", AdUser::getDisplayName, AdUser::setDisplayName),
+            new EditableAttribute("givenName", AdUser::getFirstName, AdUser::setFirstName),
+            new EditableAttribute("sn", AdUser::getLastName, AdUser::setLastName),
+            new EditableAttribute("mail", AdUser::getEmail, AdUser::setEmail),
+            new EditableAttribute("department", AdUser::getDepartment, AdUser::setDepartment),
+            new EditableAttribute("title", AdUser::getTitle, AdUser::setTitle),
+            new EditableAttribute("telephoneNumber", AdUser::getPhoneNumber, AdUser::setPhoneNumber),
+            new EditableAttribute("company", AdUser::getCompany, AdUser::setCompany),
+            new EditableAttribute("userPrincipalName", AdUser::getUserPrincipalName, AdUser::setUserPrincipalName)
+    );
+
     private final LdapTemplate ldapTemplate;
 
+    // Entries as last read or written, by lower-cased sAMAccountName, so edits need neither a DN search
+    // nor a re-read. Stale DNs (renamed or moved users) are detected by the server and re-resolved.
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    // Order in which entries were remembered, so a full cache evicts the oldest first
+    private final AtomicLong rememberedCount = new AtomicLong();
+    private final long snapshotTtlMillis;
+    private final int snapshotMaxSize;
+    private final boolean assertionControl;
+    // AD forests searched by search() (ldap.federation); null or empty searches this directory only
+    private final DirectoryFederation directoryFederation;
+    // Outbound rate limit of this application's directory clients; unlimited without a governor bean
+    private final LdapOperationGovernor governor;
+
     public AdUserLdapRepository(LdapTemplate ldapTemplate) {
+        this(ldapTemplate, Duration.ofMinutes(5), 10000, false, null, LdapOperationGovernor.unlimited());
+    }
+
+    @Autowired
+    public AdUserLdapRepository(LdapTemplate ldapTemplate,
+                                @Value("${ad.users.write.snapshot-ttl:5m}") Duration snapshotTtl,
+                                @Value("${ad.users.write.snapshot-max-size:10000}") int snapshotMaxSize,
+                                @Value("${ad.users.write.assertion-control:false}") boolean assertionControl,
+                                ObjectProvider<DirectoryFederation> directoryFederation,
+                                ObjectProvider<LdapOperationGovernor> governor) {
+        this(ldapTemplate, snapshotTtl, snapshotMaxSize, assertionControl, directoryFederation.getIfAvailable(),
+                governor.getIfAvailable(LdapOperationGovernor::unlimited));
+    }
+
+    public AdUserLdapRepository(LdapTemplate ldapTemplate,
+                                Duration snapshotTtl,
+                                int snapshotMaxSize,
+                                boolean assertionControl,
+                                DirectoryFederation directoryFederation,
+                                LdapOperationGovernor governor) {
         this.ldapTemplate = ldapTemplate;
+        this.snapshotTtlMillis = snapshotTtl.toMillis();
+        this.snapshotMaxSize = Math.max(0, snapshotMaxSize);
+        this.assertionControl = assertionControl;
+        this.directoryFederation = directoryFederation;
+        this.governor = governor;
     }
 
     /**
      * List all AD users in the Users OU.
+     * Materializes the whole directory; prefer {@link #streamAll(String)} for large directories.
      */
     public List<AdUser> findAll() {
-        LdapQuery query = LdapQueryBuilder.query()
-                .base(USER_SEARCH_BASE)
-                .attributes(USER_ATTRIBUTES)
-                .where("objectClass").is("user")
-                .and("objectCategory").is("person");
+        try (Stream<AdUser> users = streamAll(null)) {
+            return users.collect(Collectors.toList());
+        }
+    }
 
-        return ldapTemplate.search(query, new AdUserAttributesMapper());
+    /**
+     * Stream AD users in the Users OU, optionally filtered by department.
+     * Users are fetched with the paged results control, one page at a time, over a
+     * single connection held until the stream is closed. Callers must close the stream.
+     */
+    public Stream<AdUser> streamAll(String department) {
+        return streamAll(department, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Stream AD users with the given LDAP page size (capped at {@link #MAX_PAGE_SIZE}).
+     */
+    public Stream<AdUser> streamAll(String department, int pageSize) {
+        return stream(userFilter(department), pageSize);
+    }
+
+    /**
+     * Position of one domain controller in its change log, as read from its rootDSE.
+     * USNs are local to a domain controller, so a mark only applies to the server it was read from.
+     */
+    public record ChangeMark(String serverId, long highestCommittedUsn) {
+    }
+
+    /**
+     * Users read over one connection, with the change mark of its server read before them.
+     * Callers must close it.
+     *
+     * @param full Whether these are all users rather than the changes since a mark
+     */
+    public record UserChanges(ChangeMark mark, boolean full, Stream<AdUser> users) implements AutoCloseable {
+
+        @Override
+        public void close() {
+            users.close();
+        }
+    }
+
+    /**
+     * Stream the users changed since a mark, by uSNChanged, or all users.
+     * All users are returned without a mark, or when the connection reaches another domain controller
+     * than the mark was read from or one whose USN went back (a restored server). The server's
+     * highestCommittedUSN is read before the users, so changes committed while they are read are
+     * returned again next time rather than missed. Deleted users are only noticed by a full read.
+     */
+    public UserChanges streamChanges(ChangeMark since) {
+        DirContext context = ldapTemplate.getContextSource().getReadOnlyContext();
+        SingleContextSource singleContextSource = new SingleContextSource(context);
+        try {
+            ChangeMark mark = readChangeMark(context);
+            boolean full = since == null
+                    || mark.highestCommittedUsn() < 0
+                    || !Objects.equals(mark.serverId(), since.serverId())
+                    || mark.highestCommittedUsn() < since.highestCommittedUsn();
+            AndFilter filter = userFilter(null);
+            if (!full) {
+                filter.and(new GreaterThanOrEqualsFilter("uSNChanged",
+                        String.valueOf(since.highestCommittedUsn() + 1)));
+            }
+            return new UserChanges(mark, full, stream(context, singleContextSource, filter, DEFAULT_PAGE_SIZE));
+        } catch (RuntimeException e) {
+            release(context, singleContextSource);
+            throw e;
+        }
+    }
+
+    /**
+     * Read highestCommittedUSN and dsServiceName from the rootDSE of the server a connection is open to.
+     * Connections are opened below the base DN, where the rootDSE cannot be named, so this binds a
+     * short-lived connection to the same server URL without the base DN.
+     */
+    private ChangeMark readChangeMark(DirContext context) {
+        admit(LdapOperationGovernor.OperationClass.SEARCH);
+        DirContext root = null;
+        try {
+            Hashtable<Object, Object> environment = new Hashtable<>(context.getEnvironment());
+            Object url = environment.get(Context.PROVIDER_URL);
+            if (url != null) {
+                environment.put(Context.PROVIDER_URL, SERVER_URL.matcher(url.toString()).replaceAll("$1/"));
+            }
+            root = new InitialDirContext(environment);
+            Attributes rootDse = root.getAttributes("", new String[] {"highestCommittedUSN", "dsServiceName"});
+            Attribute usn = rootDse.get("highestCommittedUSN");
+            Attribute serverId = rootDse.get("dsServiceName");
+            return new ChangeMark(serverId != null ? serverId.get().toString() : null,
+                    usn != null ? Long.parseLong(usn.get().toString().trim()) : -1);
+        } catch (NamingException e) {
+            throw LdapUtils.convertLdapException(e);
+        } catch (NumberFormatException e) {
+            return new ChangeMark(null, -1);
+        } finally {
+            if (root != null) {
+                try {
+                    root.close();
+                } catch (NamingException e) {
+                    log.debug("Could not close rootDSE connection", e);
+                }
+            }
+        }
+    }
+
+    private Stream<AdUser> stream(AndFilter filter, int pageSize) {
+        DirContext context = ldapTemplate.getContextSource().getReadOnlyContext();
+        SingleContextSource singleContextSource = new SingleContextSource(context);
+        try {
+            return stream(context, singleContextSource, filter, pageSize);
+        } catch (RuntimeException e) {
+            release(context, singleContextSource);
+            throw e;
+        }
+    }
+
+    private Stream<AdUser> stream(DirContext context, SingleContextSource singleContextSource,
+                                  AndFilter filter, int pageSize) {
+        Iterator<AdUser> users = new PagedUserIterator(singleContextTemplate(singleContextSource),
+                filter.encode(), Math.min(Math.max(1, pageSize), MAX_PAGE_SIZE));
+        return StreamSupport.stream(
+                        Spliterators.spliteratorUnknownSize(users, Spliterator.ORDERED | Spliterator.NONNULL),
+                        false)
+                .onClose(() -> release(context, singleContextSource));
+    }
+
+    /**
+     * Offset page of AD users in directory order.
+     * The directory is paged through up to the offset, so cost grows with the offset;
+     * prefer {@link #findPageAfter(String, String, int)} for deep pages.
+     * Returns up to limit + 1 users so callers can tell whether another page exists.
+     *
+     * @throws IllegalArgumentException if the offset is negative or above {@link #MAX_OFFSET}
+     */
+    public List<AdUser> findPage(String department, int offset, int limit) {
+        if (offset < 0 || offset > MAX_OFFSET) {
+            throw new IllegalArgumentException("Offset must be between 0 and " + MAX_OFFSET);
+        }
+        int pageSize = (int) Math.min((long) offset + limit + 1, MAX_PAGE_SIZE);
+        try (Stream<AdUser> users = streamAll(department, pageSize)) {
+            return users.skip(offset).limit(limit + 1L).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Keyset page of AD users ordered by sAMAccountName, starting after the given
+     * sAMAccountName (null for the first page). Uses a server-side sort on the indexed
+     * sAMAccountName with a range filter, so every page costs the same.
+     * Returns up to limit + 1 users so callers can tell whether another page exists.
+     */
+    public List<AdUser> findPageAfter(String department, String afterSamAccountName, int limit) {
+        AndFilter filter = userFilter(department);
+        if (afterSamAccountName != null) {
+            filter.and(new GreaterThanOrEqualsFilter("sAMAccountName", afterSamAccountName));
+            filter.and(new NotFilter(new EqualsFilter("sAMAccountName", afterSamAccountName)));
+        }
+
+        SearchControls controls = userSearchControls();
+        controls.setCountLimit(limit + 1L);
+
+        admit(LdapOperationGovernor.OperationClass.SEARCH);
+        return withSingleContext(template -> template.search(USER_SEARCH_BASE, filter.encode(), controls,
+                new AdUserAttributesMapper(), new SortControlDirContextProcessor("sAMAccountName")));
     }
 
     /**
      * Find a single user by sAMAccountName.
+     * The entry is remembered, so a following update or delete of the user needs no search.
      */
     public AdUser findBySamAccountName(String samAccountName) {
         LdapQuery query = LdapQueryBuilder.query()
@@ -63,8 +335,54 @@ public class AdUserLdapRepository {
                 .where("objectClass").is("user")
                 .and("sAMAccountName").is(samAccountName);
 
-        List<AdUser> results = ldapTemplate.search(query, new AdUserAttributesMapper());
-        return results.isEmpty() ? null : results.get(0);
+        admit(LdapOperationGovernor.OperationClass.SEARCH);
+        List<AdUser> results = ldapTemplate.search(query, new AdUserContextMapper());
+        if (results.isEmpty()) {
+            evict(samAccountName);
+            return null;
+        }
+        AdUser user = results.get(0);
+        remember(samAccountName, user);
+        return user;
+    }
+
+    /**
+     * Look up and remember the entries of many users ahead of a bulk edit, with one
+     * OR-filter search per {@link #PRELOAD_BATCH_SIZE} users instead of one search each.
+     * Users already remembered are searched again too, so the edit starts from their current entries.
+     *
+     * @return the number of users found
+     */
+    public int preload(Collection<String> samAccountNames) {
+        Set<String> wanted = new LinkedHashSet<>();
+        for (String samAccountName : samAccountNames) {
+            if (samAccountName != null && !samAccountName.isBlank()) {
+                wanted.add(samAccountName.toLowerCase(Locale.ROOT));
+            }
+        }
+
+        int found = 0;
+        List<String> names = new ArrayList<>(wanted);
+        for (int from = 0; from < names.size(); from += PRELOAD_BATCH_SIZE) {
+            OrFilter anyOf = new OrFilter();
+            names.subList(from, Math.min(from + PRELOAD_BATCH_SIZE, names.size()))
+                    .forEach(name -> anyOf.or(new EqualsFilter("sAMAccountName", name)));
+            AndFilter filter = new AndFilter();
+            filter.and(new EqualsFilter("objectClass", "user"));
+            filter.and(anyOf);
+
+            admit(LdapOperationGovernor.OperationClass.SEARCH);
+            List<AdUser> users = ldapTemplate.search(USER_SEARCH_BASE, filter.encode(), userSearchControls(),
+                    new AdUserContextMapper());
+            for (AdUser user : users) {
+                if (user.getSamAccountName() != null) {
+                    remember(user.getSamAccountName(), user);
+                    found++;
+                }
+            }
+        }
+        log.debug("Preloaded {} of {} AD users", found, wanted.size());
+        return found;
     }
 
     /**
@@ -77,11 +395,14 @@ public class AdUserLdapRepository {
                 .where("objectClass").is("user")
                 .and("department").is(department);
 
+        admit(LdapOperationGovernor.OperationClass.SEARCH);
         return ldapTemplate.search(query, new AdUserAttributesMapper());
     }
 
     /**
      * Search users by a keyword across common fields (displayName, mail, department, title).
+     * With a federated directory, all forests are searched in parallel and the results
+     * merged; a forest that fails or times out is left out.
      */
     public List<AdUser> search(String keyword) {
         AndFilter andFilter = new AndFilter();
@@ -96,6 +417,10 @@ public class AdUserLdapRepository {
         orFilter.or(new LikeFilter("title", "*" + keyword + "*"));
         andFilter.and(orFilter);
 
+        if (directoryFederation != null && !directoryFederation.isEmpty()) {
+            return searchForests(andFilter.encode());
+        }
+        admit(LdapOperationGovernor.OperationClass.SEARCH);
         return ldapTemplate.search(
                 USER_SEARCH_BASE,
                 andFilter.encode(),
@@ -103,6 +428,30 @@ public class AdUserLdapRepository {
         );
     }
 
+    private List<AdUser> searchForests(String filter) {
+        AdUserAttributesMapper mapper = new AdUserAttributesMapper();
+        DirectoryFederation.Merged<AdUser> merged = directoryFederation.searchAll((forest, context) -> {
+            List<AdUser> users = new ArrayList<>();
+            governor.acquire(LdapOperationGovernor.OperationClass.SEARCH);
+            NamingEnumeration<SearchResult> results =
+                    context.search(forest.getBaseDn(), filter, userSearchControls());
+            try {
+                while (results.hasMore()) {
+                    users.add(mapper.mapFromAttributes(results.next().getAttributes()));
+                }
+            } finally {
+                results.close();
+            }
+            return users;
+        }, user -> user.getUserPrincipalName() != null
+                ? user.getUserPrincipalName().toLowerCase(Locale.ROOT)
+                : String.valueOf(user.getDistinguishedName()).toLowerCase(Locale.ROOT));
+        if (!merged.isComplete()) {
+            log.warn("AD user search incomplete, no answer from forests {}", merged.failedForests());
+        }
+        return merged.results();
+    }
+
     /**
      * Find users by email address.
      */
@@ -113,6 +462,7 @@ public class AdUserLdapRepository {
                 .where("objectClass").is("user")
                 .and("mail").is(email);
 
+        admit(LdapOperationGovernor.OperationClass.SEARCH);
         List<AdUser> results = ldapTemplate.search(query, new AdUserAttributesMapper());
         return results.isEmpty() ? null : results.get(0);
     }
@@ -157,43 +507,300 @@ public class AdUserLdapRepository {
             context.setAttributeValue("userPrincipalName", user.getUserPrincipalName());
         }
 
+        admit(LdapOperationGovernor.OperationClass.MODIFY);
         ldapTemplate.bind(context);
     }
 
     /**
      * Update an existing user's attributes in Active Directory.
+     *
+     * Only attributes that differ from the remembered entry are sent, in a single modify
+     * request; the entry is searched for only if it is not remembered. A remembered entry
+     * that shows no difference is read again before reporting the user unchanged, as it may
+     * be out of date. With the assertion
+     * control enabled the modify carries the old values of the changed attributes, so the
+     * server refuses it if someone else changed them meanwhile.
+     *
+     * @return the user as it is after the update, and whether anything was sent
+     * @throws IllegalArgumentException if the user does not exist
+     * @throws IllegalStateException if the assertion control detected a concurrent change
      */
-    public void update(String samAccountName, AdUser updatedUser) {
-        AdUser existing = findBySamAccountName(samAccountName);
-        if (existing == null) {
-            throw new IllegalArgumentException("User not found: " + samAccountName);
+    public UpdateResult update(String samAccountName, AdUser updatedUser) {
+        Snapshot snapshot = snapshot(samAccountName);
+        try {
+            UpdateResult result = modify(samAccountName, snapshot, updatedUser);
+            if (result.modified() || !snapshot.cached()) {
+                return result;
+            }
+            // Nothing to send as far as the cache knows; the directory may have changed since
+            log.debug("Remembered entry of AD user '{}' shows no change, reading it again", samAccountName);
+            evict(samAccountName);
+            return modify(samAccountName, snapshot(samAccountName), updatedUser);
+        } catch (NameNotFoundException e) {
+            if (!snapshot.cached()) {
+                throw e;
+            }
+            // Renamed or moved since it was remembered
+            log.debug("Remembered DN of AD user '{}' is stale, looking it up again", samAccountName);
+            evict(samAccountName);
+            return modify(samAccountName, snapshot(samAccountName), updatedUser);
         }
+    }
 
-        Name dn = existing.getDn();
-        DirContextOperations context = ldapTemplate.lookupContext(dn);
+    private UpdateResult modify(String samAccountName, Snapshot snapshot, AdUser updatedUser) {
+        List<ModificationItem> changes = new ArrayList<>();
+        List<EditableAttribute> changed = new ArrayList<>();
+        for (EditableAttribute attribute : EDITABLE_ATTRIBUTES) {
+            String value = attribute.getter().apply(updatedUser);
+            if (value != null && !value.equals(attribute.getter().apply(snapshot.user()))) {
+                changes.add(new ModificationItem(DirContext.REPLACE_ATTRIBUTE,
+                        new BasicAttribute(attribute.name(), value)));
+                changed.add(attribute);
+            }
+        }
+        if (changes.isEmpty()) {
+            log.debug("AD user '{}' unchanged, nothing to modify", samAccountName);
+            return new UpdateResult(copy(snapshot.user()), false);
+        }
 
-        setAttributeIfNotNull(context, "displayName", updatedUser.getDisplayName());
-        setAttributeIfNotNull(context, "givenName", updatedUser.getFirstName());
-        setAttributeIfNotNull(context, "sn", updatedUser.getLastName());
-        setAttributeIfNotNull(context, "mail", updatedUser.getEmail());
-        setAttributeIfNotNull(context, "department", updatedUser.getDepartment());
-        setAttributeIfNotNull(context, "title", updatedUser.getTitle());
-        setAttributeIfNotNull(context, "telephoneNumber", updatedUser.getPhoneNumber());
-        setAttributeIfNotNull(context, "company", updatedUser.getCompany());
-        setAttributeIfNotNull(context, "userPrincipalName", updatedUser.getUserPrincipalName());
+        ModificationItem[] items = changes.toArray(new ModificationItem[0]);
+        admit(LdapOperationGovernor.OperationClass.MODIFY);
+        if (!assertionControl) {
+            ldapTemplate.modifyAttributes(snapshot.dn(), items);
+        } else {
+            Control assertion = new AssertionControl(changed, snapshot.user());
+            try {
+                ldapTemplate.executeReadWrite(context -> {
+                    LdapContext ldapContext = (LdapContext) context;
+                    ldapContext.setRequestControls(new Control[]{assertion});
+                    try {
+                        ldapContext.modifyAttributes(snapshot.dn(), items);
+                    } finally {
+                        // Pooled connections are reused; do not hand the next borrower our assertion
+                        ldapContext.setRequestControls(null);
+                    }
+                    return null;
+                });
+            } catch (org.springframework.ldap.NamingException e) {
+                String message = e.getMostSpecificCause().getMessage();
+                if (message == null || !message.contains(ASSERTION_FAILED)) {
+                    throw e;
+                }
+                evict(samAccountName);
+                throw new IllegalStateException("AD user '" + samAccountName + "' was changed concurrently", e);
+            }
+        }
 
-        ldapTemplate.modifyAttributes(context);
+        AdUser updated = copy(snapshot.user());
+        changed.forEach(attribute -> attribute.setter().accept(updated, attribute.getter().apply(updatedUser)));
+        remember(samAccountName, updated);
+        return new UpdateResult(copy(updated), true);
     }
 
     /**
      * Delete a user from Active Directory by sAMAccountName.
+     * The entry is searched for only if it is not remembered.
      */
     public void delete(String samAccountName) {
+        Snapshot snapshot = snapshot(samAccountName);
+        try {
+            admit(LdapOperationGovernor.OperationClass.MODIFY);
+            ldapTemplate.unbind(snapshot.dn());
+        } catch (NameNotFoundException e) {
+            evict(samAccountName);
+            if (!snapshot.cached()) {
+                throw e;
+            }
+            Name dn = snapshot(samAccountName).dn();
+            admit(LdapOperationGovernor.OperationClass.MODIFY);
+            ldapTemplate.unbind(dn);
+        }
+        evict(samAccountName);
+    }
+
+    /**
+     * Outcome of {@link #update}.
+     *
+     * @param user The user after the update
+     * @param modified Whether any attribute changed
+     */
+    public record UpdateResult(AdUser user, boolean modified) {
+    }
+
+    /**
+     * Remembered entry, or the entry searched for.
+     */
+    private Snapshot snapshot(String samAccountName) {
+        Snapshot snapshot = cached(samAccountName);
+        if (snapshot != null) {
+            return snapshot;
+        }
         AdUser existing = findBySamAccountName(samAccountName);
-        if (existing == null) {
+        if (existing == null || existing.getDn() == null) {
             throw new IllegalArgumentException("User not found: " + samAccountName);
         }
-        ldapTemplate.unbind(existing.getDn());
+        return new Snapshot(existing.getDn(), copy(existing), 0, 0, false);
+    }
+
+    private Snapshot cached(String samAccountName) {
+        Snapshot snapshot = snapshots.get(samAccountName.toLowerCase(Locale.ROOT));
+        return snapshot != null && System.currentTimeMillis() < snapshot.expiresAt() ? snapshot : null;
+    }
+
+    private void remember(String samAccountName, AdUser user) {
+        if (snapshotMaxSize == 0 || user.getDn() == null) {
+            return;
+        }
+        String key = samAccountName.toLowerCase(Locale.ROOT);
+        if (snapshots.size() >= snapshotMaxSize && !snapshots.containsKey(key)) {
+            long now = System.currentTimeMillis();
+            snapshots.values().removeIf(snapshot -> now >= snapshot.expiresAt());
+            int excess = snapshots.size() - snapshotMaxSize + 1;
+            if (excess > 0) {
+                // Make room for a tenth of the cache at once, so a full cache is not sorted on every put
+                snapshots.entrySet().stream()
+                        .sorted(Comparator.comparingLong(entry -> entry.getValue().sequence()))
+                        .limit(Math.max(excess, snapshotMaxSize / 10))
+                        .map(Map.Entry::getKey)
+                        .toList()
+                        .forEach(snapshots::remove);
+            }
+        }
+        snapshots.put(key, new Snapshot(user.getDn(), copy(user),
+                System.currentTimeMillis() + snapshotTtlMillis, rememberedCount.incrementAndGet(), true));
+    }
+
+    private void evict(String samAccountName) {
+        if (samAccountName != null) {
+            snapshots.remove(samAccountName.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private static AdUser copy(AdUser user) {
+        AdUser copy = new AdUser();
+        copy.setDn(user.getDn());
+        copy.setSamAccountName(user.getSamAccountName());
+        copy.setCommonName(user.getCommonName());
+        copy.setDistinguishedName(user.getDistinguishedName());
+        copy.setUserAccountControl(user.getUserAccountControl());
+        copy.setMemberOf(user.getMemberOf() == null ? null : user.getMemberOf().clone());
+        EDITABLE_ATTRIBUTES.forEach(attribute -> attribute.setter().accept(copy, attribute.getter().apply(user)));
+        return copy;
+    }
+
+    /**
+     * @param sequence Order in which the entry was remembered
+     * @param cached Whether the entry came from the cache rather than a search just now
+     */
+    private record Snapshot(Name dn, AdUser user, long expiresAt, long sequence, boolean cached) {
+    }
+
+    private record EditableAttribute(String name, Function<AdUser, String> getter,
+                                     BiConsumer<AdUser, String> setter) {
+    }
+
+    private static AndFilter userFilter(String department) {
+        AndFilter filter = new AndFilter();
+        filter.and(new EqualsFilter("objectClass", "user"));
+        filter.and(new EqualsFilter("objectCategory", "person"));
+        if (department != null && !department.isBlank()) {
+            filter.and(new EqualsFilter("department", department));
+        }
+        return filter;
+    }
+
+    private static SearchControls userSearchControls() {
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        controls.setReturningAttributes(USER_ATTRIBUTES);
+        return controls;
+    }
+
+    /**
+     * Wait until the outbound rate limit lets one more operation through.
+     *
+     * @throws org.springframework.ldap.ServiceUnavailableException if it did not in time
+     */
+    private void admit(LdapOperationGovernor.OperationClass operation) {
+        try {
+            governor.acquire(operation);
+        } catch (NamingException e) {
+            throw LdapUtils.convertLdapException(e);
+        }
+    }
+
+    /**
+     * Run searches carrying request controls on one borrowed connection.
+     * Paged results cookies are only valid on the connection that issued them.
+     */
+    private <T> T withSingleContext(Function<LdapTemplate, T> callback) {
+        DirContext context = ldapTemplate.getContextSource().getReadOnlyContext();
+        SingleContextSource singleContextSource = new SingleContextSource(context);
+        try {
+            return callback.apply(singleContextTemplate(singleContextSource));
+        } finally {
+            release(context, singleContextSource);
+        }
+    }
+
+    private static LdapTemplate singleContextTemplate(SingleContextSource singleContextSource) {
+        LdapTemplate template = new LdapTemplate(singleContextSource);
+        template.setIgnorePartialResultException(true);
+        template.setIgnoreSizeLimitExceededException(true);
+        return template;
+    }
+
+    private static void release(DirContext context, SingleContextSource singleContextSource) {
+        try {
+            // Pooled connections are reused; do not hand the next borrower our paging or sort control
+            if (context instanceof LdapContext) {
+                ((LdapContext) context).setRequestControls(null);
+            }
+        } catch (NamingException e) {
+            log.debug("Could not clear LDAP request controls", e);
+        }
+        // Closes the context, returning it to the pool
+        singleContextSource.destroy();
+    }
+
+    /**
+     * Fetches the next page only when the current one has been consumed.
+     */
+    private class PagedUserIterator implements Iterator<AdUser> {
+
+        private final LdapTemplate template;
+        private final String filter;
+        private final PagedResultsDirContextProcessor processor;
+        private final AdUserAttributesMapper mapper = new AdUserAttributesMapper();
+
+        private Iterator<AdUser> page = Collections.emptyIterator();
+        private boolean lastPage;
+
+        PagedUserIterator(LdapTemplate template, String filter, int pageSize) {
+            this.template = template;
+            this.filter = filter;
+            this.processor = new PagedResultsDirContextProcessor(pageSize);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext() && !lastPage) {
+                admit(LdapOperationGovernor.OperationClass.SEARCH);
+                List<AdUser> users = template.search(USER_SEARCH_BASE, filter, userSearchControls(), mapper,
+                        processor);
+                lastPage = !processor.hasMore();
+                page = users.iterator();
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public AdUser next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.next();
+        }
     }
 
     private Name buildDn(String commonName) {
@@ -202,9 +809,72 @@ public class AdUserLdapRepository {
                 .build();
     }
 
-    private void setAttributeIfNotNull(DirContextOperations context, String attrName, String value) {
-        if (value != null) {
-            context.setAttributeValue(attrName, value);
+    /**
+     * Assertion control requiring the given attributes to still have their old values:
+     * (&amp;(attr=old)...), with (!(attr=*)) for attributes that were absent.
+     */
+    static final class AssertionControl extends BasicControl {
+
+        AssertionControl(List<EditableAttribute> attributes, AdUser expected) {
+            super(ASSERTION_CONTROL_OID, true, encode(attributes, expected));
+        }
+
+        private static byte[] encode(List<EditableAttribute> attributes, AdUser expected) {
+            ByteArrayOutputStream filters = new ByteArrayOutputStream();
+            for (EditableAttribute attribute : attributes) {
+                byte[] name = attribute.name().getBytes(StandardCharsets.UTF_8);
+                String value = attribute.getter().apply(expected);
+                if (value == null) {
+                    // not [2] { present [7] attr }
+                    filters.writeBytes(tlv(0xA2, tlv(0x87, name)));
+                } else {
+                    // equalityMatch [3] { attr, value }
+                    filters.writeBytes(tlv(0xA3, concat(tlv(0x04, name),
+                            tlv(0x04, value.getBytes(StandardCharsets.UTF_8)))));
+                }
+            }
+            // and [0]
+            return tlv(0xA0, filters.toByteArray());
+        }
+
+        private static byte[] tlv(int tag, byte[] value) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(tag);
+            int length = value.length;
+            if (length < 0x80) {
+                out.write(length);
+            } else {
+                int bytes = (32 - Integer.numberOfLeadingZeros(length) + 7) / 8;
+                out.write(0x80 | bytes);
+                for (int i = bytes - 1; i >= 0; i--) {
+                    out.write(length >>> (8 * i));
+                }
+            }
+            out.writeBytes(value);
+            return out.toByteArray();
+        }
+
+        private static byte[] concat(byte[] first, byte[] second) {
+            byte[] both = new byte[first.length + second.length];
+            System.arraycopy(first, 0, both, 0, first.length);
+            System.arraycopy(second, 0, both, first.length, second.length);
+            return both;
+        }
+    }
+
+    /**
+     * Maps entries to AdUser model, including the DN relative to the base.
+     */
+    private static class AdUserContextMapper implements ContextMapper<AdUser> {
+
+        private final AdUserAttributesMapper attributesMapper = new AdUserAttributesMapper();
+
+        @Override
+        public AdUser mapFromContext(Object ctx) throws NamingException {
+            DirContextOperations context = (DirContextOperations) ctx;
+            AdUser user = attributesMapper.mapFromAttributes(context.getAttributes());
+            user.setDn(context.getDn());
+            return user;
         }
     }
 
@@ -0,0 +1,335 @@
+package com.ad.poc.service;
+
+import com.ad.poc.dto.AdUserDto;
+import com.ad.poc.dto.BulkItemResultDto;
+import com.ad.poc.dto.BulkJobDto;
+import com.company.ra.config.LdapOperationGovernor;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+
+/**
+ * Provisions or edits many users as a background job.
+ *
+ * Items run on a fixed pool of LDAP workers shared by all jobs, so concurrent
+ * imports together never hold more than that many connections. Writes are
+ * also paced to a global rate to protect the domain controllers, and their
+ * LDAP operations yield to interactive ones in the shared governor. Existing
+ * accounts, and repeats of an account within one request, are skipped, so a
+ * failed import can simply be resubmitted.
+ *
+ * Edit jobs first look up all their users in a few batched searches; each
+ * item is then a single modify of the changed attributes, with the workers
+ * keeping several modifies in flight at once.
+ */
+@Service
+public class AdUserBulkService {
+
+    private static final Logger log = LoggerFactory.getLogger(AdUserBulkService.class);
+
+    private final AdUserService adUserService;
+    private final Validator validator;
+    private final int maxItems;
+    private final Duration jobRetention;
+    // Minimum spacing between writes across all jobs; 0 disables throttling
+    private final long intervalNanos;
+    private final AtomicLong nextPermitAt = new AtomicLong(System.nanoTime());
+
+    private final ExecutorService workers;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public AdUserBulkService(AdUserService adUserService,
+                             Validator validator,
+                             @Value("${ad.users.bulk.workers:4}") int workers,
+                             @Value("${ad.users.bulk.rate-per-second:50}") int ratePerSecond,
+                             @Value("${ad.users.bulk.max-items:10000}") int maxItems,
+                             @Value("${ad.users.bulk.job-retention:1h}") Duration jobRetention) {
+        this.adUserService = adUserService;
+        this.validator = validator;
+        this.maxItems = maxItems;
+        this.jobRetention = jobRetention;
+        this.intervalNanos = ratePerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / ratePerSecond : 0;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workers), runnable -> {
+            Thread thread = new Thread(LdapOperationGovernor.background(runnable),
+                    "ad-user-bulk-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobs.values().forEach(job -> job.cancelled.set(true));
+        workers.shutdownNow();
+    }
+
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    /**
+     * Start a job provisioning the given users.
+     *
+     * @throws IllegalArgumentException if there are no users or more than the configured maximum
+     */
+    public BulkJobDto submit(List<AdUserDto> users) {
+        return start("provisioning", users, false, this::provision);
+    }
+
+    /**
+     * Start a job editing the given users, identified by sAMAccountName.
+     * Users already having the given values are reported as skipped.
+     *
+     * @throws IllegalArgumentException if there are no users or more than the configured maximum
+     */
+    public BulkJobDto submitUpdates(List<AdUserDto> users) {
+        return start("edit", users, true, this::edit);
+    }
+
+    private BulkJobDto start(String kind, List<AdUserDto> users, boolean preload, ItemTask task) {
+        if (users == null || users.isEmpty()) {
+            throw new IllegalArgumentException("No users to " + (preload ? "edit" : "provision"));
+        }
+        if (users.size() > maxItems) {
+            throw new IllegalArgumentException("At most " + maxItems + " users per request");
+        }
+        purgeExpiredJobs();
+
+        Job job = new Job(UUID.randomUUID().toString(), kind, users.size());
+        jobs.put(job.id, job);
+        log.info("Starting bulk {} job {} with {} users", kind, job.id, users.size());
+
+        Set<String> seen = new HashSet<>();
+        List<String> names = new ArrayList<>();
+        List<Runnable> items = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            AdUserDto user = users.get(i);
+            String sam = user == null ? null : user.samAccountName();
+            if (sam != null && !seen.add(sam.toLowerCase(Locale.ROOT))) {
+                job.complete(new BulkItemResultDto(i, sam, BulkItemResultDto.Status.SKIPPED,
+                        "Duplicate of an earlier item in this request"));
+                continue;
+            }
+            int index = i;
+            if (sam != null) {
+                names.add(sam);
+            }
+            items.add(() -> task.run(job, index, user));
+        }
+
+        if (!preload) {
+            items.forEach(workers::execute);
+        } else {
+            workers.execute(() -> {
+                try {
+                    if (!job.cancelled.get()) {
+                        adUserService.preload(names);
+                    }
+                } catch (Exception e) {
+                    // Items look their users up one by one instead
+                    log.warn("Bulk job {}: preloading {} AD users failed: {}", job.id, names.size(), e.getMessage());
+                }
+                items.forEach(workers::execute);
+            });
+        }
+        return job.toDto(false);
+    }
+
+    /**
+     * Current state of a job, optionally with the per-item results so far.
+     */
+    public Optional<BulkJobDto> getJob(String id, boolean withResults) {
+        return Optional.ofNullable(jobs.get(id)).map(job -> job.toDto(withResults));
+    }
+
+    /**
+     * Cancel the items of a job that have not started yet; they are reported as failed.
+     */
+    public Optional<BulkJobDto> cancel(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            return Optional.empty();
+        }
+        if (job.finishedAt == null) {
+            job.cancelled.set(true);
+        }
+        return Optional.of(job.toDto(false));
+    }
+
+    private void provision(Job job, int index, AdUserDto user) {
+        String sam = user == null ? null : user.samAccountName();
+        if (!accept(job, index, user)) {
+            return;
+        }
+
+        try {
+            throttle();
+            boolean created = adUserService.createIfAbsent(user);
+            job.complete(new BulkItemResultDto(index, sam,
+                    created ? BulkItemResultDto.Status.CREATED : BulkItemResultDto.Status.SKIPPED,
+                    created ? null : "Already exists"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.complete(new BulkItemResultDto(index, sam, BulkItemResultDto.Status.FAILED, "Interrupted"));
+        } catch (Exception e) {
+            log.warn("Bulk job {}: creating AD user '{}' failed: {}", job.id, sam, e.getMessage());
+            job.complete(new BulkItemResultDto(index, sam, BulkItemResultDto.Status.FAILED, e.getMessage()));
+        }
+    }
+
+    private void edit(Job job, int index, AdUserDto user) {
+        String sam = user == null ? null : user.samAccountName();
+        if (!accept(job, index, user)) {
+            return;
+        }
+
+        try {
+            throttle();
+            boolean updated = adUserService.updateIfChanged(user);
+            job.complete(new BulkItemResultDto(index, sam,
+                    updated ? BulkItemResultDto.Status.UPDATED : BulkItemResultDto.Status.SKIPPED,
+                    updated ? null : "Unchanged"));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.complete(new BulkItemResultDto(index, sam, BulkItemResultDto.Status.FAILED, "Interrupted"));
+        } catch (Exception e) {
+            log.warn("Bulk job {}: updating AD user '{}' failed: {}", job.id, sam, e.getMessage());
+            job.complete(new BulkItemResultDto(index, sam, BulkItemResultDto.Status.FAILED, e.getMessage()));
+        }
+    }
+
+    /**
+     * Fail the item if the job was cancelled or the user is missing or invalid.
+     *
+     * @return true if the item should be processed
+     */
+    private boolean accept(Job job, int index, AdUserDto user) {
+        String sam = user == null ? null : user.samAccountName();
+        if (job.cancelled.get()) {
+            job.skippedByCancel.incrementAndGet();
+            job.complete(new BulkItemResultDto(index, sam, BulkItemResultDto.Status.FAILED, "Job cancelled"));
+            return false;
+        }
+        if (user == null) {
+            job.complete(new BulkItemResultDto(index, null, BulkItemResultDto.Status.FAILED, "Missing user"));
+            return false;
+        }
+        Set<ConstraintViolation<AdUserDto>> violations = validator.validate(user);
+        if (!violations.isEmpty()) {
+            String error = violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+            job.complete(new BulkItemResultDto(index, sam, BulkItemResultDto.Status.FAILED, error));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Wait for the next slot of the global write rate.
+     */
+    private void throttle() throws InterruptedException {
+        if (intervalNanos == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long slot = nextPermitAt.getAndAccumulate(now, (next, current) -> Math.max(next, current) + intervalNanos);
+        long wait = slot - now;
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private void purgeExpiredJobs() {
+        Instant cutoff = Instant.now().minus(jobRetention);
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(cutoff));
+    }
+
+    @FunctionalInterface
+    private interface ItemTask {
+        void run(Job job, int index, AdUserDto user);
+    }
+
+    private static final class Job {
+        private final String id;
+        private final String kind;
+        private final int total;
+        private final Instant startedAt = Instant.now();
+        private final AtomicReferenceArray<BulkItemResultDto> results;
+        private final AtomicInteger processed = new AtomicInteger();
+        private final AtomicInteger created = new AtomicInteger();
+        private final AtomicInteger updated = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        // Items failed because of the cancellation; a job cancelled after its last item started completes
+        private final AtomicInteger skippedByCancel = new AtomicInteger();
+        private volatile Instant finishedAt;
+
+        private Job(String id, String kind, int total) {
+            this.id = id;
+            this.kind = kind;
+            this.total = total;
+            this.results = new AtomicReferenceArray<>(total);
+        }
+
+        private void complete(BulkItemResultDto result) {
+            results.set(result.index(), result);
+            switch (result.status()) {
+                case CREATED -> created.incrementAndGet();
+                case UPDATED -> updated.incrementAndGet();
+                case SKIPPED -> skipped.incrementAndGet();
+                case FAILED -> failed.incrementAndGet();
+            }
+            if (processed.incrementAndGet() == total) {
+                finishedAt = Instant.now();
+                log.info("Bulk {} job {} finished: {} created, {} updated, {} skipped, {} failed",
+                        kind, id, created.get(), updated.get(), skipped.get(), failed.get());
+            }
+        }
+
+        private BulkJobDto toDto(boolean withResults) {
+            List<BulkItemResultDto> items = new ArrayList<>();
+            if (withResults) {
+                for (int i = 0; i < total; i++) {
+                    BulkItemResultDto result = results.get(i);
+                    if (result != null) {
+                        items.add(result);
+                    }
+                }
+            }
+            Instant finished = finishedAt;
+            BulkJobDto.State state = finished == null ? BulkJobDto.State.RUNNING
+                    : skippedByCancel.get() > 0 ? BulkJobDto.State.CANCELLED : BulkJobDto.State.COMPLETED;
+            return new BulkJobDto(id, state, total, processed.get(), created.get(), updated.get(), skipped.get(),
+                    failed.get(),
+                    startedAt, finished, items);
+        }
+    }
+}
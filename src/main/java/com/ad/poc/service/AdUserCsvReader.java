@@ -0,0 +1,84 @@
+package com.ad.poc.service;
+
+import com.ad.poc.dto.AdUserDto;
+import com.company.ra.service.CsvRecordReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads users from CSV, parsed by {@link CsvRecordReader}.
+ *
+ * The header row names the columns, either by {@link AdUserDto} field or by AD
+ * attribute (sAMAccountName, givenName, sn, mail, telephoneNumber); matching is
+ * case-insensitive and unknown columns are ignored. Empty cells are null.
+ */
+public class AdUserCsvReader {
+
+    private static final Map<String, String> COLUMNS = new HashMap<>();
+
+    static {
+        for (String field : new String[] {"samAccountName", "firstName", "lastName", "displayName", "email",
+                "department", "title", "phoneNumber", "company", "userPrincipalName"}) {
+            COLUMNS.put(field.toLowerCase(Locale.ROOT), field);
+        }
+        COLUMNS.put("givenname", "firstName");
+        COLUMNS.put("sn", "lastName");
+        COLUMNS.put("mail", "email");
+        COLUMNS.put("telephonenumber", "phoneNumber");
+    }
+
+    private final CsvRecordReader records;
+
+    public AdUserCsvReader(Reader reader) {
+        this.records = new CsvRecordReader(reader);
+    }
+
+    /**
+     * Read all users.
+     *
+     * @param maxItems Maximum number of data rows
+     * @throws IllegalArgumentException if the header has no samAccountName column or there are too many rows
+     */
+    public List<AdUserDto> readAll(int maxItems) throws IOException {
+        List<String> header = records.readRecord();
+        if (header == null) {
+            return List.of();
+        }
+        String[] fields = new String[header.size()];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = COLUMNS.get(header.get(i).trim().toLowerCase(Locale.ROOT));
+        }
+        if (!Arrays.asList(fields).contains("samAccountName")) {
+            throw new IllegalArgumentException("CSV header must include a samAccountName column");
+        }
+
+        List<AdUserDto> users = new ArrayList<>();
+        List<String> record;
+        while ((record = records.readRecord()) != null) {
+            if (record.size() == 1 && record.get(0).isEmpty()) {
+                continue;
+            }
+            if (users.size() == maxItems) {
+                throw new IllegalArgumentException("At most " + maxItems + " users per request");
+            }
+            Map<String, String> values = new HashMap<>();
+            for (int i = 0; i < fields.length && i < record.size(); i++) {
+                if (fields[i] != null && !record.get(i).isEmpty()) {
+                    values.put(fields[i], record.get(i));
+                }
+            }
+            users.add(new AdUserDto(values.get("samAccountName"), values.get("firstName"), values.get("lastName"),
+                    values.get("displayName"), values.get("email"), values.get("department"), values.get("title"),
+                    values.get("phoneNumber"), values.get("company"), null, values.get("userPrincipalName"),
+                    null, true));
+        }
+        return users;
+    }
+}
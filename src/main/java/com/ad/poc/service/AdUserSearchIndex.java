@@ -0,0 +1,583 @@
+package com.ad.poc.service;
+
+import com.ad.poc.model.AdUser;
+import com.ad.poc.repository.AdUserLdapRepository;
+import com.company.ra.config.LdapOperationGovernor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-process typeahead index over AD users.
+ *
+ * Built from a paged load of the Users OU and kept current by fetching users
+ * whose uSNChanged is above the highestCommittedUSN the domain controller
+ * reported before the previous read (a change of server means a full load);
+ * a periodic full rebuild drops deleted users. Queries of three or more
+ * characters intersect trigram posting lists (substring semantics, like the
+ * directory's *q* filters); shorter queries scan a sorted token array by
+ * prefix. Matches are ranked by field (sAMAccountName, displayName, mail, then
+ * department and title) and by match kind (exact, prefix, word prefix, substring).
+ *
+ * Readers use an immutable view: a snapshot plus the users changed since it
+ * was built, which are scanned directly. Once there are more than
+ * {@link #MAX_CHANGES} of those, a new snapshot is built in the background.
+ * Changes made through this service while the directory is being read are
+ * replayed onto the loaded users, so they are not lost to the rebuild.
+ */
+@Component
+public class AdUserSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(AdUserSearchIndex.class);
+
+    public static final int MAX_LIMIT = 100;
+
+    // Changed users kept beside the snapshot before it is rebuilt
+    static final int MAX_CHANGES = 1000;
+
+    private static final int GRAM = 3;
+
+    // Field order used by the snapshot, with ranking weights
+    private static final int[] FIELD_WEIGHTS = {10, 9, 8, 5, 5};
+
+    private static final int EXACT = 10;
+    private static final int PREFIX = 8;
+    private static final int WORD_PREFIX = 6;
+    private static final int SUBSTRING = 3;
+
+    private final AdUserLdapRepository ldapRepository;
+    private final boolean enabled;
+    private final Duration refreshInterval;
+    private final Duration rebuildInterval;
+
+    // Current users by key; the view always shows exactly these. Guarded by this.
+    private Map<String, AdUser> users = new HashMap<>();
+    // Changes since the users a snapshot is being built from were taken, null (removed) values
+    // included; null while no build runs. Guarded by this.
+    private Map<String, AdUser> pendingChanges;
+    private volatile View view;
+    private volatile AdUserLdapRepository.ChangeMark changeMark;
+    private volatile Instant lastRebuildAt;
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+
+    private ScheduledExecutorService executor;
+
+    public AdUserSearchIndex(AdUserLdapRepository ldapRepository,
+                             @Value("${ad.users.index.enabled:true}") boolean enabled,
+                             @Value("${ad.users.index.refresh-interval:1m}") Duration refreshInterval,
+                             @Value("${ad.users.index.rebuild-interval:1h}") Duration rebuildInterval) {
+        this.ldapRepository = ldapRepository;
+        this.enabled = enabled;
+        this.refreshInterval = refreshInterval;
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("AD user search index disabled");
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(LdapOperationGovernor.background(runnable), "ad-user-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::refreshSafely, 0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Whether the first directory load has completed.
+     */
+    public boolean isReady() {
+        return view != null;
+    }
+
+    public int size() {
+        View current = view;
+        return current != null ? current.size : 0;
+    }
+
+    /**
+     * Search the index.
+     *
+     * @param query Case-insensitive text matched against sAMAccountName, displayName, mail, department and title
+     * @param limit Maximum results (capped at {@link #MAX_LIMIT})
+     * @return Best matches first; empty if the index is not ready
+     */
+    public List<AdUser> search(String query, int limit) {
+        View current = view;
+        String q = normalize(query);
+        if (current == null || q.isEmpty() || limit < 1) {
+            return Collections.emptyList();
+        }
+        return current.search(q, Math.min(limit, MAX_LIMIT));
+    }
+
+    /**
+     * Add or replace a user, e.g. after it was created or updated through this service.
+     */
+    public void upsert(AdUser user) {
+        if (user != null && user.getSamAccountName() != null) {
+            apply(Collections.singletonMap(key(user.getSamAccountName()), user));
+        }
+    }
+
+    /**
+     * Remove a user, e.g. after it was deleted through this service.
+     */
+    public void remove(String samAccountName) {
+        apply(Collections.singletonMap(key(samAccountName), null));
+    }
+
+    private void refreshSafely() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            // Keep serving the current view; the next run retries
+            log.warn("AD user index refresh failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Load the directory in full when due, otherwise fetch users changed since the last refresh.
+     */
+    void refresh() {
+        Instant started = Instant.now();
+        boolean rebuildDue = view == null || lastRebuildAt.plus(rebuildInterval).isBefore(started);
+        try (AdUserLdapRepository.UserChanges changes =
+                     ldapRepository.streamChanges(rebuildDue ? null : changeMark)) {
+            if (changes.full()) {
+                int loaded = load(changes.users());
+                lastRebuildAt = started;
+                log.info("AD user index built with {} users in {} ms", loaded,
+                        Duration.between(started, Instant.now()).toMillis());
+            } else {
+                Map<String, AdUser> changed = new HashMap<>();
+                changes.users().filter(user -> user.getSamAccountName() != null)
+                        .forEach(user -> changed.put(key(user.getSamAccountName()), user));
+                apply(changed);
+                if (!changed.isEmpty()) {
+                    log.debug("AD user index refreshed with {} changed users", changed.size());
+                }
+            }
+            changeMark = changes.mark();
+        }
+    }
+
+    /**
+     * Replace all users with those read from the directory and build a snapshot of them.
+     *
+     * @return Number of users
+     */
+    private int load(Stream<AdUser> all) {
+        synchronized (this) {
+            pendingChanges = new HashMap<>();
+        }
+        Map<String, AdUser> loaded = new HashMap<>();
+        try {
+            all.filter(user -> user.getSamAccountName() != null)
+                    .forEach(user -> loaded.put(key(user.getSamAccountName()), user));
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                pendingChanges = null;
+            }
+            throw e;
+        }
+        List<AdUser> source;
+        synchronized (this) {
+            // Changes made through this service while the directory was read are newer than what was read
+            pendingChanges.forEach((key, user) -> put(loaded, key, user));
+            users = loaded;
+            pendingChanges = new HashMap<>();
+            source = new ArrayList<>(loaded.values());
+        }
+        build(source);
+        return source.size();
+    }
+
+    /**
+     * Build a new snapshot from the current users, unless a build is already running.
+     */
+    private void rebuild() {
+        List<AdUser> source;
+        synchronized (this) {
+            if (pendingChanges != null) {
+                return;
+            }
+            pendingChanges = new HashMap<>();
+            source = new ArrayList<>(users.values());
+        }
+        build(source);
+    }
+
+    private void build(List<AdUser> source) {
+        Snapshot snapshot;
+        try {
+            snapshot = Snapshot.build(source);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                pendingChanges = null;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            // Changes made since the users were taken are shown beside the new snapshot
+            view = View.of(snapshot, pendingChanges);
+            pendingChanges = null;
+        }
+    }
+
+    /**
+     * Apply changed users (null values for removed ones) to the users and the view.
+     */
+    private synchronized void apply(Map<String, AdUser> changes) {
+        Map<String, AdUser> effective = new HashMap<>();
+        changes.forEach((key, user) -> {
+            if (pendingChanges != null) {
+                pendingChanges.put(key, user);
+            }
+            if (put(users, key, user) != null || user != null) {
+                effective.put(key, user);
+            }
+        });
+        if (view != null && !effective.isEmpty()) {
+            view = view.with(effective);
+            if (view.changes.size() > MAX_CHANGES) {
+                scheduleRebuild();
+            }
+        }
+    }
+
+    private void scheduleRebuild() {
+        if (executor == null) {
+            rebuild();
+            return;
+        }
+        // Coalesce bursts of changes into one rebuild
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                rebuildScheduled.set(false);
+                rebuild();
+            });
+        }
+    }
+
+    /**
+     * Put a user, or remove it for null.
+     *
+     * @return The previous user
+     */
+    private static AdUser put(Map<String, AdUser> users, String key, AdUser user) {
+        return user != null ? users.put(key, user) : users.remove(key);
+    }
+
+    private static String key(String samAccountName) {
+        return samAccountName == null ? "" : samAccountName.toLowerCase(Locale.ROOT);
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Snapshot plus the users changed since it was built.
+     */
+    static final class View {
+
+        private final Snapshot snapshot;
+        // Changed users by key; null for removed ones
+        private final Map<String, AdUser> changes;
+        private final int size;
+
+        private View(Snapshot snapshot, Map<String, AdUser> changes, int size) {
+            this.snapshot = snapshot;
+            this.changes = changes;
+            this.size = size;
+        }
+
+        static View of(Snapshot snapshot, Map<String, AdUser> changes) {
+            int size = snapshot.docs.length;
+            for (Map.Entry<String, AdUser> change : changes.entrySet()) {
+                boolean inSnapshot = snapshot.contains(change.getKey());
+                if (change.getValue() == null && inSnapshot) {
+                    size--;
+                } else if (change.getValue() != null && !inSnapshot) {
+                    size++;
+                }
+            }
+            return new View(snapshot, new HashMap<>(changes), size);
+        }
+
+        View with(Map<String, AdUser> more) {
+            Map<String, AdUser> merged = new HashMap<>(changes);
+            merged.putAll(more);
+            return of(snapshot, merged);
+        }
+
+        List<AdUser> search(String q, int limit) {
+            if (changes.isEmpty()) {
+                return snapshot.search(q, limit, null);
+            }
+            List<AdUser> matches = new ArrayList<>(snapshot.search(q, limit, changes.keySet()));
+            for (AdUser user : changes.values()) {
+                if (user != null) {
+                    matches.add(user);
+                }
+            }
+            Map<AdUser, Integer> scores = new IdentityHashMap<>();
+            for (AdUser user : matches) {
+                scores.put(user, Snapshot.score(Snapshot.fields(user), q));
+            }
+            return matches.stream()
+                    .filter(user -> scores.get(user) > 0)
+                    .sorted(Comparator.comparing((AdUser user) -> -scores.get(user))
+                            .thenComparing(user -> key(user.getSamAccountName())))
+                    .limit(limit)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Immutable index over one set of users.
+     */
+    static final class Snapshot {
+
+        private final AdUser[] docs;
+        // Sorted keys of the documents, by document
+        private final String[] keys;
+        // Lower-cased searchable fields per document, in FIELD_WEIGHTS order
+        private final String[][] fields;
+        private final Map<String, int[]> postings;
+        // Sorted tokens (words and whole field values) with their documents, for short prefix queries
+        private final String[] tokens;
+        private final int[] tokenDocs;
+
+        private Snapshot(AdUser[] docs, String[] keys, String[][] fields, Map<String, int[]> postings,
+                         String[] tokens, int[] tokenDocs) {
+            this.docs = docs;
+            this.keys = keys;
+            this.fields = fields;
+            this.postings = postings;
+            this.tokens = tokens;
+            this.tokenDocs = tokenDocs;
+        }
+
+        static Snapshot build(Collection<AdUser> users) {
+            AdUser[] docs = users.stream()
+                    .filter(user -> user.getSamAccountName() != null)
+                    .sorted(Comparator.comparing(user -> key(user.getSamAccountName())))
+                    .toArray(AdUser[]::new);
+            String[] keys = new String[docs.length];
+            String[][] fields = new String[docs.length][];
+            Map<String, IntList> grams = new HashMap<>();
+            List<Object[]> tokenList = new ArrayList<>();
+
+            for (int doc = 0; doc < docs.length; doc++) {
+                keys[doc] = key(docs[doc].getSamAccountName());
+                fields[doc] = fields(docs[doc]);
+                for (String field : fields[doc]) {
+                    for (int i = 0; i + GRAM <= field.length(); i++) {
+                        // Documents are added in order, so a posting list only needs its last entry checked
+                        grams.computeIfAbsent(field.substring(i, i + GRAM), gram -> new IntList()).addIfLast(doc);
+                    }
+                    if (!field.isEmpty()) {
+                        tokenList.add(new Object[] {field, doc});
+                        for (String word : field.split("[^\\p{L}\\p{N}]+")) {
+                            if (!word.isEmpty() && !word.equals(field)) {
+                                tokenList.add(new Object[] {word, doc});
+                            }
+                        }
+                    }
+                }
+            }
+
+            Map<String, int[]> postings = new HashMap<>(grams.size() * 2);
+            grams.forEach((gram, docsWithGram) -> postings.put(gram, docsWithGram.toArray()));
+
+            tokenList.sort(Comparator.comparing(token -> (String) token[0]));
+            String[] tokens = new String[tokenList.size()];
+            int[] tokenDocs = new int[tokenList.size()];
+            for (int i = 0; i < tokens.length; i++) {
+                tokens[i] = (String) tokenList.get(i)[0];
+                tokenDocs[i] = (Integer) tokenList.get(i)[1];
+            }
+            return new Snapshot(docs, keys, fields, postings, tokens, tokenDocs);
+        }
+
+        static String[] fields(AdUser user) {
+            return new String[] {
+                    normalize(user.getSamAccountName()), normalize(user.getDisplayName()),
+                    normalize(user.getEmail()), normalize(user.getDepartment()), normalize(user.getTitle())
+            };
+        }
+
+        boolean contains(String key) {
+            return Arrays.binarySearch(keys, key) >= 0;
+        }
+
+        /**
+         * @param excluded Keys of documents to leave out, or null
+         */
+        List<AdUser> search(String q, int limit, Set<String> excluded) {
+            int[] candidates = q.length() >= GRAM ? gramCandidates(q) : prefixCandidates(q);
+
+            // Min-heap of the best matches so far: lowest score, then last sAMAccountName, on top
+            PriorityQueue<long[]> best = new PriorityQueue<>(limit + 1, (a, b) ->
+                    a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[1], a[1]));
+            for (int doc : candidates) {
+                if (excluded != null && excluded.contains(keys[doc])) {
+                    continue;
+                }
+                int score = score(fields[doc], q);
+                if (score > 0) {
+                    best.add(new long[] {score, doc});
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+            }
+
+            AdUser[] results = new AdUser[best.size()];
+            for (int i = results.length - 1; i >= 0; i--) {
+                results[i] = docs[(int) best.poll()[1]];
+            }
+            return Arrays.asList(results);
+        }
+
+        private int[] gramCandidates(String q) {
+            List<int[]> lists = new ArrayList<>();
+            for (int i = 0; i + GRAM <= q.length(); i++) {
+                int[] list = postings.get(q.substring(i, i + GRAM));
+                if (list == null) {
+                    return new int[0];
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(list -> list.length));
+            int[] result = lists.get(0);
+            for (int i = 1; i < lists.size() && result.length > 0; i++) {
+                result = intersect(result, lists.get(i));
+            }
+            return result;
+        }
+
+        private int[] prefixCandidates(String q) {
+            int from = Arrays.binarySearch(tokens, q);
+            if (from < 0) {
+                from = -from - 1;
+            }
+            boolean[] seen = new boolean[docs.length];
+            IntList result = new IntList();
+            for (int i = from; i < tokens.length && tokens[i].startsWith(q); i++) {
+                if (!seen[tokenDocs[i]]) {
+                    seen[tokenDocs[i]] = true;
+                    result.add(tokenDocs[i]);
+                }
+            }
+            return result.toArray();
+        }
+
+        static int score(String[] fields, String q) {
+            int best = 0;
+            for (int f = 0; f < fields.length; f++) {
+                String field = fields[f];
+                int index = field.indexOf(q);
+                if (index < 0) {
+                    continue;
+                }
+                int kind;
+                if (field.length() == q.length()) {
+                    kind = EXACT;
+                } else if (index == 0) {
+                    kind = PREFIX;
+                } else if (isWordStart(field, index) || isWordStart(field, field.indexOf(q, index + 1))) {
+                    kind = WORD_PREFIX;
+                } else {
+                    kind = SUBSTRING;
+                }
+                best = Math.max(best, kind * FIELD_WEIGHTS[f]);
+            }
+            return best;
+        }
+
+        private static boolean isWordStart(String field, int index) {
+            return index > 0 && !Character.isLetterOrDigit(field.charAt(index - 1));
+        }
+
+        private static int[] intersect(int[] a, int[] b) {
+            int[] out = new int[Math.min(a.length, b.length)];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    out[n++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(out, n);
+        }
+    }
+
+    /**
+     * Growable int array, to keep posting lists unboxed while building.
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addIfLast(int value) {
+            if (size == 0 || values[size - 1] != value) {
+                add(value);
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -1,19 +1,30 @@
 package com.ad.poc.service;
 
 import com.ad.poc.dto.AdUserDto;
+import com.ad.poc.dto.AdUserPageDto;
 import com.ad.poc.model.AdUser;
 import com.ad.poc.repository.AdUserLdapRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.ldap.core.support.LdapContextSource;
+import org.springframework.ldap.NameAlreadyBoundException;
+import org.springframework.ldap.ServiceUnavailableException;
 import org.springframework.stereotype.Service;
 
+import javax.naming.CommunicationException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class AdUserService {
@@ -26,12 +37,24 @@ public class AdUserService {
     private static final int UF_ACCOUNT_DISABLE = 2;
 
     private final AdUserLdapRepository ldapRepository;
-    private final String ldapUrl;
+    private final AdUserSearchIndex searchIndex;
+    private final LdapBindAuthenticator bindAuthenticator;
+
+    // Recently authenticated users by lower-cased username, so repeat logins skip the DN search
+    private final Map<String, CachedLogin> loginCache = new ConcurrentHashMap<>();
+    private final long loginCacheTtlMillis;
+    private final int loginCacheMaxSize;
 
     public AdUserService(AdUserLdapRepository ldapRepository,
-                         @Value("${spring.ldap.urls}") String ldapUrl) {
+                         AdUserSearchIndex searchIndex,
+                         LdapBindAuthenticator bindAuthenticator,
+                         @Value("${ad.users.auth.dn-cache-ttl:5m}") Duration loginCacheTtl,
+                         @Value("${ad.users.auth.dn-cache-max-size:10000}") int loginCacheMaxSize) {
         this.ldapRepository = ldapRepository;
-        this.ldapUrl = ldapUrl;
+        this.searchIndex = searchIndex;
+        this.bindAuthenticator = bindAuthenticator;
+        this.loginCacheTtlMillis = loginCacheTtl.toMillis();
+        this.loginCacheMaxSize = Math.max(0, loginCacheMaxSize);
     }
 
     /**
@@ -45,6 +68,41 @@ public class AdUserService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Stream users from Active Directory page by page, optionally filtered by department.
+     * The stream holds an LDAP connection and must be closed.
+     */
+    public Stream<AdUserDto> streamAll(String department) {
+        log.debug("Streaming AD users, department: {}", department);
+        return ldapRepository.streamAll(department).map(this::toDto);
+    }
+
+    /**
+     * List one page of users, either after an opaque cursor (keyset, ordered by
+     * sAMAccountName) or at an offset (directory order).
+     *
+     * @throws IllegalArgumentException if both cursor and offset are given, the offset is out of range
+     *         or the cursor is malformed
+     */
+    public AdUserPageDto listPage(String department, String cursor, Integer offset, int limit) {
+        if (cursor != null && offset != null) {
+            throw new IllegalArgumentException("Use either cursor or offset, not both");
+        }
+        log.debug("Listing AD users page, department: {}, cursor: {}, offset: {}, limit: {}",
+                department, cursor, offset, limit);
+
+        if (offset != null) {
+            List<AdUser> users = ldapRepository.findPage(department, offset, limit);
+            boolean more = users.size() > limit;
+            return new AdUserPageDto(toDtos(users, limit), null, more ? offset + limit : null);
+        }
+
+        List<AdUser> users = ldapRepository.findPageAfter(department, decodeCursor(cursor), limit);
+        boolean more = users.size() > limit;
+        String nextCursor = more ? encodeCursor(users.get(limit - 1).getSamAccountName()) : null;
+        return new AdUserPageDto(toDtos(users, limit), nextCursor, null);
+    }
+
     /**
      * Get a single user by sAMAccountName.
      */
@@ -65,6 +123,23 @@ public class AdUserService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Typeahead search against the in-process index, ranked and limited.
+     * Falls back to the directory search until the index has loaded.
+     */
+    public List<AdUserDto> searchIndex(String keyword, int limit) {
+        if (!searchIndex.isReady()) {
+            log.debug("AD user index not ready, searching the directory for: {}", keyword);
+            return ldapRepository.search(keyword).stream()
+                    .limit(limit)
+                    .map(this::toDto)
+                    .collect(Collectors.toList());
+        }
+        return searchIndex.search(keyword, limit).stream()
+                .map(this::toDto)
+                .collect(Collectors.toList());
+    }
+
     /**
      * Search users by department.
      */
@@ -93,40 +168,100 @@ public class AdUserService {
 
         log.info("AD user created successfully: {}", dto.samAccountName());
         AdUser created = ldapRepository.findBySamAccountName(dto.samAccountName());
+        searchIndex.upsert(created);
         return toDto(created);
     }
 
+    /**
+     * Create a user unless one with the same sAMAccountName already exists, as used by
+     * bulk imports. Unlike {@link #create}, the new entry is not read back.
+     *
+     * @return true if the user was created, false if it already existed
+     */
+    public boolean createIfAbsent(AdUserDto dto) {
+        if (ldapRepository.findBySamAccountName(dto.samAccountName()) != null) {
+            log.debug("AD user already exists, skipping: {}", dto.samAccountName());
+            return false;
+        }
+
+        AdUser user = toModel(dto);
+        try {
+            ldapRepository.create(user);
+        } catch (NameAlreadyBoundException e) {
+            // Created by someone else since the lookup
+            log.debug("AD user created concurrently, skipping: {}", dto.samAccountName());
+            return false;
+        }
+        searchIndex.upsert(user);
+        return true;
+    }
+
     /**
      * Update an existing user's attributes in Active Directory.
+     * Only changed attributes are written, and the result is not read back.
      */
     public AdUserDto update(String samAccountName, AdUserDto dto) {
         log.info("Updating AD user: {}", samAccountName);
 
-        AdUser updatedModel = toModel(dto);
-        ldapRepository.update(samAccountName, updatedModel);
+        AdUser updated = apply(samAccountName, dto).user();
 
         log.info("AD user updated successfully: {}", samAccountName);
-        AdUser updated = ldapRepository.findBySamAccountName(samAccountName);
         return toDto(updated);
     }
 
+    /**
+     * Update a user identified by the sAMAccountName in the DTO, as used by bulk edits.
+     *
+     * @return true if an attribute changed, false if the user already had these values
+     */
+    public boolean updateIfChanged(AdUserDto dto) {
+        return apply(dto.samAccountName(), dto).modified();
+    }
+
+    /**
+     * Look up the given users in one go, so that editing them afterwards costs one
+     * modify each. Users that do not exist are ignored here and fail when edited.
+     */
+    public void preload(Collection<String> samAccountNames) {
+        ldapRepository.preload(samAccountNames);
+    }
+
+    private AdUserLdapRepository.UpdateResult apply(String samAccountName, AdUserDto dto) {
+        AdUserLdapRepository.UpdateResult result = ldapRepository.update(samAccountName, toModel(dto));
+        if (result.modified()) {
+            invalidateLogin(samAccountName);
+            searchIndex.upsert(result.user());
+        }
+        return result;
+    }
+
     /**
      * Delete a user from Active Directory by sAMAccountName.
      */
     public void delete(String samAccountName) {
         log.info("Deleting AD user: {}", samAccountName);
         ldapRepository.delete(samAccountName);
+        invalidateLogin(samAccountName);
+        searchIndex.remove(samAccountName);
         log.info("AD user deleted successfully: {}", samAccountName);
     }
 
     /**
      * Authenticate a user against Active Directory using LDAP bind.
-     * Looks up the user by sAMAccountName, then attempts to bind with their DN and password.
+     * Looks up the user by sAMAccountName (or takes the DN of a recent login from the cache),
+     * then binds as the user on a pooled connection.
+     *
+     * @throws ServiceUnavailableException if the directory could not be reached, no bind connection
+     *         became free in time or the outbound LDAP rate limit refused the bind; the credentials
+     *         were not checked
      */
     public Optional<AdUserDto> authenticate(String username, String password) {
         log.info("Authenticating AD user: {}", username);
 
-        AdUser user = ldapRepository.findBySamAccountName(username);
+        String cacheKey = username == null ? "" : username.toLowerCase(Locale.ROOT);
+        CachedLogin cached = loginCache.get(cacheKey);
+        boolean fromCache = cached != null && System.currentTimeMillis() < cached.expiresAt();
+        AdUser user = fromCache ? cached.user() : ldapRepository.findBySamAccountName(username);
         if (user == null) {
             log.warn("Authentication failed: user '{}' not found in AD", username);
             return Optional.empty();
@@ -138,7 +273,8 @@ public class AdUserService {
             return Optional.empty();
         }
 
-        // Check if account is disabled
+        // Check if account is disabled; AD also refuses binds for disabled accounts,
+        // so a cached entry cannot let a since-disabled account in
         if (user.getUserAccountControl() != null) {
             try {
                 int uac = Integer.parseInt(user.getUserAccountControl());
@@ -151,23 +287,83 @@ public class AdUserService {
             }
         }
 
-        // Attempt LDAP bind with user's DN and password
         try {
-            LdapContextSource bindSource = new LdapContextSource();
-            bindSource.setUrl(ldapUrl);
-            bindSource.setUserDn(userDn);
-            bindSource.setPassword(password);
-            bindSource.afterPropertiesSet();
-            bindSource.getContext(userDn, password).close();
+            boolean authenticated = bindAuthenticator.authenticate(userDn, password);
+            if (!authenticated && fromCache) {
+                // The user may have been renamed or moved since the DN was cached
+                loginCache.remove(cacheKey);
+                AdUser current = ldapRepository.findBySamAccountName(username);
+                if (current != null && !userDn.equalsIgnoreCase(current.getDistinguishedName())) {
+                    user = current;
+                    authenticated = bindAuthenticator.authenticate(current.getDistinguishedName(), password);
+                }
+            }
+            if (!authenticated) {
+                log.warn("Authentication failed for user '{}': invalid credentials", username);
+                return Optional.empty();
+            }
 
+            cacheLogin(cacheKey, user);
             log.info("Authentication successful for user: {}", username);
             return Optional.of(toDto(user));
+        } catch (javax.naming.ServiceUnavailableException e) {
+            log.warn("Authentication of user '{}' not decided: {}", username, e.getMessage());
+            throw new ServiceUnavailableException(e);
+        } catch (CommunicationException e) {
+            log.warn("Authentication of user '{}' not decided: {}", username, e.getMessage());
+            javax.naming.ServiceUnavailableException unavailable =
+                    new javax.naming.ServiceUnavailableException(e.getMessage());
+            unavailable.setRootCause(e);
+            throw new ServiceUnavailableException(unavailable);
         } catch (Exception e) {
             log.warn("Authentication failed for user '{}': {}", username, e.getMessage());
             return Optional.empty();
         }
     }
 
+    private void cacheLogin(String cacheKey, AdUser user) {
+        if (loginCacheMaxSize == 0) {
+            return;
+        }
+        if (loginCache.size() >= loginCacheMaxSize && !loginCache.containsKey(cacheKey)) {
+            long now = System.currentTimeMillis();
+            loginCache.values().removeIf(entry -> now >= entry.expiresAt());
+            if (loginCache.size() >= loginCacheMaxSize) {
+                loginCache.clear();
+            }
+        }
+        loginCache.put(cacheKey, new CachedLogin(user, System.currentTimeMillis() + loginCacheTtlMillis));
+    }
+
+    private void invalidateLogin(String samAccountName) {
+        if (samAccountName != null) {
+            loginCache.remove(samAccountName.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private List<AdUserDto> toDtos(List<AdUser> users, int limit) {
+        return users.stream()
+                .limit(limit)
+                .map(this::toDto)
+                .collect(Collectors.toList());
+    }
+
+    static String encodeCursor(String samAccountName) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(samAccountName.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
     private AdUser toModel(AdUserDto dto) {
         AdUser user = new AdUser();
         user.setSamAccountName(dto.samAccountName());
@@ -217,4 +413,7 @@ public class AdUserService {
                 enabled
         );
     }
+
+    private record CachedLogin(AdUser user, long expiresAt) {
+    }
 }
@@ -0,0 +1,319 @@
+package com.ad.poc.service;
+
+import com.company.ra.config.LdapOperationGovernor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.naming.AuthenticationException;
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.OperationNotSupportedException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.ldap.ExtendedRequest;
+import javax.naming.ldap.ExtendedResponse;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+import java.time.Duration;
+import java.util.Hashtable;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies user passwords with LDAP simple binds on a pool of long-lived connections.
+ *
+ * Each check re-binds a pooled connection as the user instead of opening a new one,
+ * so a login costs one bind round trip rather than TCP (and TLS) setup plus a bind.
+ * Where the server supports it (Active Directory), connections are first switched to
+ * fast concurrent bind mode (LDAP_SERVER_FAST_BIND_OID): binds then only check the
+ * password, without building a security token, and the connection never takes on the
+ * user's identity. Otherwise the connection is re-bound anonymously after each check.
+ *
+ * The JDK provider re-authenticates over the existing connection on reconnect() as
+ * long as no other context shares it, which holds because pooled contexts are only
+ * used here.
+ */
+@Component
+public class LdapBindAuthenticator {
+
+    private static final Logger log = LoggerFactory.getLogger(LdapBindAuthenticator.class);
+
+    static final String FAST_BIND_OID = "1.2.840.113556.1.4.1781";
+    // A fast bind request failing for another reason than lack of support is retried on a new connection
+    private static final int FAST_BIND_ATTEMPTS = 2;
+    // LDAP result code of a critical extension the server does not know
+    private static final int UNAVAILABLE_CRITICAL_EXTENSION = 12;
+
+    private final String url;
+    private final Duration maxWait;
+    // Below AD's MaxConnIdleTime (15 min), so a pooled connection is not dropped server-side
+    private final long maxIdleNanos;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+
+    // Cleared when the server reports that it does not support fast bind
+    private volatile boolean fastBind;
+
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    // Outbound rate limit shared with the other directory clients
+    private final LdapOperationGovernor governor;
+
+    private final Timer successTimer;
+    private final Timer failureTimer;
+    private final Timer errorTimer;
+
+    public LdapBindAuthenticator(@Value("${spring.ldap.urls}") String url,
+                                 @Value("${ad.users.auth.pool-size:8}") int poolSize,
+                                 @Value("${ad.users.auth.max-wait:2s}") Duration maxWait,
+                                 @Value("${ad.users.auth.max-idle-time:5m}") Duration maxIdleTime,
+                                 @Value("${ad.users.auth.fast-bind:true}") boolean fastBind,
+                                 @Value("${ad.users.auth.connect-timeout:5s}") Duration connectTimeout,
+                                 @Value("${ad.users.auth.read-timeout:10s}") Duration readTimeout,
+                                 ObjectProvider<MeterRegistry> meterRegistry,
+                                 ObjectProvider<LdapOperationGovernor> governor) {
+        // JNDI takes several URLs separated by spaces and tries them in order
+        this.url = url.trim().replaceAll("[\\s,]+", " ");
+        this.maxWait = maxWait;
+        this.maxIdleNanos = maxIdleTime.toNanos();
+        this.fastBind = fastBind;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.permits = new Semaphore(Math.max(1, poolSize), true);
+        this.governor = governor.getIfAvailable(LdapOperationGovernor::unlimited);
+
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        this.successTimer = bindTimer(registry, "success");
+        this.failureTimer = bindTimer(registry, "failure");
+        this.errorTimer = bindTimer(registry, "error");
+        if (registry != null) {
+            Gauge.builder("ad.auth.bind.pool.idle", idle, BlockingDeque::size)
+                    .description("Idle bind-authentication connections")
+                    .register(registry);
+        }
+    }
+
+    private static Timer bindTimer(MeterRegistry registry, String outcome) {
+        if (registry == null) {
+            return null;
+        }
+        return Timer.builder("ad.auth.bind")
+                .tag("outcome", outcome)
+                .description("LDAP bind used to verify a user's password, including waiting for a connection")
+                // Histogram buckets rather than client-side percentiles, so p95/p99 aggregate across instances
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void close() {
+        PooledConnection connection;
+        while ((connection = idle.poll()) != null) {
+            closeQuietly(connection.context());
+        }
+    }
+
+    /**
+     * Check a password with a simple bind.
+     *
+     * @param dn User's distinguished name
+     * @param password Password; blank passwords are rejected without contacting the server,
+     *                 since LDAP treats them as an anonymous bind
+     * @return true if the bind succeeded
+     * @throws NamingException if the directory could not be reached or no connection became free in time
+     */
+    public boolean authenticate(String dn, String password) throws NamingException {
+        if (dn == null || dn.isBlank() || password == null || password.isEmpty()) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        Timer timer = errorTimer;
+        try {
+            boolean authenticated = bind(dn, password);
+            timer = authenticated ? successTimer : failureTimer;
+            return authenticated;
+        } finally {
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Whether pooled connections are in fast bind mode.
+     */
+    public boolean isFastBind() {
+        return fastBind;
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    private boolean bind(String dn, String password) throws NamingException {
+        // Before taking a connection, so binds held back by the rate limit do not tie one up
+        governor.acquire(LdapOperationGovernor.OperationClass.BIND);
+        try {
+            if (!permits.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new ServiceUnavailableException("No LDAP bind connection free after " + maxWait.toMillis() + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted waiting for an LDAP bind connection");
+        }
+
+        LdapContext context = null;
+        boolean reusable = false;
+        try {
+            context = borrow();
+
+            boolean authenticated;
+            context.addToEnvironment(Context.SECURITY_AUTHENTICATION, "simple");
+            context.addToEnvironment(Context.SECURITY_PRINCIPAL, dn);
+            context.addToEnvironment(Context.SECURITY_CREDENTIALS, password);
+            try {
+                context.reconnect(null);
+                authenticated = true;
+            } catch (AuthenticationException e) {
+                log.debug("Bind failed for {}: {}", dn, e.getMessage());
+                authenticated = false;
+            }
+            restore(context);
+            reusable = true;
+            return authenticated;
+        } finally {
+            if (context != null) {
+                if (reusable) {
+                    // Most recently used first, so surplus connections age out via max-idle-time
+                    idle.offerFirst(new PooledConnection(context, System.nanoTime()));
+                } else {
+                    closeQuietly(context);
+                }
+            }
+            permits.release();
+        }
+    }
+
+    /**
+     * Take the most recently used idle connection, closing any that sat idle too long.
+     */
+    private LdapContext borrow() throws NamingException {
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            if (System.nanoTime() - connection.idleSince() < maxIdleNanos) {
+                return connection.context();
+            }
+            closeQuietly(connection.context());
+        }
+        return open();
+    }
+
+    /**
+     * Drop the user's credentials so they cannot be reused; without fast bind, also
+     * return the connection to an anonymous state.
+     */
+    private void restore(LdapContext context) throws NamingException {
+        context.removeFromEnvironment(Context.SECURITY_PRINCIPAL);
+        context.removeFromEnvironment(Context.SECURITY_CREDENTIALS);
+        context.addToEnvironment(Context.SECURITY_AUTHENTICATION, "none");
+        if (!fastBind) {
+            context.reconnect(null);
+        }
+    }
+
+    private LdapContext open() throws NamingException {
+        for (int attempt = 1; ; attempt++) {
+            LdapContext context = connect();
+            if (!fastBind) {
+                log.debug("Opened LDAP bind connection to {} (fast bind: false)", url);
+                return context;
+            }
+            try {
+                context.extendedOperation(new FastBindRequest());
+                log.debug("Opened LDAP bind connection to {} (fast bind: true)", url);
+                return context;
+            } catch (NamingException e) {
+                if (isFastBindUnsupported(e)) {
+                    // Not Active Directory (or disabled there); fall back to re-binding anonymously
+                    fastBind = false;
+                    log.info("LDAP server does not support fast bind ({}); restoring connections after each bind",
+                            e.getMessage());
+                    return context;
+                }
+                // Dropped connection, timeout or busy server: fast bind itself is still fine
+                closeQuietly(context);
+                if (attempt == FAST_BIND_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("Fast bind request failed ({}), retrying on a new connection", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Whether a failed fast bind request means the server does not offer fast bind,
+     * rather than a transient failure.
+     */
+    static boolean isFastBindUnsupported(NamingException e) {
+        if (e instanceof OperationNotSupportedException) {
+            return true;
+        }
+        String message = e.getMessage();
+        return message != null && message.contains("error code " + UNAVAILABLE_CRITICAL_EXTENSION + " ");
+    }
+
+    private LdapContext connect() throws NamingException {
+        Hashtable<String, Object> env = new Hashtable<>();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
+        env.put(Context.PROVIDER_URL, url);
+        env.put(Context.SECURITY_AUTHENTICATION, "none");
+        env.put(Context.REFERRAL, "ignore");
+        env.put("com.sun.jndi.ldap.connect.pool", "false");
+        env.put("com.sun.jndi.ldap.connect.timeout", String.valueOf(connectTimeout.toMillis()));
+        env.put("com.sun.jndi.ldap.read.timeout", String.valueOf(readTimeout.toMillis()));
+        return new InitialLdapContext(env, null);
+    }
+
+    private static void closeQuietly(LdapContext context) {
+        try {
+            context.close();
+        } catch (NamingException e) {
+            log.debug("Closing LDAP bind connection failed: {}", e.getMessage());
+        }
+    }
+
+    private record PooledConnection(LdapContext context, long idleSince) {
+    }
+
+    /**
+     * LDAP_SERVER_FAST_BIND_OID extended request; it has no value.
+     */
+    static final class FastBindRequest implements ExtendedRequest {
+
+        @Override
+        public String getID() {
+            return FAST_BIND_OID;
+        }
+
+        @Override
+        public byte[] getEncodedValue() {
+            return null;
+        }
+
+        @Override
+        public ExtendedResponse createExtendedResponse(String id, byte[] berValue, int offset, int length) {
+            return null;
+        }
+    }
+}
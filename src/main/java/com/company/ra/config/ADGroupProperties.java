@@ -0,0 +1,100 @@
+package com.company.ra.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * AD group membership and role mapping configuration (prefix "ad.groups")
+ *
+ * Roles map onto lists of groups, each given as a group name (cn or
+ * sAMAccountName), a distinguished name or a SID string. With
+ * TOKEN_GROUPS membership nested groups count; with MEMBER_OF only the
+ * user's direct groups do.
+ */
+@Component
+@ConfigurationProperties(prefix = "ad.groups")
+public class ADGroupProperties {
+
+    /**
+     * How a user's groups are read
+     */
+    public enum Membership {
+        // Transitive membership from the constructed tokenGroups attribute (one base read per user)
+        TOKEN_GROUPS,
+        // Direct membership from memberOf, read with the user entry
+        MEMBER_OF
+    }
+
+    private Membership membership = Membership.TOKEN_GROUPS;
+
+    // Role -> groups granting it; empty means the built-in PKI-* mapping
+    private Map<String, List<String>> roles = new LinkedHashMap<>();
+
+    // Granted to every user that belongs to at least one group
+    private String defaultRole = "END_ENTITY";
+
+    // Resolved group metadata (SID -> name, DN, roles) is kept this long
+    private Duration cacheTtl = Duration.ofHours(1);
+
+    private int cacheMaxSize = 10000;
+
+    /**
+     * Role mapping used when none is configured
+     *
+     * @return Role -> group names
+     */
+    public static Map<String, List<String>> defaultRoles() {
+        Map<String, List<String>> roles = new LinkedHashMap<>();
+        roles.put("RA_ADMIN", new ArrayList<>(List.of("PKI-RA-Admins")));
+        roles.put("RA_OFFICER", new ArrayList<>(List.of("PKI-RA-Officers")));
+        roles.put("RA_OPERATOR", new ArrayList<>(List.of("PKI-RA-Operators")));
+        roles.put("AUDITOR", new ArrayList<>(List.of("PKI-Auditors")));
+        return roles;
+    }
+
+    public Membership getMembership() {
+        return membership;
+    }
+
+    public void setMembership(Membership membership) {
+        this.membership = membership;
+    }
+
+    public Map<String, List<String>> getRoles() {
+        return roles;
+    }
+
+    public void setRoles(Map<String, List<String>> roles) {
+        this.roles = roles;
+    }
+
+    public String getDefaultRole() {
+        return defaultRole;
+    }
+
+    public void setDefaultRole(String defaultRole) {
+        this.defaultRole = defaultRole;
+    }
+
+    public Duration getCacheTtl() {
+        return cacheTtl;
+    }
+
+    public void setCacheTtl(Duration cacheTtl) {
+        this.cacheTtl = cacheTtl;
+    }
+
+    public int getCacheMaxSize() {
+        return cacheMaxSize;
+    }
+
+    public void setCacheMaxSize(int cacheMaxSize) {
+        this.cacheMaxSize = cacheMaxSize;
+    }
+}
@@ -0,0 +1,60 @@
+package com.company.ra.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import com.company.ra.service.ADUserAttributesCache;
+import com.company.ra.service.ActiveDirectoryService;
+
+/**
+ * Actuator endpoint for the AD user attribute near-cache
+ *
+ * GET /actuator/adusercache returns statistics,
+ * DELETE /actuator/adusercache clears the cache (and cached group metadata) and
+ * DELETE /actuator/adusercache/{username} drops one user.
+ */
+@Component
+@Endpoint(id = "adusercache")
+public class ADUserCacheEndpoint {
+
+    @Autowired
+    private ActiveDirectoryService activeDirectoryService;
+
+    @ReadOperation
+    public Map<String, Object> statistics() {
+        ADUserAttributesCache cache = activeDirectoryService.getUserCache();
+        long hits = cache.getHits();
+        long lookups = hits + cache.getMisses();
+        long loads = cache.getLoads() + cache.getLoadFailures();
+
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("size", cache.size());
+        statistics.put("hits", hits);
+        statistics.put("misses", cache.getMisses());
+        statistics.put("hitRatio", lookups == 0 ? 0.0 : (double) hits / lookups);
+        statistics.put("loads", cache.getLoads());
+        statistics.put("loadFailures", cache.getLoadFailures());
+        statistics.put("refreshes", cache.getRefreshes());
+        statistics.put("averageLoadMillis", loads == 0 ? 0.0 : cache.getTotalLoadNanos() / 1_000_000.0 / loads);
+        statistics.put("groups", activeDirectoryService.getGroupIndex().size());
+        return statistics;
+    }
+
+    @DeleteOperation
+    public void invalidateAll() {
+        activeDirectoryService.invalidateAllUsers();
+        activeDirectoryService.invalidateGroups();
+    }
+
+    @DeleteOperation
+    public void invalidate(@Selector String username) {
+        activeDirectoryService.invalidateUser(username);
+    }
+}
@@ -0,0 +1,122 @@
+package com.company.ra.config;
+
+import java.time.Duration;
+
+/**
+ * Directory endpoint selection and failover configuration (prefix "ldap.endpoints")
+ *
+ * Not a component, like {@link LdapPoolProperties}: each application binds
+ * its own instance. The servers themselves come from the application's URL
+ * setting (several URLs separated by spaces or commas), or from DNS SRV
+ * records when srv-record is set.
+ */
+public class DirectoryEndpointProperties {
+
+    // SRV record listing the domain controllers, e.g. _ldap._tcp.dc._msdcs.company.com; empty uses the URLs
+    private String srvRecord = "";
+
+    // Scheme for servers found through SRV records (ldap or ldaps)
+    private String srvScheme = "ldap";
+
+    private Duration srvRefreshInterval = Duration.ofMinutes(5);
+
+    // Weight of the newest sample in the latency and error-rate moving averages
+    private double ewmaAlpha = 0.2;
+
+    // Servers within this factor of the fastest server's latency share the load
+    private double latencyTolerance = 1.5;
+
+    // Pooled connections to a server this many times slower than the fastest are dropped on validation
+    private double switchRatio = 3.0;
+
+    // Consecutive errors that eject a server
+    private int failureThreshold = 3;
+
+    // Error rate (moving average) that ejects a server
+    private double errorRateThreshold = 0.5;
+
+    // How long an ejected server receives no traffic before it is probed
+    private Duration ejectionTime = Duration.ofSeconds(30);
+
+    private Duration probeInterval = Duration.ofSeconds(5);
+
+    public String getSrvRecord() {
+        return srvRecord;
+    }
+
+    public void setSrvRecord(String srvRecord) {
+        this.srvRecord = srvRecord;
+    }
+
+    public String getSrvScheme() {
+        return srvScheme;
+    }
+
+    public void setSrvScheme(String srvScheme) {
+        this.srvScheme = srvScheme;
+    }
+
+    public Duration getSrvRefreshInterval() {
+        return srvRefreshInterval;
+    }
+
+    public void setSrvRefreshInterval(Duration srvRefreshInterval) {
+        this.srvRefreshInterval = srvRefreshInterval;
+    }
+
+    public double getEwmaAlpha() {
+        return ewmaAlpha;
+    }
+
+    public void setEwmaAlpha(double ewmaAlpha) {
+        this.ewmaAlpha = ewmaAlpha;
+    }
+
+    public double getLatencyTolerance() {
+        return latencyTolerance;
+    }
+
+    public void setLatencyTolerance(double latencyTolerance) {
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    public double getSwitchRatio() {
+        return switchRatio;
+    }
+
+    public void setSwitchRatio(double switchRatio) {
+        this.switchRatio = switchRatio;
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    public double getErrorRateThreshold() {
+        return errorRateThreshold;
+    }
+
+    public void setErrorRateThreshold(double errorRateThreshold) {
+        this.errorRateThreshold = errorRateThreshold;
+    }
+
+    public Duration getEjectionTime() {
+        return ejectionTime;
+    }
+
+    public void setEjectionTime(Duration ejectionTime) {
+        this.ejectionTime = ejectionTime;
+    }
+
+    public Duration getProbeInterval() {
+        return probeInterval;
+    }
+
+    public void setProbeInterval(Duration probeInterval) {
+        this.probeInterval = probeInterval;
+    }
+}
@@ -0,0 +1,39 @@
+package com.company.ra.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Source of the directory servers to spread LDAP traffic over
+ */
+@FunctionalInterface
+public interface DirectoryEndpointResolver {
+
+    /**
+     * Resolve the current servers
+     *
+     * @return LDAP URLs in order of preference
+     * @throws Exception if the servers could not be resolved
+     */
+    List<String> resolve() throws Exception;
+
+    /**
+     * Fixed list of servers
+     *
+     * @param urls LDAP URLs separated by spaces or commas
+     * @return Resolver
+     */
+    static DirectoryEndpointResolver of(String urls) {
+        List<String> list = new ArrayList<>();
+        for (String url : urls.trim().split("[\\s,]+")) {
+            if (!url.isEmpty()) {
+                list.add(url);
+            }
+        }
+        if (list.isEmpty()) {
+            throw new IllegalArgumentException("No LDAP URL configured");
+        }
+        List<String> endpoints = List.copyOf(list);
+        return () -> endpoints;
+    }
+}
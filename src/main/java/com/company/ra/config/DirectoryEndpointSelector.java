@@ -0,0 +1,378 @@
+package com.company.ra.config;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Latency-aware choice among several directory servers, with ejection of failing ones
+ *
+ * Every server keeps an exponentially weighted moving average of operation
+ * latency and error rate; bulk reads (paged searches, listings) are averaged
+ * separately and only the other operations drive server choice. Traffic goes
+ * to the fastest healthy server; servers within latency-tolerance of it share
+ * the load round-robin, and servers without samples yet are tried first so
+ * they get measured. A server is
+ * ejected (circuit open) after failure-threshold consecutive errors or when
+ * its error rate passes error-rate-threshold. Ejected servers get no traffic
+ * until a background probe succeeds, at most every ejection-time; they are
+ * still offered last, so with every server ejected callers keep trying
+ * instead of failing fast.
+ */
+public class DirectoryEndpointSelector {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryEndpointSelector.class);
+
+    /**
+     * Connectivity check run against an ejected server
+     */
+    @FunctionalInterface
+    public interface Probe {
+        void check(Endpoint endpoint) throws Exception;
+    }
+
+    private final String name;
+    private final DirectoryEndpointResolver resolver;
+    private final DirectoryEndpointProperties properties;
+
+    // Replaced as a whole when the resolver returns a different server list
+    private volatile List<Endpoint> endpoints = List.of();
+    private final AtomicInteger roundRobin = new AtomicInteger();
+
+    private volatile MeterRegistry meterRegistry;
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param name Name used in logs, thread names and the "pool" metric tag
+     * @param resolver Source of the server URLs
+     * @param properties Selection settings
+     */
+    public DirectoryEndpointSelector(String name, DirectoryEndpointResolver resolver,
+                                     DirectoryEndpointProperties properties) {
+        this.name = name;
+        this.resolver = resolver;
+        this.properties = properties;
+        refreshEndpoints();
+        if (endpoints.isEmpty()) {
+            throw new IllegalStateException("No directory servers resolved for '" + name + "'");
+        }
+    }
+
+    /**
+     * Start background probing of ejected servers (and re-resolution, for SRV records)
+     *
+     * @param probe Connectivity check
+     */
+    public synchronized void start(Probe probe) {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ldap-endpoints-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long probeMillis = properties.getProbeInterval().toMillis();
+        executor.scheduleWithFixedDelay(() -> probeEjected(probe), probeMillis, probeMillis, TimeUnit.MILLISECONDS);
+        if (properties.getSrvRecord() != null && !properties.getSrvRecord().isEmpty()) {
+            long refreshMillis = properties.getSrvRefreshInterval().toMillis();
+            executor.scheduleWithFixedDelay(this::refreshEndpoints, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Servers to try for the next operation, best first
+     *
+     * @return Healthy servers (the first one chosen among the fastest), then ejected ones
+     */
+    public List<Endpoint> select() {
+        List<Endpoint> current = endpoints;
+        List<Endpoint> healthy = new ArrayList<>(current.size());
+        List<Endpoint> ejected = new ArrayList<>();
+        for (Endpoint endpoint : current) {
+            (endpoint.isEjected() ? ejected : healthy).add(endpoint);
+        }
+        healthy.sort(Comparator.comparingDouble(Endpoint::getLatencyNanos));
+        ejected.sort(Comparator.comparingLong(Endpoint::getEjectedAt));
+
+        if (healthy.size() > 1) {
+            double limit = healthy.get(0).getLatencyNanos() * properties.getLatencyTolerance();
+            int fast = 1;
+            while (fast < healthy.size() && healthy.get(fast).getLatencyNanos() <= limit) {
+                fast++;
+            }
+            if (fast > 1) {
+                Endpoint first = healthy.remove(Math.floorMod(roundRobin.getAndIncrement(), fast));
+                healthy.add(0, first);
+            }
+        }
+        healthy.addAll(ejected);
+        return healthy;
+    }
+
+    /**
+     * Server for work that should stay on one server across runs
+     *
+     * @param url Server used last time, or null
+     * @return That server while it is listed and not ejected, otherwise the best one
+     */
+    public Endpoint prefer(String url) {
+        if (url != null) {
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint.getUrl().equals(url) && !endpoint.isEjected()) {
+                    return endpoint;
+                }
+            }
+        }
+        return select().get(0);
+    }
+
+    /**
+     * Whether connections to a server should stay in use
+     *
+     * @param endpoint Server
+     * @return False if the server is ejected or switch-ratio times slower than the fastest healthy server
+     */
+    public boolean isUsable(Endpoint endpoint) {
+        if (endpoint.isEjected()) {
+            return false;
+        }
+        double fastest = Double.MAX_VALUE;
+        for (Endpoint other : endpoints) {
+            if (!other.isEjected() && other.getLatencyNanos() > 0) {
+                fastest = Math.min(fastest, other.getLatencyNanos());
+            }
+        }
+        return fastest == Double.MAX_VALUE || endpoint.getLatencyNanos() <= fastest * properties.getSwitchRatio();
+    }
+
+    /**
+     * Probe ejected servers whose ejection time has passed, restoring those that answer
+     *
+     * @param probe Connectivity check
+     */
+    void probeEjected(Probe probe) {
+        long now = System.nanoTime();
+        long ejectionNanos = properties.getEjectionTime().toNanos();
+        for (Endpoint endpoint : endpoints) {
+            if (!endpoint.isEjected() || now - endpoint.getEjectedAt() < ejectionNanos) {
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                probe.check(endpoint);
+                endpoint.restore(System.nanoTime() - start);
+                logger.info("Directory server {} ({}) answers probes again, restored", endpoint.getUrl(), name);
+            } catch (Exception e) {
+                endpoint.reject();
+                logger.debug("Probe of directory server {} ({}) failed: {}", endpoint.getUrl(), name, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Re-resolve the servers, keeping the statistics of servers still listed
+     */
+    void refreshEndpoints() {
+        List<String> urls;
+        try {
+            urls = resolver.resolve();
+        } catch (Exception e) {
+            logger.warn("Resolving directory servers for '{}' failed, keeping {}: {}", name, endpoints.size(), e.getMessage());
+            return;
+        }
+        Map<String, Endpoint> existing = new LinkedHashMap<>();
+        for (Endpoint endpoint : endpoints) {
+            existing.put(endpoint.getUrl(), endpoint);
+        }
+        List<Endpoint> updated = new ArrayList<>();
+        for (String url : urls) {
+            Endpoint endpoint = existing.get(url);
+            if (endpoint == null) {
+                endpoint = new Endpoint(url, properties);
+                MeterRegistry registry = meterRegistry;
+                if (registry != null) {
+                    register(registry, endpoint);
+                }
+            }
+            updated.add(endpoint);
+        }
+        if (!updated.isEmpty() && !updated.equals(endpoints)) {
+            endpoints = List.copyOf(updated);
+            logger.info("Directory servers for '{}': {}", name, urls);
+        }
+    }
+
+    /**
+     * Register per-server latency, ejection and error metrics
+     *
+     * @param meterRegistry Registry to publish to
+     */
+    public void bindTo(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        for (Endpoint endpoint : endpoints) {
+            register(meterRegistry, endpoint);
+        }
+    }
+
+    private void register(MeterRegistry registry, Endpoint endpoint) {
+        Gauge.builder("ldap.endpoint.latency", endpoint, e -> e.getLatencyNanos() / 1_000_000.0)
+            .tag("pool", name)
+            .tag("server", endpoint.getUrl())
+            .baseUnit("milliseconds")
+            .description("Moving average of LDAP operation latency per server")
+            .register(registry);
+        Gauge.builder("ldap.endpoint.ejected", endpoint, e -> e.isEjected() ? 1 : 0)
+            .tag("pool", name)
+            .tag("server", endpoint.getUrl())
+            .description("1 while the server is ejected after errors")
+            .register(registry);
+        Gauge.builder("ldap.endpoint.bulk.latency", endpoint, e -> e.getBulkLatencyNanos() / 1_000_000.0)
+            .tag("pool", name)
+            .tag("server", endpoint.getUrl())
+            .baseUnit("milliseconds")
+            .description("Moving average of LDAP bulk read latency (paged searches, listings) per server")
+            .register(registry);
+        FunctionCounter.builder("ldap.endpoint.errors", endpoint, Endpoint::getErrors)
+            .tag("pool", name)
+            .tag("server", endpoint.getUrl())
+            .description("LDAP connection and operation errors per server")
+            .register(registry);
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * One directory server with its latency and error statistics
+     */
+    public static final class Endpoint {
+        private final String url;
+        private final double alpha;
+        private final int failureThreshold;
+        private final double errorRateThreshold;
+
+        // 0 until the first sample, so new servers are preferred until measured
+        private volatile double latencyNanos;
+        private volatile double bulkLatencyNanos;
+        private volatile double errorRate;
+        private int consecutiveFailures;
+        private volatile boolean ejected;
+        private volatile long ejectedAt;
+        private final LongAdder errors = new LongAdder();
+
+        Endpoint(String url, DirectoryEndpointProperties properties) {
+            this.url = url;
+            this.alpha = properties.getEwmaAlpha();
+            this.failureThreshold = Math.max(1, properties.getFailureThreshold());
+            this.errorRateThreshold = properties.getErrorRateThreshold();
+        }
+
+        /**
+         * Record a completed operation
+         *
+         * @param nanos Operation time
+         */
+        public synchronized void recordSuccess(long nanos) {
+            latencyNanos = latencyNanos == 0 ? nanos : alpha * nanos + (1 - alpha) * latencyNanos;
+            errorRate = (1 - alpha) * errorRate;
+            consecutiveFailures = 0;
+        }
+
+        /**
+         * Record a completed bulk read, which counts for health but not for server choice
+         *
+         * @param nanos Operation time
+         */
+        public synchronized void recordBulkSuccess(long nanos) {
+            bulkLatencyNanos = bulkLatencyNanos == 0 ? nanos : alpha * nanos + (1 - alpha) * bulkLatencyNanos;
+            errorRate = (1 - alpha) * errorRate;
+            consecutiveFailures = 0;
+        }
+
+        /**
+         * Record a connection or operation error, ejecting the server past the thresholds
+         */
+        public synchronized void recordFailure() {
+            errors.increment();
+            errorRate = alpha + (1 - alpha) * errorRate;
+            consecutiveFailures++;
+            if (!ejected && (consecutiveFailures >= failureThreshold || errorRate > errorRateThreshold)) {
+                ejected = true;
+                ejectedAt = System.nanoTime();
+                logger.warn("Directory server {} ejected after {} consecutive errors (error rate {})",
+                    url, consecutiveFailures, String.format("%.2f", errorRate));
+            }
+        }
+
+        synchronized void restore(long probeNanos) {
+            ejected = false;
+            consecutiveFailures = 0;
+            errorRate = 0;
+            latencyNanos = probeNanos;
+        }
+
+        synchronized void reject() {
+            ejectedAt = System.nanoTime();
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public double getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        public double getBulkLatencyNanos() {
+            return bulkLatencyNanos;
+        }
+
+        public double getErrorRate() {
+            return errorRate;
+        }
+
+        public boolean isEjected() {
+            return ejected;
+        }
+
+        long getEjectedAt() {
+            return ejectedAt;
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public String toString() {
+            return url;
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.company.ra.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.DirContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ldap.core.ContextSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Reads from several AD forests as one directory
+ *
+ * A user name whose UPN suffix belongs to a forest is looked up in that
+ * forest only, on the calling thread. Other lookups, and searches, go to
+ * every forest in parallel, each bounded by its own timeout:
+ * {@link #findFirst} returns the hit of the first forest in priority order
+ * as soon as that forest and all forests before it have answered, so it
+ * waits for the slowest forest it needs rather than the sum or the slowest
+ * of all; {@link #searchAll} waits for every forest and merges the results,
+ * dropping duplicates. Every forest query is timed per forest and outcome.
+ */
+public class DirectoryFederation {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryFederation.class);
+
+    /**
+     * Query run against one forest on a borrowed read-only connection
+     *
+     * @param <T> Result type
+     */
+    @FunctionalInterface
+    public interface ForestQuery<T> {
+        T query(Forest forest, DirContext context) throws Exception;
+    }
+
+    /**
+     * Outcome of one forest query, as reported in metrics
+     */
+    public enum Outcome {
+        HIT, MISS, ERROR, TIMEOUT
+    }
+
+    /**
+     * Merged results of a fan-out search
+     *
+     * @param results Results in forest priority order, without duplicates
+     * @param latencies Time each forest took, or its timeout if it did not answer
+     * @param failedForests Forests that failed or timed out; their users are missing from results
+     */
+    public record Merged<T>(List<T> results, Map<String, Duration> latencies, List<String> failedForests) {
+
+        public boolean isComplete() {
+            return failedForests.isEmpty();
+        }
+    }
+
+    private final List<Forest> forests;
+    // Lower-cased UPN suffix -> forest
+    private final Map<String, Forest> forestsBySuffix = new LinkedHashMap<>();
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param forests Forests in priority order
+     * @param maxConcurrency Threads running fan-out queries
+     */
+    public DirectoryFederation(List<Forest> forests, int maxConcurrency) {
+        this.forests = List.copyOf(forests);
+        for (Forest forest : this.forests) {
+            for (String suffix : forest.getUpnSuffixes()) {
+                Forest previous = forestsBySuffix.putIfAbsent(suffix.toLowerCase(Locale.ROOT), forest);
+                if (previous != null) {
+                    throw new IllegalArgumentException("UPN suffix " + suffix + " is claimed by forests "
+                        + previous.getName() + " and " + forest.getName());
+                }
+            }
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        int threads = Math.max(1, maxConcurrency);
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(threads * 16), runnable -> {
+                Thread thread = new Thread(runnable, "ad-federation-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            // Saturated: query on the caller's thread rather than fail
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Stop the fan-out threads and close the forests' connections
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        for (Forest forest : forests) {
+            try {
+                forest.close.run();
+            } catch (RuntimeException e) {
+                logger.warn("Closing directory forest '{}' failed: {}", forest.getName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return true if no forests are configured and callers should use their single directory
+     */
+    public boolean isEmpty() {
+        return forests.isEmpty();
+    }
+
+    public List<Forest> getForests() {
+        return forests;
+    }
+
+    /**
+     * Forests that may hold a user
+     *
+     * @param username userPrincipalName or sAMAccountName
+     * @return The forest owning the UPN suffix (or a parent domain of it), else all forests
+     */
+    public List<Forest> route(String username) {
+        int at = username == null ? -1 : username.lastIndexOf('@');
+        if (at >= 0) {
+            String domain = username.substring(at + 1).toLowerCase(Locale.ROOT);
+            while (!domain.isEmpty()) {
+                Forest forest = forestsBySuffix.get(domain);
+                if (forest != null) {
+                    return List.of(forest);
+                }
+                int dot = domain.indexOf('.');
+                domain = dot < 0 ? "" : domain.substring(dot + 1);
+            }
+        }
+        return forests;
+    }
+
+    /**
+     * Look up a single user in the forests that may hold it
+     *
+     * @param username userPrincipalName or sAMAccountName, used for routing
+     * @param query Lookup in one forest, returning null if the user is not there
+     * @return Result of the first forest in priority order that found the user, or null
+     * @throws NamingException if no forest found the user and one of them failed or timed out,
+     *                         so a user in an unreachable forest is not reported as unknown
+     */
+    public <T> T findFirst(String username, ForestQuery<T> query) throws NamingException {
+        List<Forest> targets = route(username);
+        if (targets.size() == 1) {
+            Forest forest = targets.get(0);
+            Answer<T> answer = run(forest, query, new AtomicBoolean());
+            if (answer.error() != null) {
+                throw unavailable(List.of(forest.getName()), answer.error());
+            }
+            return answer.value();
+        }
+
+        long start = System.nanoTime();
+        List<Pending<T>> pending = submit(targets, query);
+        try {
+            List<String> failed = new ArrayList<>();
+            Exception lastError = null;
+            for (int i = 0; i < targets.size(); i++) {
+                Answer<T> answer = await(targets.get(i), pending.get(i), start);
+                if (answer.error() != null) {
+                    failed.add(targets.get(i).getName());
+                    lastError = answer.error();
+                } else if (answer.value() != null) {
+                    return answer.value();
+                }
+            }
+            if (!failed.isEmpty()) {
+                throw unavailable(failed, lastError);
+            }
+            return null;
+        } finally {
+            // Forests after the hit: drop queries not started yet, ignore running ones
+            pending.forEach(task -> task.future().cancel(false));
+        }
+    }
+
+    /**
+     * Search every forest in parallel and merge the results
+     *
+     * @param query Search in one forest
+     * @param key Identity of a result; later results with the same key are dropped
+     * @return Merged results, with per-forest latency and the forests that did not answer
+     */
+    public <T> Merged<T> searchAll(ForestQuery<List<T>> query, Function<T, String> key) {
+        long start = System.nanoTime();
+        List<Pending<List<T>>> pending = submit(forests, query);
+        Map<String, T> merged = new LinkedHashMap<>();
+        Map<String, Duration> latencies = new LinkedHashMap<>();
+        List<String> failed = new ArrayList<>();
+        for (int i = 0; i < forests.size(); i++) {
+            Forest forest = forests.get(i);
+            Answer<List<T>> answer = await(forest, pending.get(i), start);
+            latencies.put(forest.getName(), Duration.ofNanos(answer.nanos()));
+            if (answer.error() != null) {
+                failed.add(forest.getName());
+                logger.warn("Directory forest '{}' left out of search: {}", forest.getName(),
+                    answer.error().getMessage());
+                continue;
+            }
+            for (T result : answer.value()) {
+                merged.putIfAbsent(key.apply(result), result);
+            }
+        }
+        logger.debug("Federated search: {} results, forest latencies {}", merged.size(), latencies);
+        return new Merged<>(new ArrayList<>(merged.values()), Collections.unmodifiableMap(latencies),
+            List.copyOf(failed));
+    }
+
+    /**
+     * Publish per-forest query timers ("ra.ad.forest.requests", tags forest and outcome)
+     *
+     * @param meterRegistry Registry to publish to
+     */
+    public void bindTo(MeterRegistry meterRegistry) {
+        for (Forest forest : forests) {
+            for (Outcome outcome : Outcome.values()) {
+                forest.timers.put(outcome, Timer.builder("ra.ad.forest.requests")
+                    .tag("forest", forest.getName())
+                    .tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+                    .description("Queries sent to one forest of the federated directory")
+                    .register(meterRegistry));
+            }
+        }
+    }
+
+    private <T> List<Pending<T>> submit(List<Forest> targets, ForestQuery<T> query) {
+        List<Pending<T>> pending = new ArrayList<>(targets.size());
+        // A login fanned out stays interactive, a background refresh stays background
+        LdapOperationGovernor.Priority priority = LdapOperationGovernor.currentPriority();
+        for (Forest forest : targets) {
+            AtomicBoolean recorded = new AtomicBoolean();
+            Future<Answer<T>> future = executor.submit(LdapOperationGovernor.withPriority(priority,
+                () -> run(forest, query, recorded)));
+            pending.add(new Pending<>(future, recorded));
+        }
+        return pending;
+    }
+
+    /**
+     * Run a query and record its outcome, unless a timeout was recorded for it already
+     */
+    private <T> Answer<T> run(Forest forest, ForestQuery<T> query, AtomicBoolean recorded) {
+        long start = System.nanoTime();
+        DirContext context = null;
+        try {
+            context = forest.getContextSource().getReadOnlyContext();
+            T value = query.query(forest, context);
+            long nanos = System.nanoTime() - start;
+            if (recorded.compareAndSet(false, true)) {
+                forest.record(isEmptyResult(value) ? Outcome.MISS : Outcome.HIT, nanos);
+            }
+            return new Answer<>(value, null, nanos);
+        } catch (Exception e) {
+            long nanos = System.nanoTime() - start;
+            if (recorded.compareAndSet(false, true)) {
+                forest.record(Outcome.ERROR, nanos);
+            }
+            logger.debug("Query to directory forest '{}' failed: {}", forest.getName(), e.getMessage());
+            return new Answer<>(null, e, nanos);
+        } finally {
+            if (context != null) {
+                try {
+                    context.close();
+                } catch (Exception e) {
+                    logger.debug("Error closing LDAP context of forest '{}'", forest.getName(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for a forest's answer until its timeout, counted from when the fan-out started
+     */
+    private <T> Answer<T> await(Forest forest, Pending<T> pending, long start) {
+        long timeoutNanos = forest.getTimeout().toNanos();
+        try {
+            return pending.future().get(Math.max(0, start + timeoutNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // A query already running carries on; it must not count again when it finishes
+            pending.future().cancel(false);
+            if (pending.recorded().compareAndSet(false, true)) {
+                forest.record(Outcome.TIMEOUT, timeoutNanos);
+            }
+            logger.warn("Directory forest '{}' did not answer within {} ms", forest.getName(),
+                forest.getTimeout().toMillis());
+            return new Answer<>(null, e, timeoutNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Answer<>(null, e, System.nanoTime() - start);
+        } catch (ExecutionException e) {
+            return new Answer<>(null, e, System.nanoTime() - start);
+        }
+    }
+
+    private static boolean isEmptyResult(Object value) {
+        return value == null || value instanceof List<?> list && list.isEmpty();
+    }
+
+    private static NamingException unavailable(List<String> forests, Exception cause) {
+        ServiceUnavailableException exception =
+            new ServiceUnavailableException("No answer from directory forest(s) " + forests);
+        exception.setRootCause(cause);
+        return exception;
+    }
+
+    private record Answer<T>(T value, Exception error, long nanos) {
+    }
+
+    /**
+     * A submitted forest query
+     *
+     * @param recorded Set by whichever of the query and the wait for it records the outcome
+     */
+    private record Pending<T>(Future<Answer<T>> future, AtomicBoolean recorded) {
+    }
+
+    /**
+     * One forest: its connections, search base, UPN suffixes and timeout
+     */
+    public static final class Forest {
+
+        private final String name;
+        private final String baseDn;
+        private final List<String> upnSuffixes;
+        private final Duration timeout;
+        private final ContextSource contextSource;
+        private final Runnable close;
+
+        private final Map<Outcome, LongAdder> counts = new EnumMap<>(Outcome.class);
+        private final LongAdder totalNanos = new LongAdder();
+        private final Map<Outcome, Timer> timers = new ConcurrentHashMap<>();
+
+        /**
+         * @param name Name used in logs and the "forest" metric tag
+         * @param baseDn Search base
+         * @param upnSuffixes UPN suffixes routed to this forest
+         * @param timeout Time limit for one query
+         * @param contextSource Pooled service-account connections
+         * @param close Releases the connections on shutdown
+         */
+        public Forest(String name, String baseDn, List<String> upnSuffixes, Duration timeout,
+                      ContextSource contextSource, Runnable close) {
+            this.name = name;
+            this.baseDn = baseDn;
+            this.upnSuffixes = List.copyOf(upnSuffixes);
+            this.timeout = timeout;
+            this.contextSource = contextSource;
+            this.close = close;
+            for (Outcome outcome : Outcome.values()) {
+                counts.put(outcome, new LongAdder());
+            }
+        }
+
+        private void record(Outcome outcome, long nanos) {
+            counts.get(outcome).increment();
+            totalNanos.add(nanos);
+            Timer timer = timers.get(outcome);
+            if (timer != null) {
+                timer.record(nanos, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getBaseDn() {
+            return baseDn;
+        }
+
+        public List<String> getUpnSuffixes() {
+            return upnSuffixes;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public ContextSource getContextSource() {
+            return contextSource;
+        }
+
+        /**
+         * @param outcome Outcome
+         * @return Queries with this outcome so far
+         */
+        public long getCount(Outcome outcome) {
+            return counts.get(outcome).sum();
+        }
+
+        /**
+         * @return Mean query time so far, timeouts counted at the timeout
+         */
+        public Duration getMeanLatency() {
+            long queries = 0;
+            for (LongAdder count : counts.values()) {
+                queries += count.sum();
+            }
+            return queries == 0 ? Duration.ZERO : Duration.ofNanos(totalNanos.sum() / queries);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
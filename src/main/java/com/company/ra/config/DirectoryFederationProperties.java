@@ -0,0 +1,139 @@
+package com.company.ra.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Forests of a federated directory (prefix "ad.federation")
+ *
+ * Empty by default: the RA then reads users from the single directory at
+ * ad.url. Forests are listed in priority order; when a user name without a
+ * known UPN suffix is found in several forests, the first listed wins.
+ */
+public class DirectoryFederationProperties {
+
+    private List<Forest> forests = new ArrayList<>();
+
+    // Per-forest time limit unless a forest sets its own; also the LDAP read timeout of its connections
+    private Duration timeout = Duration.ofSeconds(2);
+
+    // Threads running fan-out queries, shared by all forests
+    private int maxConcurrency = 16;
+
+    public List<Forest> getForests() {
+        return forests;
+    }
+
+    public void setForests(List<Forest> forests) {
+        this.forests = forests;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * One forest, reached through its domain controllers or global catalog servers
+     */
+    public static class Forest {
+
+        private String name;
+
+        // Domain controllers (port 389/636) or global catalog servers (3268/3269), separated by spaces or commas
+        private String url = "";
+
+        // SRV record listing the servers, e.g. _gc._tcp.emea.company.com; replaces url when set
+        private String srvRecord = "";
+
+        // Search base; the forest root DN when url points at a global catalog
+        private String baseDn;
+
+        // UPN suffixes owned by the forest, e.g. emea.company.com; such logins go to this forest only
+        private List<String> upnSuffixes = new ArrayList<>();
+
+        // Service account for this forest; defaults to ad.serviceAccount
+        private String username;
+
+        private String password;
+
+        // Overrides the federation timeout
+        private Duration timeout;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        public String getSrvRecord() {
+            return srvRecord;
+        }
+
+        public void setSrvRecord(String srvRecord) {
+            this.srvRecord = srvRecord;
+        }
+
+        public String getBaseDn() {
+            return baseDn;
+        }
+
+        public void setBaseDn(String baseDn) {
+            this.baseDn = baseDn;
+        }
+
+        public List<String> getUpnSuffixes() {
+            return upnSuffixes;
+        }
+
+        public void setUpnSuffixes(List<String> upnSuffixes) {
+            this.upnSuffixes = upnSuffixes;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public void setPassword(String password) {
+            this.password = password;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+    }
+}
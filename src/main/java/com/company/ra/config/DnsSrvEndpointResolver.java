@@ -0,0 +1,87 @@
+package com.company.ra.config;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.List;
+
+import javax.naming.Context;
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+
+/**
+ * Resolves directory servers from DNS SRV records
+ *
+ * Active Directory registers every domain controller under
+ * _ldap._tcp.dc._msdcs.&lt;domain&gt; (and per site under
+ * _ldap._tcp.&lt;site&gt;._sites.dc._msdcs.&lt;domain&gt;). Records are ordered
+ * by priority, then by descending weight; the selector reorders them by
+ * measured latency anyway.
+ */
+public class DnsSrvEndpointResolver implements DirectoryEndpointResolver {
+
+    private final String record;
+    private final String scheme;
+
+    /**
+     * @param record SRV record name
+     * @param scheme URL scheme for the servers (ldap or ldaps)
+     */
+    public DnsSrvEndpointResolver(String record, String scheme) {
+        this.record = record;
+        this.scheme = scheme;
+    }
+
+    @Override
+    public List<String> resolve() throws Exception {
+        Hashtable<String, String> env = new Hashtable<>();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
+        env.put(Context.PROVIDER_URL, "dns:");
+        DirContext dns = new InitialDirContext(env);
+        try {
+            Attribute srv = dns.getAttributes(record, new String[] {"SRV"}).get("SRV");
+            List<String> records = new ArrayList<>();
+            if (srv != null) {
+                NamingEnumeration<?> values = srv.getAll();
+                while (values.hasMore()) {
+                    records.add(values.next().toString());
+                }
+            }
+            if (records.isEmpty()) {
+                throw new IllegalStateException("No SRV records found for " + record);
+            }
+            return toUrls(records, scheme);
+        } finally {
+            dns.close();
+        }
+    }
+
+    /**
+     * Convert SRV record values ("priority weight port target") into LDAP URLs
+     *
+     * @param records SRV record values
+     * @param scheme URL scheme
+     * @return URLs ordered by priority, then descending weight
+     */
+    static List<String> toUrls(Collection<String> records, String scheme) {
+        List<String[]> parsed = new ArrayList<>();
+        for (String value : records) {
+            String[] fields = value.trim().split("\\s+");
+            if (fields.length == 4 && !".".equals(fields[3])) {
+                parsed.add(fields);
+            }
+        }
+        parsed.sort(Comparator.<String[]>comparingInt(fields -> Integer.parseInt(fields[0]))
+            .thenComparing(fields -> -Integer.parseInt(fields[1])));
+
+        List<String> urls = new ArrayList<>();
+        for (String[] fields : parsed) {
+            String host = fields[3].endsWith(".") ? fields[3].substring(0, fields[3].length() - 1) : fields[3];
+            urls.add(scheme + "://" + host + ":" + fields[2]);
+        }
+        return urls;
+    }
+}
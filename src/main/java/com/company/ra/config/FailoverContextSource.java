@@ -0,0 +1,361 @@
+package com.company.ra.config;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.LdapName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ldap.AuthenticationException;
+import org.springframework.ldap.core.DistinguishedName;
+import org.springframework.ldap.core.support.BaseLdapPathContextSource;
+import org.springframework.ldap.core.support.LdapContextSource;
+import org.springframework.ldap.pool2.validation.DirContextValidator;
+
+/**
+ * Context source spreading connections over several directory servers
+ *
+ * Each new connection goes to the server chosen by the
+ * {@link DirectoryEndpointSelector}; if connecting fails, the next server is
+ * tried. Returned contexts time every directory operation and report its
+ * latency, or a communication error, to the server they belong to; errors
+ * raised while reading search results are reported as well. Paged, sorted
+ * and list operations are bulk reads: they count towards the server's
+ * health but are timed apart, so they do not skew the latency that server
+ * choice is based on. Work that must stay on one server, such as a USN-based
+ * sync, opens unpooled contexts to it with
+ * {@link #getReadOnlyContext(DirectoryEndpointSelector.Endpoint)}. Placed
+ * under {@link PooledLdapContextSource}, the pool validator from
+ * {@link #validator} retires pooled connections to ejected or much slower
+ * servers, so traffic follows the selector without waiting for idle eviction.
+ */
+@SuppressWarnings("deprecation")
+public class FailoverContextSource implements BaseLdapPathContextSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(FailoverContextSource.class);
+
+    // DirContext methods that talk to the server; the rest are local
+    private static final Set<String> TIMED_METHODS = Set.of(
+        "search", "lookup", "lookupLink", "getAttributes", "modifyAttributes", "bind", "rebind", "unbind",
+        "rename", "list", "listBindings", "createSubcontext", "destroySubcontext", "extendedOperation",
+        "reconnect", "getSchema", "getSchemaClassDefinition");
+
+    // Methods that read an unbounded number of entries
+    private static final Set<String> BULK_METHODS = Set.of("list", "listBindings");
+
+    // Request controls that make a search a bulk read: paged results, server-side sort, VLV, DirSync
+    private static final Set<String> BULK_CONTROLS = Set.of(
+        "1.2.840.113556.1.4.319", "1.2.840.113556.1.4.473", "2.16.840.1.113730.3.4.9", "1.2.840.113556.1.4.841");
+
+    /**
+     * Implemented by contexts from this source
+     */
+    public interface EndpointBound {
+        DirectoryEndpointSelector.Endpoint getEndpoint();
+    }
+
+    @FunctionalInterface
+    private interface Connector {
+        DirContext connect(LdapContextSource source);
+    }
+
+    private final DirectoryEndpointSelector selector;
+    private final Function<String, LdapContextSource> sourceFactory;
+    private final Map<String, LdapContextSource> sources = new ConcurrentHashMap<>();
+    private final LdapContextSource baseSource;
+
+    /**
+     * @param selector Server selection
+     * @param sourceFactory Creates an initialized, unpooled context source for one server URL
+     */
+    public FailoverContextSource(DirectoryEndpointSelector selector, Function<String, LdapContextSource> sourceFactory) {
+        this.selector = selector;
+        this.sourceFactory = sourceFactory;
+        this.baseSource = source(selector.getEndpoints().get(0));
+    }
+
+    /**
+     * Start probing ejected servers with a root DSE read
+     */
+    public void start() {
+        selector.start(this::probe);
+    }
+
+    public DirectoryEndpointSelector getSelector() {
+        return selector;
+    }
+
+    @Override
+    public DirContext getReadOnlyContext() {
+        return connect(LdapContextSource::getReadOnlyContext);
+    }
+
+    @Override
+    public DirContext getReadWriteContext() {
+        return connect(LdapContextSource::getReadWriteContext);
+    }
+
+    @Override
+    public DirContext getContext(String principal, String credentials) {
+        return connect(source -> source.getContext(principal, credentials));
+    }
+
+    /**
+     * Open a read-only context to one given server, without failing over to another
+     *
+     * @param endpoint Server, typically from {@link DirectoryEndpointSelector#prefer(String)}
+     * @return Unpooled context; closing it closes the connection
+     */
+    public DirContext getReadOnlyContext(DirectoryEndpointSelector.Endpoint endpoint) {
+        return connect(endpoint, LdapContextSource::getReadOnlyContext);
+    }
+
+    /**
+     * Wrap a pool validator so connections to servers the selector no longer wants fail validation
+     *
+     * @param delegate Validator for the connection itself
+     * @return Validator
+     */
+    public DirContextValidator validator(DirContextValidator delegate) {
+        return (type, context) -> {
+            if (context instanceof EndpointBound bound && !selector.isUsable(bound.getEndpoint())) {
+                logger.debug("Retiring pooled connection to {}", bound.getEndpoint());
+                return false;
+            }
+            return delegate.validateDirContext(type, context);
+        };
+    }
+
+    private DirContext connect(Connector connector) {
+        org.springframework.ldap.NamingException last = null;
+        for (DirectoryEndpointSelector.Endpoint endpoint : selector.select()) {
+            try {
+                return connect(endpoint, connector);
+            } catch (AuthenticationException e) {
+                // The server answered; trying the others would only repeat the bad credentials
+                throw e;
+            } catch (org.springframework.ldap.NamingException e) {
+                logger.warn("Connecting to directory server {} failed, trying the next: {}", endpoint, e.getMessage());
+                last = e;
+            }
+        }
+        throw last;
+    }
+
+    private DirContext connect(DirectoryEndpointSelector.Endpoint endpoint, Connector connector) {
+        long start = System.nanoTime();
+        try {
+            DirContext context = connector.connect(source(endpoint));
+            endpoint.recordSuccess(System.nanoTime() - start);
+            return wrap(context, endpoint);
+        } catch (AuthenticationException e) {
+            endpoint.recordSuccess(System.nanoTime() - start);
+            throw e;
+        } catch (org.springframework.ldap.NamingException e) {
+            endpoint.recordFailure();
+            throw e;
+        }
+    }
+
+    private LdapContextSource source(DirectoryEndpointSelector.Endpoint endpoint) {
+        return sources.computeIfAbsent(endpoint.getUrl(), sourceFactory);
+    }
+
+    private void probe(DirectoryEndpointSelector.Endpoint endpoint) throws NamingException {
+        DirContext context = source(endpoint).getReadOnlyContext();
+        try {
+            SearchControls controls = new SearchControls();
+            controls.setSearchScope(SearchControls.OBJECT_SCOPE);
+            controls.setReturningAttributes(new String[] {"currentTime"});
+            context.search("", "(objectClass=*)", controls).close();
+        } finally {
+            context.close();
+        }
+    }
+
+    private static DirContext wrap(DirContext context, DirectoryEndpointSelector.Endpoint endpoint) {
+        Class<?> type = context instanceof LdapContext ? LdapContext.class : DirContext.class;
+        return (DirContext) Proxy.newProxyInstance(FailoverContextSource.class.getClassLoader(),
+            new Class<?>[] {type, EndpointBound.class}, new TimingHandler(context, endpoint));
+    }
+
+    /**
+     * Whether an exception means the server is unreachable or failing, rather than an LDAP result
+     *
+     * @param e Exception thrown by an operation
+     * @return True for connection, timeout and availability errors
+     */
+    static boolean isServerFailure(Throwable e) {
+        if (e instanceof CommunicationException || e instanceof ServiceUnavailableException) {
+            return true;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        // The JDK reports read timeouts, use of a connection it already saw drop and result codes
+        // such as "other" as a bare NamingException; results naming a client-side problem (no such
+        // object, size limit, referral...) come as its subclasses
+        return e.getClass() == NamingException.class;
+    }
+
+    private static boolean isBulk(DirContext target, String method) {
+        if (BULK_METHODS.contains(method)) {
+            return true;
+        }
+        if (!"search".equals(method) || !(target instanceof LdapContext ldapContext)) {
+            return false;
+        }
+        try {
+            Control[] controls = ldapContext.getRequestControls();
+            if (controls != null) {
+                for (Control control : controls) {
+                    if (BULK_CONTROLS.contains(control.getID())) {
+                        return true;
+                    }
+                }
+            }
+        } catch (NamingException e) {
+            logger.debug("Could not read request controls", e);
+        }
+        return false;
+    }
+
+    private static final class TimingHandler implements InvocationHandler {
+        private final DirContext target;
+        private final DirectoryEndpointSelector.Endpoint endpoint;
+
+        private TimingHandler(DirContext target, DirectoryEndpointSelector.Endpoint endpoint) {
+            this.target = target;
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getEndpoint":
+                    return endpoint;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "DirContext[" + endpoint + "]";
+                default:
+                    break;
+            }
+
+            boolean timed = TIMED_METHODS.contains(method.getName());
+            boolean bulk = timed && isBulk(target, method.getName());
+            long start = System.nanoTime();
+            try {
+                Object result = method.invoke(target, args);
+                if (bulk) {
+                    endpoint.recordBulkSuccess(System.nanoTime() - start);
+                } else if (timed) {
+                    endpoint.recordSuccess(System.nanoTime() - start);
+                }
+                if (result instanceof NamingEnumeration<?> enumeration) {
+                    return new RecordingEnumeration<>(enumeration, endpoint);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (timed) {
+                    if (isServerFailure(cause)) {
+                        endpoint.recordFailure();
+                    } else {
+                        // An LDAP error result (no such object, size limit...) still means the server answered
+                        endpoint.recordSuccess(System.nanoTime() - start);
+                    }
+                }
+                throw cause;
+            }
+        }
+    }
+
+    /**
+     * Search results read from the server as they are consumed, reporting read errors to the server
+     */
+    private static final class RecordingEnumeration<T> implements NamingEnumeration<T> {
+        private final NamingEnumeration<T> target;
+        private final DirectoryEndpointSelector.Endpoint endpoint;
+
+        private RecordingEnumeration(NamingEnumeration<T> target, DirectoryEndpointSelector.Endpoint endpoint) {
+            this.target = target;
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public boolean hasMore() throws NamingException {
+            try {
+                return target.hasMore();
+            } catch (NamingException e) {
+                throw record(e);
+            }
+        }
+
+        @Override
+        public T next() throws NamingException {
+            try {
+                return target.next();
+            } catch (NamingException e) {
+                throw record(e);
+            }
+        }
+
+        @Override
+        public boolean hasMoreElements() {
+            return target.hasMoreElements();
+        }
+
+        @Override
+        public T nextElement() {
+            return target.nextElement();
+        }
+
+        @Override
+        public void close() throws NamingException {
+            target.close();
+        }
+
+        private NamingException record(NamingException e) {
+            if (isServerFailure(e)) {
+                endpoint.recordFailure();
+            }
+            return e;
+        }
+    }
+
+    @Override
+    public DistinguishedName getBaseLdapPath() {
+        return baseSource.getBaseLdapPath();
+    }
+
+    @Override
+    public LdapName getBaseLdapName() {
+        return baseSource.getBaseLdapName();
+    }
+
+    @Override
+    public String getBaseLdapPathAsString() {
+        return baseSource.getBaseLdapPathAsString();
+    }
+}
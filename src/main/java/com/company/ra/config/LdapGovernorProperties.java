@@ -0,0 +1,135 @@
+package com.company.ra.config;
+
+import java.time.Duration;
+
+/**
+ * Outbound LDAP operation limits (prefix "ldap.governor")
+ *
+ * One token bucket per operation class, shared by every directory client in
+ * the process. A rate of 0 leaves that class unthrottled.
+ */
+public class LdapGovernorProperties {
+
+    private boolean enabled = true;
+
+    // Searches and base reads (logins, lookups, sync pages, group resolution)
+    private Limit search = new Limit(200, 50);
+
+    // Password checks
+    private Limit bind = new Limit(50, 20);
+
+    // Adds, modifies and deletes
+    private Limit modify = new Limit(20, 10);
+
+    // How long an interactive operation (login, API call) may queue before it fails
+    private Duration interactiveMaxWait = Duration.ofSeconds(2);
+
+    // How long a background operation (sync, cache refresh, bulk job) may queue
+    private Duration backgroundMaxWait = Duration.ofSeconds(30);
+
+    // Operations waiting per class; further ones fail at once
+    private int maxQueue = 256;
+
+    // Share of each bucket's burst that background operations leave for interactive ones
+    private double backgroundReserve = 0.2;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Limit getSearch() {
+        return search;
+    }
+
+    public void setSearch(Limit search) {
+        this.search = search;
+    }
+
+    public Limit getBind() {
+        return bind;
+    }
+
+    public void setBind(Limit bind) {
+        this.bind = bind;
+    }
+
+    public Limit getModify() {
+        return modify;
+    }
+
+    public void setModify(Limit modify) {
+        this.modify = modify;
+    }
+
+    public Duration getInteractiveMaxWait() {
+        return interactiveMaxWait;
+    }
+
+    public void setInteractiveMaxWait(Duration interactiveMaxWait) {
+        this.interactiveMaxWait = interactiveMaxWait;
+    }
+
+    public Duration getBackgroundMaxWait() {
+        return backgroundMaxWait;
+    }
+
+    public void setBackgroundMaxWait(Duration backgroundMaxWait) {
+        this.backgroundMaxWait = backgroundMaxWait;
+    }
+
+    public int getMaxQueue() {
+        return maxQueue;
+    }
+
+    public void setMaxQueue(int maxQueue) {
+        this.maxQueue = maxQueue;
+    }
+
+    public double getBackgroundReserve() {
+        return backgroundReserve;
+    }
+
+    public void setBackgroundReserve(double backgroundReserve) {
+        this.backgroundReserve = backgroundReserve;
+    }
+
+    /**
+     * Sustained rate and burst of one operation class
+     */
+    public static class Limit {
+
+        // Operations per second; 0 = unthrottled
+        private double rate;
+
+        // Operations that may be sent at once after a quiet period
+        private int burst;
+
+        public Limit() {
+        }
+
+        public Limit(double rate, int burst) {
+            this.rate = rate;
+            this.burst = burst;
+        }
+
+        public double getRate() {
+            return rate;
+        }
+
+        public void setRate(double rate) {
+            this.rate = rate;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        public void setBurst(int burst) {
+            this.burst = burst;
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.company.ra.config;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.naming.InterruptedNamingException;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Outbound rate limit for LDAP operations, shared by every directory client
+ *
+ * Each operation class (search, bind, modify) has a token bucket refilled at
+ * its configured rate. An operation takes a token before it is sent; when
+ * none is left it queues until one is, or until its deadline passes and it
+ * fails with {@link ServiceUnavailableException} rather than adding to the
+ * load on the domain controllers.
+ *
+ * Operations run at the priority of the calling thread: interactive unless
+ * the thread runs a task wrapped with {@link #background(Runnable)} (sync,
+ * cache refresh, bulk jobs). Queued interactive operations are served before
+ * any background one, background operations leave part of each burst to
+ * interactive ones, and interactive operations give up much sooner, so a
+ * login is either served promptly or refused, never stuck behind a sync.
+ */
+public class LdapOperationGovernor {
+
+    private static final Logger logger = LoggerFactory.getLogger(LdapOperationGovernor.class);
+
+    private static final ThreadLocal<Priority> PRIORITY = ThreadLocal.withInitial(() -> Priority.INTERACTIVE);
+
+    private static final LdapOperationGovernor UNLIMITED = new LdapOperationGovernor(disabled());
+
+    /**
+     * Kind of LDAP operation, each with its own budget
+     */
+    public enum OperationClass {
+        SEARCH, BIND, MODIFY
+    }
+
+    /**
+     * Who is waiting: a user (login, API call) or a background job
+     */
+    public enum Priority {
+        INTERACTIVE, BACKGROUND
+    }
+
+    /**
+     * How an operation got through, as reported in metrics
+     */
+    public enum Admission {
+        // Sent at once
+        IMMEDIATE,
+        // Sent after waiting in the queue
+        QUEUED,
+        // Refused: queue full or deadline passed
+        THROTTLED
+    }
+
+    private final Map<OperationClass, Bucket> buckets = new EnumMap<>(OperationClass.class);
+    private final long interactiveMaxWaitNanos;
+    private final long backgroundMaxWaitNanos;
+    private final int maxQueue;
+
+    public LdapOperationGovernor(LdapGovernorProperties properties) {
+        this.interactiveMaxWaitNanos = properties.getInteractiveMaxWait().toNanos();
+        this.backgroundMaxWaitNanos = properties.getBackgroundMaxWait().toNanos();
+        this.maxQueue = Math.max(0, properties.getMaxQueue());
+        double reserve = Math.max(0, Math.min(1, properties.getBackgroundReserve()));
+        bucket(OperationClass.SEARCH, properties.isEnabled(), properties.getSearch(), reserve);
+        bucket(OperationClass.BIND, properties.isEnabled(), properties.getBind(), reserve);
+        bucket(OperationClass.MODIFY, properties.isEnabled(), properties.getModify(), reserve);
+    }
+
+    private void bucket(OperationClass operation, boolean enabled, LdapGovernorProperties.Limit limit,
+                        double reserve) {
+        boolean throttled = enabled && limit != null && limit.getRate() > 0;
+        buckets.put(operation, new Bucket(operation, throttled ? limit.getRate() : 0,
+            throttled ? Math.max(1, limit.getBurst()) : 0, reserve));
+    }
+
+    /**
+     * @return A governor that lets every operation through at once, for clients built without one
+     */
+    public static LdapOperationGovernor unlimited() {
+        return UNLIMITED;
+    }
+
+    private static LdapGovernorProperties disabled() {
+        LdapGovernorProperties properties = new LdapGovernorProperties();
+        properties.setEnabled(false);
+        return properties;
+    }
+
+    /**
+     * Wait for permission to send one operation, at the calling thread's priority
+     *
+     * @param operation Operation class
+     * @throws ServiceUnavailableException if the queue is full or no token became free before the deadline
+     * @throws InterruptedNamingException if interrupted while queued
+     */
+    public void acquire(OperationClass operation) throws NamingException {
+        buckets.get(operation).acquire(PRIORITY.get());
+    }
+
+    /**
+     * @return Priority operations on the calling thread run at
+     */
+    public static Priority currentPriority() {
+        return PRIORITY.get();
+    }
+
+    /**
+     * Run a task's LDAP operations at background priority
+     *
+     * @param task Task, e.g. a worker thread's runnable
+     * @return Task that switches the thread to background priority while it runs
+     */
+    public static Runnable background(Runnable task) {
+        return () -> {
+            Priority previous = PRIORITY.get();
+            PRIORITY.set(Priority.BACKGROUND);
+            try {
+                task.run();
+            } finally {
+                PRIORITY.set(previous);
+            }
+        };
+    }
+
+    /**
+     * Carry a priority over to another thread, e.g. the caller's into a fan-out task
+     *
+     * @param priority Priority to run at
+     * @param task Task
+     * @return Task that runs at the given priority
+     */
+    public static <T> Callable<T> withPriority(Priority priority, Callable<T> task) {
+        return () -> {
+            Priority previous = PRIORITY.get();
+            PRIORITY.set(priority);
+            try {
+                return task.call();
+            } finally {
+                PRIORITY.set(previous);
+            }
+        };
+    }
+
+    /**
+     * @param operation Operation class
+     * @param priority Priority
+     * @param admission Admission
+     * @return Operations admitted or refused that way so far
+     */
+    public long getCount(OperationClass operation, Priority priority, Admission admission) {
+        return buckets.get(operation).counts[priority.ordinal()][admission.ordinal()].sum();
+    }
+
+    /**
+     * @param operation Operation class
+     * @return Operations currently waiting for a token
+     */
+    public int getQueueLength(OperationClass operation) {
+        return buckets.get(operation).queueLength();
+    }
+
+    /**
+     * Publish governor metrics
+     *
+     * "ra.ldap.governor.operations" counts operations by operation, priority and
+     * result (immediate, queued, throttled); "ra.ldap.governor.wait" times the
+     * queued ones; "ra.ldap.governor.queue" is the number waiting now.
+     *
+     * @param meterRegistry Registry to publish to
+     */
+    public void bindTo(MeterRegistry meterRegistry) {
+        for (Bucket bucket : buckets.values()) {
+            String operation = bucket.operation.name().toLowerCase(Locale.ROOT);
+            if (bucket.ratePerNano == 0) {
+                continue;
+            }
+            for (Priority priority : Priority.values()) {
+                String priorityTag = priority.name().toLowerCase(Locale.ROOT);
+                LongAdder[] counts = bucket.counts[priority.ordinal()];
+                for (Admission admission : Admission.values()) {
+                    FunctionCounter.builder("ra.ldap.governor.operations", counts[admission.ordinal()], LongAdder::sum)
+                        .tag("operation", operation)
+                        .tag("priority", priorityTag)
+                        .tag("result", admission.name().toLowerCase(Locale.ROOT))
+                        .description("LDAP operations passed through the outbound rate limit")
+                        .register(meterRegistry);
+                }
+                LongAdder waitNanos = bucket.waitNanos[priority.ordinal()];
+                FunctionTimer.builder("ra.ldap.governor.wait", counts[Admission.QUEUED.ordinal()],
+                        LongAdder::sum, queued -> waitNanos.sum(), TimeUnit.NANOSECONDS)
+                    .tag("operation", operation)
+                    .tag("priority", priorityTag)
+                    .description("Time queued LDAP operations waited for the rate limit")
+                    .register(meterRegistry);
+            }
+            Gauge.builder("ra.ldap.governor.queue", bucket, Bucket::queueLength)
+                .tag("operation", operation)
+                .description("LDAP operations waiting for the rate limit")
+                .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Token bucket of one operation class, with its queue of waiting operations
+     */
+    private final class Bucket {
+
+        private final OperationClass operation;
+        // 0 = unthrottled
+        private final double ratePerNano;
+        private final double burst;
+        // Tokens that must be left after a background operation takes one
+        private final double backgroundThreshold;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition changed = lock.newCondition();
+        // Guarded by lock; waiters are served interactive first, each queue in arrival order
+        private final ArrayDeque<Object> interactiveWaiters = new ArrayDeque<>();
+        private final ArrayDeque<Object> backgroundWaiters = new ArrayDeque<>();
+        private double tokens;
+        private long refilledAt;
+
+        private final LongAdder[][] counts = new LongAdder[Priority.values().length][Admission.values().length];
+        private final LongAdder[] waitNanos = new LongAdder[Priority.values().length];
+
+        Bucket(OperationClass operation, double ratePerSecond, int burst, double backgroundReserve) {
+            this.operation = operation;
+            this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.burst = burst;
+            this.backgroundThreshold = Math.min(burst, 1 + Math.floor(backgroundReserve * burst));
+            this.tokens = burst;
+            this.refilledAt = System.nanoTime();
+            for (Priority priority : Priority.values()) {
+                for (Admission admission : Admission.values()) {
+                    counts[priority.ordinal()][admission.ordinal()] = new LongAdder();
+                }
+                waitNanos[priority.ordinal()] = new LongAdder();
+            }
+        }
+
+        void acquire(Priority priority) throws NamingException {
+            if (ratePerNano == 0) {
+                return;
+            }
+            LongAdder[] outcome = counts[priority.ordinal()];
+            double threshold = priority == Priority.INTERACTIVE ? 1 : backgroundThreshold;
+            long start = System.nanoTime();
+            lock.lock();
+            try {
+                refill(start);
+                if (isHead(null, priority) && tokens >= threshold) {
+                    tokens -= 1;
+                    outcome[Admission.IMMEDIATE.ordinal()].increment();
+                    return;
+                }
+                long maxWait = priority == Priority.INTERACTIVE ? interactiveMaxWaitNanos : backgroundMaxWaitNanos;
+                if (maxWait <= 0 || queueLength() >= maxQueue) {
+                    outcome[Admission.THROTTLED.ordinal()].increment();
+                    throw throttled(priority, maxWait <= 0 ? "no capacity" : "queue full");
+                }
+
+                Object waiter = new Object();
+                ArrayDeque<Object> queue = priority == Priority.INTERACTIVE ? interactiveWaiters : backgroundWaiters;
+                queue.addLast(waiter);
+                long deadline = start + maxWait;
+                try {
+                    while (true) {
+                        long now = System.nanoTime();
+                        refill(now);
+                        boolean head = isHead(waiter, priority);
+                        if (head && tokens >= threshold) {
+                            tokens -= 1;
+                            outcome[Admission.QUEUED.ordinal()].increment();
+                            waitNanos[priority.ordinal()].add(now - start);
+                            return;
+                        }
+                        long remaining = deadline - now;
+                        if (remaining <= 0) {
+                            outcome[Admission.THROTTLED.ordinal()].increment();
+                            throw throttled(priority, "no capacity within " + TimeUnit.NANOSECONDS.toMillis(maxWait)
+                                + " ms");
+                        }
+                        // The head sleeps until its token is due; the others until the queue moves
+                        long sleep = head ? Math.min(remaining, (long) Math.ceil((threshold - tokens) / ratePerNano))
+                            : remaining;
+                        changed.awaitNanos(Math.max(1, sleep));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    outcome[Admission.THROTTLED.ordinal()].increment();
+                    throw new InterruptedNamingException("Interrupted waiting for LDAP " + name() + " capacity");
+                } finally {
+                    queue.remove(waiter);
+                    changed.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Whether nothing is queued ahead of a waiter (or of a new arrival, for null)
+         */
+        private boolean isHead(Object waiter, Priority priority) {
+            if (priority == Priority.INTERACTIVE) {
+                return interactiveWaiters.peekFirst() == waiter;
+            }
+            return interactiveWaiters.isEmpty() && backgroundWaiters.peekFirst() == waiter;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+        }
+
+        int queueLength() {
+            lock.lock();
+            try {
+                return interactiveWaiters.size() + backgroundWaiters.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private String name() {
+            return operation.name().toLowerCase(Locale.ROOT);
+        }
+
+        private ServiceUnavailableException throttled(Priority priority, String reason) {
+            logger.debug("LDAP {} throttled at {} priority: {}", name(), priority, reason);
+            return new ServiceUnavailableException("LDAP " + name() + " throttled to protect the directory ("
+                + reason + ")");
+        }
+    }
+}
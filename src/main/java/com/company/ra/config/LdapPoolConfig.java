@@ -0,0 +1,202 @@
+package com.company.ra.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.ldap.core.support.LdapContextSource;
+import org.springframework.ldap.pool2.validation.DefaultDirContextValidator;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Configuration for the pooled Active Directory service-account connections
+ *
+ * One pool for the directory at ad.url, plus one per forest of the optional
+ * federation (ad.federation.forests).
+ */
+@Configuration
+public class LdapPoolConfig {
+
+    @Value("${ad.url:ldap://localhost:389}")
+    private String adUrl;
+
+    @Value("${ad.serviceAccount.username}")
+    private String serviceUsername;
+
+    @Value("${ad.serviceAccount.password}")
+    private String servicePassword;
+
+    @Bean
+    @ConfigurationProperties(prefix = "ldap.pool")
+    public LdapPoolProperties ldapPoolProperties() {
+        return new LdapPoolProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "ldap.endpoints")
+    public DirectoryEndpointProperties directoryEndpointProperties() {
+        return new DirectoryEndpointProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "ldap.governor")
+    public LdapGovernorProperties ldapGovernorProperties() {
+        return new LdapGovernorProperties();
+    }
+
+    // One budget for all outbound LDAP operations of the RA, whichever client sends them
+    @Bean
+    public LdapOperationGovernor ldapOperationGovernor(LdapGovernorProperties ldapGovernorProperties,
+                                                       ObjectProvider<MeterRegistry> meterRegistry) {
+        LdapOperationGovernor governor = new LdapOperationGovernor(ldapGovernorProperties);
+        meterRegistry.ifAvailable(governor::bindTo);
+        return governor;
+    }
+
+    // ad.url may list several domain controllers; ldap.endpoints.srv-record discovers them instead
+    @Bean(destroyMethod = "stop")
+    public DirectoryEndpointSelector adEndpointSelector(DirectoryEndpointProperties directoryEndpointProperties,
+                                                        ObjectProvider<MeterRegistry> meterRegistry) {
+        String srvRecord = directoryEndpointProperties.getSrvRecord();
+        DirectoryEndpointResolver resolver = srvRecord == null || srvRecord.isEmpty()
+            ? DirectoryEndpointResolver.of(adUrl)
+            : new DnsSrvEndpointResolver(srvRecord, directoryEndpointProperties.getSrvScheme());
+        DirectoryEndpointSelector selector = new DirectoryEndpointSelector("ad", resolver, directoryEndpointProperties);
+        meterRegistry.ifAvailable(selector::bindTo);
+        return selector;
+    }
+
+    // Primary so Spring Boot's LdapTemplate and LDAP health check share the bounded pool
+    @Bean
+    @Primary
+    public PooledLdapContextSource adContextSource(LdapPoolProperties ldapPoolProperties,
+                                                   DirectoryEndpointSelector adEndpointSelector,
+                                                   ObjectProvider<MeterRegistry> meterRegistry) {
+        FailoverContextSource target = new FailoverContextSource(adEndpointSelector, url -> {
+            // Connections are pooled by the wrapper, not by JNDI
+            LdapContextSource source = new LdapContextSource();
+            source.setUrl(url);
+            source.setUserDn(serviceUsername);
+            source.setPassword(servicePassword);
+            source.setPooled(false);
+            // objectGUID (directory sync) and SIDs (group resolution) are read as raw bytes
+            source.setBaseEnvironmentProperties(
+                Map.of("java.naming.ldap.attributes.binary", "objectGUID objectSid tokenGroups"));
+            source.afterPropertiesSet();
+            return source;
+        });
+        target.start();
+
+        PooledLdapContextSource contextSource = new PooledLdapContextSource("ad", target, ldapPoolProperties);
+        contextSource.setDirContextValidator(target.validator(new DefaultDirContextValidator()));
+        meterRegistry.ifAvailable(contextSource::bindTo);
+        if (ldapPoolProperties.isWarmUp()) {
+            contextSource.warmUp();
+        }
+        return contextSource;
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "ad.federation")
+    public DirectoryFederationProperties directoryFederationProperties() {
+        return new DirectoryFederationProperties();
+    }
+
+    // Without ad.federation.forests the federation is empty and users are read from ad.url only
+    @Bean(destroyMethod = "shutdown")
+    public DirectoryFederation directoryFederation(DirectoryFederationProperties directoryFederationProperties,
+                                                   LdapPoolProperties ldapPoolProperties,
+                                                   DirectoryEndpointProperties directoryEndpointProperties,
+                                                   ObjectProvider<MeterRegistry> meterRegistry) {
+        return federation(directoryFederationProperties, serviceUsername, servicePassword,
+            ldapPoolProperties, directoryEndpointProperties, meterRegistry);
+    }
+
+    /**
+     * Build a federation of the configured forests, each with its own pooled connections
+     *
+     * Also used by the ad-users application, which reads its forests from ldap.federation.
+     *
+     * @param properties Forests, in priority order
+     * @param serviceUsername Service account of forests that do not set their own
+     * @param servicePassword Password of that service account
+     * @param ldapPoolProperties Pool settings applied to every forest
+     * @param directoryEndpointProperties Endpoint health-check and SRV settings
+     * @param meterRegistry Registry for pool, endpoint and forest metrics, if any
+     * @return Federation, empty when no forests are configured
+     */
+    public static DirectoryFederation federation(DirectoryFederationProperties properties,
+                                                 String serviceUsername, String servicePassword,
+                                                 LdapPoolProperties ldapPoolProperties,
+                                                 DirectoryEndpointProperties directoryEndpointProperties,
+                                                 ObjectProvider<MeterRegistry> meterRegistry) {
+        List<DirectoryFederation.Forest> forests = new ArrayList<>();
+        for (DirectoryFederationProperties.Forest forest : properties.getForests()) {
+            Duration timeout = forest.getTimeout() != null ? forest.getTimeout() : properties.getTimeout();
+            String username = forest.getUsername() != null ? forest.getUsername() : serviceUsername;
+            String password = forest.getPassword() != null ? forest.getPassword() : servicePassword;
+            forests.add(forest(forest, timeout, username, password, ldapPoolProperties,
+                directoryEndpointProperties, meterRegistry));
+        }
+        DirectoryFederation federation = new DirectoryFederation(forests, properties.getMaxConcurrency());
+        meterRegistry.ifAvailable(federation::bindTo);
+        return federation;
+    }
+
+    private static DirectoryFederation.Forest forest(DirectoryFederationProperties.Forest forest, Duration timeout,
+                                                     String username, String password,
+                                                     LdapPoolProperties ldapPoolProperties,
+                                                     DirectoryEndpointProperties directoryEndpointProperties,
+                                                     ObjectProvider<MeterRegistry> meterRegistry) {
+        String name = "ad-" + forest.getName();
+        String srvRecord = forest.getSrvRecord();
+        DirectoryEndpointResolver resolver = srvRecord == null || srvRecord.isEmpty()
+            ? DirectoryEndpointResolver.of(forest.getUrl())
+            : new DnsSrvEndpointResolver(srvRecord, directoryEndpointProperties.getSrvScheme());
+        DirectoryEndpointSelector selector = new DirectoryEndpointSelector(name, resolver, directoryEndpointProperties);
+        meterRegistry.ifAvailable(selector::bindTo);
+
+        FailoverContextSource target = new FailoverContextSource(selector, url -> {
+            LdapContextSource source = new LdapContextSource();
+            source.setUrl(url);
+            source.setUserDn(username);
+            source.setPassword(password);
+            source.setPooled(false);
+            Map<String, Object> environment = new HashMap<>();
+            environment.put("java.naming.ldap.attributes.binary", "objectGUID objectSid tokenGroups");
+            // A forest that stops answering fails its queries instead of holding the fan-out threads
+            environment.put("com.sun.jndi.ldap.connect.timeout", String.valueOf(timeout.toMillis()));
+            environment.put("com.sun.jndi.ldap.read.timeout", String.valueOf(timeout.toMillis()));
+            source.setBaseEnvironmentProperties(environment);
+            source.afterPropertiesSet();
+            return source;
+        });
+        target.start();
+
+        PooledLdapContextSource contextSource = new PooledLdapContextSource(name, target, ldapPoolProperties);
+        contextSource.setDirContextValidator(target.validator(new DefaultDirContextValidator()));
+        meterRegistry.ifAvailable(contextSource::bindTo);
+        if (ldapPoolProperties.isWarmUp()) {
+            contextSource.warmUp();
+        }
+        return new DirectoryFederation.Forest(forest.getName(), forest.getBaseDn(), forest.getUpnSuffixes(),
+            timeout, contextSource, () -> {
+                try {
+                    contextSource.destroy();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    selector.stop();
+                }
+            });
+    }
+}
@@ -0,0 +1,96 @@
+package com.company.ra.config;
+
+import java.time.Duration;
+
+/**
+ * LDAP connection pool configuration (prefix "ldap.pool")
+ *
+ * Not a component: each application binds its own instance with
+ * {@code @Bean @ConfigurationProperties(prefix = "ldap.pool")} so the RA
+ * and the AD user service share one set of pool settings.
+ */
+public class LdapPoolProperties {
+
+    // Connections kept open per context type, and created at startup
+    private int minIdle = 2;
+
+    private int maxIdle = 8;
+
+    private int maxTotal = 16;
+
+    // How long a caller waits for a free connection before failing
+    private Duration maxWait = Duration.ofSeconds(2);
+
+    private boolean validateOnBorrow = true;
+
+    private Duration evictionInterval = Duration.ofSeconds(30);
+
+    // Idle connections older than this are closed (down to min-idle)
+    private Duration minEvictableIdleTime = Duration.ofMinutes(5);
+
+    private boolean warmUp = true;
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(Duration maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    public boolean isValidateOnBorrow() {
+        return validateOnBorrow;
+    }
+
+    public void setValidateOnBorrow(boolean validateOnBorrow) {
+        this.validateOnBorrow = validateOnBorrow;
+    }
+
+    public Duration getEvictionInterval() {
+        return evictionInterval;
+    }
+
+    public void setEvictionInterval(Duration evictionInterval) {
+        this.evictionInterval = evictionInterval;
+    }
+
+    public Duration getMinEvictableIdleTime() {
+        return minEvictableIdleTime;
+    }
+
+    public void setMinEvictableIdleTime(Duration minEvictableIdleTime) {
+        this.minEvictableIdleTime = minEvictableIdleTime;
+    }
+
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    public void setWarmUp(boolean warmUp) {
+        this.warmUp = warmUp;
+    }
+}
@@ -0,0 +1,141 @@
+package com.company.ra.config;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.naming.directory.DirContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.ldap.core.ContextSource;
+import org.springframework.ldap.pool2.DirContextType;
+import org.springframework.ldap.pool2.factory.PoolConfig;
+import org.springframework.ldap.pool2.factory.PooledContextSource;
+import org.springframework.ldap.pool2.validation.DefaultDirContextValidator;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Bounded LDAP connection pool with validation, idle eviction, warm-up and metrics
+ *
+ * Replaces the JDK's built-in com.sun.jndi.ldap.connect.pool, which is
+ * unbounded and invisible. Contexts are returned to the pool by closing
+ * them. When every connection is in use, callers wait up to max-wait and
+ * then get a {@link DataAccessResourceFailureException}, so a slow domain
+ * controller produces back-pressure instead of thousands of sockets.
+ */
+public class PooledLdapContextSource extends PooledContextSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(PooledLdapContextSource.class);
+
+    private final String name;
+    private final LongAdder borrowTimeouts = new LongAdder();
+
+    private volatile Timer borrowTimer;
+
+    /**
+     * @param name Pool name used in logs and the "pool" metric tag
+     * @param target Unpooled context source creating the connections
+     * @param properties Pool settings
+     */
+    public PooledLdapContextSource(String name, ContextSource target, LdapPoolProperties properties) {
+        super(toPoolConfig(properties));
+        this.name = name;
+        setContextSource(target);
+        setDirContextValidator(new DefaultDirContextValidator());
+    }
+
+    private static PoolConfig toPoolConfig(LdapPoolProperties properties) {
+        PoolConfig poolConfig = new PoolConfig();
+        poolConfig.setMinIdlePerKey(properties.getMinIdle());
+        poolConfig.setMaxIdlePerKey(properties.getMaxIdle());
+        poolConfig.setMaxTotalPerKey(properties.getMaxTotal());
+        poolConfig.setMaxTotal(properties.getMaxTotal());
+        poolConfig.setBlockWhenExhausted(true);
+        poolConfig.setMaxWaitMillis(properties.getMaxWait().toMillis());
+        poolConfig.setTestOnBorrow(properties.isValidateOnBorrow());
+        poolConfig.setTestWhileIdle(true);
+        poolConfig.setTimeBetweenEvictionRunsMillis(properties.getEvictionInterval().toMillis());
+        poolConfig.setMinEvictableIdleTimeMillis(properties.getMinEvictableIdleTime().toMillis());
+        poolConfig.setNumTestsPerEvictionRun(properties.getMaxIdle());
+        poolConfig.setJmxEnabled(false);
+        return poolConfig;
+    }
+
+    /**
+     * Open min-idle connections of each context type now rather than on first use
+     * A directory that is down at startup is logged, not fatal
+     */
+    public void warmUp() {
+        for (DirContextType type : new DirContextType[] {DirContextType.READ_ONLY, DirContextType.READ_WRITE}) {
+            try {
+                keyedObjectPool.preparePool(type);
+            } catch (Exception e) {
+                logger.warn("LDAP pool '{}' warm-up failed for {}: {}", name, type, e.getMessage());
+                return;
+            }
+        }
+        logger.info("LDAP pool '{}' warmed up with {} idle connections", name, getNumIdle());
+    }
+
+    /**
+     * Register pool gauges and the borrow wait timer
+     *
+     * @param meterRegistry Registry to publish to
+     */
+    public void bindTo(MeterRegistry meterRegistry) {
+        Gauge.builder("ldap.pool.active", this, PooledContextSource::getNumActive)
+            .tag("pool", name)
+            .description("LDAP connections currently borrowed")
+            .register(meterRegistry);
+        Gauge.builder("ldap.pool.idle", this, PooledContextSource::getNumIdle)
+            .tag("pool", name)
+            .description("LDAP connections idle in the pool")
+            .register(meterRegistry);
+        Gauge.builder("ldap.pool.pending", this, PooledContextSource::getNumWaiters)
+            .tag("pool", name)
+            .description("Callers waiting for an LDAP connection")
+            .register(meterRegistry);
+        FunctionCounter.builder("ldap.pool.borrow.timeouts", borrowTimeouts, LongAdder::sum)
+            .tag("pool", name)
+            .description("Borrows that gave up after max-wait")
+            .register(meterRegistry);
+        borrowTimer = Timer.builder("ldap.pool.borrow.wait")
+            .tag("pool", name)
+            .description("Time spent waiting for an LDAP connection, including validation")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Get number of borrows that timed out
+     *
+     * @return Timeout count
+     */
+    public long getBorrowTimeouts() {
+        return borrowTimeouts.sum();
+    }
+
+    @Override
+    protected DirContext getContext(DirContextType type) {
+        long start = System.nanoTime();
+        try {
+            return super.getContext(type);
+        } catch (DataAccessResourceFailureException e) {
+            if (e.getCause() instanceof NoSuchElementException) {
+                borrowTimeouts.increment();
+                logger.warn("LDAP pool '{}' exhausted: {} active, {} waiting", name, getNumActive(), getNumWaiters());
+            }
+            throw e;
+        } finally {
+            Timer timer = borrowTimer;
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
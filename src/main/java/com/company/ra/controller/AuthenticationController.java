@@ -1,14 +1,18 @@
 package com.company.ra.controller;
 
-import java.security.SecureRandom;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Base64;
-import java.util.UUID;
+import java.util.List;
+
+import javax.naming.ServiceUnavailableException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -16,7 +20,10 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.company.ra.dto.ADUserAttributes;
 import com.company.ra.dto.AuthRequest;
+import com.company.ra.dto.BatchTokenVerificationRequest;
+import com.company.ra.dto.BatchTokenVerificationResponse;
 import com.company.ra.dto.AuthTokenResponse;
 import com.company.ra.dto.ChallengeRequest;
 import com.company.ra.dto.ChallengeResponse;
@@ -26,7 +33,11 @@ import com.company.ra.dto.TokenVerificationRequest;
 import com.company.ra.dto.TokenVerificationResponse;
 import com.company.ra.service.ActiveDirectoryService;
 import com.company.ra.service.ChallengeStore;
+import com.company.ra.service.ConsumedChallengeService;
 import com.company.ra.service.JWTTokenService;
+import com.company.ra.service.NonceService;
+import com.company.ra.service.SealedChallengeService;
+import com.company.ra.service.VerifiedToken;
 
 /**
  * REST Controller for authentication operations
@@ -37,14 +48,23 @@ import com.company.ra.service.JWTTokenService;
 public class AuthenticationController {
 
     private static final Logger logger = LoggerFactory.getLogger(AuthenticationController.class);
-    private static final int CHALLENGE_SIZE = 32;
-    private static final int SALT_SIZE = 16;
     private static final int GCM_IV_LENGTH = 12;
     private static final int GCM_TAG_LENGTH = 128;
     private static final int PBKDF2_ITERATIONS = 10000;
     private static final int KEY_LENGTH = 256;
     private static final Duration CHALLENGE_EXPIRY = Duration.ofMinutes(5);
     private static final Duration TIMESTAMP_TOLERANCE = Duration.ofMinutes(5);
+    private static final String CHALLENGE_MODE_SEALED = "sealed";
+    // Logins refused by the LDAP governor or an unavailable directory retry after this
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    // "store" keeps challenges in this node's ChallengeStore; "sealed" hands them
+    // to the client inside an encrypted token so any node can verify the login
+    @Value("${auth.challenge.mode:store}")
+    private String challengeMode;
+
+    @Value("${jwt.verify.batch.max-size:100}")
+    private int maxBatchSize;
 
     @Autowired
     private ChallengeStore challengeStore;
@@ -55,6 +75,15 @@ public class AuthenticationController {
     @Autowired
     private JWTTokenService jwtTokenService;
 
+    @Autowired
+    private SealedChallengeService sealedChallengeService;
+
+    @Autowired
+    private ConsumedChallengeService consumedChallengeService;
+
+    @Autowired
+    private NonceService nonceService;
+
     /**
      * Step 1: Request authentication challenge
      *
@@ -72,33 +101,40 @@ public class AuthenticationController {
                     .body(ChallengeResponse.error("Username is required"));
             }
 
-            // Generate random challenge (nonce)
-            byte[] challenge = new byte[CHALLENGE_SIZE];
-            SecureRandom secureRandom = SecureRandom.getInstanceStrong();
-            secureRandom.nextBytes(challenge);
-
-            // Generate salt for PBKDF2 key derivation
-            byte[] salt = new byte[SALT_SIZE];
-            secureRandom.nextBytes(salt);
+            // Take random challenge (nonce) and PBKDF2 salt from the prefilled buffers
+            byte[] challenge = nonceService.nextChallenge();
+            byte[] salt = nonceService.nextSalt();
 
             // Generate unique challenge ID
-            String challengeId = UUID.randomUUID().toString();
-
-            // Store challenge temporarily with expiration
-            challengeStore.store(
-                challengeId,
-                challenge,
-                salt,
-                CHALLENGE_EXPIRY,
-                request.getUsername()
-            );
+            String challengeId = nonceService.nextUUID().toString();
+            long expiresAt = Instant.now().plus(CHALLENGE_EXPIRY).toEpochMilli();
+
+            if (isSealedMode()) {
+                // Nothing is stored; the sealed token becomes the challenge ID
+                challengeId = sealedChallengeService.seal(
+                    challengeId,
+                    challenge,
+                    salt,
+                    request.getUsername(),
+                    expiresAt
+                );
+            } else {
+                // Store challenge temporarily with expiration
+                challengeStore.store(
+                    challengeId,
+                    challenge,
+                    salt,
+                    CHALLENGE_EXPIRY,
+                    request.getUsername()
+                );
+            }
 
             // Create response
             ChallengeResponse response = new ChallengeResponse();
             response.setChallengeId(challengeId);
             response.setChallenge(Base64.getEncoder().encodeToString(challenge));
             response.setSalt(Base64.getEncoder().encodeToString(salt));
-            response.setExpiresAt(Instant.now().plus(CHALLENGE_EXPIRY).toEpochMilli());
+            response.setExpiresAt(expiresAt);
 
             logger.info("Challenge generated successfully for username: {}", request.getUsername());
             return ResponseEntity.ok(response);
@@ -129,9 +165,10 @@ public class AuthenticationController {
                     .body(AuthTokenResponse.error("Missing required fields"));
             }
 
-            // Retrieve stored challenge
+            // Retrieve and invalidate the stored challenge in one step so that
+            // concurrent attempts cannot replay the same challenge
             ChallengeStore.StoredChallenge storedChallenge =
-                challengeStore.retrieve(request.getChallengeId());
+                consumeChallenge(request.getChallengeId());
 
             if (storedChallenge == null) {
                 logger.warn("Invalid or expired challenge ID: {}", request.getChallengeId());
@@ -142,39 +179,38 @@ public class AuthenticationController {
             // Verify username matches
             if (!storedChallenge.getUsername().equals(request.getUsername())) {
                 logger.warn("Username mismatch for challenge ID: {}", request.getChallengeId());
-                challengeStore.invalidate(request.getChallengeId());
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(AuthTokenResponse.error("Invalid credentials"));
             }
 
-            // Step 4: Authenticate against Active Directory
-            boolean adAuthenticated = activeDirectoryService.authenticate(
-                request.getUsername(),
-                request.getEncryptedResponse(),
-                storedChallenge.getChallenge(),
-                storedChallenge.getSalt()
-            );
+            // Step 4: Authenticate against Active Directory; the same lookup
+            // returns the attributes the token is built from
+            ADUserAttributes userDetails;
+            try {
+                userDetails = activeDirectoryService.authenticate(
+                    request.getUsername(),
+                    request.getEncryptedResponse(),
+                    storedChallenge.getChallenge(),
+                    storedChallenge.getSalt()
+                );
+            } catch (ServiceUnavailableException e) {
+                // Directory down or the LDAP governor out of capacity; not a verdict on the
+                // credentials, so let the client retry with the same challenge
+                releaseChallenge(storedChallenge);
+                logger.warn("Directory unavailable for login of username: {}: {}", request.getUsername(),
+                    e.getMessage());
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER_SECONDS))
+                    .body(AuthTokenResponse.error("Directory temporarily unavailable"));
+            }
 
-            if (!adAuthenticated) {
+            if (userDetails == null) {
                 logger.warn("Active Directory authentication failed for username: {}",
                     request.getUsername());
-                challengeStore.invalidate(request.getChallengeId());
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(AuthTokenResponse.error("Invalid credentials"));
             }
 
-            // Invalidate challenge after successful use
-            challengeStore.invalidate(request.getChallengeId());
-
-            // Retrieve user details from AD
-            var userDetails = activeDirectoryService.getUserDetails(request.getUsername());
-            if (userDetails == null) {
-                logger.error("Failed to retrieve user details from AD for: {}",
-                    request.getUsername());
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(AuthTokenResponse.error("Failed to retrieve user details"));
-            }
-
             // Step 5: Generate JWT token
             String jwtToken = jwtTokenService.generateToken(userDetails);
 
@@ -197,6 +233,42 @@ public class AuthenticationController {
         }
     }
 
+    /**
+     * Resolve and invalidate the challenge referenced by a login request
+     *
+     * @param challengeId Challenge ID, or sealed challenge token in sealed mode
+     * @return StoredChallenge or null if unknown, expired, forged or replayed
+     */
+    private ChallengeStore.StoredChallenge consumeChallenge(String challengeId) {
+        if (!isSealedMode()) {
+            return challengeStore.consume(challengeId);
+        }
+
+        ChallengeStore.StoredChallenge unsealed = sealedChallengeService.unseal(challengeId);
+        if (unsealed == null
+            || !consumedChallengeService.markConsumed(unsealed.getChallengeId(), unsealed.getExpiresAtMillis())) {
+            return null;
+        }
+        return unsealed;
+    }
+
+    /**
+     * Make a challenge consumed by {@link #consumeChallenge} usable again
+     *
+     * @param storedChallenge Challenge of a login that was not decided
+     */
+    private void releaseChallenge(ChallengeStore.StoredChallenge storedChallenge) {
+        if (isSealedMode()) {
+            consumedChallengeService.release(storedChallenge.getChallengeId());
+        } else {
+            challengeStore.restore(storedChallenge);
+        }
+    }
+
+    private boolean isSealedMode() {
+        return CHALLENGE_MODE_SEALED.equalsIgnoreCase(challengeMode);
+    }
+
     /**
      * Verify JWT token validity
      *
@@ -213,17 +285,11 @@ public class AuthenticationController {
                     .body(TokenVerificationResponse.invalid("Token is required"));
             }
 
-            boolean isValid = jwtTokenService.validateToken(token);
-
-            if (isValid) {
-                String username = jwtTokenService.extractUsername(token);
-                TokenVerificationResponse response = new TokenVerificationResponse();
-                response.setValid(true);
-                response.setUsername(username);
-                return ResponseEntity.ok(response);
-            } else {
+            VerifiedToken verified = jwtTokenService.verify(token);
+            if (verified == null) {
                 return ResponseEntity.ok(TokenVerificationResponse.invalid("Invalid token"));
             }
+            return ResponseEntity.ok(toVerificationResponse(verified, System.currentTimeMillis()));
 
         } catch (Exception e) {
             logger.error("Token verification error", e);
@@ -231,6 +297,58 @@ public class AuthenticationController {
         }
     }
 
+    /**
+     * Verify several JWT tokens in one call (API gateways)
+     * Results are returned in request order; invalid tokens do not fail the batch
+     *
+     * @param request Batch of tokens
+     * @return Per-token verification results
+     */
+    @PostMapping("/verify/batch")
+    public ResponseEntity<BatchTokenVerificationResponse> verifyTokens(
+            @RequestBody BatchTokenVerificationRequest request) {
+        List<String> tokens = request.getTokens();
+        if (tokens == null || tokens.isEmpty()) {
+            return ResponseEntity.badRequest()
+                .body(BatchTokenVerificationResponse.error("Tokens are required"));
+        }
+        if (tokens.size() > maxBatchSize) {
+            return ResponseEntity.badRequest()
+                .body(BatchTokenVerificationResponse.error("At most " + maxBatchSize + " tokens per request"));
+        }
+
+        try {
+            List<VerifiedToken> verified = jwtTokenService.verifyAll(tokens);
+            long now = System.currentTimeMillis();
+            List<TokenVerificationResponse> results = new ArrayList<>(tokens.size());
+            for (int i = 0; i < tokens.size(); i++) {
+                String token = tokens.get(i);
+                if (token == null || token.trim().isEmpty()) {
+                    results.add(TokenVerificationResponse.invalid("Token is required"));
+                } else if (verified.get(i) == null) {
+                    results.add(TokenVerificationResponse.invalid("Invalid token"));
+                } else {
+                    results.add(toVerificationResponse(verified.get(i), now));
+                }
+            }
+            return ResponseEntity.ok(new BatchTokenVerificationResponse(results));
+
+        } catch (Exception e) {
+            logger.error("Batch token verification error", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(BatchTokenVerificationResponse.error("Token verification failed"));
+        }
+    }
+
+    private static TokenVerificationResponse toVerificationResponse(VerifiedToken verified, long nowMillis) {
+        TokenVerificationResponse response = new TokenVerificationResponse();
+        response.setValid(true);
+        response.setUsername(verified.getSubject());
+        response.setRoles(verified.getRoles());
+        response.setExpiresIn(Math.max(0, (verified.getExpiresAtMillis() - nowMillis) / 1000));
+        return response;
+    }
+
     /**
      * Logout endpoint - invalidates token
      *
@@ -240,8 +358,11 @@ public class AuthenticationController {
     @PostMapping("/logout")
     public ResponseEntity<LogoutResponse> logout(@RequestBody LogoutRequest request) {
         try {
-            // Add token to blacklist if token blacklisting is implemented
-            jwtTokenService.invalidateToken(request.getToken());
+            if (!jwtTokenService.invalidateToken(request.getToken())) {
+                // Invalid or expired, or issued without a jti and valid until it expires
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(LogoutResponse.error("Token is invalid or cannot be revoked"));
+            }
 
             LogoutResponse response = new LogoutResponse();
             response.setSuccess(true);
@@ -0,0 +1,71 @@
+package com.company.ra.controller;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ETag;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.company.ra.service.SigningKeyService;
+
+/**
+ * REST Controller publishing the JWT verification keys as a JWK Set
+ * Lets consumers verify ES256 tokens locally instead of calling /api/v1/auth/verify
+ */
+@RestController
+public class JwksController {
+
+    private static final MediaType JWK_SET = MediaType.parseMediaType("application/jwk-set+json");
+
+    @Value("${jwt.jwks.max-age:15m}")
+    private Duration maxAge;
+
+    @Autowired
+    private SigningKeyService signingKeyService;
+
+    /**
+     * Get the current JWK Set
+     *
+     * @param ifNoneMatch ETag held by the client, if any
+     * @return JWKS document, or 304 if the client's copy is current
+     */
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<String> getJwks(
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        String etag = signingKeyService.getJwksETag();
+        CacheControl cacheControl = CacheControl.maxAge(maxAge).cachePublic();
+
+        if (matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .build();
+        }
+        return ResponseEntity.ok()
+            .eTag(etag)
+            .cacheControl(cacheControl)
+            .contentType(JWK_SET)
+            .body(signingKeyService.getJwksJson());
+    }
+
+    /**
+     * Check an If-None-Match header against the current ETag
+     * The header may list several ETags or be *; weak comparison applies (RFC 9110, 13.1.2)
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        ETag current = ETag.create(etag);
+        List<ETag> candidates = ETag.parse(ifNoneMatch);
+        return candidates.stream().anyMatch(candidate -> candidate.isWildcard() || candidate.compare(current, false));
+    }
+}
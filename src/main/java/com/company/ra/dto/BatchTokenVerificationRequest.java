@@ -0,0 +1,34 @@
+package com.company.ra.dto;
+
+import java.util.List;
+
+import jakarta.validation.constraints.NotEmpty;
+
+/**
+ * Request DTO for verifying several JWT tokens in one call
+ */
+public class BatchTokenVerificationRequest {
+
+    @NotEmpty(message = "Tokens are required")
+    private List<String> tokens;
+
+    public BatchTokenVerificationRequest() {
+    }
+
+    public BatchTokenVerificationRequest(List<String> tokens) {
+        this.tokens = tokens;
+    }
+
+    public List<String> getTokens() {
+        return tokens;
+    }
+
+    public void setTokens(List<String> tokens) {
+        this.tokens = tokens;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchTokenVerificationRequest{tokens=" + (tokens != null ? tokens.size() : 0) + " [REDACTED]}";
+    }
+}
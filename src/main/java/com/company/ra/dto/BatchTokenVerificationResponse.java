@@ -0,0 +1,50 @@
+package com.company.ra.dto;
+
+import java.util.List;
+
+/**
+ * Response DTO for batch JWT token verification
+ * Results are in the same order as the submitted tokens
+ */
+public class BatchTokenVerificationResponse {
+
+    private List<TokenVerificationResponse> results;
+    private String error;
+
+    public BatchTokenVerificationResponse() {
+    }
+
+    public BatchTokenVerificationResponse(List<TokenVerificationResponse> results) {
+        this.results = results;
+    }
+
+    public static BatchTokenVerificationResponse error(String message) {
+        BatchTokenVerificationResponse response = new BatchTokenVerificationResponse();
+        response.setError(message);
+        return response;
+    }
+
+    public List<TokenVerificationResponse> getResults() {
+        return results;
+    }
+
+    public void setResults(List<TokenVerificationResponse> results) {
+        this.results = results;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchTokenVerificationResponse{" +
+                "results=" + (results != null ? results.size() : 0) +
+                ", error='" + error + '\'' +
+                '}';
+    }
+}
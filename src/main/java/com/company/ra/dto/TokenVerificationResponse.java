@@ -1,5 +1,7 @@
 package com.company.ra.dto;
 
+import java.util.List;
+
 /**
  * Response DTO for JWT token verification
  */
@@ -7,6 +9,8 @@ public class TokenVerificationResponse {
 
     private boolean valid;
     private String username;
+    private List<String> roles;
+    private Long expiresIn;
     private String error;
 
     public TokenVerificationResponse() {
@@ -35,6 +39,27 @@ public class TokenVerificationResponse {
         this.username = username;
     }
 
+    public List<String> getRoles() {
+        return roles;
+    }
+
+    public void setRoles(List<String> roles) {
+        this.roles = roles;
+    }
+
+    /**
+     * Get remaining token lifetime in seconds
+     *
+     * @return Seconds until expiry, or null for invalid tokens
+     */
+    public Long getExpiresIn() {
+        return expiresIn;
+    }
+
+    public void setExpiresIn(Long expiresIn) {
+        this.expiresIn = expiresIn;
+    }
+
     public String getError() {
         return error;
     }
@@ -48,6 +73,8 @@ public class TokenVerificationResponse {
         return "TokenVerificationResponse{" +
                 "valid=" + valid +
                 ", username='" + username + '\'' +
+                ", roles=" + roles +
+                ", expiresIn=" + expiresIn +
                 ", error='" + error + '\'' +
                 '}';
     }
@@ -0,0 +1,73 @@
+package com.company.ra.entity;
+
+import java.time.Instant;
+
+import org.springframework.data.domain.Persistable;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Entity recording a consumed sealed challenge, kept until the challenge would have expired
+ *
+ * Always new: saving inserts, so a second use of the same challenge ID fails
+ * on the primary key instead of being merged into the existing row.
+ */
+@Entity
+@Table(name = "consumed_challenges", indexes = {
+    @Index(name = "idx_consumed_challenge_expires_at", columnList = "expiresAt")
+})
+public class ConsumedChallenge implements Persistable<String> {
+
+    @Id
+    @Column(length = 36)
+    private String challengeId;
+
+    @Column(nullable = false)
+    private Instant expiresAt;
+
+    public ConsumedChallenge() {
+    }
+
+    public ConsumedChallenge(String challengeId, Instant expiresAt) {
+        this.challengeId = challengeId;
+        this.expiresAt = expiresAt;
+    }
+
+    @Override
+    public String getId() {
+        return challengeId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+
+    public String getChallengeId() {
+        return challengeId;
+    }
+
+    public void setChallengeId(String challengeId) {
+        this.challengeId = challengeId;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    @Override
+    public String toString() {
+        return "ConsumedChallenge{" +
+                "challengeId='" + challengeId + '\'' +
+                ", expiresAt=" + expiresAt +
+                '}';
+    }
+}
@@ -0,0 +1,94 @@
+package com.company.ra.entity;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Entity holding the high-water mark of an Active Directory replica sync
+ *
+ * uSNChanged values are local to one domain controller, so the mark is
+ * only valid together with the server it was read from; a different
+ * server forces a full load.
+ */
+@Entity
+@Table(name = "directory_sync_state")
+public class DirectorySyncState {
+
+    @Id
+    @Column(length = 50)
+    private String name;
+
+    // dsServiceName of the domain controller the USN belongs to
+    @Column(length = 500)
+    private String serverId;
+
+    @Column(nullable = false)
+    private long highestCommittedUsn;
+
+    @Column
+    private Instant lastFullSyncAt;
+
+    @Column
+    private Instant lastSyncAt;
+
+    public DirectorySyncState() {
+    }
+
+    public DirectorySyncState(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getServerId() {
+        return serverId;
+    }
+
+    public void setServerId(String serverId) {
+        this.serverId = serverId;
+    }
+
+    public long getHighestCommittedUsn() {
+        return highestCommittedUsn;
+    }
+
+    public void setHighestCommittedUsn(long highestCommittedUsn) {
+        this.highestCommittedUsn = highestCommittedUsn;
+    }
+
+    public Instant getLastFullSyncAt() {
+        return lastFullSyncAt;
+    }
+
+    public void setLastFullSyncAt(Instant lastFullSyncAt) {
+        this.lastFullSyncAt = lastFullSyncAt;
+    }
+
+    public Instant getLastSyncAt() {
+        return lastSyncAt;
+    }
+
+    public void setLastSyncAt(Instant lastSyncAt) {
+        this.lastSyncAt = lastSyncAt;
+    }
+
+    @Override
+    public String toString() {
+        return "DirectorySyncState{" +
+                "name='" + name + '\'' +
+                ", serverId='" + serverId + '\'' +
+                ", highestCommittedUsn=" + highestCommittedUsn +
+                ", lastSyncAt=" + lastSyncAt +
+                '}';
+    }
+}
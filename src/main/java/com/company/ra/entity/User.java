@@ -57,6 +57,19 @@ public class User {
     @Column
     private Instant lastLoginAt;
 
+    // Directory replica fields, maintained by DirectorySyncService
+    @Column(unique = true, length = 36)
+    private String objectGuid;
+
+    @Column(length = 500)
+    private String distinguishedName;
+
+    @Column
+    private Long usnChanged;
+
+    @Column
+    private Instant syncedAt;
+
     @ElementCollection(fetch = FetchType.EAGER)
     @CollectionTable(name = "user_roles", joinColumns = @JoinColumn(name = "user_id"))
     @Column(name = "role")
@@ -169,6 +182,38 @@ public class User {
         this.lastLoginAt = lastLoginAt;
     }
 
+    public String getObjectGuid() {
+        return objectGuid;
+    }
+
+    public void setObjectGuid(String objectGuid) {
+        this.objectGuid = objectGuid;
+    }
+
+    public String getDistinguishedName() {
+        return distinguishedName;
+    }
+
+    public void setDistinguishedName(String distinguishedName) {
+        this.distinguishedName = distinguishedName;
+    }
+
+    public Long getUsnChanged() {
+        return usnChanged;
+    }
+
+    public void setUsnChanged(Long usnChanged) {
+        this.usnChanged = usnChanged;
+    }
+
+    public Instant getSyncedAt() {
+        return syncedAt;
+    }
+
+    public void setSyncedAt(Instant syncedAt) {
+        this.syncedAt = syncedAt;
+    }
+
     public Set<String> getRoles() {
         return roles;
     }
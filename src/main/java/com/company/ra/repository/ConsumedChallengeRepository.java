@@ -0,0 +1,26 @@
+package com.company.ra.repository;
+
+import com.company.ra.entity.ConsumedChallenge;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+/**
+ * Repository interface for ConsumedChallenge entity
+ */
+@Repository
+public interface ConsumedChallengeRepository extends JpaRepository<ConsumedChallenge, String> {
+
+    /**
+     * Delete records of challenges that have expired
+     *
+     * @param now Current time
+     * @return Number of rows deleted
+     */
+    @Modifying
+    @Transactional
+    long deleteByExpiresAtBefore(Instant now);
+}
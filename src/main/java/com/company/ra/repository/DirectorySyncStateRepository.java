@@ -0,0 +1,12 @@
+package com.company.ra.repository;
+
+import com.company.ra.entity.DirectorySyncState;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository interface for DirectorySyncState entity
+ */
+@Repository
+public interface DirectorySyncStateRepository extends JpaRepository<DirectorySyncState, String> {
+}
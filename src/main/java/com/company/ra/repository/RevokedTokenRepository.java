@@ -0,0 +1,51 @@
+package com.company.ra.repository;
+
+import com.company.ra.entity.RevokedToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Repository interface for RevokedToken entity
+ */
+@Repository
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, Long> {
+
+    /**
+     * Check if a token ID has been revoked
+     *
+     * @param tokenId JWT ID (jti)
+     * @return true if revoked
+     */
+    boolean existsByTokenId(String tokenId);
+
+    /**
+     * Find revocations recorded after a given row, oldest first
+     *
+     * @param id Last row ID already seen
+     * @return List of RevokedTokens
+     */
+    List<RevokedToken> findByIdGreaterThanOrderByIdAsc(Long id);
+
+    /**
+     * Find revocations of tokens that have not expired yet
+     *
+     * @param now Current time
+     * @return List of RevokedTokens
+     */
+    List<RevokedToken> findByExpiresAtAfter(Instant now);
+
+    /**
+     * Delete revocations of tokens that have expired
+     *
+     * @param now Current time
+     * @return Number of rows deleted
+     */
+    @Modifying
+    @Transactional
+    long deleteByExpiresAtBefore(Instant now);
+}
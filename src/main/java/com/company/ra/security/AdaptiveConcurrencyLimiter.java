@@ -0,0 +1,183 @@
+package com.company.ra.security;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency-driven adaptive concurrency limiter (gradient algorithm)
+ *
+ * The limiter tracks a slowly moving baseline of request latency and compares
+ * every completed request against it. While latency stays near the baseline
+ * the limit grows by roughly sqrt(limit); when latency climbs because a
+ * downstream (AD, CA) is saturating, the limit shrinks in proportion, down to
+ * half per sample. Failed requests back the limit off multiplicatively.
+ *
+ * Requests over the limit may wait briefly in a small bounded queue; anything
+ * beyond that is rejected immediately so callers can shed it before it ties
+ * up a servlet thread.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    // Smoothing of the long-term latency baseline (samples)
+    private static final double BASELINE_WINDOW = 100.0;
+    // Latency may rise this much over baseline before the limit starts shrinking
+    private static final double TOLERANCE = 1.5;
+    // Weight of each new limit estimate
+    private static final double SMOOTHING = 0.2;
+    // Multiplicative back-off on failures
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final Object queueMonitor = new Object();
+
+    private volatile int limit;
+
+    // Guarded by this
+    private double estimatedLimit;
+    private double baselineRttNanos;
+
+    /**
+     * @param initialLimit Starting concurrency limit
+     * @param minLimit Lower bound for the limit
+     * @param maxLimit Upper bound for the limit
+     * @param maxQueue Maximum requests waiting for a slot
+     * @param maxWaitMillis Maximum time a request waits for a slot (0 to never wait)
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit,
+                                      int maxQueue, long maxWaitMillis) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Require 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = Math.max(0, maxQueue);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+    }
+
+    /**
+     * Acquire a slot, waiting in the queue if allowed
+     *
+     * @return true if acquired; the caller must then call {@link #release(long, boolean)}
+     */
+    public boolean tryAcquire() {
+        if (tryIncrement()) {
+            return true;
+        }
+        if (maxWaitNanos == 0 || maxQueue == 0) {
+            rejected.increment();
+            return false;
+        }
+        if (queued.incrementAndGet() > maxQueue) {
+            queued.decrementAndGet();
+            rejected.increment();
+            return false;
+        }
+
+        try {
+            long deadline = System.nanoTime() + maxWaitNanos;
+            synchronized (queueMonitor) {
+                while (!tryIncrement()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        rejected.increment();
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(queueMonitor, remaining);
+                }
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejected.increment();
+            return false;
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    /**
+     * Release a slot and feed the request outcome into the limit estimate
+     *
+     * @param rttNanos Request latency in nanoseconds
+     * @param dropped true if the request failed or timed out downstream
+     */
+    public void release(long rttNanos, boolean dropped) {
+        int inFlightAtCompletion = inFlight.getAndDecrement();
+        update(rttNanos, inFlightAtCompletion, dropped);
+        if (queued.get() > 0) {
+            synchronized (queueMonitor) {
+                queueMonitor.notifyAll();
+            }
+        }
+    }
+
+    private synchronized void update(long rttNanos, int inFlightAtCompletion, boolean dropped) {
+        if (dropped) {
+            estimatedLimit = Math.max(minLimit, estimatedLimit * BACKOFF_RATIO);
+            limit = (int) estimatedLimit;
+            return;
+        }
+        if (rttNanos <= 0) {
+            return;
+        }
+
+        if (baselineRttNanos == 0) {
+            baselineRttNanos = rttNanos;
+        } else {
+            baselineRttNanos += (rttNanos - baselineRttNanos) / BASELINE_WINDOW;
+            // Let the baseline follow a sustained drop in latency quickly
+            if (baselineRttNanos > 2 * rttNanos) {
+                baselineRttNanos *= 0.95;
+            }
+        }
+
+        // Do not grow the limit while it is not actually being used
+        if (inFlightAtCompletion < estimatedLimit / 2) {
+            return;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * baselineRttNanos / rttNanos));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+    }
+
+    private boolean tryIncrement() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
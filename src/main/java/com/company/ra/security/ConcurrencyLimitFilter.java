@@ -0,0 +1,78 @@
+package com.company.ra.security;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Concurrency Limiting Filter
+ * Sheds load on expensive endpoints with 503 once their adaptive limit is reached
+ *
+ * Requests that end with a 5xx status or an exception count as drops and
+ * back the limit off; everything else feeds its latency into the estimate.
+ */
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimitFilter.class);
+
+    private static final long RETRY_AFTER_SECONDS = 1;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ConcurrencyLimitRegistry limitRegistry;
+
+    public ConcurrencyLimitFilter(ConcurrencyLimitRegistry limitRegistry) {
+        this.limitRegistry = limitRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                   FilterChain filterChain) throws ServletException, IOException {
+
+        AdaptiveConcurrencyLimiter limiter = limitRegistry.resolve(request.getMethod(), request.getRequestURI());
+        if (limiter == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        if (!limiter.tryAcquire()) {
+            logger.warn("Load shed: {} {}, limit: {}, in flight: {}",
+                request.getMethod(), request.getRequestURI(), limiter.getLimit(), limiter.getInFlight());
+
+            response.setContentType("application/json");
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(RETRY_AFTER_SECONDS));
+
+            Map<String, Object> errorDetails = new HashMap<>();
+            errorDetails.put("success", false);
+            errorDetails.put("error", "Service Unavailable");
+            errorDetails.put("message", "Server is at capacity. Please try again later.");
+            errorDetails.put("retryAfter", RETRY_AFTER_SECONDS);
+
+            objectMapper.writeValue(response.getOutputStream(), errorDetails);
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean dropped = true;
+        try {
+            filterChain.doFilter(request, response);
+            dropped = response.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value();
+        } finally {
+            limiter.release(System.nanoTime() - start, dropped);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.company.ra.security;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Maps expensive endpoints onto per-group adaptive concurrency limiters
+ *
+ * Groups:
+ * - csr: POST /api/v1/certificates/requests (AD lookup + CA submission)
+ * - auth: POST /api/v1/auth/challenge and /login (AD bind)
+ * - download: GET /api/v1/certificates/requests/{requestId}/certificate (CA fetch)
+ *
+ * Everything else, including /actuator/health, is never limited.
+ */
+@Component
+public class ConcurrencyLimitRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimitRegistry.class);
+
+    public static final String GROUP_CSR = "csr";
+    public static final String GROUP_AUTH = "auth";
+    public static final String GROUP_DOWNLOAD = "download";
+
+    private static final String CERTIFICATE_REQUESTS_PATH = "/api/v1/certificates/requests";
+    private static final String CERTIFICATE_SUFFIX = "/certificate";
+
+    @Autowired
+    private ConcurrencyLimitProperties properties;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, AdaptiveConcurrencyLimiter> limiters = new LinkedHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (String group : new String[]{GROUP_CSR, GROUP_AUTH, GROUP_DOWNLOAD}) {
+            ConcurrencyLimitProperties.Group settings =
+                properties.getGroups().getOrDefault(group, new ConcurrencyLimitProperties.Group());
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+                settings.getInitialLimit(),
+                settings.getMinLimit(),
+                settings.getMaxLimit(),
+                settings.getMaxQueue(),
+                settings.getMaxWait().toMillis());
+            limiters.put(group, limiter);
+            registerMetrics(group, limiter);
+        }
+        logger.info("Concurrency limiting {} for groups: {}",
+            properties.isEnabled() ? "enabled" : "disabled", limiters.keySet());
+    }
+
+    /**
+     * Find the limiter guarding a request
+     *
+     * @param method HTTP method
+     * @param path Request URI path
+     * @return Limiter or null if the request is not concurrency limited
+     */
+    public AdaptiveConcurrencyLimiter resolve(String method, String path) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        String group = resolveGroup(method, path);
+        return group != null ? limiters.get(group) : null;
+    }
+
+    public AdaptiveConcurrencyLimiter getLimiter(String group) {
+        return limiters.get(group);
+    }
+
+    static String resolveGroup(String method, String path) {
+        if ("POST".equals(method)) {
+            if (CERTIFICATE_REQUESTS_PATH.equals(path)) {
+                return GROUP_CSR;
+            }
+            if ("/api/v1/auth/challenge".equals(path) || "/api/v1/auth/login".equals(path)) {
+                return GROUP_AUTH;
+            }
+        } else if ("GET".equals(method)) {
+            if (path.startsWith(CERTIFICATE_REQUESTS_PATH + "/") && path.endsWith(CERTIFICATE_SUFFIX)
+                    && path.indexOf('/', CERTIFICATE_REQUESTS_PATH.length() + 1)
+                        == path.length() - CERTIFICATE_SUFFIX.length()) {
+                return GROUP_DOWNLOAD;
+            }
+        }
+        return null;
+    }
+
+    private void registerMetrics(String group, AdaptiveConcurrencyLimiter limiter) {
+        if (meterRegistry == null) {
+            return;
+        }
+        Gauge.builder("ra.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+            .tag("group", group)
+            .description("Current adaptive concurrency limit")
+            .register(meterRegistry);
+        Gauge.builder("ra.concurrency.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+            .tag("group", group)
+            .description("Requests currently executing")
+            .register(meterRegistry);
+        Gauge.builder("ra.concurrency.queue", limiter, AdaptiveConcurrencyLimiter::getQueued)
+            .tag("group", group)
+            .description("Requests waiting for a slot")
+            .register(meterRegistry);
+        FunctionCounter.builder("ra.concurrency.rejected", limiter, AdaptiveConcurrencyLimiter::getRejected)
+            .tag("group", group)
+            .description("Requests shed by the concurrency limiter")
+            .register(meterRegistry);
+    }
+}
@@ -0,0 +1,253 @@
+package com.company.ra.security;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free GCRA (generic cell rate algorithm) rate limiter
+ *
+ * Each tracked key costs exactly one long: a 24-bit key fingerprint packed
+ * with the 40-bit theoretical arrival time (TAT) in milliseconds since the
+ * limiter was created. Slots live in a fixed-size open-addressing table and
+ * are updated with a single CAS, so memory is capped at construction and no
+ * request ever takes a lock.
+ *
+ * When a key's probe window is full the limiter evicts an idle slot (TAT in
+ * the past, which is indistinguishable from an untracked key) or, failing
+ * that, the slot with the oldest TAT. The oldest TAT belongs to the client
+ * furthest from its limit, so a flood of spoofed keys displaces quiet clients
+ * first and heavy hitters last. Evictions and duplicate slots after a racing
+ * insert can only make the limiter more lenient.
+ *
+ * Keys are told apart by fingerprint only, so two keys whose fingerprints
+ * match within one probe window share a budget: a client colliding with a
+ * heavy hitter is throttled along with it. The hash seed is random per
+ * process, so such a collision cannot be aimed at a chosen client, and it is
+ * rare (a 1 in 2^24 chance for each other key probing the same window).
+ */
+public class GcraRateLimiter {
+
+    private static final int PROBE_WINDOW = 8;
+    private static final int TAT_BITS = 40;
+    private static final long TAT_MASK = (1L << TAT_BITS) - 1;
+    private static final long FINGERPRINT_MASK = (1L << (64 - TAT_BITS)) - 1;
+
+    private final AtomicLongArray table;
+    private final int mask;
+    private final long hashSeed;
+    private final long epochMillis;
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Create a limiter tracking at most the given number of keys
+     *
+     * @param capacity Maximum tracked keys (rounded up to a power of two, at least the probe window)
+     */
+    public GcraRateLimiter(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int size = Math.max(PROBE_WINDOW, Integer.highestOneBit(capacity - 1) << 1);
+        this.table = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.hashSeed = new SecureRandom().nextLong();
+        this.epochMillis = System.currentTimeMillis() - 1;
+    }
+
+    /**
+     * Try to admit a request for a key
+     *
+     * @param key Client key (IP address, principal, ...)
+     * @param rate Allowed rate for the key
+     * @param cost Number of cells the request consumes
+     * @return 0 if admitted, otherwise milliseconds until the request would be admitted
+     */
+    public long tryAcquire(String key, Rate rate, int cost) {
+        return tryAcquire(hash(key), rate, cost, System.currentTimeMillis());
+    }
+
+    /**
+     * Try to admit a request for a key within a scope (e.g. a policy name),
+     * without concatenating the two into a new string
+     *
+     * @param scope Budget the key is charged against
+     * @param key Client key within the scope
+     * @param rate Allowed rate for the key
+     * @param cost Number of cells the request consumes
+     * @return 0 if admitted, otherwise milliseconds until the request would be admitted
+     */
+    public long tryAcquire(String scope, String key, Rate rate, int cost) {
+        return tryAcquire(hash(scope, key), rate, cost, System.currentTimeMillis());
+    }
+
+    /**
+     * Try to admit a request for a pre-hashed key at a given time
+     *
+     * @param keyHash Key hash from {@link #hash(String)}
+     * @param rate Allowed rate for the key
+     * @param cost Number of cells the request consumes
+     * @param nowMillis Current time in epoch milliseconds
+     * @return 0 if admitted, otherwise milliseconds until the request would be admitted
+     */
+    long tryAcquire(long keyHash, Rate rate, int cost, long nowMillis) {
+        long now = nowMillis - epochMillis;
+        long fingerprint = (keyHash >>> TAT_BITS) & FINGERPRINT_MASK;
+        if (fingerprint == 0) {
+            fingerprint = 1;  // 0 marks an empty slot
+        }
+        int home = (int) keyHash & mask;
+        long increment = rate.emissionIntervalMillis * cost;
+
+        while (true) {
+            int slot = -1;
+            long current = 0;
+            int victim = -1;
+            long victimTat = Long.MAX_VALUE;
+
+            for (int i = 0; i < PROBE_WINDOW; i++) {
+                int index = (home + i) & mask;
+                long value = table.get(index);
+                if (value == 0) {
+                    if (victim < 0 || victimTat > 0) {
+                        victim = index;
+                        victimTat = 0;
+                    }
+                    continue;
+                }
+                if ((value >>> TAT_BITS) == fingerprint) {
+                    slot = index;
+                    current = value;
+                    break;
+                }
+                long tat = value & TAT_MASK;
+                if (tat < victimTat) {
+                    victim = index;
+                    victimTat = tat;
+                }
+            }
+
+            boolean tracked = slot >= 0;
+            if (!tracked) {
+                slot = victim;
+                current = table.get(victim);
+            }
+
+            long tat = tracked ? Math.max(current & TAT_MASK, now) : now;
+            long newTat = tat + increment;
+            long allowAt = newTat - rate.burstOffsetMillis;
+            if (allowAt > now) {
+                return allowAt - now;
+            }
+
+            long next = (fingerprint << TAT_BITS) | (newTat & TAT_MASK);
+            if (table.compareAndSet(slot, current, next)) {
+                if (!tracked && current != 0 && (current & TAT_MASK) > now) {
+                    evictions.increment();
+                }
+                return 0;
+            }
+            // Lost a race on this slot; re-read the probe window
+        }
+    }
+
+    /**
+     * Hash a key with this limiter's random seed
+     *
+     * @param key Client key
+     * @return 64-bit key hash
+     */
+    long hash(String key) {
+        return finish(mix(hashSeed, key));
+    }
+
+    /**
+     * Hash a scoped key with this limiter's random seed
+     *
+     * @param scope Key scope
+     * @param key Client key
+     * @return 64-bit key hash
+     */
+    long hash(String scope, String key) {
+        long h = mix(hashSeed, scope);
+        h = (h ^ 0x1f) * 0x100000001b3L;  // unit separator, never part of a policy name
+        return finish(mix(h, key));
+    }
+
+    private static long mix(long h, String value) {
+        for (int i = 0, length = value.length(); i < length; i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static long finish(long h) {
+        // MurmurHash3 finaliser to spread the low bits used for the slot index
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Get number of table slots (the hard cap on tracked keys)
+     *
+     * @return Slot count
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Get number of keys evicted while still inside their rate window
+     *
+     * @return Eviction count
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Allowed rate: a number of requests per period, of which up to burst may arrive at once
+     */
+    public static final class Rate {
+        private final int limit;
+        private final long periodMillis;
+        private final int burst;
+        private final long emissionIntervalMillis;
+        private final long burstOffsetMillis;
+
+        private Rate(int limit, long periodMillis, int burst) {
+            if (limit <= 0 || periodMillis <= 0 || burst <= 0) {
+                throw new IllegalArgumentException("Limit, period and burst must be positive");
+            }
+            this.limit = limit;
+            this.periodMillis = periodMillis;
+            this.burst = burst;
+            this.emissionIntervalMillis = Math.max(1, periodMillis / limit);
+            this.burstOffsetMillis = emissionIntervalMillis * burst;
+        }
+
+        public static Rate of(int limit, long periodMillis) {
+            return new Rate(limit, periodMillis, limit);
+        }
+
+        public static Rate of(int limit, long periodMillis, int burst) {
+            return new Rate(limit, periodMillis, burst);
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        public long getPeriodMillis() {
+            return periodMillis;
+        }
+    }
+}
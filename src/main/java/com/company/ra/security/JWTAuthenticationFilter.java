@@ -2,12 +2,15 @@ package com.company.ra.security;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -15,6 +18,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import com.company.ra.service.JWTTokenService;
+import com.company.ra.service.VerifiedToken;
 
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -31,30 +35,35 @@ public class JWTAuthenticationFilter extends OncePerRequestFilter {
     private static final Logger logger = LoggerFactory.getLogger(JWTAuthenticationFilter.class);
     private static final String AUTHORIZATION_HEADER = "Authorization";
     private static final String BEARER_PREFIX = "Bearer ";
+    // Distinct role combinations are few; cap guards against pathological tokens
+    private static final int MAX_CACHED_ROLE_SETS = 256;
 
     @Autowired
     private JWTTokenService jwtTokenService;
 
+    private final WebAuthenticationDetailsSource authenticationDetailsSource = new WebAuthenticationDetailsSource();
+
+    // Immutable authority lists per role list, shared across requests
+    private final Map<List<String>, List<GrantedAuthority>> authoritiesByRoles = new ConcurrentHashMap<>();
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
                                    FilterChain filterChain) throws ServletException, IOException {
         try {
             String jwt = extractJwtFromRequest(request);
 
-            if (jwt != null && jwtTokenService.validateToken(jwt)) {
-                String username = jwtTokenService.extractUsername(jwt);
-                List<String> roles = jwtTokenService.extractRoles(jwt);
+            VerifiedToken verified = jwt != null ? jwtTokenService.verify(jwt) : null;
+
+            if (verified != null) {
+                String username = verified.getSubject();
 
                 if (username != null) {
-                    // Convert roles to authorities
-                    List<SimpleGrantedAuthority> authorities = roles.stream()
-                        .map(role -> new SimpleGrantedAuthority("ROLE_" + role))
-                        .collect(Collectors.toList());
+                    List<GrantedAuthority> authorities = authoritiesFor(verified.getRoles());
 
                     // Create authentication token
                     UsernamePasswordAuthenticationToken authentication =
                         new UsernamePasswordAuthenticationToken(username, null, authorities);
-                    authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                    authentication.setDetails(authenticationDetailsSource.buildDetails(request));
 
                     // Set authentication in security context
                     SecurityContextHolder.getContext().setAuthentication(authentication);
@@ -69,6 +78,25 @@ public class JWTAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    /**
+     * Convert roles to authorities, reusing the list built for the same roles before
+     *
+     * @param roles Role names from the token
+     * @return Immutable authority list
+     */
+    private List<GrantedAuthority> authoritiesFor(List<String> roles) {
+        List<GrantedAuthority> authorities = authoritiesByRoles.get(roles);
+        if (authorities == null) {
+            authorities = roles.stream()
+                .map(role -> new SimpleGrantedAuthority("ROLE_" + role))
+                .collect(Collectors.toUnmodifiableList());
+            if (authoritiesByRoles.size() < MAX_CACHED_ROLE_SETS) {
+                authoritiesByRoles.putIfAbsent(roles, authorities);
+            }
+        }
+        return authorities;
+    }
+
     /**
      * Extract JWT token from Authorization header
      *
@@ -0,0 +1,131 @@
+package com.company.ra.security;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Holds the active rate limit policies and the shared GCRA limiter
+ *
+ * Policies start from the "rate-limit" configuration. When
+ * rate-limit.policy-file is set, that YAML file is polled for changes and
+ * its policies, routes and default policy replace the active set without a
+ * restart. A file that fails to parse or compile is logged and ignored; the
+ * previous policies stay in force. Limiter state survives reloads.
+ */
+@Component
+public class RateLimitPolicyRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitPolicyRegistry.class);
+
+    private static final String PROPERTY_PREFIX = "rate-limit";
+
+    @Autowired
+    private RateLimitProperties properties;
+
+    private GcraRateLimiter rateLimiter;
+    private ScheduledExecutorService reloadExecutor;
+    private FileTime policyFileModified;
+
+    private volatile RoutePolicyTable table;
+
+    @PostConstruct
+    public void init() {
+        rateLimiter = new GcraRateLimiter(properties.getMaxTrackedClients());
+        table = RoutePolicyTable.compile(properties);
+
+        String policyFile = properties.getPolicyFile();
+        if (policyFile != null && !policyFile.isBlank()) {
+            reloadIfChanged();
+            long intervalMillis = properties.getReloadInterval().toMillis();
+            reloadExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "rate-limit-policy-reload");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reloadExecutor.scheduleWithFixedDelay(this::reloadIfChanged,
+                intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        logger.info("Rate limiting initialized: {} tracked clients, policy file: {}",
+            rateLimiter.capacity(), policyFile != null && !policyFile.isBlank() ? policyFile : "none");
+    }
+
+    /**
+     * Resolve the policy rule for a request
+     *
+     * @param method HTTP method
+     * @param path Request URI path
+     * @return Rule to charge, or null if the request is not rate limited
+     */
+    public RoutePolicyTable.Rule resolve(String method, String path) {
+        return table.resolve(method, path);
+    }
+
+    public GcraRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Reload the policy file if it was modified since the last load
+     *
+     * @return true if new policies were installed
+     */
+    boolean reloadIfChanged() {
+        try {
+            Path path = Paths.get(properties.getPolicyFile());
+            if (!Files.isRegularFile(path)) {
+                return false;
+            }
+            FileTime modified = Files.getLastModifiedTime(path);
+            if (modified.equals(policyFileModified)) {
+                return false;
+            }
+            policyFileModified = modified;
+
+            RateLimitProperties loaded = load(path);
+            table = RoutePolicyTable.compile(loaded);
+            logger.info("Rate limit policies reloaded from {}: {} policies, {} routes",
+                path, loaded.getPolicies().size(), loaded.getRoutes().size());
+            return true;
+
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to reload rate limit policies, keeping current policies: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private RateLimitProperties load(Path path) throws IOException {
+        List<PropertySource<?>> sources = new YamlPropertySourceLoader()
+            .load("rate-limit-policy", new FileSystemResource(path));
+        return new Binder(ConfigurationPropertySources.from(sources))
+            .bind(PROPERTY_PREFIX, RateLimitProperties.class)
+            .orElseGet(RateLimitProperties::new);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (reloadExecutor != null) {
+            reloadExecutor.shutdownNow();
+        }
+    }
+}
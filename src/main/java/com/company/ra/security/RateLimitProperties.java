@@ -0,0 +1,196 @@
+package com.company.ra.security;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rate limit policy configuration (prefix "rate-limit")
+ *
+ * Policies are named budgets; routes map a method and path pattern onto a
+ * policy with a per-request cost. Routes sharing a policy draw from the same
+ * budget, so an expensive endpoint can be given a higher cost than a cheap
+ * poll on the same allowance. Requests that match no route are charged 1
+ * against the default policy.
+ *
+ * The policies, routes and default policy can be overridden at runtime from
+ * the YAML file named by policy-file, which uses the same "rate-limit" layout.
+ */
+@Component
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitProperties {
+
+    // Maximum number of client keys tracked at once (8 bytes each)
+    private int maxTrackedClients = 65536;
+
+    // Optional external policy file, reloaded when it changes
+    private String policyFile;
+
+    private Duration reloadInterval = Duration.ofSeconds(10);
+
+    private String defaultPolicy = "standard";
+
+    private Map<String, Policy> policies = new LinkedHashMap<>();
+
+    private List<Route> routes = new ArrayList<>();
+
+    public int getMaxTrackedClients() {
+        return maxTrackedClients;
+    }
+
+    public void setMaxTrackedClients(int maxTrackedClients) {
+        this.maxTrackedClients = maxTrackedClients;
+    }
+
+    public String getPolicyFile() {
+        return policyFile;
+    }
+
+    public void setPolicyFile(String policyFile) {
+        this.policyFile = policyFile;
+    }
+
+    public Duration getReloadInterval() {
+        return reloadInterval;
+    }
+
+    public void setReloadInterval(Duration reloadInterval) {
+        this.reloadInterval = reloadInterval;
+    }
+
+    public String getDefaultPolicy() {
+        return defaultPolicy;
+    }
+
+    public void setDefaultPolicy(String defaultPolicy) {
+        this.defaultPolicy = defaultPolicy;
+    }
+
+    public Map<String, Policy> getPolicies() {
+        return policies;
+    }
+
+    public void setPolicies(Map<String, Policy> policies) {
+        this.policies = policies;
+    }
+
+    public List<Route> getRoutes() {
+        return routes;
+    }
+
+    public void setRoutes(List<Route> routes) {
+        this.routes = routes;
+    }
+
+    /**
+     * A named budget: limit cost units per period, up to burst at once
+     */
+    public static class Policy {
+
+        private int limit = 100;
+
+        private Duration period = Duration.ofMinutes(1);
+
+        // Defaults to limit when not set
+        private Integer burst;
+
+        public Policy() {
+        }
+
+        public Policy(int limit, Duration period, Integer burst) {
+            this.limit = limit;
+            this.period = period;
+            this.burst = burst;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public void setLimit(int limit) {
+            this.limit = limit;
+        }
+
+        public Duration getPeriod() {
+            return period;
+        }
+
+        public void setPeriod(Duration period) {
+            this.period = period;
+        }
+
+        public Integer getBurst() {
+            return burst;
+        }
+
+        public void setBurst(Integer burst) {
+            this.burst = burst;
+        }
+    }
+
+    /**
+     * A route pattern charged against a policy
+     *
+     * Patterns are matched segment by segment: "{name}" or "*" matches one
+     * segment, a trailing "**" matches any remainder. A blank method matches
+     * every method. A blank policy leaves the route unlimited.
+     */
+    public static class Route {
+
+        private String method;
+
+        private String pattern;
+
+        private String policy;
+
+        // At most the policy's burst, checked when the routes are compiled
+        private int cost = 1;
+
+        public Route() {
+        }
+
+        public Route(String method, String pattern, String policy, int cost) {
+            this.method = method;
+            this.pattern = pattern;
+            this.policy = policy;
+            this.cost = cost;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public void setMethod(String method) {
+            this.method = method;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public void setPattern(String pattern) {
+            this.pattern = pattern;
+        }
+
+        public String getPolicy() {
+            return policy;
+        }
+
+        public void setPolicy(String policy) {
+            this.policy = policy;
+        }
+
+        public int getCost() {
+            return cost;
+        }
+
+        public void setCost(int cost) {
+            this.cost = cost;
+        }
+    }
+}
@@ -3,11 +3,14 @@ package com.company.ra.security;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -19,25 +22,27 @@ import jakarta.servlet.http.HttpServletResponse;
 
 /**
  * Rate Limiting Filter
- * Implements simple token bucket rate limiting per IP address
+ * Implements GCRA rate limiting on a fixed-size, lock-free table
+ *
+ * Each request is charged the cost of its route against the route's policy.
+ * Authenticated requests are keyed by JWT subject, anonymous ones by client IP.
  */
 public class RateLimitingFilter extends OncePerRequestFilter {
 
     private static final Logger logger = LoggerFactory.getLogger(RateLimitingFilter.class);
 
-    // Maximum requests per time window
-    private static final int MAX_REQUESTS_PER_WINDOW = 100;
-    // Time window in milliseconds (1 minute)
-    private static final long TIME_WINDOW_MS = 60000;
+    private static final ObjectMapper objectMapper = new ObjectMapper();
 
-    // Storage for rate limit buckets
-    private final Map<String, RateLimitBucket> rateLimitBuckets = new ConcurrentHashMap<>();
+    private final RateLimitPolicyRegistry policyRegistry;
+
+    public RateLimitingFilter(RateLimitPolicyRegistry policyRegistry) {
+        this.policyRegistry = policyRegistry;
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
                                    FilterChain filterChain) throws ServletException, IOException {
 
-        String clientIp = getClientIpAddress(request);
         String requestUri = request.getRequestURI();
 
         // Skip rate limiting for health checks
@@ -46,26 +51,47 @@ public class RateLimitingFilter extends OncePerRequestFilter {
             return;
         }
 
-        RateLimitBucket bucket = rateLimitBuckets.computeIfAbsent(clientIp, k -> new RateLimitBucket());
+        RoutePolicyTable.Rule rule = policyRegistry.resolve(request.getMethod(), requestUri);
+        if (rule == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
 
-        if (bucket.tryConsume()) {
+        String scope;
+        String clientKey;
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken)) {
+            scope = rule.getPrincipalScope();
+            clientKey = authentication.getName();
+        } else {
+            scope = rule.getClientScope();
+            clientKey = getClientIpAddress(request);
+        }
+
+        long retryAfterMillis = policyRegistry.getRateLimiter()
+            .tryAcquire(scope, clientKey, rule.getRate(), rule.getCost());
+
+        if (retryAfterMillis == 0) {
             // Request allowed
             filterChain.doFilter(request, response);
         } else {
             // Rate limit exceeded
-            logger.warn("Rate limit exceeded for IP: {}, URI: {}", clientIp, requestUri);
+            logger.warn("Rate limit exceeded for {}: {}, policy: {}, URI: {}",
+                scope, clientKey, rule.getPolicy(), requestUri);
+            long retryAfterSeconds = Math.max(1, (retryAfterMillis + 999) / 1000);
 
             response.setContentType("application/json");
-            response.setStatus(HttpServletResponse.SC_MISDIRECTED_REQUEST);
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
 
             Map<String, Object> errorDetails = new HashMap<>();
             errorDetails.put("success", false);
             errorDetails.put("error", "Too Many Requests");
             errorDetails.put("message", "Rate limit exceeded. Please try again later.");
-            errorDetails.put("retryAfter", TIME_WINDOW_MS / 1000);
+            errorDetails.put("retryAfter", retryAfterSeconds);
 
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.writeValue(response.getOutputStream(), errorDetails);
+            objectMapper.writeValue(response.getOutputStream(), errorDetails);
         }
     }
 
@@ -85,44 +111,4 @@ public class RateLimitingFilter extends OncePerRequestFilter {
 
         return request.getRemoteAddr();
     }
-
-    /**
-     * Inner class representing a rate limit bucket
-     */
-    private static class RateLimitBucket {
-        private final AtomicInteger tokenCount;
-        private long lastRefillTimestamp;
-
-        public RateLimitBucket() {
-            this.tokenCount = new AtomicInteger(MAX_REQUESTS_PER_WINDOW);
-            this.lastRefillTimestamp = System.currentTimeMillis();
-        }
-
-        /**
-         * Try to consume a token from the bucket
-         *
-         * @return true if request allowed, false if rate limit exceeded
-         */
-        public synchronized boolean tryConsume() {
-            refillIfNeeded();
-
-            if (tokenCount.get() > 0) {
-                tokenCount.decrementAndGet();
-                return true;
-            }
-
-            return false;
-        }
-
-        /**
-         * Refill bucket if time window has elapsed
-         */
-        private void refillIfNeeded() {
-            long now = System.currentTimeMillis();
-            if (now - lastRefillTimestamp >= TIME_WINDOW_MS) {
-                tokenCount.set(MAX_REQUESTS_PER_WINDOW);
-                lastRefillTimestamp = now;
-            }
-        }
-    }
 }
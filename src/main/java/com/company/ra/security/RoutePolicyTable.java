@@ -0,0 +1,274 @@
+package com.company.ra.security;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable, precompiled route-to-policy lookup
+ *
+ * Route patterns are compiled into a path-segment trie. Matching walks the
+ * request URI in place, comparing segments with regionMatches, so a lookup
+ * allocates nothing. Literal segments win over single-segment wildcards,
+ * which win over a trailing "**"; among routes on the same pattern a
+ * method-specific route wins over a method-less one.
+ */
+public final class RoutePolicyTable {
+
+    private final Node root;
+    private final Rule defaultRule;
+
+    private RoutePolicyTable(Node root, Rule defaultRule) {
+        this.root = root;
+        this.defaultRule = defaultRule;
+    }
+
+    /**
+     * Compile a policy configuration
+     *
+     * @param properties Rate limit configuration
+     * @return Compiled table
+     * @throws IllegalArgumentException if a route is malformed, names an unknown policy or costs
+     *     more than its policy's burst
+     */
+    public static RoutePolicyTable compile(RateLimitProperties properties) {
+        Map<String, RateLimitProperties.Policy> policies = new LinkedHashMap<>(properties.getPolicies());
+        if (policies.isEmpty()) {
+            // Same budget the filter enforced before policies were configurable
+            policies.put("standard", new RateLimitProperties.Policy(100, Duration.ofMinutes(1), null));
+        }
+
+        Map<String, GcraRateLimiter.Rate> rates = new HashMap<>();
+        for (Map.Entry<String, RateLimitProperties.Policy> entry : policies.entrySet()) {
+            RateLimitProperties.Policy policy = entry.getValue();
+            int burst = policy.getBurst() != null ? policy.getBurst() : policy.getLimit();
+            rates.put(entry.getKey(), GcraRateLimiter.Rate.of(
+                policy.getLimit(), policy.getPeriod().toMillis(), burst));
+        }
+
+        NodeBuilder rootBuilder = new NodeBuilder();
+        for (RateLimitProperties.Route route : properties.getRoutes()) {
+            String pattern = route.getPattern();
+            if (pattern == null || !pattern.startsWith("/")) {
+                throw new IllegalArgumentException("Route pattern must start with '/': " + pattern);
+            }
+            if (route.getCost() <= 0) {
+                throw new IllegalArgumentException("Route cost must be positive: " + pattern);
+            }
+            Rule rule = newRule(route.getMethod(), route.getPolicy(), route.getCost(), rates);
+            if (rule.rate != null && route.getCost() > rule.rate.getBurst()) {
+                // Such a request could never be admitted
+                throw new IllegalArgumentException("Route cost " + route.getCost() + " exceeds the burst of policy '"
+                    + route.getPolicy() + "': " + pattern);
+            }
+
+            NodeBuilder node = rootBuilder;
+            String[] segments = pattern.substring(1).split("/", -1);
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i];
+                if (segment.isEmpty() && i == segments.length - 1) {
+                    break;  // trailing slash
+                }
+                if ("**".equals(segment)) {
+                    if (i != segments.length - 1) {
+                        throw new IllegalArgumentException("'**' is only allowed as the last segment: " + pattern);
+                    }
+                    node.remainderRules.add(rule);
+                    node = null;
+                    break;
+                }
+                if ("*".equals(segment) || (segment.startsWith("{") && segment.endsWith("}"))) {
+                    if (node.wildcard == null) {
+                        node.wildcard = new NodeBuilder();
+                    }
+                    node = node.wildcard;
+                } else {
+                    node = node.literals.computeIfAbsent(segment, s -> new NodeBuilder());
+                }
+            }
+            if (node != null) {
+                node.rules.add(rule);
+            }
+        }
+
+        String defaultPolicy = properties.getDefaultPolicy();
+        Rule defaultRule = null;
+        if (defaultPolicy != null && !defaultPolicy.isBlank()) {
+            defaultRule = newRule(null, defaultPolicy, 1, rates);
+        }
+
+        return new RoutePolicyTable(rootBuilder.build(), defaultRule);
+    }
+
+    /**
+     * Resolve the rule for a request
+     *
+     * @param method HTTP method
+     * @param path Request URI path (without query string)
+     * @return Matching rule, the default rule, or null if the request is unlimited
+     */
+    public Rule resolve(String method, String path) {
+        int start = path.startsWith("/") ? 1 : 0;
+        Rule rule = match(root, method, path, start);
+        if (rule == null) {
+            return defaultRule;
+        }
+        return rule.isUnlimited() ? null : rule;
+    }
+
+    private static Rule match(Node node, String method, String path, int position) {
+        int length = path.length();
+        if (position >= length) {
+            Rule rule = select(node.rules, method);
+            return rule != null ? rule : select(node.remainderRules, method);
+        }
+
+        int end = path.indexOf('/', position);
+        if (end < 0) {
+            end = length;
+        }
+        int segmentLength = end - position;
+        int next = end < length ? end + 1 : length;
+
+        String[] literals = node.literals;
+        for (int i = 0; i < literals.length; i++) {
+            String literal = literals[i];
+            if (literal.length() == segmentLength && path.regionMatches(position, literal, 0, segmentLength)) {
+                Rule rule = match(node.literalChildren[i], method, path, next);
+                if (rule != null) {
+                    return rule;
+                }
+                break;
+            }
+        }
+
+        if (node.wildcard != null) {
+            Rule rule = match(node.wildcard, method, path, next);
+            if (rule != null) {
+                return rule;
+            }
+        }
+
+        return select(node.remainderRules, method);
+    }
+
+    private static Rule select(Rule[] rules, String method) {
+        for (Rule rule : rules) {
+            if (rule.method == null || rule.method.equalsIgnoreCase(method)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private static Rule newRule(String method, String policy, int cost, Map<String, GcraRateLimiter.Rate> rates) {
+        String normalizedMethod = method == null || method.isBlank() ? null : method.trim().toUpperCase(Locale.ROOT);
+        if (policy == null || policy.isBlank()) {
+            return new Rule(normalizedMethod, null, null, cost);
+        }
+        GcraRateLimiter.Rate rate = rates.get(policy);
+        if (rate == null) {
+            throw new IllegalArgumentException("Unknown rate limit policy: " + policy);
+        }
+        return new Rule(normalizedMethod, policy, rate, cost);
+    }
+
+    /**
+     * A resolved route: which budget to charge and how much
+     */
+    public static final class Rule {
+        private final String method;
+        private final String policy;
+        private final GcraRateLimiter.Rate rate;
+        private final int cost;
+        private final String principalScope;
+        private final String clientScope;
+
+        private Rule(String method, String policy, GcraRateLimiter.Rate rate, int cost) {
+            this.method = method;
+            this.policy = policy;
+            this.rate = rate;
+            this.cost = cost;
+            // Precomputed so the filter never concatenates per request
+            this.principalScope = policy + ":principal";
+            this.clientScope = policy + ":client";
+        }
+
+        public String getPolicy() {
+            return policy;
+        }
+
+        public GcraRateLimiter.Rate getRate() {
+            return rate;
+        }
+
+        public int getCost() {
+            return cost;
+        }
+
+        public String getPrincipalScope() {
+            return principalScope;
+        }
+
+        public String getClientScope() {
+            return clientScope;
+        }
+
+        boolean isUnlimited() {
+            return rate == null;
+        }
+    }
+
+    private static final class Node {
+        private final String[] literals;
+        private final Node[] literalChildren;
+        private final Node wildcard;
+        private final Rule[] rules;
+        private final Rule[] remainderRules;
+
+        private Node(String[] literals, Node[] literalChildren, Node wildcard, Rule[] rules, Rule[] remainderRules) {
+            this.literals = literals;
+            this.literalChildren = literalChildren;
+            this.wildcard = wildcard;
+            this.rules = rules;
+            this.remainderRules = remainderRules;
+        }
+    }
+
+    private static final class NodeBuilder {
+        private final Map<String, NodeBuilder> literals = new LinkedHashMap<>();
+        private NodeBuilder wildcard;
+        private final List<Rule> rules = new ArrayList<>();
+        private final List<Rule> remainderRules = new ArrayList<>();
+
+        private Node build() {
+            String[] names = literals.keySet().toArray(new String[0]);
+            Node[] children = new Node[names.length];
+            for (int i = 0; i < names.length; i++) {
+                children[i] = literals.get(names[i]).build();
+            }
+            return new Node(names, children,
+                wildcard != null ? wildcard.build() : null,
+                byMethodSpecificity(rules), byMethodSpecificity(remainderRules));
+        }
+
+        private static Rule[] byMethodSpecificity(List<Rule> rules) {
+            List<Rule> ordered = new ArrayList<>(rules.size());
+            for (Rule rule : rules) {
+                if (rule.method != null) {
+                    ordered.add(rule);
+                }
+            }
+            for (Rule rule : rules) {
+                if (rule.method == null) {
+                    ordered.add(rule);
+                }
+            }
+            return ordered.toArray(new Rule[0]);
+        }
+    }
+}
@@ -31,6 +31,12 @@ public class SecurityConfig {
     @Autowired
     private JWTAuthenticationEntryPoint jwtAuthenticationEntryPoint;
 
+    @Autowired
+    private RateLimitPolicyRegistry rateLimitPolicyRegistry;
+
+    @Autowired
+    private ConcurrencyLimitRegistry concurrencyLimitRegistry;
+
     @Bean
     public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
         http
@@ -56,6 +62,10 @@ public class SecurityConfig {
                 .requestMatchers(HttpMethod.POST, "/api/v1/auth/challenge").permitAll()
                 .requestMatchers(HttpMethod.POST, "/api/v1/auth/login").permitAll()
                 .requestMatchers(HttpMethod.POST, "/api/v1/auth/verify").permitAll()
+                .requestMatchers(HttpMethod.POST, "/api/v1/auth/verify/batch").permitAll()
+
+                // Public signing keys for local token verification
+                .requestMatchers(HttpMethod.GET, "/.well-known/jwks.json").permitAll()
 
                 // AD user login endpoint
                 .requestMatchers(HttpMethod.POST, "/api/v1/ad-users/login").permitAll()
@@ -63,6 +73,9 @@ public class SecurityConfig {
                 // Health check endpoint
                 .requestMatchers(HttpMethod.GET, "/actuator/health").permitAll()
 
+                // AD attribute cache statistics and invalidation
+                .requestMatchers("/actuator/adusercache", "/actuator/adusercache/**").hasRole("RA_ADMIN")
+
                 // All other endpoints require authentication
                 .anyRequest().authenticated()
             );
@@ -71,7 +84,10 @@ public class SecurityConfig {
         http.addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
 
         // Add rate limiting filter
-        http.addFilterAfter(new RateLimitingFilter(), JWTAuthenticationFilter.class);
+        http.addFilterAfter(new RateLimitingFilter(rateLimitPolicyRegistry), JWTAuthenticationFilter.class);
+
+        // Add load shedding for expensive endpoints (after rate limiting, so rejected requests never hold a slot)
+        http.addFilterAfter(new ConcurrencyLimitFilter(concurrencyLimitRegistry), RateLimitingFilter.class);
 
         return http.build();
     }
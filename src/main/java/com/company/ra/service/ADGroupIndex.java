@@ -0,0 +1,354 @@
+package com.company.ra.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+
+import com.company.ra.config.ADGroupProperties;
+
+/**
+ * Group to role index with a cache of resolved group metadata
+ *
+ * The configured role mapping is compiled once into a map from lower-cased
+ * group key (name, DN or SID) to a role bitset, so mapping a user's groups
+ * is one hash lookup per group. Groups seen in tokenGroups are resolved
+ * from SID to name and DN once per cache TTL, in one batched search for
+ * all SIDs missing from the cache. SIDs that do not resolve (builtin or
+ * foreign groups) are cached too, and can still grant roles by SID.
+ */
+public class ADGroupIndex {
+
+    /**
+     * Directory lookup of groups by SID string, returning the groups found
+     */
+    @FunctionalInterface
+    public interface Resolver {
+        Collection<Group> resolve(Collection<String> sids) throws Exception;
+    }
+
+    private final List<String> roleNames;
+    private final Map<String, Long> roleBitsByKey;
+    private final String defaultRole;
+    private final long ttlMillis;
+    private final int maxSize;
+
+    private final Map<String, CachedGroup> groupsBySid = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ADGroupIndex(ADGroupProperties properties) {
+        Map<String, List<String>> roles = properties.getRoles().isEmpty()
+            ? ADGroupProperties.defaultRoles() : properties.getRoles();
+        if (roles.size() > Long.SIZE) {
+            throw new IllegalArgumentException("At most " + Long.SIZE + " roles can be mapped, got " + roles.size());
+        }
+
+        this.roleNames = new ArrayList<>(roles.keySet());
+        Map<String, Long> bitsByKey = new HashMap<>();
+        for (int i = 0; i < roleNames.size(); i++) {
+            long bit = 1L << i;
+            for (String group : roles.get(roleNames.get(i))) {
+                bitsByKey.merge(normalize(group), bit, (a, b) -> a | b);
+            }
+        }
+        this.roleBitsByKey = bitsByKey;
+        this.defaultRole = properties.getDefaultRole();
+        this.ttlMillis = properties.getCacheTtl().toMillis();
+        this.maxSize = Math.max(0, properties.getCacheMaxSize());
+    }
+
+    /**
+     * Resolve groups from tokenGroups SIDs, loading unknown SIDs in one call to the resolver
+     *
+     * @param sids Group SID strings
+     * @param resolver Directory lookup for SIDs missing from the cache
+     * @return Group names and role bits
+     * @throws Exception if the resolver failed
+     */
+    public Resolution resolve(Collection<String> sids, Resolver resolver) throws Exception {
+        long now = System.currentTimeMillis();
+        Map<String, CachedGroup> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String sid : sids) {
+            CachedGroup cached = groupsBySid.get(sid);
+            if (cached != null && now < cached.expiresAt) {
+                found.put(sid, cached);
+            } else {
+                missing.add(sid);
+            }
+        }
+        hits.add(found.size());
+        misses.add(missing.size());
+
+        if (!missing.isEmpty()) {
+            Map<String, Group> resolved = new HashMap<>();
+            for (Group group : resolver.resolve(missing)) {
+                resolved.put(group.getSid(), group);
+            }
+            long expiresAt = System.currentTimeMillis() + ttlMillis;
+            for (String sid : missing) {
+                Group group = resolved.get(sid);
+                CachedGroup cached = group != null
+                    ? new CachedGroup(group, roleBits(sid, group.getDn(), group.getName()), expiresAt)
+                    : new CachedGroup(null, roleBits(sid, null, null), expiresAt);
+                put(sid, cached);
+                found.put(sid, cached);
+            }
+        }
+
+        Set<String> names = new LinkedHashSet<>();
+        long bits = 0;
+        for (CachedGroup cached : found.values()) {
+            if (cached.group != null && cached.group.getName() != null) {
+                names.add(cached.group.getName());
+            }
+            bits |= cached.roleBits;
+        }
+        return new Resolution(names, bits, !sids.isEmpty());
+    }
+
+    /**
+     * Resolve groups from memberOf DNs; no directory access
+     *
+     * @param groupDns Group distinguished names
+     * @return Group names and role bits
+     */
+    public Resolution resolveDns(Collection<String> groupDns) {
+        Set<String> names = new LinkedHashSet<>();
+        long bits = 0;
+        for (String dn : groupDns) {
+            String name = groupName(dn);
+            names.add(name);
+            bits |= roleBits(null, dn, name);
+        }
+        return new Resolution(names, bits, !groupDns.isEmpty());
+    }
+
+    /**
+     * Compute the role bits granted by a group
+     *
+     * @param sid Group SID string, or null
+     * @param dn Group distinguished name, or null
+     * @param name Group name, or null
+     * @return Role bits
+     */
+    long roleBits(String sid, String dn, String name) {
+        long bits = 0;
+        for (String key : new String[] {sid, dn, name}) {
+            if (key != null) {
+                bits |= roleBitsByKey.getOrDefault(normalize(key), 0L);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Expand role bits into role names in configuration order
+     *
+     * @param bits Role bits
+     * @param member Whether the user belongs to any group (grants the default role)
+     * @return Role names
+     */
+    public List<String> roles(long bits, boolean member) {
+        List<String> roles = new ArrayList<>();
+        for (int i = 0; i < roleNames.size(); i++) {
+            if ((bits & (1L << i)) != 0) {
+                roles.add(roleNames.get(i));
+            }
+        }
+        if ((member || !roles.isEmpty()) && defaultRole != null && !defaultRole.isEmpty()) {
+            roles.add(defaultRole);
+        }
+        return roles;
+    }
+
+    /**
+     * Drop all cached group metadata, e.g. after groups were renamed
+     */
+    public void invalidateAll() {
+        groupsBySid.clear();
+    }
+
+    public int size() {
+        return groupsBySid.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Extract the group name (leading RDN value) from a DN, honouring escaped commas
+     *
+     * @param dn Distinguished name
+     * @return Name, or the DN itself if it does not parse
+     */
+    static String groupName(String dn) {
+        try {
+            LdapName name = new LdapName(dn);
+            if (name.isEmpty()) {
+                return dn;
+            }
+            Rdn rdn = name.getRdn(name.size() - 1);
+            return rdn.getValue().toString();
+        } catch (InvalidNameException e) {
+            return dn;
+        }
+    }
+
+    /**
+     * Format a binary SID as a SID string (S-1-5-21-...)
+     *
+     * @param sid Binary SID
+     * @return SID string
+     */
+    static String formatSid(byte[] sid) {
+        StringBuilder sb = new StringBuilder("S-").append(sid[0] & 0xff);
+        long authority = 0;
+        for (int i = 2; i < 8; i++) {
+            authority = (authority << 8) | (sid[i] & 0xff);
+        }
+        sb.append('-').append(authority);
+        int count = sid[1] & 0xff;
+        for (int i = 0; i < count; i++) {
+            int offset = 8 + 4 * i;
+            long subAuthority = (sid[offset] & 0xffL)
+                | (sid[offset + 1] & 0xffL) << 8
+                | (sid[offset + 2] & 0xffL) << 16
+                | (sid[offset + 3] & 0xffL) << 24;
+            sb.append('-').append(subAuthority);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Encode a SID string as an escaped binary value for an LDAP filter
+     *
+     * @param sid SID string
+     * @return Filter value such as \01\05\00...
+     */
+    static String sidFilterValue(String sid) {
+        String[] parts = sid.split("-");
+        int count = parts.length - 3;
+        StringBuilder sb = new StringBuilder();
+        appendByte(sb, Integer.parseInt(parts[1]));
+        appendByte(sb, count);
+        long authority = Long.parseLong(parts[2]);
+        for (int i = 5; i >= 0; i--) {
+            appendByte(sb, (int) (authority >>> (8 * i)));
+        }
+        for (int i = 0; i < count; i++) {
+            long subAuthority = Long.parseLong(parts[3 + i]);
+            for (int b = 0; b < 4; b++) {
+                appendByte(sb, (int) (subAuthority >>> (8 * b)));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendByte(StringBuilder sb, int value) {
+        sb.append('\\').append(Character.forDigit((value >> 4) & 0xf, 16)).append(Character.forDigit(value & 0xf, 16));
+    }
+
+    private void put(String sid, CachedGroup cached) {
+        if (maxSize == 0) {
+            return;
+        }
+        if (groupsBySid.size() >= maxSize && !groupsBySid.containsKey(sid)) {
+            long now = System.currentTimeMillis();
+            groupsBySid.values().removeIf(entry -> now >= entry.expiresAt);
+            if (groupsBySid.size() >= maxSize) {
+                groupsBySid.clear();
+            }
+        }
+        groupsBySid.put(sid, cached);
+    }
+
+    private static String normalize(String key) {
+        return key.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * A directory group
+     */
+    public static final class Group {
+        private final String sid;
+        private final String dn;
+        private final String name;
+
+        public Group(String sid, String dn, String name) {
+            this.sid = sid;
+            this.dn = dn;
+            this.name = name;
+        }
+
+        public String getSid() {
+            return sid;
+        }
+
+        public String getDn() {
+            return dn;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * Groups of one user: names and the role bits they grant
+     */
+    public static final class Resolution {
+        private final Set<String> groupNames;
+        private final long roleBits;
+        private final boolean member;
+
+        private Resolution(Set<String> groupNames, long roleBits, boolean member) {
+            this.groupNames = Collections.unmodifiableSet(groupNames);
+            this.roleBits = roleBits;
+            this.member = member;
+        }
+
+        public Set<String> getGroupNames() {
+            return groupNames;
+        }
+
+        public long getRoleBits() {
+            return roleBits;
+        }
+
+        public boolean isMember() {
+            return member;
+        }
+    }
+
+    private static final class CachedGroup {
+        // Null for SIDs not found in the directory
+        private final Group group;
+        private final long roleBits;
+        private final long expiresAt;
+
+        private CachedGroup(Group group, long roleBits, long expiresAt) {
+            this.group = group;
+            this.roleBits = roleBits;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.company.ra.service;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.company.ra.dto.ADUserAttributes;
+
+/**
+ * Bounded near-cache of AD user attributes keyed by normalized username
+ *
+ * - Found users are kept for the TTL. Unknown or disabled users are
+ *   negatively cached for the shorter negative TTL.
+ * - Concurrent misses for one user share a single directory load
+ *   (single-flight). Load failures are never cached.
+ * - A hit within the refresh-ahead window before expiry triggers one
+ *   background reload, so hot users do not see a miss.
+ * - Callers needing fresher data (e.g. the account-disabled check at
+ *   login) pass a max age, and older entries are reloaded.
+ *
+ * Cached instances are shared; callers must treat them as read-only.
+ */
+public class ADUserAttributesCache {
+
+    /**
+     * Directory lookup returning null for unknown or disabled users
+     */
+    @FunctionalInterface
+    public interface Loader {
+        ADUserAttributes load(String username) throws Exception;
+    }
+
+    private final Loader loader;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final long refreshAheadMillis;
+    private final int maxSize;
+    private final Executor refreshExecutor;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Entry>> loads = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadCount = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+
+    /**
+     * @param loader Directory lookup
+     * @param ttl Lifetime of found users
+     * @param negativeTtl Lifetime of unknown or disabled users
+     * @param refreshAhead Window before expiry in which a hit triggers a background reload
+     * @param maxSize Maximum cached users (0 disables caching)
+     * @param refreshExecutor Executor for refresh-ahead loads
+     */
+    public ADUserAttributesCache(Loader loader, Duration ttl, Duration negativeTtl, Duration refreshAhead,
+                                 int maxSize, Executor refreshExecutor) {
+        this.loader = loader;
+        this.ttlMillis = ttl.toMillis();
+        this.negativeTtlMillis = negativeTtl.toMillis();
+        this.refreshAheadMillis = Math.min(refreshAhead.toMillis(), ttlMillis);
+        this.maxSize = Math.max(0, maxSize);
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Get user attributes, loading them on a miss
+     *
+     * @param username Username (userPrincipalName or sAMAccountName)
+     * @return ADUserAttributes or null if the user is unknown or disabled
+     * @throws Exception if the directory lookup failed
+     */
+    public ADUserAttributes get(String username) throws Exception {
+        return get(username, null);
+    }
+
+    /**
+     * Get user attributes no older than maxAge, loading them otherwise
+     *
+     * @param username Username (userPrincipalName or sAMAccountName)
+     * @param maxAge Maximum entry age, or null for the normal TTL
+     * @return ADUserAttributes or null if the user is unknown or disabled
+     * @throws Exception if the directory lookup failed
+     */
+    public ADUserAttributes get(String username, Duration maxAge) throws Exception {
+        if (maxSize == 0) {
+            return loader.load(username);
+        }
+
+        String key = normalize(username);
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(key);
+        if (entry != null && now < entry.expiresAt
+                && (maxAge == null || now - entry.loadedAt <= maxAge.toMillis())) {
+            hits.increment();
+            if (entry.value != null && now >= entry.expiresAt - refreshAheadMillis) {
+                refreshAsync(key, username);
+            }
+            return entry.value;
+        }
+
+        misses.increment();
+        return load(key, username).value;
+    }
+
+    /**
+     * Drop one user, e.g. after a directory change made through the RA
+     *
+     * @param username Username
+     */
+    public void invalidate(String username) {
+        entries.remove(normalize(username));
+    }
+
+    /**
+     * Drop all cached users
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getLoads() {
+        return loadCount.sum();
+    }
+
+    public long getLoadFailures() {
+        return loadFailures.sum();
+    }
+
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    /**
+     * Get total time spent in directory loads
+     *
+     * @return Load time in nanoseconds
+     */
+    public long getTotalLoadNanos() {
+        return loadNanos.sum();
+    }
+
+    private Entry load(String key, String username) throws Exception {
+        CompletableFuture<Entry> pending = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = loads.putIfAbsent(key, pending);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            Entry entry = loadEntry(username);
+            put(key, entry);
+            pending.complete(entry);
+            return entry;
+        } catch (Exception e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(key, pending);
+        }
+    }
+
+    private void refreshAsync(String key, String username) {
+        CompletableFuture<Entry> pending = new CompletableFuture<>();
+        if (loads.putIfAbsent(key, pending) != null) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    Entry entry = loadEntry(username);
+                    put(key, entry);
+                    refreshes.increment();
+                    pending.complete(entry);
+                } catch (Exception e) {
+                    // Keep serving the current entry until it expires
+                    pending.completeExceptionally(e);
+                } finally {
+                    loads.remove(key, pending);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loads.remove(key, pending);
+            pending.cancel(false);
+        }
+    }
+
+    private Entry loadEntry(String username) throws Exception {
+        long start = System.nanoTime();
+        try {
+            ADUserAttributes value = loader.load(username);
+            loadCount.increment();
+            long now = System.currentTimeMillis();
+            return new Entry(value, now, now + (value != null ? ttlMillis : negativeTtlMillis));
+        } catch (Exception e) {
+            loadFailures.increment();
+            throw e;
+        } finally {
+            loadNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private static Entry await(CompletableFuture<Entry> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void put(String key, Entry entry) {
+        if (entries.size() >= maxSize && !entries.containsKey(key)) {
+            makeRoom();
+        }
+        entries.put(key, entry);
+    }
+
+    private void makeRoom() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> now >= entry.expiresAt);
+
+        int excess = entries.size() - maxSize + Math.max(1, maxSize / 8);
+        Iterator<String> keys = entries.keySet().iterator();
+        while (excess-- > 0 && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private static String normalize(String username) {
+        return username.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Entry {
+        // Null for unknown or disabled users
+        private final ADUserAttributes value;
+        private final long loadedAt;
+        private final long expiresAt;
+
+        private Entry(ADUserAttributes value, long loadedAt, long expiresAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -1,8 +1,20 @@
 package com.company.ra.service;
 
+import com.company.ra.config.ADGroupProperties;
+import com.company.ra.config.DirectoryFederation;
+import com.company.ra.config.LdapOperationGovernor;
+import com.company.ra.config.PooledLdapContextSource;
 import com.company.ra.dto.ADUserAttributes;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -12,10 +24,17 @@ import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
-import javax.naming.Context;
+import javax.naming.CommunicationException;
 import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
 import javax.naming.directory.*;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Service for Active Directory integration
@@ -30,17 +49,131 @@ public class ActiveDirectoryService {
     private static final int PBKDF2_ITERATIONS = 10000;
     private static final int KEY_LENGTH = 256;
 
-    @Value("${ad.url:ldap://localhost:389}")
-    private String adUrl;
+    // Group SIDs per search when resolving tokenGroups
+    private static final int GROUP_SID_BATCH = 100;
+
+    // Everything the RA reads from a user entry, fetched in the same search that finds it
+    static final String[] USER_ATTRIBUTES = {
+        "cn", "mail", "userPrincipalName", "sAMAccountName",
+        "ou", "o", "c", "memberOf", "userAccountControl"
+    };
 
     @Value("${ad.baseDn:DC=company,DC=com}")
     private String baseDn;
 
-    @Value("${ad.serviceAccount.username}")
-    private String serviceUsername;
+    @Autowired
+    private PooledLdapContextSource contextSource;
+
+    @Autowired
+    private DirectoryReplicaService directoryReplicaService;
+
+    @Autowired
+    private ADGroupProperties groupProperties;
+
+    // Other AD forests; when configured, users are looked up there instead of at ad.url
+    @Autowired(required = false)
+    private DirectoryFederation directoryFederation;
+
+    // Outbound rate limit shared with the other directory clients
+    @Autowired(required = false)
+    private LdapOperationGovernor ldapOperationGovernor = LdapOperationGovernor.unlimited();
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final LongAdder searchOperations = new LongAdder();
+    private final LongAdder logins = new LongAdder();
+    private final LongAdder loginOperations = new LongAdder();
+
+    // Operations issued by the current call on this thread
+    private final ThreadLocal<int[]> operationsInCall = ThreadLocal.withInitial(() -> new int[1]);
+
+    private DistributionSummary operationsPerLogin;
+
+    @Value("${ad.cache.max-size:10000}")
+    private int cacheMaxSize;
+
+    @Value("${ad.cache.ttl:5m}")
+    private Duration cacheTtl;
 
-    @Value("${ad.serviceAccount.password}")
-    private String servicePassword;
+    @Value("${ad.cache.negative-ttl:30s}")
+    private Duration cacheNegativeTtl;
+
+    @Value("${ad.cache.refresh-ahead:1m}")
+    private Duration cacheRefreshAhead;
+
+    // Maximum age of cached attributes used to authenticate a login
+    @Value("${ad.cache.auth-max-age:1m}")
+    private Duration authMaxAge;
+
+    private ThreadPoolExecutor cacheRefreshExecutor;
+
+    private ADUserAttributesCache userCache;
+
+    private ADGroupIndex groupIndex;
+
+    @PostConstruct
+    public void init() {
+        groupIndex = new ADGroupIndex(groupProperties);
+        cacheRefreshExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(256), runnable -> {
+                Thread thread = new Thread(LdapOperationGovernor.background(runnable), "ad-cache-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+        userCache = new ADUserAttributesCache(this::loadUser, cacheTtl, cacheNegativeTtl,
+            cacheRefreshAhead, cacheMaxSize, cacheRefreshExecutor);
+
+        if (meterRegistry != null) {
+            Gauge.builder("ra.ad.cache.size", userCache, ADUserAttributesCache::size)
+                .description("Users held in the AD attribute near-cache")
+                .register(meterRegistry);
+            FunctionCounter.builder("ra.ad.cache.requests", userCache, ADUserAttributesCache::getHits)
+                .tag("result", "hit")
+                .description("AD attribute cache lookups")
+                .register(meterRegistry);
+            FunctionCounter.builder("ra.ad.cache.requests", userCache, ADUserAttributesCache::getMisses)
+                .tag("result", "miss")
+                .description("AD attribute cache lookups")
+                .register(meterRegistry);
+            FunctionCounter.builder("ra.ad.cache.refreshes", userCache, ADUserAttributesCache::getRefreshes)
+                .description("Background refresh-ahead loads")
+                .register(meterRegistry);
+            FunctionCounter.builder("ra.ad.cache.load.failures", userCache, ADUserAttributesCache::getLoadFailures)
+                .description("Directory loads that failed and were not cached")
+                .register(meterRegistry);
+            FunctionTimer.builder("ra.ad.cache.load", userCache,
+                    cache -> cache.getLoads() + cache.getLoadFailures(),
+                    ADUserAttributesCache::getTotalLoadNanos, TimeUnit.NANOSECONDS)
+                .description("Directory loads behind the AD attribute cache")
+                .register(meterRegistry);
+            Gauge.builder("ra.ad.groups.cache.size", groupIndex, ADGroupIndex::size)
+                .description("Groups held in the SID to group metadata cache")
+                .register(meterRegistry);
+            FunctionCounter.builder("ra.ad.groups.cache.requests", groupIndex, ADGroupIndex::getHits)
+                .tag("result", "hit")
+                .description("Group SID lookups")
+                .register(meterRegistry);
+            FunctionCounter.builder("ra.ad.groups.cache.requests", groupIndex, ADGroupIndex::getMisses)
+                .tag("result", "miss")
+                .description("Group SID lookups")
+                .register(meterRegistry);
+            FunctionCounter.builder("ra.ldap.operations", searchOperations, LongAdder::sum)
+                .tag("operation", "search")
+                .description("LDAP operations issued by the RA directory client")
+                .register(meterRegistry);
+            operationsPerLogin = DistributionSummary.builder("ra.ldap.operations.per.login")
+                .description("LDAP operations issued for one login")
+                .register(meterRegistry);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (cacheRefreshExecutor != null) {
+            cacheRefreshExecutor.shutdownNow();
+        }
+    }
 
     /**
      * Authenticate user against Active Directory using challenge-response
@@ -50,79 +183,74 @@ public class ActiveDirectoryService {
      * 2. RA checks if username exists in Active Directory
      * 3. If user exists and is active, authentication is successful
      *
+     * The directory entry is fetched with a single search (or taken from the
+     * near-cache) and returned, so the caller can issue the token without
+     * asking AD again.
+     *
      * @param username Username (userPrincipalName)
      * @param encryptedResponse Base64-encoded encrypted response (not validated in this simplified approach)
      * @param challenge Original challenge bytes (not validated in this simplified approach)
      * @param salt Salt used for PBKDF2 (not used in this simplified approach)
-     * @return true if authentication successful
+     * @return User attributes if authentication successful, null otherwise
+     * @throws ServiceUnavailableException if the directory could not answer, so the login was not decided
      */
-    public boolean authenticate(String username, String encryptedResponse,
-                               byte[] challenge, byte[] salt) {
+    public ADUserAttributes authenticate(String username, String encryptedResponse,
+                                         byte[] challenge, byte[] salt) throws ServiceUnavailableException {
+        int[] operations = operationsInCall.get();
+        operations[0] = 0;
         try {
             logger.debug("Authenticating user against AD: {}", username);
 
-            // Check if username exists in Active Directory
-            String userDn = getUserDN(username);
-            if (userDn == null) {
-                logger.warn("User not found in AD: {}", username);
-                return false;
-            }
-
-            // Verify user exists and is active (not locked/disabled)
-            ADUserAttributes userAttrs = getUserDetailsInternal(userDn);
+            // Check that the user exists in Active Directory and is active (not locked/disabled);
+            // cached entries older than the auth max age are re-read so a disabled account
+            // cannot log in for longer than that window
+            ADUserAttributes userAttrs = userCache.get(username, authMaxAge);
             if (userAttrs == null) {
-                logger.warn("Failed to retrieve user details from AD: {}", username);
-                return false;
+                logger.warn("User not found or not active in AD: {}", username);
+                return null;
             }
 
             // If we reach here, user exists in AD and is active
             logger.info("User authenticated successfully against AD: {}", username);
-            return true;
+            return userAttrs;
 
         } catch (Exception e) {
+            if (isUnavailable(e)) {
+                logger.warn("Directory unavailable during AD authentication for user: {}: {}", username, e.getMessage());
+                throw unavailable(e);
+            }
             logger.error("Error during AD authentication for user: {}", username, e);
-            return false;
+            return null;
+        } finally {
+            logins.increment();
+            loginOperations.add(operations[0]);
+            if (operationsPerLogin != null) {
+                operationsPerLogin.record(operations[0]);
+            }
+            logger.debug("LDAP operations for login of {}: {}", username, operations[0]);
         }
     }
 
     /**
-     * Get user's Distinguished Name (DN) from username
+     * Check whether a lookup failed because the directory could not answer rather than because of the user
      *
-     * @param username Username (userPrincipalName or sAMAccountName)
-     * @return User DN or null if not found
+     * @param e Lookup failure
+     * @return true for connection failures and unavailable directories
      */
-    private String getUserDN(String username) {
-        DirContext context = null;
-        try {
-            context = createServiceContext();
-
-            SearchControls searchControls = new SearchControls();
-            searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
-            searchControls.setReturningAttributes(new String[]{"distinguishedName"});
-
-            String searchFilter = String.format(
-                "(|(userPrincipalName=%s)(sAMAccountName=%s))",
-                escapeLDAPSearchFilter(username),
-                escapeLDAPSearchFilter(username)
-            );
-
-            NamingEnumeration<SearchResult> results = context.search(baseDn, searchFilter, searchControls);
-
-            if (results.hasMore()) {
-                SearchResult result = results.next();
-                String dn = result.getNameInNamespace();
-                logger.debug("Found user DN: {}", dn);
-                return dn;
-            }
-
-            return null;
+    static boolean isUnavailable(Exception e) {
+        return e instanceof ServiceUnavailableException
+            || e instanceof CommunicationException
+            || e instanceof org.springframework.ldap.ServiceUnavailableException
+            || e instanceof org.springframework.ldap.CommunicationException;
+    }
 
-        } catch (Exception e) {
-            logger.error("Error searching for user DN: {}", username, e);
-            return null;
-        } finally {
-            closeContext(context);
+    private static ServiceUnavailableException unavailable(Exception e) {
+        if (e instanceof ServiceUnavailableException unavailable) {
+            return unavailable;
         }
+        ServiceUnavailableException exception = new ServiceUnavailableException("Directory unavailable: " + e.getMessage());
+        exception.setRootCause(e);
+        return exception;
     }
 
     /**
@@ -133,13 +261,11 @@ public class ActiveDirectoryService {
      */
     public ADUserAttributes getUserDetails(String username) {
         try {
-            String userDn = getUserDN(username);
-            if (userDn == null) {
-                logger.warn("User not found in AD: {}", username);
-                return null;
+            ADUserAttributes userAttrs = userCache.get(username);
+            if (userAttrs == null) {
+                logger.warn("User not found or not active in AD: {}", username);
             }
-
-            return getUserDetailsInternal(userDn);
+            return userAttrs;
 
         } catch (Exception e) {
             logger.error("Error retrieving user details from AD: {}", username, e);
@@ -148,85 +274,208 @@ public class ActiveDirectoryService {
     }
 
     /**
-     * Get user details using DN
+     * Get the number of LDAP operations issued so far
      *
-     * @param userDn User Distinguished Name
-     * @return ADUserAttributes or null
+     * @return Operation count
+     */
+    public long getOperationCount() {
+        return searchOperations.sum();
+    }
+
+    /**
+     * Get the average number of LDAP operations per login
+     *
+     * @return Operations per login, 0 before the first login
+     */
+    public double getOperationsPerLogin() {
+        long count = logins.sum();
+        return count == 0 ? 0 : (double) loginOperations.sum() / count;
+    }
+
+    /**
+     * Drop a user from the near-cache so the next lookup reads AD
+     *
+     * @param username Username
+     */
+    public void invalidateUser(String username) {
+        userCache.invalidate(username);
+    }
+
+    /**
+     * Drop all users from the near-cache
+     */
+    public void invalidateAllUsers() {
+        userCache.invalidateAll();
+    }
+
+    /**
+     * Get the user attribute near-cache (statistics, actuator)
+     *
+     * @return Cache
+     */
+    public ADUserAttributesCache getUserCache() {
+        return userCache;
+    }
+
+    /**
+     * Load a user from the local replica while it is fresh, else from the directory
+     *
+     * @param username Username (userPrincipalName or sAMAccountName)
+     * @return ADUserAttributes or null if not found or disabled
+     * @throws Exception if the directory could not be searched
      */
-    private ADUserAttributes getUserDetailsInternal(String userDn) {
+    private ADUserAttributes loadUser(String username) throws Exception {
+        if (directoryReplicaService.isFresh()) {
+            DirectoryReplicaService.ReplicaUser replicaUser = directoryReplicaService.findUser(username);
+            if (replicaUser != null) {
+                return replicaUser.isEnabled() ? replicaUser.getAttributes() : null;
+            }
+            // Not replicated under this name (e.g. sAMAccountName login for a UPN row)
+        }
+        return lookupUser(username);
+    }
+
+    /**
+     * Find an active user and all attributes the RA needs with one subtree search
+     *
+     * With a federated directory, a UPN is looked up in the forest owning its
+     * suffix; other names are searched in all forests in parallel.
+     *
+     * @param username Username (userPrincipalName or sAMAccountName)
+     * @return ADUserAttributes or null if not found or disabled
+     * @throws Exception if the directory could not be searched
+     */
+    private ADUserAttributes lookupUser(String username) throws Exception {
+        if (directoryFederation != null && !directoryFederation.isEmpty()) {
+            return directoryFederation.findFirst(username,
+                (forest, context) -> lookupUser(context, forest.getBaseDn(), username));
+        }
+
         DirContext context = null;
         try {
             context = createServiceContext();
+            return lookupUser(context, baseDn, username);
+        } finally {
+            closeContext(context);
+        }
+    }
 
-            Attributes attributes = context.getAttributes(userDn, new String[]{
-                "cn", "mail", "userPrincipalName", "sAMAccountName",
-                "ou", "o", "c", "memberOf", "userAccountControl"
-            });
+    /**
+     * Search one directory for an active user
+     *
+     * @param context Directory context
+     * @param base Search base
+     * @param username Username (userPrincipalName or sAMAccountName)
+     * @return ADUserAttributes or null if not found or disabled
+     * @throws Exception if the directory could not be searched
+     */
+    private ADUserAttributes lookupUser(DirContext context, String base, String username) throws Exception {
+        SearchControls searchControls = new SearchControls();
+        searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        searchControls.setReturningAttributes(USER_ATTRIBUTES);
+
+        String searchFilter = String.format(
+            "(|(userPrincipalName=%s)(sAMAccountName=%s))",
+            escapeLDAPSearchFilter(username),
+            escapeLDAPSearchFilter(username)
+        );
+
+        startSearch();
+        NamingEnumeration<SearchResult> results = context.search(base, searchFilter, searchControls);
+        try {
+            if (!results.hasMore()) {
+                return null;
+            }
+            SearchResult result = results.next();
+            String dn = result.getNameInNamespace();
+            logger.debug("Found user DN: {}", dn);
+            ADUserAttributes userAttrs = toUserAttributes(dn, result.getAttributes());
+            if (isDisabled(result.getAttributes())) {
+                logger.warn("User account is disabled: {}", userAttrs.getUsername());
+                return null;
+            }
+            resolveNestedGroups(context, base, userAttrs);
+            return userAttrs;
+        } finally {
+            results.close();
+        }
+    }
 
-            ADUserAttributes userAttrs = new ADUserAttributes();
+    /**
+     * Build user details from a directory entry
+     *
+     * @param userDn User Distinguished Name
+     * @param attributes Entry attributes
+     * @return ADUserAttributes, also for disabled accounts
+     */
+    ADUserAttributes toUserAttributes(String userDn, Attributes attributes) throws NamingException {
+        ADUserAttributes userAttrs = new ADUserAttributes();
 
-            // Common Name
-            Attribute cnAttr = attributes.get("cn");
-            if (cnAttr != null) {
-                userAttrs.setCommonName((String) cnAttr.get());
-            }
+        // Common Name
+        Attribute cnAttr = attributes.get("cn");
+        if (cnAttr != null) {
+            userAttrs.setCommonName((String) cnAttr.get());
+        }
 
-            // Email
-            Attribute mailAttr = attributes.get("mail");
-            if (mailAttr != null) {
-                userAttrs.setEmail((String) mailAttr.get());
-            }
+        // Email
+        Attribute mailAttr = attributes.get("mail");
+        if (mailAttr != null) {
+            userAttrs.setEmail((String) mailAttr.get());
+        }
 
-            // Username
-            Attribute upnAttr = attributes.get("userPrincipalName");
-            if (upnAttr != null) {
-                userAttrs.setUsername((String) upnAttr.get());
-            } else {
-                Attribute samAttr = attributes.get("sAMAccountName");
-                if (samAttr != null) {
-                    userAttrs.setUsername((String) samAttr.get());
-                }
+        // Username
+        Attribute upnAttr = attributes.get("userPrincipalName");
+        if (upnAttr != null) {
+            userAttrs.setUsername((String) upnAttr.get());
+        } else {
+            Attribute samAttr = attributes.get("sAMAccountName");
+            if (samAttr != null) {
+                userAttrs.setUsername((String) samAttr.get());
             }
+        }
 
-            // Parse DN for organizational info
-            parseDNAttributes(userDn, userAttrs);
-
-            // Get group memberships
-            Attribute memberOfAttr = attributes.get("memberOf");
-            if (memberOfAttr != null) {
-                Set<String> groups = new HashSet<>();
-                NamingEnumeration<?> memberOfEnum = memberOfAttr.getAll();
-                while (memberOfEnum.hasMore()) {
-                    String groupDn = (String) memberOfEnum.next();
-                    String groupName = extractCNFromDN(groupDn);
-                    groups.add(groupName);
-                }
-                userAttrs.setAdGroups(groups);
-            }
+        // Parse DN for organizational info
+        parseDNAttributes(userDn, userAttrs);
 
-            // Map AD groups to application roles
-            userAttrs.setRoles(mapGroupsToRoles(userAttrs.getAdGroups()));
-
-            // Check if account is enabled
-            Attribute uacAttr = attributes.get("userAccountControl");
-            if (uacAttr != null) {
-                int uac = Integer.parseInt((String) uacAttr.get());
-                boolean isDisabled = (uac & 0x0002) != 0;
-                if (isDisabled) {
-                    logger.warn("User account is disabled: {}", userAttrs.getUsername());
-                    return null;
-                }
+        // Direct group memberships
+        List<String> groupDns = new ArrayList<>();
+        Attribute memberOfAttr = attributes.get("memberOf");
+        if (memberOfAttr != null) {
+            NamingEnumeration<?> memberOfEnum = memberOfAttr.getAll();
+            while (memberOfEnum.hasMore()) {
+                groupDns.add((String) memberOfEnum.next());
             }
+        }
+        ADGroupIndex.Resolution groups = groupIndex.resolveDns(groupDns);
+        userAttrs.setAdGroups(new HashSet<>(groups.getGroupNames()));
+        userAttrs.setRoles(groupIndex.roles(groups.getRoleBits(), groups.isMember()));
 
-            logger.debug("Retrieved user details from AD: {}", userAttrs.getUsername());
-            return userAttrs;
+        logger.debug("Retrieved user details from AD: {}", userAttrs.getUsername());
+        return userAttrs;
+    }
 
-        } catch (Exception e) {
-            logger.error("Error retrieving user details from AD for DN: {}", userDn, e);
-            return null;
-        } finally {
-            closeContext(context);
+    /**
+     * Check the ACCOUNTDISABLE bit of userAccountControl
+     *
+     * @param attributes Entry attributes
+     * @return true if the account is disabled
+     */
+    static boolean isDisabled(Attributes attributes) throws NamingException {
+        Attribute uacAttr = attributes.get("userAccountControl");
+        if (uacAttr == null) {
+            return false;
         }
+        int uac = Integer.parseInt((String) uacAttr.get());
+        return (uac & 0x0002) != 0;
+    }
+
+    /**
+     * Count a search and wait for the governor to let it through
+     */
+    private void startSearch() throws NamingException {
+        ldapOperationGovernor.acquire(LdapOperationGovernor.OperationClass.SEARCH);
+        searchOperations.increment();
+        operationsInCall.get()[0]++;
     }
 
     /**
@@ -268,76 +517,119 @@ public class ActiveDirectoryService {
     }
 
     /**
-     * Extract CN value from DN
+     * Replace direct memberships with transitive ones from the constructed tokenGroups attribute
      *
-     * @param dn Distinguished Name
-     * @return CN value or full DN if CN not found
+     * tokenGroups can only be read from the entry itself (base scope), so
+     * this is one read per user. Group SIDs missing from the group index
+     * are resolved with one batched search. Names of direct (e.g.
+     * distribution) groups from memberOf are kept; roles come from
+     * tokenGroups, which holds all security groups.
+     *
+     * @param context Directory context without request controls
+     * @param userAttrs User built by {@link #toUserAttributes}
+     * @throws Exception if the directory could not be read
      */
-    private String extractCNFromDN(String dn) {
-        try {
-            if (dn.toUpperCase().startsWith("CN=")) {
-                int commaIndex = dn.indexOf(',');
-                if (commaIndex > 0) {
-                    return dn.substring(3, commaIndex);
-                } else {
-                    return dn.substring(3);
-                }
+    void resolveNestedGroups(DirContext context, ADUserAttributes userAttrs) throws Exception {
+        resolveNestedGroups(context, baseDn, userAttrs);
+    }
+
+    private void resolveNestedGroups(DirContext context, String base, ADUserAttributes userAttrs) throws Exception {
+        if (groupProperties.getMembership() != ADGroupProperties.Membership.TOKEN_GROUPS) {
+            return;
+        }
+
+        startSearch();
+        Attributes attrs = context.getAttributes(userAttrs.getDistinguishedName(), new String[] {"tokenGroups"});
+        Attribute tokenGroups = attrs.get("tokenGroups");
+        if (tokenGroups == null) {
+            logger.warn("No tokenGroups returned for {}; keeping direct group memberships",
+                userAttrs.getDistinguishedName());
+            return;
+        }
+
+        List<String> sids = new ArrayList<>(tokenGroups.size());
+        NamingEnumeration<?> values = tokenGroups.getAll();
+        while (values.hasMore()) {
+            Object value = values.next();
+            if (value instanceof byte[]) {
+                sids.add(ADGroupIndex.formatSid((byte[]) value));
+            } else {
+                // Without java.naming.ldap.attributes.binary the SID arrives mangled as a string
+                logger.warn("tokenGroups is not returned as binary; check the LDAP binary attributes setting");
+                return;
             }
-        } catch (Exception e) {
-            logger.warn("Error extracting CN from DN: {}", dn, e);
         }
-        return dn;
+
+        ADGroupIndex.Resolution groups = groupIndex.resolve(sids, missing -> findGroupsBySid(context, base, missing));
+        Set<String> names = new HashSet<>(userAttrs.getAdGroups());
+        names.addAll(groups.getGroupNames());
+        userAttrs.setAdGroups(names);
+        userAttrs.setRoles(groupIndex.roles(groups.getRoleBits(), groups.isMember()));
     }
 
     /**
-     * Map AD groups to application roles
+     * Look up groups by SID, in batches of GROUP_SID_BATCH per search
      *
-     * @param adGroups Set of AD group names
-     * @return List of application roles
+     * @param context Directory context
+     * @param base Search base
+     * @param sids Group SID strings
+     * @return Groups found
+     * @throws NamingException if the directory could not be searched
      */
-    private List<String> mapGroupsToRoles(Set<String> adGroups) {
-        List<String> roles = new ArrayList<>();
-
-        for (String group : adGroups) {
-            // Map AD groups to RA roles
-            if (group.equalsIgnoreCase("PKI-RA-Admins")) {
-                roles.add("RA_ADMIN");
-            } else if (group.equalsIgnoreCase("PKI-RA-Officers")) {
-                roles.add("RA_OFFICER");
-            } else if (group.equalsIgnoreCase("PKI-RA-Operators")) {
-                roles.add("RA_OPERATOR");
-            } else if (group.equalsIgnoreCase("PKI-Auditors")) {
-                roles.add("AUDITOR");
+    private List<ADGroupIndex.Group> findGroupsBySid(DirContext context, String base, Collection<String> sids)
+            throws NamingException {
+        SearchControls searchControls = new SearchControls();
+        searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        searchControls.setReturningAttributes(new String[] {"cn", "objectSid"});
+
+        List<ADGroupIndex.Group> groups = new ArrayList<>();
+        List<String> batch = new ArrayList<>(sids);
+        for (int from = 0; from < batch.size(); from += GROUP_SID_BATCH) {
+            StringBuilder filter = new StringBuilder("(&(objectClass=group)(|");
+            for (String sid : batch.subList(from, Math.min(from + GROUP_SID_BATCH, batch.size()))) {
+                filter.append("(objectSid=").append(ADGroupIndex.sidFilterValue(sid)).append(')');
             }
-        }
+            filter.append("))");
 
-        // All authenticated users are end entities
-        if (!roles.isEmpty() || !adGroups.isEmpty()) {
-            roles.add("END_ENTITY");
+            startSearch();
+            NamingEnumeration<SearchResult> results = context.search(base, filter.toString(), searchControls);
+            try {
+                while (results.hasMore()) {
+                    SearchResult result = results.next();
+                    Attribute sidAttr = result.getAttributes().get("objectSid");
+                    Attribute cnAttr = result.getAttributes().get("cn");
+                    if (sidAttr != null && sidAttr.get() instanceof byte[]) {
+                        groups.add(new ADGroupIndex.Group(ADGroupIndex.formatSid((byte[]) sidAttr.get()),
+                            result.getNameInNamespace(), cnAttr != null ? (String) cnAttr.get() : null));
+                    }
+                }
+            } finally {
+                results.close();
+            }
         }
+        return groups;
+    }
+
+    /**
+     * Drop cached group metadata, e.g. after groups were renamed or role mappings changed in AD
+     */
+    public void invalidateGroups() {
+        groupIndex.invalidateAll();
+    }
 
-        return roles;
+    public ADGroupIndex getGroupIndex() {
+        return groupIndex;
     }
 
     /**
-     * Create LDAP context using service account
+     * Borrow a service-account LDAP context from the pool
+     * Closing the context returns it to the pool
      *
      * @return DirContext
-     * @throws Exception if context creation fails
+     * @throws Exception if no connection could be obtained within the pool's max wait
      */
-    private DirContext createServiceContext() throws Exception {
-        Hashtable<String, String> env = new Hashtable<>();
-        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
-        env.put(Context.PROVIDER_URL, adUrl);
-        env.put(Context.SECURITY_AUTHENTICATION, "simple");
-        env.put(Context.SECURITY_PRINCIPAL, serviceUsername);
-        env.put(Context.SECURITY_CREDENTIALS, servicePassword);
-
-        // Connection pool settings
-        env.put("com.sun.jndi.ldap.connect.pool", "true");
-        env.put("com.sun.jndi.ldap.connect.pool.timeout", "300000");
-
-        return new InitialDirContext(env);
+    DirContext createServiceContext() throws Exception {
+        return contextSource.getReadOnlyContext();
     }
 
     /**
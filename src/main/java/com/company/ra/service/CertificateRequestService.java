@@ -15,7 +15,6 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.List;
-import java.util.UUID;
 
 /**
  * Service for managing certificate requests
@@ -31,6 +30,9 @@ public class CertificateRequestService {
     @Autowired
     private CSRValidationService csrValidationService;
 
+    @Autowired
+    private NonceService nonceService;
+
     /**
      * Create a new certificate request
      *
@@ -45,7 +47,7 @@ public class CertificateRequestService {
     public CertificateRequest createRequest(String username, String csrPem, String certificateType,
                                            SubjectDN subjectDN, ADUserAttributes adUserAttributes) {
         try {
-            String requestId = "REQ-" + UUID.randomUUID().toString();
+            String requestId = "REQ-" + nonceService.nextUUID().toString();
 
             CertificateRequest certRequest = new CertificateRequest();
             certRequest.setRequestId(requestId);
@@ -4,30 +4,89 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import jakarta.annotation.PreDestroy;
+
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Service for storing and managing authentication challenges
  * Uses in-memory storage with automatic expiration
+ *
+ * Expiry is driven by a hashed timing wheel: every challenge is placed in the
+ * bucket of the tick in which it expires, and each tick only drains its own
+ * bucket. Cleanup cost is proportional to the number of challenges that
+ * actually expire instead of the number of live challenges. Deadlines further
+ * away than one wheel revolution are re-queued when their bucket comes round.
+ * Consumed and invalidated challenges are unlinked from their bucket right
+ * away, so nothing lingers until its original deadline.
  */
 @Service
 public class ChallengeStore {
 
     private static final Logger logger = LoggerFactory.getLogger(ChallengeStore.class);
 
+    // Wheel resolution and size: 512 one-second buckets cover 8.5 minutes
+    private static final long DEFAULT_TICK_MILLIS = 1000;
+    private static final int DEFAULT_WHEEL_SIZE = 512;
+
     private final Map<String, StoredChallenge> challenges = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService cleanupExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicReferenceArray<Set<StoredChallenge>> wheel;
+    private final long tickMillis;
+    private final int wheelMask;
+    private final Object advanceLock = new Object();
+    private final ScheduledExecutorService cleanupExecutor;
+
+    // Last tick whose bucket has been drained (guarded by advanceLock for writes)
+    private volatile long lastProcessedTick;
 
     public ChallengeStore() {
-        // Schedule cleanup task to run every minute
-        cleanupExecutor.scheduleAtFixedRate(this::cleanupExpiredChallenges, 1, 1, TimeUnit.MINUTES);
-        logger.info("ChallengeStore initialized with automatic cleanup");
+        this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE, true);
+    }
+
+    /**
+     * Create a store with a custom wheel geometry
+     *
+     * @param tickMillis Bucket resolution in milliseconds
+     * @param wheelSize Number of buckets (rounded up to a power of two)
+     * @param startTicker Whether to start the background ticker; when false the
+     *                    caller drives expiry through {@link #advance(long)}
+     */
+    ChallengeStore(long tickMillis, int wheelSize, boolean startTicker) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        int size = Integer.highestOneBit(wheelSize - 1) << 1;
+        if (size <= 0) {
+            size = 1;
+        }
+        this.tickMillis = tickMillis;
+        this.wheelMask = size - 1;
+        this.wheel = new AtomicReferenceArray<>(size);
+        for (int i = 0; i < size; i++) {
+            wheel.set(i, ConcurrentHashMap.newKeySet());
+        }
+        this.lastProcessedTick = System.currentTimeMillis() / tickMillis;
+
+        if (startTicker) {
+            cleanupExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "challenge-store-expiry");
+                thread.setDaemon(true);
+                return thread;
+            });
+            cleanupExecutor.scheduleAtFixedRate(this::cleanupExpiredChallenges,
+                tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+            logger.info("ChallengeStore initialized with {} x {}ms expiry wheel", size, tickMillis);
+        } else {
+            cleanupExecutor = null;
+        }
     }
 
     /**
@@ -41,16 +100,17 @@ public class ChallengeStore {
      */
     public void store(String challengeId, byte[] challenge, byte[] salt,
                      Duration expiryDuration, String username) {
-        Instant expiresAt = Instant.now().plus(expiryDuration);
+        long expiresAtMillis = System.currentTimeMillis() + expiryDuration.toMillis();
         StoredChallenge storedChallenge = new StoredChallenge(
             challengeId,
             challenge,
             salt,
             username,
-            expiresAt
+            expiresAtMillis
         );
         challenges.put(challengeId, storedChallenge);
-        logger.debug("Challenge stored: {}, expires at: {}", challengeId, expiresAt);
+        schedule(storedChallenge);
+        logger.debug("Challenge stored: {}, expires at: {}", challengeId, expiresAtMillis);
     }
 
     /**
@@ -69,7 +129,9 @@ public class ChallengeStore {
 
         if (storedChallenge.isExpired()) {
             logger.debug("Challenge expired: {}", challengeId);
-            challenges.remove(challengeId);
+            if (challenges.remove(challengeId, storedChallenge)) {
+                unschedule(storedChallenge);
+            }
             return null;
         }
 
@@ -77,6 +139,48 @@ public class ChallengeStore {
         return storedChallenge;
     }
 
+    /**
+     * Retrieve and invalidate a challenge in one atomic step.
+     * Of several concurrent callers presenting the same challenge ID, at most
+     * one receives the challenge.
+     *
+     * @param challengeId Challenge ID
+     * @return StoredChallenge or null if not found, expired or already consumed
+     */
+    public StoredChallenge consume(String challengeId) {
+        StoredChallenge storedChallenge = challenges.remove(challengeId);
+
+        if (storedChallenge == null) {
+            logger.debug("Challenge not found: {}", challengeId);
+            return null;
+        }
+        unschedule(storedChallenge);
+
+        if (storedChallenge.isExpired()) {
+            logger.debug("Challenge expired: {}", challengeId);
+            return null;
+        }
+
+        logger.debug("Challenge consumed: {}", challengeId);
+        return storedChallenge;
+    }
+
+    /**
+     * Put back a consumed challenge whose login could not be decided (e.g. the
+     * directory was unavailable), so the client can retry with it until it expires
+     *
+     * @param storedChallenge Challenge returned by {@link #consume}
+     */
+    public void restore(StoredChallenge storedChallenge) {
+        if (storedChallenge.isExpired()) {
+            return;
+        }
+        if (challenges.putIfAbsent(storedChallenge.getChallengeId(), storedChallenge) == null) {
+            schedule(storedChallenge);
+            logger.debug("Challenge restored: {}", storedChallenge.getChallengeId());
+        }
+    }
+
     /**
      * Invalidate a challenge (after use or failed authentication)
      *
@@ -85,6 +189,7 @@ public class ChallengeStore {
     public void invalidate(String challengeId) {
         StoredChallenge removed = challenges.remove(challengeId);
         if (removed != null) {
+            unschedule(removed);
             logger.debug("Challenge invalidated: {}", challengeId);
         }
     }
@@ -93,21 +198,84 @@ public class ChallengeStore {
      * Clean up expired challenges
      */
     private void cleanupExpiredChallenges() {
-        int removed = 0;
-        Instant now = Instant.now();
+        try {
+            int removed = advance(System.currentTimeMillis());
+            if (removed > 0) {
+                logger.debug("Cleaned up {} expired challenges", removed);
+            }
+        } catch (RuntimeException e) {
+            // Never let an exception cancel the scheduled ticker
+            logger.error("Challenge expiry tick failed", e);
+        }
+    }
+
+    /**
+     * Drain every wheel bucket whose tick has elapsed up to the given time
+     *
+     * @param nowMillis Current time in epoch milliseconds
+     * @return Number of challenges removed
+     */
+    int advance(long nowMillis) {
+        synchronized (advanceLock) {
+            long currentTick = nowMillis / tickMillis;
+            long fromTick = lastProcessedTick + 1;
+            // A stalled ticker never needs more than one revolution to catch up
+            if (currentTick - fromTick > wheelMask) {
+                fromTick = currentTick - wheelMask;
+            }
 
-        for (Map.Entry<String, StoredChallenge> entry : challenges.entrySet()) {
-            if (entry.getValue().getExpiresAt().isBefore(now)) {
-                challenges.remove(entry.getKey());
-                removed++;
+            int removed = 0;
+            for (long tick = fromTick; tick <= currentTick; tick++) {
+                removed += drainBucket((int) (tick & wheelMask), nowMillis);
             }
+            lastProcessedTick = currentTick;
+            return removed;
         }
+    }
 
-        if (removed > 0) {
-            logger.debug("Cleaned up {} expired challenges", removed);
+    private int drainBucket(int index, long nowMillis) {
+        Set<StoredChallenge> bucket = wheel.getAndSet(index, ConcurrentHashMap.newKeySet());
+        int removed = 0;
+        for (StoredChallenge entry : bucket) {
+            if (challenges.get(entry.getChallengeId()) != entry) {
+                // Already consumed, invalidated or replaced
+                continue;
+            }
+            if (entry.expiresAtMillis <= nowMillis) {
+                if (challenges.remove(entry.getChallengeId(), entry)) {
+                    removed++;
+                }
+            } else {
+                // Deadline lies in a later revolution of the wheel
+                wheel.get(index).add(entry);
+            }
+        }
+        return removed;
+    }
+
+    private void schedule(StoredChallenge storedChallenge) {
+        while (true) {
+            long tick = storedChallenge.expiresAtMillis / tickMillis;
+            long earliest = lastProcessedTick + 1;
+            if (tick < earliest) {
+                tick = earliest;
+            }
+            int slot = (int) (tick & wheelMask);
+            storedChallenge.wheelSlot = slot;
+            Set<StoredChallenge> bucket = wheel.get(slot);
+            bucket.add(storedChallenge);
+            // A drain that swapped the bucket in the meantime may have missed the entry
+            if (wheel.get(slot) == bucket) {
+                return;
+            }
         }
     }
 
+    private void unschedule(StoredChallenge storedChallenge) {
+        // Misses harmlessly if the bucket is being drained concurrently
+        wheel.get(storedChallenge.wheelSlot).remove(storedChallenge);
+    }
+
     /**
      * Get current number of stored challenges
      *
@@ -122,14 +290,20 @@ public class ChallengeStore {
      */
     public void clear() {
         challenges.clear();
+        for (int i = 0; i <= wheelMask; i++) {
+            wheel.set(i, ConcurrentHashMap.newKeySet());
+        }
         logger.debug("All challenges cleared");
     }
 
     /**
      * Shutdown cleanup executor
      */
+    @PreDestroy
     public void shutdown() {
-        cleanupExecutor.shutdown();
+        if (cleanupExecutor != null) {
+            cleanupExecutor.shutdown();
+        }
         logger.info("ChallengeStore shutdown");
     }
 
@@ -141,15 +315,21 @@ public class ChallengeStore {
         private final byte[] challenge;
         private final byte[] salt;
         private final String username;
-        private final Instant expiresAt;
+        private final long expiresAtMillis;
+        private volatile int wheelSlot;
 
         public StoredChallenge(String challengeId, byte[] challenge, byte[] salt,
                              String username, Instant expiresAt) {
+            this(challengeId, challenge, salt, username, expiresAt.toEpochMilli());
+        }
+
+        public StoredChallenge(String challengeId, byte[] challenge, byte[] salt,
+                             String username, long expiresAtMillis) {
             this.challengeId = challengeId;
             this.challenge = challenge;
             this.salt = salt;
             this.username = username;
-            this.expiresAt = expiresAt;
+            this.expiresAtMillis = expiresAtMillis;
         }
 
         public String getChallengeId() {
@@ -169,11 +349,15 @@ public class ChallengeStore {
         }
 
         public Instant getExpiresAt() {
-            return expiresAt;
+            return Instant.ofEpochMilli(expiresAtMillis);
+        }
+
+        public long getExpiresAtMillis() {
+            return expiresAtMillis;
         }
 
         public boolean isExpired() {
-            return Instant.now().isAfter(expiresAt);
+            return System.currentTimeMillis() > expiresAtMillis;
         }
     }
 }
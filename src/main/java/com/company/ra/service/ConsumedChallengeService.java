@@ -0,0 +1,108 @@
+package com.company.ra.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import com.company.ra.entity.ConsumedChallenge;
+import com.company.ra.repository.ConsumedChallengeRepository;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Replay protection for sealed challenges, shared by all nodes
+ *
+ * Any node can open a sealed challenge, so a per-node record of consumed
+ * challenges would let a captured login be replayed once on every other
+ * node. Consumed challenge IDs are therefore inserted into the
+ * consumed_challenges table on the RA datasource: its primary key lets
+ * exactly one insert per ID succeed across the cluster. Only the ID and the
+ * expiry are kept, and rows are purged once the challenge has expired.
+ */
+@Service
+public class ConsumedChallengeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConsumedChallengeService.class);
+
+    @Autowired
+    private ConsumedChallengeRepository consumedChallengeRepository;
+
+    @Value("${auth.challenge.mode:store}")
+    private String challengeMode;
+
+    @Value("${auth.challenge.purge-interval:1m}")
+    private Duration purgeInterval;
+
+    private ScheduledExecutorService purgeExecutor;
+
+    @PostConstruct
+    public void init() {
+        // Store mode consumes challenges in the ChallengeStore and never writes the table
+        if (!"sealed".equalsIgnoreCase(challengeMode)) {
+            return;
+        }
+        purgeExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "consumed-challenge-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = purgeInterval.toMillis();
+        purgeExecutor.scheduleWithFixedDelay(this::purge, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Record a sealed challenge as consumed
+     *
+     * @param challengeId Challenge ID carried inside the sealed token
+     * @param expiresAtMillis Expiry time of the sealed challenge
+     * @return true if this is the first use of the challenge on any node, false on replay
+     */
+    public boolean markConsumed(String challengeId, long expiresAtMillis) {
+        try {
+            consumedChallengeRepository.saveAndFlush(
+                new ConsumedChallenge(challengeId, Instant.ofEpochMilli(expiresAtMillis)));
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            logger.warn("Replay of consumed challenge rejected: {}", challengeId);
+            return false;
+        }
+    }
+
+    /**
+     * Make a consumed challenge usable again, for a login that could not be decided
+     *
+     * @param challengeId Challenge ID passed to {@link #markConsumed}
+     */
+    public void release(String challengeId) {
+        consumedChallengeRepository.deleteById(challengeId);
+    }
+
+    void purge() {
+        try {
+            long purged = consumedChallengeRepository.deleteByExpiresAtBefore(Instant.now());
+            if (purged > 0) {
+                logger.debug("Purged {} expired consumed challenges", purged);
+            }
+        } catch (RuntimeException e) {
+            // Never let an exception cancel the scheduled purge
+            logger.error("Consumed challenge purge failed", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (purgeExecutor != null) {
+            purgeExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.company.ra.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CSV record reader (RFC 4180: quoted fields, "" escapes, line breaks inside quotes)
+ *
+ * Records end at CR, LF or CRLF outside quotes. Line numbers count physical
+ * lines, so a record with a quoted line break spans several of them. A UTF-8
+ * byte order mark (as written by Excel) before the first record is skipped.
+ *
+ * @author RA Team
+ */
+public class CsvRecordReader {
+
+    private final Reader reader;
+    private int next = -2;
+    private int line = 1;
+    private boolean started;
+    private int recordLine;
+
+    public CsvRecordReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Read one record
+     *
+     * @return Fields, or null at end of input
+     * @throws IllegalArgumentException if a quoted field is not terminated
+     */
+    public List<String> readRecord() throws IOException {
+        int c = read();
+        if (!started) {
+            started = true;
+            if (c == '\uFEFF') {
+                c = read();
+            }
+        }
+        if (c == -1) {
+            return null;
+        }
+        recordLine = line;
+        List<String> record = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IllegalArgumentException("Line " + recordLine + ": unterminated quoted field");
+                }
+                if (c == '"') {
+                    if (peek() == '"') {
+                        field.append('"');
+                        read();
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    countLine(c);
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                record.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+                if (c != -1) {
+                    line++;
+                }
+                record.add(field.toString());
+                return record;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * @return Line on which the last record read started, counting from 1
+     */
+    public int getRecordLine() {
+        return recordLine;
+    }
+
+    /**
+     * Count a line break inside a quoted field; CRLF counts once, on the LF
+     */
+    private void countLine(int c) throws IOException {
+        if (c == '\n' || (c == '\r' && peek() != '\n')) {
+            line++;
+        }
+    }
+
+    private int read() throws IOException {
+        if (next != -2) {
+            int c = next;
+            next = -2;
+            return c;
+        }
+        return reader.read();
+    }
+
+    private int peek() throws IOException {
+        if (next == -2) {
+            next = reader.read();
+        }
+        return next;
+    }
+}
@@ -0,0 +1,252 @@
+package com.company.ra.service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.company.ra.dto.ADUserAttributes;
+
+/**
+ * Local replica of Active Directory users in the users table
+ *
+ * Written by {@link DirectorySyncService} with JDBC batches (one statement
+ * per table and batch rather than one per row) and read by
+ * {@link ActiveDirectoryService} while the last sync is recent enough.
+ * Rows are matched on objectGUID so renames update the existing row.
+ */
+@Service
+public class DirectoryReplicaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectoryReplicaService.class);
+
+    private static final String INSERT_USER =
+        "INSERT INTO users (username, common_name, email, organizational_unit, organization, country, "
+        + "enabled, account_locked, created_at, object_guid, distinguished_name, usn_changed, synced_at) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_USER =
+        "UPDATE users SET username = ?, common_name = ?, email = ?, organizational_unit = ?, organization = ?, "
+        + "country = ?, enabled = ?, account_locked = ?, object_guid = ?, distinguished_name = ?, "
+        + "usn_changed = ?, synced_at = ? WHERE id = ?";
+
+    private static final String SELECT_USER =
+        "SELECT id, username, common_name, email, organizational_unit, organization, country, enabled, "
+        + "account_locked, object_guid, distinguished_name, usn_changed FROM users "
+        + "WHERE username = ? AND object_guid IS NOT NULL";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Reads fall back to LDAP when the last successful sync is older than this
+    @Value("${ad.sync.max-staleness:2m}")
+    private Duration maxStaleness;
+
+    private volatile long lastSyncMillis;
+
+    /**
+     * Insert or update a batch of directory users, including roles and AD groups
+     *
+     * @param users Users read from the directory
+     * @param syncedAt Start of the sync run, stored on every row
+     * @return Number of rows written
+     */
+    @Transactional
+    public int upsert(List<ReplicaUser> users, Instant syncedAt) {
+        if (users.isEmpty()) {
+            return 0;
+        }
+        Timestamp syncedAtTs = Timestamp.from(syncedAt);
+
+        List<String> guids = new ArrayList<>(users.size());
+        List<String> usernames = new ArrayList<>(users.size());
+        for (ReplicaUser user : users) {
+            guids.add(user.getObjectGuid());
+            usernames.add(user.getAttributes().getUsername());
+        }
+        Map<String, Long> idsByGuid = selectIds("object_guid", guids);
+        // Adopt rows created before the replica existed (same username, no GUID yet)
+        Map<String, Long> idsByUsername = selectIds("username", usernames);
+
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> inserts = new ArrayList<>();
+        for (ReplicaUser user : users) {
+            ADUserAttributes attrs = user.getAttributes();
+            Long id = idsByGuid.get(user.getObjectGuid());
+            if (id == null) {
+                id = idsByUsername.get(attrs.getUsername());
+            }
+            if (id != null) {
+                updates.add(new Object[] {attrs.getUsername(), commonName(attrs), attrs.getEmail(),
+                    attrs.getOrganizationalUnit(), attrs.getOrganization(), attrs.getCountry(),
+                    user.isEnabled(), user.isAccountLocked(), user.getObjectGuid(), attrs.getDistinguishedName(),
+                    user.getUsnChanged(), syncedAtTs, id});
+            } else {
+                inserts.add(new Object[] {attrs.getUsername(), commonName(attrs), attrs.getEmail(),
+                    attrs.getOrganizationalUnit(), attrs.getOrganization(), attrs.getCountry(),
+                    user.isEnabled(), user.isAccountLocked(), syncedAtTs, user.getObjectGuid(),
+                    attrs.getDistinguishedName(), user.getUsnChanged(), syncedAtTs});
+            }
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_USER, updates);
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_USER, inserts);
+        }
+
+        Map<String, Long> ids = selectIds("object_guid", guids);
+        replaceCollection("user_roles", "role", users, ids, user -> user.getAttributes().getRoles());
+        replaceCollection("user_ad_groups", "ad_group", users, ids, user -> user.getAttributes().getAdGroups());
+        return users.size();
+    }
+
+    /**
+     * Disable replica users that a full sync did not see (deleted or moved out of scope)
+     *
+     * @param syncedAt Start of the full sync run
+     * @return Number of users disabled
+     */
+    @Transactional
+    public int disableNotSyncedSince(Instant syncedAt) {
+        return jdbcTemplate.update(
+            "UPDATE users SET enabled = ? WHERE object_guid IS NOT NULL AND enabled = ? AND synced_at < ?",
+            false, true, Timestamp.from(syncedAt));
+    }
+
+    /**
+     * Look up a replicated user by username
+     *
+     * @param username Username as stored (userPrincipalName, else sAMAccountName)
+     * @return ReplicaUser or null if not replicated
+     */
+    public ReplicaUser findUser(String username) {
+        List<ReplicaUser> users = jdbcTemplate.query(SELECT_USER, (rs, rowNum) -> {
+            ADUserAttributes attrs = new ADUserAttributes();
+            attrs.setUsername(rs.getString("username"));
+            attrs.setCommonName(rs.getString("common_name"));
+            attrs.setEmail(rs.getString("email"));
+            attrs.setOrganizationalUnit(rs.getString("organizational_unit"));
+            attrs.setOrganization(rs.getString("organization"));
+            attrs.setCountry(rs.getString("country"));
+            attrs.setDistinguishedName(rs.getString("distinguished_name"));
+            long id = rs.getLong("id");
+            attrs.setRoles(jdbcTemplate.queryForList(
+                "SELECT role FROM user_roles WHERE user_id = ?", String.class, id));
+            attrs.setAdGroups(new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT ad_group FROM user_ad_groups WHERE user_id = ?", String.class, id)));
+            return new ReplicaUser(rs.getString("object_guid"), rs.getLong("usn_changed"),
+                rs.getBoolean("enabled"), rs.getBoolean("account_locked"), attrs);
+        }, username);
+        return users.isEmpty() ? null : users.get(0);
+    }
+
+    /**
+     * Record a successful sync run
+     */
+    public void markSynced() {
+        lastSyncMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Check whether the replica is recent enough to answer lookups
+     *
+     * @return true if the last successful sync is within the max staleness
+     */
+    public boolean isFresh() {
+        long last = lastSyncMillis;
+        return last > 0 && System.currentTimeMillis() - last <= maxStaleness.toMillis();
+    }
+
+    private Map<String, Long> selectIds(String column, List<String> values) {
+        Map<String, Long> ids = new HashMap<>();
+        String placeholders = String.join(",", Collections.nCopies(values.size(), "?"));
+        jdbcTemplate.query("SELECT id, " + column + " FROM users WHERE " + column + " IN (" + placeholders + ")",
+            rs -> {
+                ids.put(rs.getString(2), rs.getLong(1));
+            }, values.toArray());
+        return ids;
+    }
+
+    private void replaceCollection(String table, String column, List<ReplicaUser> users, Map<String, Long> ids,
+                                   Function<ReplicaUser, Collection<String>> values) {
+        List<Object[]> deletes = new ArrayList<>();
+        List<Object[]> inserts = new ArrayList<>();
+        for (ReplicaUser user : users) {
+            Long id = ids.get(user.getObjectGuid());
+            if (id == null) {
+                logger.warn("Replica row missing after upsert: {}", user.getObjectGuid());
+                continue;
+            }
+            deletes.add(new Object[] {id});
+            Set<String> distinct = new HashSet<>(values.apply(user));
+            for (String value : distinct) {
+                inserts.add(new Object[] {id, value});
+            }
+        }
+        jdbcTemplate.batchUpdate("DELETE FROM " + table + " WHERE user_id = ?", deletes);
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT INTO " + table + " (user_id, " + column + ") VALUES (?, ?)", inserts);
+        }
+    }
+
+    private static String commonName(ADUserAttributes attrs) {
+        return attrs.getCommonName() != null ? attrs.getCommonName() : attrs.getUsername();
+    }
+
+    /**
+     * A directory user with the replication metadata kept next to its attributes
+     */
+    public static final class ReplicaUser {
+        private final String objectGuid;
+        private final long usnChanged;
+        private final boolean enabled;
+        private final boolean accountLocked;
+        private final ADUserAttributes attributes;
+
+        public ReplicaUser(String objectGuid, long usnChanged, boolean enabled, boolean accountLocked,
+                           ADUserAttributes attributes) {
+            this.objectGuid = objectGuid;
+            this.usnChanged = usnChanged;
+            this.enabled = enabled;
+            this.accountLocked = accountLocked;
+            this.attributes = attributes;
+        }
+
+        public String getObjectGuid() {
+            return objectGuid;
+        }
+
+        public long getUsnChanged() {
+            return usnChanged;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public boolean isAccountLocked() {
+            return accountLocked;
+        }
+
+        public ADUserAttributes getAttributes() {
+            return attributes;
+        }
+    }
+}
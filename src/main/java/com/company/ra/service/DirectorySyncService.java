@@ -0,0 +1,335 @@
+package com.company.ra.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.ldap.core.ContextSource;
+import org.springframework.ldap.pool2.factory.PooledContextSource;
+import org.springframework.stereotype.Service;
+
+import com.company.ra.config.DirectoryEndpointSelector;
+import com.company.ra.config.FailoverContextSource;
+import com.company.ra.config.LdapOperationGovernor;
+import com.company.ra.dto.ADUserAttributes;
+import com.company.ra.entity.DirectorySyncState;
+import com.company.ra.repository.DirectorySyncStateRepository;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Background synchronizer keeping the local users table in step with Active Directory
+ *
+ * The first run (and every full-interval, or whenever the domain controller
+ * changes) does a paged full load and disables replica users it no longer
+ * sees. Later runs fetch only entries with uSNChanged above the
+ * highestCommittedUSN read from the rootDSE before the previous run, so
+ * changes committed during a run are picked up by the next one.
+ * Deletions are only noticed by full loads. USNs are local to one domain
+ * controller, so with several servers every run reads from the server of the
+ * previous run, as long as it is healthy, over unpooled connections.
+ */
+@Service
+public class DirectorySyncService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectorySyncService.class);
+
+    static final String STATE_NAME = "ad-users";
+
+    private static final int UF_LOCKOUT_NOT_SET = 0;
+
+    private static final String[] SYNC_ATTRIBUTES = concat(ActiveDirectoryService.USER_ATTRIBUTES,
+        "objectGUID", "uSNChanged", "lockoutTime");
+
+    @Autowired
+    private ContextSource contextSource;
+
+    @Autowired
+    private ActiveDirectoryService activeDirectoryService;
+
+    @Autowired
+    private DirectoryReplicaService directoryReplicaService;
+
+    @Autowired
+    private DirectorySyncStateRepository syncStateRepository;
+
+    // Sync runs at background priority, behind logins
+    @Autowired(required = false)
+    private LdapOperationGovernor ldapOperationGovernor = LdapOperationGovernor.unlimited();
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    @Value("${ad.sync.enabled:false}")
+    private boolean enabled;
+
+    @Value("${ad.sync.interval:30s}")
+    private Duration interval;
+
+    @Value("${ad.sync.full-interval:24h}")
+    private Duration fullInterval;
+
+    @Value("${ad.sync.page-size:500}")
+    private int pageSize;
+
+    @Value("${ad.sync.batch-size:200}")
+    private int batchSize;
+
+    @Value("${ad.userSearchBase:${ad.baseDn:DC=company,DC=com}}")
+    private String searchBase;
+
+    @Value("${ad.sync.filter:(&(objectCategory=person)(objectClass=user))}")
+    private String filter;
+
+    private final AtomicLong usersSynced = new AtomicLong();
+    private final AtomicLong syncFailures = new AtomicLong();
+    private volatile long lastSyncDurationMillis;
+    // Server the last run read from; only touched by the sync thread
+    private String syncServerUrl;
+
+    private ScheduledExecutorService syncExecutor;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            logger.info("Directory sync disabled; identity lookups go to LDAP");
+            return;
+        }
+        if (meterRegistry != null) {
+            FunctionCounter.builder("ra.ad.sync.users", usersSynced, AtomicLong::get)
+                .description("Directory entries written to the local replica")
+                .register(meterRegistry);
+            FunctionCounter.builder("ra.ad.sync.failures", syncFailures, AtomicLong::get)
+                .description("Directory sync runs that failed")
+                .register(meterRegistry);
+            Gauge.builder("ra.ad.sync.duration", this, service -> service.lastSyncDurationMillis)
+                .description("Duration of the last directory sync run in milliseconds")
+                .register(meterRegistry);
+        }
+
+        syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(LdapOperationGovernor.background(runnable), "ad-directory-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncExecutor.scheduleWithFixedDelay(this::runSync, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+        logger.info("Directory sync enabled for {} every {}", searchBase, interval);
+    }
+
+    private void runSync() {
+        try {
+            synchronize();
+        } catch (Exception e) {
+            // Never let an exception cancel the scheduled sync
+            syncFailures.incrementAndGet();
+            logger.error("Directory sync failed", e);
+        }
+    }
+
+    /**
+     * Run one full or incremental sync
+     *
+     * @return Number of directory entries written
+     * @throws Exception if the directory could not be read
+     */
+    int synchronize() throws Exception {
+        long start = System.currentTimeMillis();
+        Instant syncStart = Instant.ofEpochMilli(start);
+        DirectorySyncState state = syncStateRepository.findById(STATE_NAME)
+            .orElseGet(() -> new DirectorySyncState(STATE_NAME));
+
+        FailoverContextSource failoverSource = failoverSource();
+        DirectoryEndpointSelector.Endpoint endpoint = failoverSource != null
+            ? failoverSource.getSelector().prefer(syncServerUrl) : null;
+        DirContext context = endpoint != null
+            ? failoverSource.getReadOnlyContext(endpoint) : contextSource.getReadOnlyContext();
+        // Nested group reads go over a second connection; the first carries the paging control
+        DirContext groupContext = null;
+        try {
+            groupContext = endpoint != null
+                ? failoverSource.getReadOnlyContext(endpoint) : contextSource.getReadOnlyContext();
+            LdapContext ldapContext = (LdapContext) context;
+            ldapOperationGovernor.acquire(LdapOperationGovernor.OperationClass.SEARCH);
+            Attributes rootDse = ldapContext.getAttributes("", new String[] {"highestCommittedUSN", "dsServiceName"});
+            long highestCommittedUsn = parseLong(rootDse.get("highestCommittedUSN"), -1);
+            String serverId = rootDse.get("dsServiceName") != null ? (String) rootDse.get("dsServiceName").get() : null;
+
+            boolean full = state.getLastFullSyncAt() == null
+                || highestCommittedUsn < 0
+                || !Objects.equals(serverId, state.getServerId())
+                || highestCommittedUsn < state.getHighestCommittedUsn()
+                || state.getLastFullSyncAt().plus(fullInterval).isBefore(syncStart);
+            String searchFilter = full ? filter
+                : "(&" + filter + "(uSNChanged>=" + (state.getHighestCommittedUsn() + 1) + "))";
+
+            int written = pagedSearch(ldapContext, groupContext, searchFilter, syncStart);
+            int disabled = full ? directoryReplicaService.disableNotSyncedSince(syncStart) : 0;
+
+            if (full) {
+                state.setLastFullSyncAt(syncStart);
+            }
+            state.setServerId(serverId);
+            state.setHighestCommittedUsn(Math.max(highestCommittedUsn, 0));
+            state.setLastSyncAt(syncStart);
+            syncStateRepository.save(state);
+            directoryReplicaService.markSynced();
+            syncServerUrl = endpoint != null ? endpoint.getUrl() : null;
+
+            usersSynced.addAndGet(written);
+            lastSyncDurationMillis = System.currentTimeMillis() - start;
+            logger.info("Directory {} sync wrote {} users, disabled {}, USN {} in {} ms",
+                full ? "full" : "incremental", written, disabled, highestCommittedUsn, lastSyncDurationMillis);
+            return written;
+        } finally {
+            try {
+                // Pooled contexts are reused; do not leave the paging control behind
+                ((LdapContext) context).setRequestControls(null);
+            } catch (NamingException e) {
+                logger.debug("Could not clear request controls", e);
+            }
+            context.close();
+            if (groupContext != null) {
+                groupContext.close();
+            }
+        }
+    }
+
+    /**
+     * The server-spreading source behind the configured one, if any
+     */
+    private FailoverContextSource failoverSource() {
+        ContextSource source = contextSource instanceof PooledContextSource pooled
+            ? pooled.getContextSource() : contextSource;
+        return source instanceof FailoverContextSource failover ? failover : null;
+    }
+
+    private int pagedSearch(LdapContext context, DirContext groupContext, String searchFilter, Instant syncStart)
+            throws Exception {
+        SearchControls searchControls = new SearchControls();
+        searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        searchControls.setReturningAttributes(SYNC_ATTRIBUTES);
+
+        int written = 0;
+        List<DirectoryReplicaService.ReplicaUser> batch = new ArrayList<>(batchSize);
+        byte[] cookie = null;
+        do {
+            // One token per page, so a full load yields to logins between pages
+            ldapOperationGovernor.acquire(LdapOperationGovernor.OperationClass.SEARCH);
+            context.setRequestControls(new Control[] {new PagedResultsControl(pageSize, cookie, Control.CRITICAL)});
+            NamingEnumeration<SearchResult> results = context.search(searchBase, searchFilter, searchControls);
+            try {
+                while (results.hasMore()) {
+                    DirectoryReplicaService.ReplicaUser user = toReplicaUser(results.next(), groupContext);
+                    if (user == null) {
+                        continue;
+                    }
+                    batch.add(user);
+                    if (batch.size() >= batchSize) {
+                        written += directoryReplicaService.upsert(batch, syncStart);
+                        batch.clear();
+                    }
+                }
+            } finally {
+                results.close();
+            }
+            cookie = responseCookie(context.getResponseControls());
+        } while (cookie != null && cookie.length > 0);
+
+        written += directoryReplicaService.upsert(batch, syncStart);
+        return written;
+    }
+
+    private DirectoryReplicaService.ReplicaUser toReplicaUser(SearchResult result, DirContext groupContext)
+            throws Exception {
+        Attributes attributes = result.getAttributes();
+        Attribute guidAttr = attributes.get("objectGUID");
+        ADUserAttributes userAttrs = activeDirectoryService.toUserAttributes(result.getNameInNamespace(), attributes);
+        if (guidAttr == null || userAttrs.getUsername() == null) {
+            logger.debug("Skipping directory entry without objectGUID or username: {}", result.getNameInNamespace());
+            return null;
+        }
+        activeDirectoryService.resolveNestedGroups(groupContext, userAttrs);
+        boolean locked = parseLong(attributes.get("lockoutTime"), UF_LOCKOUT_NOT_SET) > 0;
+        return new DirectoryReplicaService.ReplicaUser(formatGuid(guidAttr.get()),
+            parseLong(attributes.get("uSNChanged"), 0), !ActiveDirectoryService.isDisabled(attributes),
+            locked, userAttrs);
+    }
+
+    private static byte[] responseCookie(Control[] controls) {
+        if (controls != null) {
+            for (Control control : controls) {
+                if (control instanceof PagedResultsResponseControl) {
+                    return ((PagedResultsResponseControl) control).getCookie();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Format an objectGUID in the usual string form
+     * AD stores the first three fields little-endian
+     *
+     * @param value byte[16] from a binary attribute, or an already formatted string
+     * @return GUID string
+     */
+    static String formatGuid(Object value) {
+        if (!(value instanceof byte[]) || ((byte[]) value).length != 16) {
+            return String.valueOf(value);
+        }
+        byte[] b = (byte[]) value;
+        return String.format("%02x%02x%02x%02x-%02x%02x-%02x%02x-%02x%02x-%02x%02x%02x%02x%02x%02x",
+            b[3], b[2], b[1], b[0], b[5], b[4], b[7], b[6], b[8], b[9], b[10], b[11], b[12], b[13], b[14], b[15]);
+    }
+
+    private static long parseLong(Attribute attribute, long defaultValue) throws NamingException {
+        if (attribute == null || attribute.get() == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(attribute.get().toString().trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static String[] concat(String[] first, String... second) {
+        String[] all = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, all, first.length, second.length);
+        return all;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (syncExecutor != null) {
+            syncExecutor.shutdownNow();
+        }
+    }
+}
@@ -1,13 +1,21 @@
 package com.company.ra.service;
 
 import java.security.Key;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -15,16 +23,30 @@ import com.company.ra.dto.ADUserAttributes;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.SignatureException;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
 import io.jsonwebtoken.UnsupportedJwtException;
 import io.jsonwebtoken.security.Keys;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
 /**
  * Service for generating and validating JWT tokens
+ *
+ * Tokens are parsed and their signature verified once; the result is kept in
+ * a {@link VerifiedTokenCache} until the token expires, so repeated requests
+ * with the same bearer token skip the HMAC check and JSON parsing.
+ * Every token carries a jti so it can be revoked through
+ * {@link TokenRevocationService}; revocation is checked on cache hits too.
+ * With jwt.signing.algorithm=ES256 tokens are signed by the active key of
+ * {@link SigningKeyService} and tagged with its kid, so consumers can verify
+ * them locally against the published JWKS.
  */
 @Service
 public class JWTTokenService {
@@ -40,13 +62,62 @@ public class JWTTokenService {
     @Value("${jwt.issuer:RA-Service}")
     private String jwtIssuer;
 
+    @Value("${jwt.cache.max-size:10000}")
+    private int verifiedTokenCacheSize;
+
+    // Threads verifying cache misses of one batch (0 = available processors)
+    @Value("${jwt.verify.batch.parallelism:0}")
+    private int batchParallelism;
+
+    @Autowired
+    private NonceService nonceService;
+
+    @Autowired
+    private TokenRevocationService tokenRevocationService;
+
+    @Autowired
+    private SigningKeyService signingKeyService;
+
     private Key signingKey;
 
+    private JwtParser jwtParser;
+
+    private VerifiedTokenCache verifiedTokenCache;
+
+    private int effectiveBatchParallelism;
+
+    private ThreadPoolExecutor batchVerifyExecutor;
+
     @PostConstruct
     public void init() {
         // Generate signing key from secret
         signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes());
-        logger.info("JWT Token Service initialized with expiration: {} seconds", jwtExpirationSeconds);
+        // Parsers are immutable and thread-safe; build once
+        jwtParser = Jwts.parserBuilder()
+            .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                @Override
+                public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                    return resolveVerificationKey(header);
+                }
+            })
+            .build();
+        verifiedTokenCache = new VerifiedTokenCache(verifiedTokenCacheSize);
+
+        effectiveBatchParallelism = batchParallelism > 0
+            ? batchParallelism : Runtime.getRuntime().availableProcessors();
+        if (effectiveBatchParallelism > 1) {
+            AtomicInteger threadCount = new AtomicInteger();
+            // The calling thread verifies one share itself and takes over when the queue is full
+            batchVerifyExecutor = new ThreadPoolExecutor(effectiveBatchParallelism - 1, effectiveBatchParallelism - 1,
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(effectiveBatchParallelism * 4), runnable -> {
+                    Thread thread = new Thread(runnable, "jwt-batch-verify-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+            batchVerifyExecutor.allowCoreThreadTimeOut(true);
+        }
+        logger.info("JWT Token Service initialized with expiration: {} seconds, asymmetric signing: {}",
+            jwtExpirationSeconds, signingKeyService.isAsymmetric());
     }
 
     /**
@@ -65,50 +136,181 @@ public class JWTTokenService {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + (jwtExpirationSeconds * 1000));
 
-        String token = Jwts.builder()
+        JwtBuilder builder = Jwts.builder()
             .setClaims(claims)
             .setSubject(userDetails.getUsername())
+            .setId(nonceService.nextUUID().toString())
             .setIssuedAt(now)
             .setExpiration(expiryDate)
-            .setIssuer(jwtIssuer)
-            .signWith(signingKey, SignatureAlgorithm.HS256)
-            .compact();
+            .setIssuer(jwtIssuer);
+
+        if (signingKeyService.isAsymmetric()) {
+            SigningKeyService.SigningKey activeKey = signingKeyService.getActiveKey();
+            builder.setHeaderParam(JwsHeader.KEY_ID, activeKey.getKid())
+                .signWith(activeKey.getPrivateKey(), SignatureAlgorithm.ES256);
+        } else {
+            builder.signWith(signingKey, SignatureAlgorithm.HS256);
+        }
+        String token = builder.compact();
 
         logger.debug("JWT token generated for user: {}", userDetails.getUsername());
         return token;
     }
 
     /**
-     * Validate JWT token
+     * Verify a JWT token once and return its principal
      *
      * @param token JWT token
-     * @return true if valid
+     * @return VerifiedToken or null if the token is invalid or expired
      */
-    public boolean validateToken(String token) {
+    public VerifiedToken verify(String token) {
+        if (token == null) {
+            return null;
+        }
+
+        VerifiedToken verified = verifiedTokenCache.get(token);
+        if (verified == null) {
+            verified = parse(token);
+            if (verified == null) {
+                return null;
+            }
+            verifiedTokenCache.put(token, verified);
+        }
+
+        if (tokenRevocationService.isRevoked(verified.getTokenId())) {
+            logger.debug("Rejected revoked JWT token: {}", verified.getTokenId());
+            return null;
+        }
+        return verified;
+    }
+
+    /**
+     * Verify several tokens, checking signatures of cache misses in parallel
+     *
+     * Duplicate tokens are verified once and cached tokens are answered
+     * on the calling thread without touching the executor. An unexpected
+     * failure verifying one token makes only that token invalid.
+     *
+     * @param tokens JWT tokens, may contain nulls
+     * @return VerifiedToken per input position, null where the token is invalid
+     */
+    public List<VerifiedToken> verifyAll(List<String> tokens) {
+        VerifiedToken[] results = new VerifiedToken[tokens.size()];
+        Map<String, Integer> firstIndex = new HashMap<>();
+        int[] duplicateOf = new int[tokens.size()];
+        List<Integer> misses = new ArrayList<>();
+
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            duplicateOf[i] = -1;
+            if (token == null) {
+                continue;
+            }
+            Integer first = firstIndex.putIfAbsent(token, i);
+            if (first != null) {
+                duplicateOf[i] = first;
+                continue;
+            }
+            VerifiedToken cached = verifiedTokenCache.get(token);
+            if (cached == null) {
+                misses.add(i);
+            } else if (!tokenRevocationService.isRevoked(cached.getTokenId())) {
+                results[i] = cached;
+            }
+        }
+
+        int shares = Math.min(effectiveBatchParallelism, misses.size());
+        if (batchVerifyExecutor == null || shares < 2) {
+            for (int index : misses) {
+                results[index] = verifyInBatch(tokens.get(index));
+            }
+        } else {
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[shares - 1];
+            for (int share = 1; share < shares; share++) {
+                int start = share;
+                futures[share - 1] = CompletableFuture.runAsync(
+                    () -> verifyShare(tokens, misses, start, shares, results), batchVerifyExecutor);
+            }
+            verifyShare(tokens, misses, 0, shares, results);
+            CompletableFuture.allOf(futures).join();
+        }
+
+        for (int i = 0; i < duplicateOf.length; i++) {
+            if (duplicateOf[i] >= 0) {
+                results[i] = results[duplicateOf[i]];
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private void verifyShare(List<String> tokens, List<Integer> misses, int start, int stride,
+                             VerifiedToken[] results) {
+        for (int i = start; i < misses.size(); i += stride) {
+            int index = misses.get(i);
+            results[index] = verifyInBatch(tokens.get(index));
+        }
+    }
+
+    /**
+     * Verify one token of a batch, so that an error cannot fail the whole batch
+     */
+    private VerifiedToken verifyInBatch(String token) {
         try {
-            Jwts.parserBuilder()
-                .setSigningKey(signingKey)
-                .build()
-                .parseClaimsJws(token);
-            return true;
+            return verify(token);
+        } catch (RuntimeException e) {
+            logger.error("Error verifying JWT token in batch", e);
+            return null;
+        }
+    }
+
+    private Key resolveVerificationKey(JwsHeader<?> header) {
+        // jjwt rejects a key that does not match the header alg, so an ES256
+        // kid can never be used to check an HS256 signature or vice versa
+        if (SignatureAlgorithm.HS256.getValue().equals(header.getAlgorithm())) {
+            if (!signingKeyService.acceptsHs256()) {
+                throw new UnsupportedJwtException("HS256 tokens are no longer accepted");
+            }
+            return signingKey;
+        }
+        Key key = signingKeyService.resolveVerificationKey(header.getKeyId());
+        if (key == null) {
+            throw new SignatureException("Unknown or retired signing key: " + header.getKeyId());
+        }
+        return key;
+    }
+
+    private VerifiedToken parse(String token) {
+        try {
+            Claims claims = jwtParser.parseClaimsJws(token).getBody();
+            return toVerifiedToken(claims);
         } catch (ExpiredJwtException e) {
             logger.debug("JWT token expired: {}", e.getMessage());
-            return false;
+            return null;
         } catch (UnsupportedJwtException e) {
             logger.warn("Unsupported JWT token: {}", e.getMessage());
-            return false;
+            return null;
         } catch (MalformedJwtException e) {
             logger.warn("Malformed JWT token: {}", e.getMessage());
-            return false;
+            return null;
         } catch (SignatureException e) {
             logger.warn("Invalid JWT signature: {}", e.getMessage());
-            return false;
+            return null;
         } catch (IllegalArgumentException e) {
             logger.warn("JWT claims string is empty: {}", e.getMessage());
-            return false;
+            return null;
         }
     }
 
+    /**
+     * Validate JWT token
+     *
+     * @param token JWT token
+     * @return true if valid
+     */
+    public boolean validateToken(String token) {
+        return verify(token) != null;
+    }
+
     /**
      * Extract username from JWT token
      *
@@ -116,17 +318,8 @@ public class JWTTokenService {
      * @return Username or null
      */
     public String extractUsername(String token) {
-        try {
-            Claims claims = Jwts.parserBuilder()
-                .setSigningKey(signingKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-            return claims.getSubject();
-        } catch (Exception e) {
-            logger.error("Error extracting username from JWT token", e);
-            return null;
-        }
+        VerifiedToken verified = verify(token);
+        return verified != null ? verified.getSubject() : null;
     }
 
     /**
@@ -135,19 +328,9 @@ public class JWTTokenService {
      * @param token JWT token
      * @return List of roles or empty list
      */
-    @SuppressWarnings("unchecked")
     public List<String> extractRoles(String token) {
-        try {
-            Claims claims = Jwts.parserBuilder()
-                .setSigningKey(signingKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-            return (List<String>) claims.get("roles");
-        } catch (Exception e) {
-            logger.error("Error extracting roles from JWT token", e);
-            return List.of();
-        }
+        VerifiedToken verified = verify(token);
+        return verified != null ? verified.getRoles() : List.of();
     }
 
     /**
@@ -158,11 +341,7 @@ public class JWTTokenService {
      */
     public Claims extractAllClaims(String token) {
         try {
-            return Jwts.parserBuilder()
-                .setSigningKey(signingKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+            return jwtParser.parseClaimsJws(token).getBody();
         } catch (Exception e) {
             logger.error("Error extracting claims from JWT token", e);
             return null;
@@ -179,14 +358,36 @@ public class JWTTokenService {
     }
 
     /**
-     * Invalidate token (add to blacklist if implemented)
+     * Invalidate token until its expiry on every node
      *
      * @param token JWT token
+     * @return true if the token was revoked, false if it was already invalid or carries no jti
      */
-    public void invalidateToken(String token) {
-        // TODO: Implement token blacklist if needed
-        // For now, tokens will remain valid until expiry
-        logger.debug("Token invalidation requested (not implemented)");
+    public boolean invalidateToken(String token) {
+        VerifiedToken verified = verify(token);
+        if (verified == null) {
+            logger.debug("Token invalidation requested for an invalid token");
+            return false;
+        }
+        if (verified.getTokenId() == null) {
+            // Issued before tokens carried a jti; remains valid until expiry
+            logger.warn("Token for {} has no jti and cannot be revoked", verified.getSubject());
+            return false;
+        }
+        tokenRevocationService.revoke(verified.getTokenId(), verified.getExpiresAtMillis(), verified.getSubject());
+        verifiedTokenCache.invalidate(token);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static VerifiedToken toVerifiedToken(Claims claims) {
+        Object roles = claims.get("roles");
+        Date expiration = claims.getExpiration();
+        return new VerifiedToken(
+            claims.getSubject(),
+            roles instanceof List ? (List<String>) roles : List.of(),
+            expiration != null ? expiration.getTime() : Long.MAX_VALUE,
+            claims.getId());
     }
 
     /**
@@ -207,4 +408,11 @@ public class JWTTokenService {
             return true;
         }
     }
+
+    @PreDestroy
+    public void shutdown() {
+        if (batchVerifyExecutor != null) {
+            batchVerifyExecutor.shutdownNow();
+        }
+    }
 }
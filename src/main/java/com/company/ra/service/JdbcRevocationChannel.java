@@ -0,0 +1,146 @@
+package com.company.ra.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import com.company.ra.entity.RevokedToken;
+import com.company.ra.repository.RevokedTokenRepository;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Revocation channel backed by the revoked_tokens table on the RA datasource
+ *
+ * Each node polls for rows with an ID above the last one it has seen, so a
+ * revocation reaches every node within one poll interval. IDENTITY values are
+ * taken before the insert commits, so a row may become visible after a higher
+ * one: missing IDs below the last one seen are polled for again until they
+ * show up or the commit grace period has passed. Rows are deleted once the
+ * revoked token has expired.
+ */
+@Component
+public class JdbcRevocationChannel implements RevocationChannel {
+
+    private static final Logger logger = LoggerFactory.getLogger(JdbcRevocationChannel.class);
+
+    // Purge expired rows every this many polls
+    private static final int PURGE_EVERY_POLLS = 60;
+    // Missing IDs are waited for this long; longer gaps are rolled back inserts
+    private static final long COMMIT_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // Only the IDs just below a new row can belong to inserts still in flight
+    private static final int MAX_TRACKED_GAPS = 1024;
+
+    @Autowired
+    private RevokedTokenRepository revokedTokenRepository;
+
+    @Value("${jwt.revocation.poll-interval:5s}")
+    private Duration pollInterval;
+
+    private ScheduledExecutorService pollExecutor;
+    private volatile Consumer<Revocation> listener;
+    private long lastSeenId;
+    // Missing IDs below lastSeenId, with the time they were first missed
+    private final NavigableMap<Long, Long> gaps = new TreeMap<>();
+    private int pollCount;
+
+    @Override
+    public void publish(Revocation revocation) {
+        try {
+            revokedTokenRepository.save(new RevokedToken(
+                revocation.getTokenId(),
+                Instant.ofEpochMilli(revocation.getExpiresAtMillis()),
+                revocation.getRevokedBy()));
+        } catch (DataIntegrityViolationException e) {
+            logger.debug("Token already revoked: {}", revocation.getTokenId());
+        }
+    }
+
+    @Override
+    public synchronized void subscribe(Consumer<Revocation> listener) {
+        this.listener = listener;
+
+        List<RevokedToken> active = revokedTokenRepository.findByExpiresAtAfter(Instant.now());
+        Set<Long> loaded = new HashSet<>();
+        for (RevokedToken revokedToken : active) {
+            deliver(revokedToken);
+            loaded.add(revokedToken.getId());
+        }
+        // Rows below the newest one may still be committing
+        long now = System.currentTimeMillis();
+        for (long id = Math.max(1, lastSeenId - MAX_TRACKED_GAPS); id < lastSeenId; id++) {
+            if (!loaded.contains(id)) {
+                gaps.put(id, now);
+            }
+        }
+        logger.info("Loaded {} active token revocations", active.size());
+
+        if (pollExecutor == null) {
+            pollExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "token-revocation-poll");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = pollInterval.toMillis();
+            pollExecutor.scheduleWithFixedDelay(this::poll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void poll() {
+        try {
+            long now = System.currentTimeMillis();
+            gaps.values().removeIf(missedAt -> now - missedAt > COMMIT_GRACE_MILLIS);
+            long from = gaps.isEmpty() ? lastSeenId : Math.min(lastSeenId, gaps.firstKey() - 1);
+            for (RevokedToken revokedToken : revokedTokenRepository.findByIdGreaterThanOrderByIdAsc(from)) {
+                long id = revokedToken.getId();
+                if (id > lastSeenId) {
+                    for (long missing = Math.max(lastSeenId, id - MAX_TRACKED_GAPS) + 1; missing < id; missing++) {
+                        gaps.put(missing, now);
+                    }
+                    deliver(revokedToken);
+                } else if (gaps.remove(id) != null) {
+                    deliver(revokedToken);
+                }
+            }
+            if (++pollCount % PURGE_EVERY_POLLS == 0) {
+                long purged = revokedTokenRepository.deleteByExpiresAtBefore(Instant.now());
+                if (purged > 0) {
+                    logger.debug("Purged {} expired token revocations", purged);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Never let an exception cancel the scheduled poll
+            logger.error("Token revocation poll failed", e);
+        }
+    }
+
+    private void deliver(RevokedToken revokedToken) {
+        lastSeenId = Math.max(lastSeenId, revokedToken.getId());
+        listener.accept(new Revocation(
+            revokedToken.getTokenId(),
+            revokedToken.getExpiresAt().toEpochMilli(),
+            revokedToken.getRevokedBy()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pollExecutor != null) {
+            pollExecutor.shutdownNow();
+        }
+    }
+}
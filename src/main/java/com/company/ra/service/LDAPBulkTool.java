@@ -0,0 +1,447 @@
+package com.company.ra.service;
+
+import com.company.ra.config.LdapGovernorProperties;
+import com.company.ra.config.LdapOperationGovernor;
+
+import javax.naming.CommunicationException;
+import javax.naming.ServiceUnavailableException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulk LDAP Tool
+ *
+ * Runs checkUserExists / addUser / checkUserInOU for every row of a CSV file
+ * (e.g. an HR export) on a fixed number of worker threads, each with its own
+ * quiet {@link LDAPService} connection, and writes one result row per input
+ * row, in input order. Throughput and latency percentiles are printed at the end.
+ *
+ * Input columns (header row optional): operation,username,password,ou
+ * where operation is check, add or check-ou; ou defaults to --ou.
+ *
+ * Usage:
+ *   java com.company.ra.service.LDAPBulkTool --input=users.csv [--output=results.csv]
+ *       [--url=ldap://localhost:389] [--bind-dn=...] [--base-dn=...] [--threads=8]
+ *       [--ou="RA Users"] [--create-ou] [--max-rate=50]
+ * The bind password is read from LDAP_BIND_PASSWORD, or --password.
+ * --max-rate caps searches and writes per second across all workers (each
+ * class separately), so a large import cannot saturate the domain controllers.
+ *
+ * Exit code: 0 if every row succeeded, 1 if some rows failed, 2 for bad arguments or input.
+ *
+ * @author RA Team
+ */
+public class LDAPBulkTool {
+
+    private static final String DEFAULT_URL = "ldap://localhost:389";
+    private static final String DEFAULT_BIND_DN = "cn=Administrator,cn=Users,dc=corp,dc=local";
+    private static final String DEFAULT_BASE_DN = "dc=corp,dc=local";
+    private static final String DEFAULT_OU = "RA Users";
+
+    /**
+     * Directory operation for one input row
+     */
+    public enum Operation {
+        CHECK("check"), ADD("add"), CHECK_OU("check-ou");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        static Operation parse(String value) {
+            for (Operation operation : values()) {
+                if (operation.label.equalsIgnoreCase(value.trim())) {
+                    return operation;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Opens a connection for one worker
+     */
+    @FunctionalInterface
+    public interface ServiceFactory {
+        LDAPService open() throws Exception;
+    }
+
+    /**
+     * One input row
+     */
+    public record Task(int line, Operation operation, String username, String password, String ou) {
+    }
+
+    /**
+     * Outcome of one row; error is null when the operation completed (result false meaning "not found")
+     */
+    public record Result(Task task, boolean result, long nanos, String error) {
+
+        public boolean isError() {
+            return error != null;
+        }
+    }
+
+    /**
+     * Totals and latency distribution of a run
+     */
+    public record Summary(int total, int failed, long elapsedNanos, long[] sortedNanos) {
+
+        public int succeeded() {
+            return total - failed;
+        }
+
+        public double throughput() {
+            return elapsedNanos == 0 ? 0 : total * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        /**
+         * Latency percentile by nearest rank
+         *
+         * @param percentile 0-100
+         * @return Latency in milliseconds, 0 without samples
+         */
+        public double percentileMillis(double percentile) {
+            if (sortedNanos.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100.0 * sortedNanos.length);
+            return sortedNanos[Math.min(sortedNanos.length, Math.max(1, rank)) - 1] / 1_000_000.0;
+        }
+    }
+
+    private final ServiceFactory serviceFactory;
+    private final int threads;
+
+    /**
+     * @param serviceFactory Opens one connection per worker
+     * @param threads Number of workers, and so of concurrent connections
+     */
+    public LDAPBulkTool(ServiceFactory serviceFactory, int threads) {
+        this.serviceFactory = serviceFactory;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Run all tasks
+     *
+     * @param tasks Tasks
+     * @return Results in task order
+     */
+    public List<Result> run(List<Task> tasks) throws InterruptedException {
+        Result[] results = new Result[tasks.size()];
+        AtomicInteger next = new AtomicInteger();
+        int workers = Math.min(threads, Math.max(1, tasks.size()));
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "ldap-bulk-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                futures.add(executor.submit(() -> work(tasks, results, next)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Bulk worker failed", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Take tasks until none are left, reconnecting after connection errors
+     */
+    private void work(List<Task> tasks, Result[] results, AtomicInteger next) {
+        LDAPService service = null;
+        try {
+            int index;
+            while ((index = next.getAndIncrement()) < tasks.size()) {
+                Task task = tasks.get(index);
+                long start = System.nanoTime();
+                if (service == null) {
+                    try {
+                        service = serviceFactory.open();
+                    } catch (Exception e) {
+                        results[index] = new Result(task, false, System.nanoTime() - start,
+                            "Connection failed: " + e.getMessage());
+                        continue;
+                    }
+                }
+                results[index] = execute(service, task, start);
+                Exception error = service.getLastError();
+                if (error instanceof CommunicationException || error instanceof ServiceUnavailableException) {
+                    service.close();
+                    service = null;
+                }
+            }
+        } finally {
+            if (service != null) {
+                service.close();
+            }
+        }
+    }
+
+    private static Result execute(LDAPService service, Task task, long start) {
+        boolean result = switch (task.operation()) {
+            case CHECK -> service.checkUserExists(task.username());
+            case ADD -> service.addUser(task.username(), task.password(), task.ou());
+            case CHECK_OU -> service.checkUserInOU(task.username(), task.ou());
+        };
+        long nanos = System.nanoTime() - start;
+        Exception error = service.getLastError();
+        return new Result(task, result, nanos, error == null ? null : error.getClass().getSimpleName() + ": " + error.getMessage());
+    }
+
+    /**
+     * Summarize results
+     *
+     * @param results Results
+     * @param elapsedNanos Wall-clock time of the run
+     * @return Summary
+     */
+    public static Summary summarize(List<Result> results, long elapsedNanos) {
+        long[] nanos = new long[results.size()];
+        int failed = 0;
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] = results.get(i).nanos();
+            if (results.get(i).isError()) {
+                failed++;
+            }
+        }
+        Arrays.sort(nanos);
+        return new Summary(results.size(), failed, elapsedNanos, nanos);
+    }
+
+    /**
+     * Read tasks from CSV, validating every row before anything runs
+     *
+     * @param reader CSV input
+     * @param defaultOu OU for rows without one
+     * @return Tasks
+     * @throws IllegalArgumentException naming the first invalid line
+     */
+    public static List<Task> readTasks(Reader reader, String defaultOu) throws IOException {
+        CsvRecordReader records = new CsvRecordReader(reader);
+        List<Task> tasks = new ArrayList<>();
+        List<String> fields;
+        while ((fields = records.readRecord()) != null) {
+            int number = records.getRecordLine();
+            if (fields.size() == 1 && fields.get(0).isBlank()) {
+                continue;
+            }
+            if (number == 1 && fields.get(0).trim().equalsIgnoreCase("operation")) {
+                continue;
+            }
+            Operation operation = Operation.parse(fields.get(0));
+            if (operation == null) {
+                throw new IllegalArgumentException("Line " + number + ": unknown operation '" + fields.get(0)
+                    + "' (expected check, add or check-ou)");
+            }
+            String username = field(fields, 1);
+            if (username == null) {
+                throw new IllegalArgumentException("Line " + number + ": username is required");
+            }
+            String password = field(fields, 2);
+            if (operation == Operation.ADD && password == null) {
+                throw new IllegalArgumentException("Line " + number + ": password is required for add");
+            }
+            String ou = field(fields, 3);
+            tasks.add(new Task(number, operation, username, password, ou != null ? ou : defaultOu));
+        }
+        return tasks;
+    }
+
+    private static String field(List<String> fields, int index) {
+        if (index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Write results as CSV: line,operation,username,ou,status,result,latency_ms,error
+     *
+     * @param results Results
+     * @param writer Output
+     */
+    public static void writeResults(List<Result> results, Writer writer) throws IOException {
+        writer.write("line,operation,username,ou,status,result,latency_ms,error\n");
+        for (Result result : results) {
+            Task task = result.task();
+            writer.write(String.join(",",
+                String.valueOf(task.line()),
+                task.operation().getLabel(),
+                csv(task.username()),
+                csv(task.operation() == Operation.CHECK ? "" : task.ou()),
+                result.isError() ? "ERROR" : "OK",
+                result.isError() ? "" : String.valueOf(result.result()),
+                String.format(Locale.ROOT, "%.3f", result.nanos() / 1_000_000.0),
+                csv(result.error() == null ? "" : result.error())));
+            writer.write('\n');
+        }
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Print totals, throughput and latency percentiles
+     */
+    public static void printSummary(Summary summary, int threads) {
+        System.out.println("=".repeat(50));
+        System.out.printf(Locale.ROOT, "Processed %d rows in %.2f s with %d connections: %d ok, %d errors%n",
+            summary.total(), summary.elapsedNanos() / 1_000_000_000.0, threads, summary.succeeded(), summary.failed());
+        System.out.printf(Locale.ROOT, "Throughput: %.1f ops/s%n", summary.throughput());
+        System.out.printf(Locale.ROOT, "Latency ms: p50=%.2f p90=%.2f p95=%.2f p99=%.2f max=%.2f%n",
+            summary.percentileMillis(50), summary.percentileMillis(90), summary.percentileMillis(95),
+            summary.percentileMillis(99), summary.percentileMillis(100));
+        System.out.println("=".repeat(50));
+    }
+
+    /**
+     * Governor shared by all workers, limiting each operation class to a rate
+     *
+     * @param ratePerSecond Operations per second per class
+     * @param threads Workers; also the burst, so every worker can start at once
+     * @return Governor
+     */
+    static LdapOperationGovernor governor(double ratePerSecond, int threads) {
+        int burst = Math.max(1, threads);
+        LdapGovernorProperties properties = new LdapGovernorProperties();
+        properties.setSearch(new LdapGovernorProperties.Limit(ratePerSecond, burst));
+        properties.setBind(new LdapGovernorProperties.Limit(ratePerSecond, burst));
+        properties.setModify(new LdapGovernorProperties.Limit(ratePerSecond, burst));
+        // Workers wait their turn rather than fail rows
+        properties.setInteractiveMaxWait(Duration.ofMinutes(5));
+        properties.setMaxQueue(burst);
+        return new LdapOperationGovernor(properties);
+    }
+
+    /**
+     * Run the tool
+     *
+     * @param args Command-line arguments
+     * @return Exit code
+     */
+    static int run(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                System.err.println("✗ Unexpected argument: " + arg);
+                return 2;
+            }
+            int eq = arg.indexOf('=');
+            options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "true" : arg.substring(eq + 1));
+        }
+        String input = options.get("input");
+        if (input == null) {
+            System.err.println("✗ --input=<file.csv> is required");
+            return 2;
+        }
+        String output = options.getOrDefault("output", input + ".results.csv");
+        String url = options.getOrDefault("url", DEFAULT_URL);
+        String bindDn = options.getOrDefault("bind-dn", DEFAULT_BIND_DN);
+        String baseDn = options.getOrDefault("base-dn", DEFAULT_BASE_DN);
+        String password = System.getenv("LDAP_BIND_PASSWORD") != null
+            ? System.getenv("LDAP_BIND_PASSWORD") : options.getOrDefault("password", "");
+        String defaultOu = options.getOrDefault("ou", DEFAULT_OU);
+        int threads;
+        double maxRate;
+        try {
+            threads = Integer.parseInt(options.getOrDefault("threads", "8"));
+            maxRate = Double.parseDouble(options.getOrDefault("max-rate", "0"));
+        } catch (NumberFormatException e) {
+            System.err.println("✗ --threads and --max-rate must be numbers: " + e.getMessage());
+            return 2;
+        }
+        if (threads < 1 || !(maxRate >= 0) || Double.isInfinite(maxRate)) {
+            System.err.println("✗ --threads must be at least 1 and --max-rate a finite number of at least 0");
+            return 2;
+        }
+
+        List<Task> tasks;
+        try (Reader reader = Files.newBufferedReader(Path.of(input), StandardCharsets.UTF_8)) {
+            tasks = readTasks(reader, defaultOu);
+        } catch (IllegalArgumentException e) {
+            System.err.println("✗ Invalid input " + input + ": " + e.getMessage());
+            return 2;
+        }
+        System.out.println("Read " + tasks.size() + " rows from " + input);
+
+        LdapOperationGovernor governor = maxRate > 0 ? governor(maxRate, threads) : LdapOperationGovernor.unlimited();
+        ServiceFactory factory = () -> {
+            LDAPService service = new LDAPService(url, bindDn, password, baseDn, false);
+            service.setGovernor(governor);
+            return service;
+        };
+        if (options.containsKey("create-ou")) {
+            // Once up front, so workers adding to a new OU do not race to create it
+            Set<String> ous = new LinkedHashSet<>();
+            for (Task task : tasks) {
+                if (task.operation() == Operation.ADD) {
+                    ous.add(task.ou());
+                }
+            }
+            LDAPService setup = new LDAPService(url, bindDn, password, baseDn, true);
+            try {
+                for (String ou : ous) {
+                    setup.createOUIfNotExists(ou);
+                }
+            } finally {
+                setup.close();
+            }
+        }
+
+        long start = System.nanoTime();
+        List<Result> results = new LDAPBulkTool(factory, threads).run(tasks);
+        Summary summary = summarize(results, System.nanoTime() - start);
+
+        try (Writer writer = Files.newBufferedWriter(Path.of(output), StandardCharsets.UTF_8)) {
+            writeResults(results, writer);
+        }
+        System.out.println("Results written to " + output);
+        printSummary(summary, threads);
+        return summary.failed() == 0 ? 0 : 1;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(run(args));
+    }
+}
@@ -1,8 +1,13 @@
 package com.company.ra.service;
 
+import com.company.ra.config.LdapOperationGovernor;
+
 import javax.naming.Context;
 import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
 import javax.naming.directory.*;
+import javax.naming.ldap.Rdn;
+import java.nio.charset.StandardCharsets;
 import java.util.Hashtable;
 
 /**
@@ -13,6 +18,10 @@ import java.util.Hashtable;
  * - Add new users to AD
  * - Verify user in specific OU
  *
+ * Each instance holds one connection and is not thread-safe; concurrent callers
+ * (see {@link LDAPBulkTool}) use one instance per thread. Quiet instances print
+ * nothing and report failures through {@link #getLastError()} instead.
+ *
  * @author RA Team
  */
 public class LDAPService {
@@ -23,33 +32,74 @@ public class LDAPService {
     private static final String ADMIN_PASSWORD = "P@ssw0rd123!";
     private static final String BASE_DN = "dc=corp,dc=local";
 
+    private final String ldapUrl;
+    private final String adminDn;
+    private final String adminPassword;
+    private final String baseDn;
+    private final String upnSuffix;
+    private final boolean verbose;
+
     private DirContext context;
+    private Exception lastError;
+    private LdapOperationGovernor governor = LdapOperationGovernor.unlimited();
 
     /**
-     * Initialize LDAP connection
+     * Initialize LDAP connection with the built-in test settings, printing progress
      */
     public LDAPService() throws Exception {
+        this(LDAP_URL, ADMIN_DN, ADMIN_PASSWORD, BASE_DN, true);
+    }
+
+    /**
+     * Initialize LDAP connection
+     *
+     * @param ldapUrl LDAP URL
+     * @param adminDn DN to bind as
+     * @param adminPassword Bind password
+     * @param baseDn Base DN for searches and new entries
+     * @param verbose Print progress to stdout and errors to stderr
+     */
+    public LDAPService(String ldapUrl, String adminDn, String adminPassword, String baseDn,
+                       boolean verbose) throws Exception {
+        this.ldapUrl = ldapUrl;
+        this.adminDn = adminDn;
+        this.adminPassword = adminPassword;
+        this.baseDn = baseDn;
+        this.upnSuffix = "@" + domainOf(baseDn);
+        this.verbose = verbose;
         connect();
     }
 
+    /**
+     * Rate-limit this instance's operations, e.g. with one governor shared by all bulk workers
+     *
+     * @param governor Governor every search, bind and write waits for
+     */
+    public void setGovernor(LdapOperationGovernor governor) {
+        this.governor = governor;
+    }
+
     /**
      * Connect to LDAP/Active Directory
      */
     private void connect() throws Exception {
         Hashtable<String, String> env = new Hashtable<>();
         env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
-        env.put(Context.PROVIDER_URL, LDAP_URL);
+        env.put(Context.PROVIDER_URL, ldapUrl);
         env.put(Context.SECURITY_AUTHENTICATION, "simple");
-        env.put(Context.SECURITY_PRINCIPAL, ADMIN_DN);
-        env.put(Context.SECURITY_CREDENTIALS, ADMIN_PASSWORD);
+        env.put(Context.SECURITY_PRINCIPAL, adminDn);
+        env.put(Context.SECURITY_CREDENTIALS, adminPassword);
         // Ignore referrals to prevent PartialResultException in Active Directory
         env.put(Context.REFERRAL, "ignore");
+        // Fail instead of hanging on an unreachable or stalled server
+        env.put("com.sun.jndi.ldap.connect.timeout", "5000");
+        env.put("com.sun.jndi.ldap.read.timeout", "30000");
 
         try {
             context = new InitialDirContext(env);
-            System.out.println("✓ Successfully connected to LDAP: " + LDAP_URL);
+            log("✓ Successfully connected to LDAP: " + ldapUrl);
         } catch (Exception e) {
-            System.err.println("✗ Failed to connect to LDAP: " + e.getMessage());
+            logError("✗ Failed to connect to LDAP: " + e.getMessage());
             throw e;
         }
     }
@@ -61,12 +111,13 @@ public class LDAPService {
      * @return true if user exists, false otherwise
      */
     public boolean checkUserExists(String username) {
+        lastError = null;
         try {
-            System.out.println("\n=== Checking User Existence ===");
-            System.out.println("Username: " + username);
+            log("\n=== Checking User Existence ===");
+            log("Username: " + username);
 
             // Create search filter
-            String searchFilter = String.format("(&(objectClass=user)(cn=%s))", username);
+            String searchFilter = String.format("(&(objectClass=user)(cn=%s))", escapeFilter(username));
 
             // Configure search controls
             SearchControls searchControls = new SearchControls();
@@ -76,7 +127,8 @@ public class LDAPService {
             });
 
             // Perform search
-            NamingEnumeration<SearchResult> results = context.search(BASE_DN, searchFilter, searchControls);
+            governor.acquire(LdapOperationGovernor.OperationClass.SEARCH);
+            NamingEnumeration<SearchResult> results = context.search(baseDn, searchFilter, searchControls);
 
             boolean found = false;
             try {
@@ -84,42 +136,42 @@ public class LDAPService {
                     SearchResult result = results.next();
                     found = true;
 
-                    System.out.println("\n✓ User found!");
-                    System.out.println("Distinguished Name: " + result.getNameInNamespace());
+                    log("\n✓ User found!");
+                    log("Distinguished Name: " + result.getNameInNamespace());
 
                     Attributes attrs = result.getAttributes();
                     if (attrs.get("cn") != null) {
-                        System.out.println("CN: " + attrs.get("cn").get());
+                        log("CN: " + attrs.get("cn").get());
                     }
                     if (attrs.get("sAMAccountName") != null) {
-                        System.out.println("sAMAccountName: " + attrs.get("sAMAccountName").get());
+                        log("sAMAccountName: " + attrs.get("sAMAccountName").get());
                     }
                     if (attrs.get("mail") != null) {
-                        System.out.println("Email: " + attrs.get("mail").get());
+                        log("Email: " + attrs.get("mail").get());
                     }
                     if (attrs.get("displayName") != null) {
-                        System.out.println("Display Name: " + attrs.get("displayName").get());
+                        log("Display Name: " + attrs.get("displayName").get());
                     }
                 }
             } catch (javax.naming.PartialResultException e) {
                 // Ignore partial result exception (caused by referrals in AD)
                 if (!found) {
-                    System.out.println("⚠ Search completed with referrals (partial results)");
+                    log("⚠ Search completed with referrals (partial results)");
                 }
             }
 
             if (!found) {
-                System.out.println("✗ User not found in Active Directory");
+                log("✗ User not found in Active Directory");
             }
 
             return found;
 
         } catch (javax.naming.PartialResultException e) {
-            System.err.println("⚠ Partial result (LDAP referrals) - this is normal in AD");
+            logError("⚠ Partial result (LDAP referrals) - this is normal in AD");
             return false;
         } catch (Exception e) {
-            System.err.println("✗ Error checking user existence: " + e.getMessage());
-            e.printStackTrace();
+            lastError = e;
+            logError("✗ Error checking user existence: " + e.getMessage());
             return false;
         }
     }
@@ -130,17 +182,19 @@ public class LDAPService {
      * @param username Username (cn and sAMAccountName)
      * @param password User password
      * @param ouName Organizational Unit name (e.g., "RA Users")
-     * @return true if user created successfully, false otherwise
+     * @return true if user created successfully, false otherwise (a user whose password or
+     *         enabling was rejected is deleted again)
      */
     public boolean addUser(String username, String password, String ouName) {
+        lastError = null;
         try {
-            System.out.println("\n=== Adding New User ===");
-            System.out.println("Username: " + username);
-            System.out.println("OU: " + ouName);
+            log("\n=== Adding New User ===");
+            log("Username: " + username);
+            log("OU: " + ouName);
 
             // Construct DN for new user
-            String userDN = String.format("cn=%s,ou=%s,%s", username, ouName, BASE_DN);
-            System.out.println("User DN: " + userDN);
+            String userDN = userDN(username, ouName);
+            log("User DN: " + userDN);
 
             // Create user attributes
             Attributes userAttributes = new BasicAttributes(true); // case-ignore
@@ -160,7 +214,7 @@ public class LDAPService {
             userAttributes.put("sAMAccountName", username);
 
             // User Principal Name
-            userAttributes.put("userPrincipalName", username + "@corp.local");
+            userAttributes.put("userPrincipalName", username + upnSuffix);
 
             // Display Name
             userAttributes.put("displayName", username);
@@ -172,24 +226,32 @@ public class LDAPService {
             userAttributes.put("userAccountControl", "544");
 
             // Create the user
+            governor.acquire(LdapOperationGovernor.OperationClass.MODIFY);
             context.createSubcontext(userDN, userAttributes);
-            System.out.println("✓ User created successfully!");
+            log("✓ User created successfully!");
 
-            // Set password (Active Directory requires Unicode password)
-            setPassword(userDN, password);
-
-            // Enable the account (set userAccountControl to 512)
-            ModificationItem[] mods = new ModificationItem[1];
-            mods[0] = new ModificationItem(DirContext.REPLACE_ATTRIBUTE,
-                new BasicAttribute("userAccountControl", "512"));
-            context.modifyAttributes(userDN, mods);
-            System.out.println("✓ User account enabled!");
+            try {
+                // Set password (Active Directory requires Unicode password)
+                setPassword(userDN, password);
+
+                // Enable the account (set userAccountControl to 512)
+                ModificationItem[] mods = new ModificationItem[1];
+                mods[0] = new ModificationItem(DirContext.REPLACE_ATTRIBUTE,
+                    new BasicAttribute("userAccountControl", "512"));
+                governor.acquire(LdapOperationGovernor.OperationClass.MODIFY);
+                context.modifyAttributes(userDN, mods);
+                log("✓ User account enabled!");
+            } catch (Exception e) {
+                // Do not leave a disabled account behind that would make a rerun fail
+                deleteEntry(userDN);
+                throw e;
+            }
 
             return true;
 
         } catch (Exception e) {
-            System.err.println("✗ Error adding user: " + e.getMessage());
-            e.printStackTrace();
+            lastError = e;
+            logError("✗ Error adding user: " + e.getMessage());
             return false;
         }
     }
@@ -199,27 +261,58 @@ public class LDAPService {
      *
      * @param userDN Distinguished Name of user
      * @param password New password
+     * @throws NamingException if the directory rejects the password
      */
-    private void setPassword(String userDN, String password) {
-        try {
-            // Active Directory requires password to be enclosed in quotes and encoded as UTF-16LE
-            String quotedPassword = "\"" + password + "\"";
-            byte[] unicodePassword = quotedPassword.getBytes("UTF-16LE");
+    private void setPassword(String userDN, String password) throws NamingException {
+        // Active Directory requires password to be enclosed in quotes and encoded as UTF-16LE
+        String quotedPassword = "\"" + password + "\"";
+        byte[] unicodePassword = quotedPassword.getBytes(StandardCharsets.UTF_16LE);
 
-            ModificationItem[] mods = new ModificationItem[1];
-            mods[0] = new ModificationItem(DirContext.REPLACE_ATTRIBUTE,
-                new BasicAttribute("unicodePwd", unicodePassword));
+        ModificationItem[] mods = new ModificationItem[1];
+        mods[0] = new ModificationItem(DirContext.REPLACE_ATTRIBUTE,
+            new BasicAttribute("unicodePwd", unicodePassword));
 
+        try {
+            governor.acquire(LdapOperationGovernor.OperationClass.MODIFY);
             context.modifyAttributes(userDN, mods);
-            System.out.println("✓ Password set successfully!");
-
-        } catch (Exception e) {
-            System.err.println("✗ Error setting password: " + e.getMessage());
+            log("✓ Password set successfully!");
+        } catch (NamingException e) {
+            logError("✗ Error setting password: " + e.getMessage());
             // Note: Password setting might fail due to password policy or SSL requirement
-            System.err.println("Note: AD often requires SSL/TLS for password operations");
+            logError("Note: AD often requires SSL/TLS for password operations");
+            throw e;
+        }
+    }
+
+    /**
+     * Delete a user created by a failed {@link #addUser}
+     *
+     * @param userDN Distinguished Name of user
+     */
+    private void deleteEntry(String userDN) {
+        try {
+            governor.acquire(LdapOperationGovernor.OperationClass.MODIFY);
+            context.destroySubcontext(userDN);
+            log("✓ Incomplete user removed: " + userDN);
+        } catch (NamingException e) {
+            logError("✗ Error removing incomplete user " + userDN + ": " + e.getMessage());
         }
     }
 
+    /**
+     * DN of a user in an OU under the base DN, with both names escaped
+     */
+    private String userDN(String username, String ouName) {
+        return "cn=" + Rdn.escapeValue(username) + "," + ouDN(ouName);
+    }
+
+    /**
+     * DN of an OU under the base DN, with the name escaped
+     */
+    private String ouDN(String ouName) {
+        return "ou=" + Rdn.escapeValue(ouName) + "," + baseDn;
+    }
+
     /**
      * Create Organizational Unit if it doesn't exist
      *
@@ -228,16 +321,17 @@ public class LDAPService {
      */
     public boolean createOUIfNotExists(String ouName) {
         try {
-            String ouDN = String.format("ou=%s,%s", ouName, BASE_DN);
+            String ouDN = ouDN(ouName);
 
             // Check if OU exists
+            governor.acquire(LdapOperationGovernor.OperationClass.SEARCH);
             try {
                 context.getAttributes(ouDN);
-                System.out.println("✓ OU already exists: " + ouDN);
+                log("✓ OU already exists: " + ouDN);
                 return true;
             } catch (Exception e) {
                 // OU doesn't exist, create it
-                System.out.println("Creating OU: " + ouDN);
+                log("Creating OU: " + ouDN);
 
                 Attributes ouAttributes = new BasicAttributes(true);
 
@@ -248,13 +342,14 @@ public class LDAPService {
 
                 ouAttributes.put("ou", ouName);
 
+                governor.acquire(LdapOperationGovernor.OperationClass.MODIFY);
                 context.createSubcontext(ouDN, ouAttributes);
-                System.out.println("✓ OU created successfully: " + ouDN);
+                log("✓ OU created successfully: " + ouDN);
                 return true;
             }
 
         } catch (Exception e) {
-            System.err.println("✗ Error creating OU: " + e.getMessage());
+            logError("✗ Error creating OU: " + e.getMessage());
             return false;
         }
     }
@@ -267,13 +362,14 @@ public class LDAPService {
      * @return true if user exists in specified OU
      */
     public boolean checkUserInOU(String username, String ouName) {
+        lastError = null;
         try {
-            System.out.println("\n=== Checking User in OU ===");
-            System.out.println("Username: " + username);
-            System.out.println("OU: " + ouName);
+            log("\n=== Checking User in OU ===");
+            log("Username: " + username);
+            log("OU: " + ouName);
 
-            String ouDN = String.format("ou=%s,%s", ouName, BASE_DN);
-            String searchFilter = String.format("(&(objectClass=user)(cn=%s))", username);
+            String ouDN = ouDN(ouName);
+            String searchFilter = String.format("(&(objectClass=user)(cn=%s))", escapeFilter(username));
 
             SearchControls searchControls = new SearchControls();
             searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
@@ -281,6 +377,7 @@ public class LDAPService {
                 "cn", "sAMAccountName", "distinguishedName", "mail", "displayName", "userPrincipalName"
             });
 
+            governor.acquire(LdapOperationGovernor.OperationClass.SEARCH);
             NamingEnumeration<SearchResult> results = context.search(ouDN, searchFilter, searchControls);
 
             boolean found = false;
@@ -289,38 +386,38 @@ public class LDAPService {
                     SearchResult result = results.next();
                     found = true;
 
-                    System.out.println("\n✓ User found in OU!");
-                    System.out.println("Distinguished Name: " + result.getNameInNamespace());
+                    log("\n✓ User found in OU!");
+                    log("Distinguished Name: " + result.getNameInNamespace());
 
                     Attributes attrs = result.getAttributes();
-                    System.out.println("CN: " + attrs.get("cn").get());
-                    System.out.println("sAMAccountName: " + attrs.get("sAMAccountName").get());
+                    log("CN: " + attrs.get("cn").get());
+                    log("sAMAccountName: " + attrs.get("sAMAccountName").get());
                     if (attrs.get("userPrincipalName") != null) {
-                        System.out.println("UPN: " + attrs.get("userPrincipalName").get());
+                        log("UPN: " + attrs.get("userPrincipalName").get());
                     }
                     if (attrs.get("displayName") != null) {
-                        System.out.println("Display Name: " + attrs.get("displayName").get());
+                        log("Display Name: " + attrs.get("displayName").get());
                     }
                 }
             } catch (javax.naming.PartialResultException e) {
                 // Ignore partial result exception
                 if (!found) {
-                    System.out.println("⚠ Search completed with referrals");
+                    log("⚠ Search completed with referrals");
                 }
             }
 
             if (!found) {
-                System.out.println("✗ User not found in OU: " + ouDN);
+                log("✗ User not found in OU: " + ouDN);
             }
 
             return found;
 
         } catch (javax.naming.PartialResultException e) {
-            System.err.println("⚠ Partial result (LDAP referrals) - this is normal in AD");
+            logError("⚠ Partial result (LDAP referrals) - this is normal in AD");
             return false;
         } catch (Exception e) {
-            System.err.println("✗ Error checking user in OU: " + e.getMessage());
-            e.printStackTrace();
+            lastError = e;
+            logError("✗ Error checking user in OU: " + e.getMessage());
             return false;
         }
     }
@@ -330,7 +427,7 @@ public class LDAPService {
      */
     public void listAllUsers() {
         try {
-            System.out.println("\n=== Listing All Users ===");
+            log("\n=== Listing All Users ===");
 
             String searchFilter = "(objectClass=user)";
 
@@ -338,7 +435,8 @@ public class LDAPService {
             searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
             searchControls.setReturningAttributes(new String[]{"cn", "sAMAccountName", "distinguishedName"});
 
-            NamingEnumeration<SearchResult> results = context.search(BASE_DN, searchFilter, searchControls);
+            governor.acquire(LdapOperationGovernor.OperationClass.SEARCH);
+            NamingEnumeration<SearchResult> results = context.search(baseDn, searchFilter, searchControls);
 
             int count = 0;
             try {
@@ -350,19 +448,19 @@ public class LDAPService {
                     String cn = attrs.get("cn") != null ? (String) attrs.get("cn").get() : "N/A";
                     String sam = attrs.get("sAMAccountName") != null ? (String) attrs.get("sAMAccountName").get() : "N/A";
 
-                    System.out.println(count + ". CN: " + cn + ", sAMAccountName: " + sam);
+                    log(count + ". CN: " + cn + ", sAMAccountName: " + sam);
                 }
             } catch (javax.naming.PartialResultException e) {
                 // Ignore partial result exception
-                System.out.println("(Stopped at " + count + " users due to referrals)");
+                log("(Stopped at " + count + " users due to referrals)");
             }
 
-            System.out.println("\nTotal users found: " + count);
+            log("\nTotal users found: " + count);
 
         } catch (javax.naming.PartialResultException e) {
-            System.err.println("⚠ Partial result (LDAP referrals) - this is normal in AD");
+            logError("⚠ Partial result (LDAP referrals) - this is normal in AD");
         } catch (Exception e) {
-            System.err.println("✗ Error listing users: " + e.getMessage());
+            logError("✗ Error listing users: " + e.getMessage());
         }
     }
 
@@ -375,22 +473,22 @@ public class LDAPService {
      */
     public boolean authenticateUser(String username, String password) {
         try {
-            System.out.println("\n=== Authenticating User ===");
-            System.out.println("Username: " + username);
+            log("\n=== Authenticating User ===");
+            log("Username: " + username);
 
             // Step 1: Find user's DN
             String userDN = getUserDN(username);
             if (userDN == null) {
-                System.err.println("✗ User not found: " + username);
+                logError("✗ User not found: " + username);
                 return false;
             }
 
-            System.out.println("User DN: " + userDN);
+            log("User DN: " + userDN);
 
             // Step 2: Attempt to bind with user credentials
             Hashtable<String, String> authEnv = new Hashtable<>();
             authEnv.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
-            authEnv.put(Context.PROVIDER_URL, LDAP_URL);
+            authEnv.put(Context.PROVIDER_URL, ldapUrl);
             authEnv.put(Context.SECURITY_AUTHENTICATION, "simple");
             authEnv.put(Context.SECURITY_PRINCIPAL, userDN);
             authEnv.put(Context.SECURITY_CREDENTIALS, password);
@@ -399,14 +497,15 @@ public class LDAPService {
             DirContext userContext = null;
             try {
                 // Try to create context with user credentials
+                governor.acquire(LdapOperationGovernor.OperationClass.BIND);
                 userContext = new InitialDirContext(authEnv);
-                System.out.println("✓ Authentication successful!");
-                System.out.println("✓ User '" + username + "' credentials are valid");
+                log("✓ Authentication successful!");
+                log("✓ User '" + username + "' credentials are valid");
                 return true;
 
             } catch (javax.naming.AuthenticationException e) {
-                System.err.println("✗ Authentication failed: Invalid username or password");
-                System.err.println("  Error: " + e.getMessage());
+                logError("✗ Authentication failed: Invalid username or password");
+                logError("  Error: " + e.getMessage());
                 return false;
 
             } finally {
@@ -420,8 +519,7 @@ public class LDAPService {
             }
 
         } catch (Exception e) {
-            System.err.println("✗ Error during authentication: " + e.getMessage());
-            e.printStackTrace();
+            logError("✗ Error during authentication: " + e.getMessage());
             return false;
         }
     }
@@ -435,13 +533,14 @@ public class LDAPService {
     private String getUserDN(String username) {
         try {
             String searchFilter = String.format("(&(objectClass=user)(|(cn=%s)(sAMAccountName=%s)))",
-                username, username);
+                escapeFilter(username), escapeFilter(username));
 
             SearchControls searchControls = new SearchControls();
             searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
             searchControls.setReturningAttributes(new String[]{"distinguishedName"});
 
-            NamingEnumeration<SearchResult> results = context.search(BASE_DN, searchFilter, searchControls);
+            governor.acquire(LdapOperationGovernor.OperationClass.SEARCH);
+            NamingEnumeration<SearchResult> results = context.search(baseDn, searchFilter, searchControls);
 
             try {
                 if (results.hasMore()) {
@@ -455,7 +554,7 @@ public class LDAPService {
             return null;
 
         } catch (Exception e) {
-            System.err.println("✗ Error getting user DN: " + e.getMessage());
+            logError("✗ Error getting user DN: " + e.getMessage());
             return null;
         }
     }
@@ -469,8 +568,8 @@ public class LDAPService {
      */
     public Hashtable<String, String> authenticateAndGetUserInfo(String username, String password) {
         try {
-            System.out.println("\n=== Authenticate and Retrieve User Info ===");
-            System.out.println("Username: " + username);
+            log("\n=== Authenticate and Retrieve User Info ===");
+            log("Username: " + username);
 
             // Step 1: Authenticate
             if (!authenticateUser(username, password)) {
@@ -479,7 +578,7 @@ public class LDAPService {
 
             // Step 2: Retrieve user attributes
             String searchFilter = String.format("(&(objectClass=user)(|(cn=%s)(sAMAccountName=%s)))",
-                username, username);
+                escapeFilter(username), escapeFilter(username));
 
             SearchControls searchControls = new SearchControls();
             searchControls.setSearchScope(SearchControls.SUBTREE_SCOPE);
@@ -488,7 +587,8 @@ public class LDAPService {
                 "displayName", "department", "userPrincipalName", "memberOf"
             });
 
-            NamingEnumeration<SearchResult> results = context.search(BASE_DN, searchFilter, searchControls);
+            governor.acquire(LdapOperationGovernor.OperationClass.SEARCH);
+            NamingEnumeration<SearchResult> results = context.search(baseDn, searchFilter, searchControls);
 
             Hashtable<String, String> userInfo = new Hashtable<>();
 
@@ -497,54 +597,54 @@ public class LDAPService {
                     SearchResult result = results.next();
                     Attributes attrs = result.getAttributes();
 
-                    System.out.println("\n✓ User Information Retrieved:");
+                    log("\n✓ User Information Retrieved:");
 
                     // Extract attributes
                     if (attrs.get("cn") != null) {
                         String cn = (String) attrs.get("cn").get();
                         userInfo.put("cn", cn);
-                        System.out.println("  CN: " + cn);
+                        log("  CN: " + cn);
                     }
                     if (attrs.get("sAMAccountName") != null) {
                         String sam = (String) attrs.get("sAMAccountName").get();
                         userInfo.put("sAMAccountName", sam);
-                        System.out.println("  sAMAccountName: " + sam);
+                        log("  sAMAccountName: " + sam);
                     }
                     if (attrs.get("distinguishedName") != null) {
                         String dn = (String) attrs.get("distinguishedName").get();
                         userInfo.put("distinguishedName", dn);
-                        System.out.println("  DN: " + dn);
+                        log("  DN: " + dn);
                     }
                     if (attrs.get("mail") != null) {
                         String mail = (String) attrs.get("mail").get();
                         userInfo.put("mail", mail);
-                        System.out.println("  Email: " + mail);
+                        log("  Email: " + mail);
                     }
                     if (attrs.get("displayName") != null) {
                         String displayName = (String) attrs.get("displayName").get();
                         userInfo.put("displayName", displayName);
-                        System.out.println("  Display Name: " + displayName);
+                        log("  Display Name: " + displayName);
                     }
                     if (attrs.get("department") != null) {
                         String department = (String) attrs.get("department").get();
                         userInfo.put("department", department);
-                        System.out.println("  Department: " + department);
+                        log("  Department: " + department);
                     }
                     if (attrs.get("userPrincipalName") != null) {
                         String upn = (String) attrs.get("userPrincipalName").get();
                         userInfo.put("userPrincipalName", upn);
-                        System.out.println("  UPN: " + upn);
+                        log("  UPN: " + upn);
                     }
 
                     // Extract groups (memberOf)
                     if (attrs.get("memberOf") != null) {
-                        System.out.println("  Groups:");
+                        log("  Groups:");
                         NamingEnumeration<?> groups = attrs.get("memberOf").getAll();
                         int groupCount = 0;
                         while (groups.hasMore()) {
                             String group = (String) groups.next();
                             groupCount++;
-                            System.out.println("    " + groupCount + ". " + group);
+                            log("    " + groupCount + ". " + group);
                         }
                     }
 
@@ -557,11 +657,20 @@ public class LDAPService {
             return userInfo;
 
         } catch (Exception e) {
-            System.err.println("✗ Error retrieving user info: " + e.getMessage());
+            logError("✗ Error retrieving user info: " + e.getMessage());
             return null;
         }
     }
 
+    /**
+     * Error behind the last false result of checkUserExists, addUser or checkUserInOU
+     *
+     * @return Exception, or null if the last call returned normally (false meaning "not found")
+     */
+    public Exception getLastError() {
+        return lastError;
+    }
+
     /**
      * Close LDAP connection
      */
@@ -569,11 +678,58 @@ public class LDAPService {
         try {
             if (context != null) {
                 context.close();
-                System.out.println("\n✓ LDAP connection closed");
+                log("\n✓ LDAP connection closed");
             }
         } catch (Exception e) {
-            System.err.println("✗ Error closing LDAP connection: " + e.getMessage());
+            logError("✗ Error closing LDAP connection: " + e.getMessage());
+        }
+    }
+
+    private void log(String message) {
+        if (verbose) {
+            System.out.println(message);
+        }
+    }
+
+    private void logError(String message) {
+        if (verbose) {
+            System.err.println(message);
+        }
+    }
+
+    /**
+     * Escape a value for use in a search filter (RFC 4515)
+     */
+    private static String escapeFilter(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '\\' -> escaped.append("\\5c");
+                case '*' -> escaped.append("\\2a");
+                case '(' -> escaped.append("\\28");
+                case ')' -> escaped.append("\\29");
+                case '\0' -> escaped.append("\\00");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * DNS domain of a base DN, e.g. corp.local for dc=corp,dc=local
+     */
+    private static String domainOf(String baseDn) {
+        StringBuilder domain = new StringBuilder();
+        for (String rdn : baseDn.split(",")) {
+            String[] parts = rdn.trim().split("=", 2);
+            if (parts.length == 2 && parts[0].trim().equalsIgnoreCase("dc")) {
+                if (domain.length() > 0) {
+                    domain.append('.');
+                }
+                domain.append(parts[1].trim());
+            }
         }
+        return domain.toString();
     }
 
     /**
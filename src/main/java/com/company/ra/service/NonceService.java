@@ -0,0 +1,231 @@
+package com.company.ra.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Service for generating nonces, salts and random identifiers
+ *
+ * Every thread draws from its own DRBG instance, seeded once when the thread
+ * first needs it, so request threads never contend on a shared generator or
+ * wait on the blocking entropy source behind SecureRandom.getInstanceStrong().
+ * Challenges and salts are additionally served from prefilled buffers that a
+ * background thread tops up whenever they fall below half capacity.
+ */
+@Service
+public class NonceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NonceService.class);
+
+    public static final int CHALLENGE_SIZE = 32;
+    public static final int SALT_SIZE = 16;
+
+    @Value("${nonce.buffer.capacity:1024}")
+    private int bufferCapacity;
+
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    private final ThreadLocal<SecureRandom> drbg = ThreadLocal.withInitial(NonceService::newDrbg);
+    private final AtomicBoolean refillPending = new AtomicBoolean();
+    private final LongAdder refillStalls = new LongAdder();
+    private final LongAdder refills = new LongAdder();
+
+    private BlockingQueue<byte[]> challengeBuffer;
+    private BlockingQueue<byte[]> saltBuffer;
+    private ExecutorService refillExecutor;
+    private int lowWatermark;
+
+    @PostConstruct
+    public void init() {
+        if (bufferCapacity < 1) {
+            throw new IllegalStateException("nonce.buffer.capacity must be positive");
+        }
+        challengeBuffer = new ArrayBlockingQueue<>(bufferCapacity);
+        saltBuffer = new ArrayBlockingQueue<>(bufferCapacity);
+        lowWatermark = Math.max(1, bufferCapacity / 2);
+        refillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "nonce-refill");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        fill(challengeBuffer, CHALLENGE_SIZE);
+        fill(saltBuffer, SALT_SIZE);
+
+        if (meterRegistry != null) {
+            Gauge.builder("ra.nonce.buffer.depth", challengeBuffer, Collection::size)
+                .tag("type", "challenge")
+                .description("Prefilled challenges available")
+                .register(meterRegistry);
+            Gauge.builder("ra.nonce.buffer.depth", saltBuffer, Collection::size)
+                .tag("type", "salt")
+                .description("Prefilled salts available")
+                .register(meterRegistry);
+            FunctionCounter.builder("ra.nonce.refill.stalls", refillStalls, LongAdder::sum)
+                .description("Requests that found a buffer empty and generated inline")
+                .register(meterRegistry);
+            FunctionCounter.builder("ra.nonce.refills", refills, LongAdder::sum)
+                .description("Background buffer refill runs")
+                .register(meterRegistry);
+        }
+
+        logger.info("NonceService initialized with buffer capacity: {}", bufferCapacity);
+    }
+
+    /**
+     * Take a 32-byte authentication challenge
+     *
+     * @return Fresh challenge bytes, owned by the caller
+     */
+    public byte[] nextChallenge() {
+        return take(challengeBuffer, CHALLENGE_SIZE);
+    }
+
+    /**
+     * Take a 16-byte PBKDF2 salt
+     *
+     * @return Fresh salt bytes, owned by the caller
+     */
+    public byte[] nextSalt() {
+        return take(saltBuffer, SALT_SIZE);
+    }
+
+    /**
+     * Generate random bytes of arbitrary length (unbuffered)
+     *
+     * @param length Number of bytes
+     * @return Random bytes
+     */
+    public byte[] nextBytes(int length) {
+        byte[] bytes = new byte[length];
+        drbg.get().nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Generate a random (version 4) UUID without going through the shared
+     * generator behind UUID.randomUUID()
+     *
+     * @return Random UUID
+     */
+    public UUID nextUUID() {
+        byte[] bytes = nextBytes(16);
+        bytes[6] &= 0x0f;
+        bytes[6] |= 0x40;  // version 4
+        bytes[8] &= 0x3f;
+        bytes[8] |= (byte) 0x80;  // IETF variant
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * Get number of prefilled challenges currently available
+     *
+     * @return Buffer depth
+     */
+    public int getChallengeBufferDepth() {
+        return challengeBuffer.size();
+    }
+
+    /**
+     * Get number of requests that had to generate inline because a buffer was empty
+     *
+     * @return Refill stall count
+     */
+    public long getRefillStalls() {
+        return refillStalls.sum();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (refillExecutor != null) {
+            refillExecutor.shutdownNow();
+        }
+        logger.info("NonceService shutdown");
+    }
+
+    private byte[] take(BlockingQueue<byte[]> buffer, int size) {
+        byte[] value = buffer.poll();
+        if (buffer.size() < lowWatermark) {
+            requestRefill();
+        }
+        if (value == null) {
+            refillStalls.increment();
+            value = nextBytes(size);
+        }
+        return value;
+    }
+
+    private void requestRefill() {
+        if (refillPending.compareAndSet(false, true)) {
+            try {
+                refillExecutor.execute(this::refill);
+            } catch (RuntimeException e) {
+                refillPending.set(false);
+                logger.warn("Could not schedule nonce buffer refill: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void refill() {
+        try {
+            fill(challengeBuffer, CHALLENGE_SIZE);
+            fill(saltBuffer, SALT_SIZE);
+            refills.increment();
+        } catch (RuntimeException e) {
+            logger.error("Nonce buffer refill failed", e);
+        } finally {
+            refillPending.set(false);
+        }
+    }
+
+    private void fill(BlockingQueue<byte[]> buffer, int size) {
+        SecureRandom random = drbg.get();
+        while (buffer.remainingCapacity() > 0) {
+            byte[] value = new byte[size];
+            random.nextBytes(value);
+            if (!buffer.offer(value)) {
+                break;
+            }
+        }
+    }
+
+    private static SecureRandom newDrbg() {
+        // Personalise each instance so threads seeded at the same moment still diverge
+        String personalization = Thread.currentThread().getName() + ":"
+            + Thread.currentThread().getId() + ":" + System.nanoTime();
+        try {
+            return SecureRandom.getInstance("DRBG", DrbgParameters.instantiation(
+                256,
+                DrbgParameters.Capability.RESEED_ONLY,
+                personalization.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            logger.warn("DRBG unavailable, falling back to default SecureRandom");
+            return new SecureRandom();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.company.ra.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter over token IDs
+ *
+ * Lookups read the bit array without locking and hash the ID's characters
+ * in place, so the common "definitely not revoked" answer costs a handful of
+ * memory reads and no allocation. Bits are set with CAS and never cleared;
+ * the owner rebuilds the filter to forget expired entries.
+ */
+class RevocationBloomFilter {
+
+    private static final int HASH_FUNCTIONS = 7;
+
+    private final AtomicLongArray words;
+    private final long bitMask;
+
+    /**
+     * @param bits Filter size in bits (rounded up to a power of two, at least 64)
+     */
+    RevocationBloomFilter(int bits) {
+        int size = Math.max(64, Integer.highestOneBit(Math.max(1, bits) - 1) << 1);
+        this.words = new AtomicLongArray(size >>> 6);
+        this.bitMask = size - 1;
+    }
+
+    void add(String tokenId) {
+        long h1 = hash(tokenId);
+        long h2 = mix(h1 ^ 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            long bit = (h1 + i * h2) & bitMask;
+            int word = (int) (bit >>> 6);
+            long flag = 1L << bit;
+            long current;
+            do {
+                current = words.get(word);
+                if ((current & flag) != 0) {
+                    break;
+                }
+            } while (!words.compareAndSet(word, current, current | flag));
+        }
+    }
+
+    boolean mightContain(String tokenId) {
+        long h1 = hash(tokenId);
+        long h2 = mix(h1 ^ 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            long bit = (h1 + i * h2) & bitMask;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int bitCount() {
+        return (int) (bitMask + 1);
+    }
+
+    private static long hash(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,56 @@
+package com.company.ra.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Propagates token revocations between RA nodes
+ *
+ * Every node publishes its own revocations and receives all revocations,
+ * including its own, through the subscribed listener. Delivery may repeat an
+ * event, so listeners must be idempotent. The default implementation is
+ * {@link JdbcRevocationChannel}; a bean of another implementation (message
+ * broker, cache cluster) marked @Primary replaces it.
+ */
+public interface RevocationChannel {
+
+    /**
+     * Publish a revocation to all nodes
+     *
+     * @param revocation Revoked token
+     */
+    void publish(Revocation revocation);
+
+    /**
+     * Start delivering revocations, beginning with every revocation that is still in force
+     *
+     * @param listener Callback for each revocation
+     */
+    void subscribe(Consumer<Revocation> listener);
+
+    /**
+     * A revoked token ID and the time after which the revocation no longer matters
+     */
+    final class Revocation {
+        private final String tokenId;
+        private final long expiresAtMillis;
+        private final String revokedBy;
+
+        public Revocation(String tokenId, long expiresAtMillis, String revokedBy) {
+            this.tokenId = tokenId;
+            this.expiresAtMillis = expiresAtMillis;
+            this.revokedBy = revokedBy;
+        }
+
+        public String getTokenId() {
+            return tokenId;
+        }
+
+        public long getExpiresAtMillis() {
+            return expiresAtMillis;
+        }
+
+        public String getRevokedBy() {
+            return revokedBy;
+        }
+    }
+}
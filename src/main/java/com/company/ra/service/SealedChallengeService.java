@@ -0,0 +1,182 @@
+package com.company.ra.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.UUID;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Service for sealing authentication challenges into self-contained tokens
+ *
+ * In sealed mode the challenge, salt, username and expiry travel with the
+ * client inside an AES-256-GCM token, so /challenge and /login may be served
+ * by different nodes and unanswered challenges cost the server nothing. The
+ * only server-side state is the ID and expiry of each consumed challenge,
+ * recorded in the database shared by all nodes by
+ * {@link ConsumedChallengeService#markConsumed(String, long)}, so a captured
+ * login cannot be replayed on another node.
+ *
+ * Token layout (Base64url, no padding):
+ * version(1) | iv(12) | AES-GCM(challengeId(16) | expiresAt(8) | challenge(32) | salt(16) | username)
+ */
+@Service
+public class SealedChallengeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SealedChallengeService.class);
+
+    private static final byte TOKEN_VERSION = 1;
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_LENGTH = 128;
+    private static final int CHALLENGE_SIZE = 32;
+    private static final int SALT_SIZE = 16;
+    private static final int FIXED_PAYLOAD_LENGTH = 16 + 8 + CHALLENGE_SIZE + SALT_SIZE;
+    private static final String KEY_DERIVATION_LABEL = "ra-challenge-sealing-v1";
+
+    @Value("${auth.challenge.sealing-key:}")
+    private String sealingKeyBase64;
+
+    @Value("${jwt.secret:change-this-secret-key-in-production-min-256-bits}")
+    private String jwtSecret;
+
+    @Autowired
+    private NonceService nonceService;
+
+    private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(SealedChallengeService::newCipher);
+
+    private SecretKey sealingKey;
+
+    @PostConstruct
+    public void init() {
+        try {
+            byte[] keyBytes;
+            if (sealingKeyBase64 != null && !sealingKeyBase64.isBlank()) {
+                keyBytes = Base64.getDecoder().decode(sealingKeyBase64.trim());
+                if (keyBytes.length != 32) {
+                    throw new IllegalStateException("auth.challenge.sealing-key must be a Base64-encoded 256-bit key");
+                }
+            } else {
+                // Every node shares jwt.secret, so a derived key works across the cluster
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(new SecretKeySpec(jwtSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+                keyBytes = mac.doFinal(KEY_DERIVATION_LABEL.getBytes(StandardCharsets.UTF_8));
+            }
+            sealingKey = new SecretKeySpec(keyBytes, "AES");
+            logger.info("Sealed challenge service initialized");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to initialize challenge sealing key", e);
+        }
+    }
+
+    /**
+     * Seal a challenge into an opaque token
+     *
+     * @param challengeId Unique challenge ID (UUID string)
+     * @param challenge Challenge bytes
+     * @param salt Salt bytes
+     * @param username Username associated with challenge
+     * @param expiresAtMillis Expiry time in epoch milliseconds
+     * @return Sealed challenge token
+     */
+    public String seal(String challengeId, byte[] challenge, byte[] salt,
+                       String username, long expiresAtMillis) {
+        if (challenge.length != CHALLENGE_SIZE || salt.length != SALT_SIZE) {
+            throw new IllegalArgumentException("Unexpected challenge or salt size");
+        }
+
+        UUID id = UUID.fromString(challengeId);
+        byte[] usernameBytes = username.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(FIXED_PAYLOAD_LENGTH + usernameBytes.length);
+        payload.putLong(id.getMostSignificantBits());
+        payload.putLong(id.getLeastSignificantBits());
+        payload.putLong(expiresAtMillis);
+        payload.put(challenge);
+        payload.put(salt);
+        payload.put(usernameBytes);
+
+        byte[] iv = nonceService.nextBytes(GCM_IV_LENGTH);
+
+        try {
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.ENCRYPT_MODE, sealingKey, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+            cipher.updateAAD(new byte[]{TOKEN_VERSION});
+            byte[] sealed = cipher.doFinal(payload.array());
+
+            ByteBuffer token = ByteBuffer.allocate(1 + GCM_IV_LENGTH + sealed.length);
+            token.put(TOKEN_VERSION);
+            token.put(iv);
+            token.put(sealed);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(token.array());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to seal challenge", e);
+        }
+    }
+
+    /**
+     * Open and validate a sealed challenge token
+     *
+     * @param token Sealed challenge token
+     * @return StoredChallenge or null if the token is malformed, forged or expired
+     */
+    public ChallengeStore.StoredChallenge unseal(String token) {
+        try {
+            byte[] raw = Base64.getUrlDecoder().decode(token);
+            if (raw.length < 1 + GCM_IV_LENGTH + FIXED_PAYLOAD_LENGTH || raw[0] != TOKEN_VERSION) {
+                logger.debug("Rejected sealed challenge with unexpected layout");
+                return null;
+            }
+
+            Cipher cipher = ciphers.get();
+            cipher.init(Cipher.DECRYPT_MODE, sealingKey,
+                new GCMParameterSpec(GCM_TAG_LENGTH, raw, 1, GCM_IV_LENGTH));
+            cipher.updateAAD(raw, 0, 1);
+            byte[] plain = cipher.doFinal(raw, 1 + GCM_IV_LENGTH, raw.length - 1 - GCM_IV_LENGTH);
+
+            ByteBuffer payload = ByteBuffer.wrap(plain);
+            UUID id = new UUID(payload.getLong(), payload.getLong());
+            long expiresAtMillis = payload.getLong();
+            byte[] challenge = new byte[CHALLENGE_SIZE];
+            payload.get(challenge);
+            byte[] salt = new byte[SALT_SIZE];
+            payload.get(salt);
+            String username = new String(plain, FIXED_PAYLOAD_LENGTH,
+                plain.length - FIXED_PAYLOAD_LENGTH, StandardCharsets.UTF_8);
+
+            if (System.currentTimeMillis() > expiresAtMillis) {
+                logger.debug("Sealed challenge expired: {}", id);
+                return null;
+            }
+
+            return new ChallengeStore.StoredChallenge(id.toString(), challenge, salt, username, expiresAtMillis);
+
+        } catch (AEADBadTagException e) {
+            logger.warn("Rejected sealed challenge with invalid authentication tag");
+            return null;
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            logger.debug("Rejected malformed sealed challenge: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM not available", e);
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.company.ra.service;
+
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Service managing the asymmetric (ES256) JWT signing keys and their JWKS
+ *
+ * Keys are identified by their RFC 7638 JWK thumbprint, which is placed in
+ * the kid header of every token. Two key sources are supported:
+ * - keystore: every EC key entry of a PKCS12 keystore is published, and the
+ *   entry named by active-alias signs. Rotate by adding a new entry, waiting
+ *   one JWKS max-age, then switching active-alias; keep the old entry until
+ *   its last token has expired.
+ * - ephemeral (no keystore configured): keys are generated in memory and
+ *   rotated on a timer. The next key is published one rotation ahead of use
+ *   so cached JWKS documents already contain it, and a retired key keeps
+ *   verifying for one token lifetime. Each node has its own keys, which are
+ *   lost on restart, so this mode must be enabled with single-node: tokens
+ *   issued by one node would not verify on another.
+ */
+@Service
+public class SigningKeyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SigningKeyService.class);
+
+    public static final String ALGORITHM_HS256 = "HS256";
+    public static final String ALGORITHM_ES256 = "ES256";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final int P256_COORDINATE_LENGTH = 32;
+
+    @Value("${jwt.signing.algorithm:HS256}")
+    private String algorithm;
+
+    @Value("${jwt.signing.accept-hs256:true}")
+    private boolean acceptHs256;
+
+    @Value("${jwt.signing.keystore.path:}")
+    private String keystorePath;
+
+    @Value("${jwt.signing.keystore.password:}")
+    private String keystorePassword;
+
+    @Value("${jwt.signing.keystore.active-alias:}")
+    private String activeAlias;
+
+    @Value("${jwt.signing.single-node:false}")
+    private boolean singleNode;
+
+    @Value("${jwt.signing.rotation-interval:24h}")
+    private Duration rotationInterval;
+
+    @Value("${jwt.expiration:86400}")
+    private long jwtExpirationSeconds;
+
+    private final Object rotationLock = new Object();
+
+    private ScheduledExecutorService rotationExecutor;
+
+    // Immutable snapshot swapped on rotation
+    private volatile KeySet keySet = KeySet.EMPTY;
+
+    @PostConstruct
+    public void init() {
+        if (!isAsymmetric()) {
+            logger.info("JWT signing with {}; JWKS endpoint publishes no keys", ALGORITHM_HS256);
+            return;
+        }
+        if (!ALGORITHM_ES256.equals(algorithm)) {
+            throw new IllegalStateException("Unsupported jwt.signing.algorithm: " + algorithm);
+        }
+
+        try {
+            if (keystorePath != null && !keystorePath.isBlank()) {
+                loadKeystore();
+            } else if (singleNode) {
+                initEphemeralKeys();
+            } else {
+                throw new IllegalStateException("jwt.signing.algorithm " + ALGORITHM_ES256
+                    + " requires a jwt.signing.keystore shared by all nodes; set jwt.signing.single-node"
+                    + " to use ephemeral per-node keys");
+            }
+        } catch (GeneralSecurityException | java.io.IOException e) {
+            throw new IllegalStateException("Failed to initialize JWT signing keys", e);
+        }
+        logger.info("JWT signing with {}, active kid: {}", algorithm, keySet.active.getKid());
+    }
+
+    /**
+     * Check whether tokens are signed with an asymmetric key
+     *
+     * @return true for ES256
+     */
+    public boolean isAsymmetric() {
+        return !ALGORITHM_HS256.equals(algorithm);
+    }
+
+    /**
+     * Check whether HS256 tokens are still accepted (always true in HS256 mode)
+     *
+     * @return true if HS256 tokens verify
+     */
+    public boolean acceptsHs256() {
+        return !isAsymmetric() || acceptHs256;
+    }
+
+    /**
+     * Get the key that signs new tokens
+     *
+     * @return Active signing key
+     */
+    public SigningKey getActiveKey() {
+        return keySet.active;
+    }
+
+    /**
+     * Find the public key for a kid
+     *
+     * @param kid Key ID from the token header
+     * @return Public key or null if unknown or past its overlap window
+     */
+    public PublicKey resolveVerificationKey(String kid) {
+        if (kid == null) {
+            return null;
+        }
+        SigningKey key = keySet.byKid.get(kid);
+        if (key == null || key.isExpired(Instant.now())) {
+            return null;
+        }
+        return key.getPublicKey();
+    }
+
+    /**
+     * Get the serialized JWKS document
+     *
+     * @return JWKS JSON
+     */
+    public String getJwksJson() {
+        return keySet.jwksJson;
+    }
+
+    /**
+     * Get a strong ETag for the current JWKS document
+     *
+     * @return Quoted ETag value
+     */
+    public String getJwksETag() {
+        return keySet.etag;
+    }
+
+    /**
+     * Retire the active key, activate the pending one and generate a new pending key
+     * (ephemeral mode only)
+     */
+    void rotate() {
+        synchronized (rotationLock) {
+            try {
+                KeySet current = keySet;
+                Instant now = Instant.now();
+                Duration overlap = Duration.ofSeconds(jwtExpirationSeconds).plus(Duration.ofMinutes(1));
+
+                List<SigningKey> keys = new ArrayList<>();
+                SigningKey next = current.pending;
+                keys.add(next);
+                SigningKey pending = generateKey(null);
+                keys.add(pending);
+                keys.add(current.active.retire(now.plus(overlap)));
+                for (SigningKey key : current.byKid.values()) {
+                    if (key != current.active && key != current.pending && !key.isExpired(now)) {
+                        keys.add(key);
+                    }
+                }
+
+                keySet = KeySet.of(next, pending, keys);
+                logger.info("JWT signing key rotated, active kid: {}", next.getKid());
+            } catch (GeneralSecurityException | JsonProcessingException | RuntimeException e) {
+                logger.error("JWT signing key rotation failed, keeping current key", e);
+            }
+        }
+    }
+
+    private void initEphemeralKeys() throws GeneralSecurityException, JsonProcessingException {
+        SigningKey active = generateKey(null);
+        SigningKey pending = generateKey(null);
+        keySet = KeySet.of(active, pending, List.of(active, pending));
+
+        long intervalMillis = rotationInterval.toMillis();
+        rotationExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jwt-key-rotation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rotationExecutor.scheduleAtFixedRate(this::rotate, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        logger.warn("No jwt.signing.keystore configured; using ephemeral signing keys, lost on restart");
+    }
+
+    private void loadKeystore() throws GeneralSecurityException, java.io.IOException {
+        char[] password = keystorePassword.toCharArray();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(Paths.get(keystorePath))) {
+            keyStore.load(in, password);
+        }
+
+        List<SigningKey> keys = new ArrayList<>();
+        SigningKey active = null;
+        for (String alias : Collections.list(keyStore.aliases())) {
+            if (!keyStore.isKeyEntry(alias)) {
+                continue;
+            }
+            Key privateKey = keyStore.getKey(alias, password);
+            Certificate certificate = keyStore.getCertificate(alias);
+            if (!(privateKey instanceof PrivateKey) || certificate == null
+                    || !(certificate.getPublicKey() instanceof ECPublicKey)) {
+                continue;
+            }
+            SigningKey key = new SigningKey(thumbprint((ECPublicKey) certificate.getPublicKey()),
+                new KeyPair(certificate.getPublicKey(), (PrivateKey) privateKey), null);
+            keys.add(key);
+            if (alias.equals(activeAlias)) {
+                active = key;
+            }
+        }
+        if (active == null) {
+            throw new IllegalStateException("jwt.signing.keystore.active-alias '" + activeAlias
+                + "' is not an EC key entry in " + keystorePath);
+        }
+        keySet = KeySet.of(active, null, keys);
+        logger.info("Loaded {} JWT signing keys from {}", keys.size(), keystorePath);
+    }
+
+    private static SigningKey generateKey(Instant verifyUntil) throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = generator.generateKeyPair();
+        return new SigningKey(thumbprint((ECPublicKey) keyPair.getPublic()), keyPair, verifyUntil);
+    }
+
+    /**
+     * Compute the RFC 7638 JWK thumbprint of a P-256 public key
+     *
+     * @param publicKey EC public key
+     * @return Base64url thumbprint
+     */
+    static String thumbprint(ECPublicKey publicKey) throws GeneralSecurityException {
+        // Required members only, in lexicographic order, no whitespace
+        String canonical = "{\"crv\":\"P-256\",\"kty\":\"EC\",\"x\":\"" + coordinate(publicKey.getW().getAffineX())
+            + "\",\"y\":\"" + coordinate(publicKey.getW().getAffineY()) + "\"}";
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(canonical.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
+
+    private static String coordinate(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        byte[] fixed = new byte[P256_COORDINATE_LENGTH];
+        int length = Math.min(bytes.length, P256_COORDINATE_LENGTH);
+        System.arraycopy(bytes, bytes.length - length, fixed, P256_COORDINATE_LENGTH - length, length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(fixed);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (rotationExecutor != null) {
+            rotationExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * A signing key pair with its kid and the end of its verification window
+     */
+    public static final class SigningKey {
+        private final String kid;
+        private final KeyPair keyPair;
+        private final Instant verifyUntil;
+
+        SigningKey(String kid, KeyPair keyPair, Instant verifyUntil) {
+            this.kid = kid;
+            this.keyPair = keyPair;
+            this.verifyUntil = verifyUntil;
+        }
+
+        public String getKid() {
+            return kid;
+        }
+
+        public PrivateKey getPrivateKey() {
+            return keyPair.getPrivate();
+        }
+
+        public PublicKey getPublicKey() {
+            return keyPair.getPublic();
+        }
+
+        boolean isExpired(Instant now) {
+            return verifyUntil != null && now.isAfter(verifyUntil);
+        }
+
+        SigningKey retire(Instant until) {
+            return new SigningKey(kid, keyPair, until);
+        }
+
+        Map<String, Object> toJwk() {
+            ECPublicKey publicKey = (ECPublicKey) keyPair.getPublic();
+            Map<String, Object> jwk = new LinkedHashMap<>();
+            jwk.put("kty", "EC");
+            jwk.put("crv", "P-256");
+            jwk.put("x", coordinate(publicKey.getW().getAffineX()));
+            jwk.put("y", coordinate(publicKey.getW().getAffineY()));
+            jwk.put("kid", kid);
+            jwk.put("use", "sig");
+            jwk.put("alg", ALGORITHM_ES256);
+            return jwk;
+        }
+    }
+
+    /**
+     * Immutable view of the published keys and the pre-rendered JWKS
+     */
+    private static final class KeySet {
+        static final KeySet EMPTY = new KeySet(null, null, Map.of(), "{\"keys\":[]}", "\"empty\"");
+
+        final SigningKey active;
+        final SigningKey pending;
+        final Map<String, SigningKey> byKid;
+        final String jwksJson;
+        final String etag;
+
+        private KeySet(SigningKey active, SigningKey pending, Map<String, SigningKey> byKid,
+                       String jwksJson, String etag) {
+            this.active = active;
+            this.pending = pending;
+            this.byKid = byKid;
+            this.jwksJson = jwksJson;
+            this.etag = etag;
+        }
+
+        static KeySet of(SigningKey active, SigningKey pending, List<SigningKey> keys)
+                throws JsonProcessingException, GeneralSecurityException {
+            Map<String, SigningKey> byKid = new LinkedHashMap<>();
+            List<Map<String, Object>> jwks = new ArrayList<>();
+            for (SigningKey key : keys) {
+                if (byKid.putIfAbsent(key.getKid(), key) == null) {
+                    jwks.add(key.toJwk());
+                }
+            }
+            String json = objectMapper.writeValueAsString(Map.of("keys", jwks));
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json.getBytes(StandardCharsets.UTF_8));
+            String etag = "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22) + "\"";
+            return new KeySet(active, pending, Collections.unmodifiableMap(byKid), json, etag);
+        }
+    }
+}
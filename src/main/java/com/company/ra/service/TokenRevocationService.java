@@ -0,0 +1,139 @@
+package com.company.ra.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Service for revoking JWTs before their expiry (logout, compromise)
+ *
+ * Revoked token IDs (jti) are held only until the token itself expires.
+ * Every authenticated request asks {@link #isRevoked(String)}; a Bloom
+ * filter in front of the map answers the common "not revoked" case without
+ * locks or allocation, and only possible hits fall through to the map.
+ * Revocations are shared with other nodes through a {@link RevocationChannel}.
+ */
+@Service
+public class TokenRevocationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationService.class);
+
+    @Autowired
+    private RevocationChannel revocationChannel;
+
+    @Value("${jwt.revocation.bloom-bits:1048576}")
+    private int bloomBits;
+
+    @Value("${jwt.revocation.purge-interval:10m}")
+    private Duration purgeInterval;
+
+    // jti -> token expiry in epoch milliseconds
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+
+    private volatile RevocationBloomFilter bloomFilter;
+    private ScheduledExecutorService purgeExecutor;
+
+    @PostConstruct
+    public void init() {
+        bloomFilter = new RevocationBloomFilter(bloomBits);
+        revocationChannel.subscribe(this::apply);
+
+        purgeExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-revocation-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = purgeInterval.toMillis();
+        purgeExecutor.scheduleWithFixedDelay(this::purgeExpired, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+
+        logger.info("TokenRevocationService initialized with {}-bit filter, {} active revocations",
+            bloomFilter.bitCount(), revokedTokens.size());
+    }
+
+    /**
+     * Check whether a token ID has been revoked
+     *
+     * @param tokenId JWT ID (jti), may be null
+     * @return true if revoked and not yet expired
+     */
+    public boolean isRevoked(String tokenId) {
+        if (tokenId == null || !bloomFilter.mightContain(tokenId)) {
+            return false;
+        }
+        Long expiresAtMillis = revokedTokens.get(tokenId);
+        return expiresAtMillis != null && expiresAtMillis > System.currentTimeMillis();
+    }
+
+    /**
+     * Revoke a token on this node and publish the revocation to all nodes
+     *
+     * @param tokenId JWT ID (jti)
+     * @param expiresAtMillis Token expiry in epoch milliseconds
+     * @param revokedBy Username performing the revocation
+     */
+    public void revoke(String tokenId, long expiresAtMillis, String revokedBy) {
+        RevocationChannel.Revocation revocation = new RevocationChannel.Revocation(tokenId, expiresAtMillis, revokedBy);
+        apply(revocation);
+        revocationChannel.publish(revocation);
+        logger.info("Token revoked: {} by {}", tokenId, revokedBy);
+    }
+
+    /**
+     * Get number of revocations currently held
+     *
+     * @return Revocation count
+     */
+    public int size() {
+        return revokedTokens.size();
+    }
+
+    private void apply(RevocationChannel.Revocation revocation) {
+        if (revocation.getExpiresAtMillis() <= System.currentTimeMillis()) {
+            return;
+        }
+        synchronized (writeLock) {
+            revokedTokens.put(revocation.getTokenId(), revocation.getExpiresAtMillis());
+            bloomFilter.add(revocation.getTokenId());
+        }
+    }
+
+    /**
+     * Drop expired revocations and rebuild the filter without them
+     */
+    void purgeExpired() {
+        try {
+            long now = System.currentTimeMillis();
+            synchronized (writeLock) {
+                revokedTokens.values().removeIf(expiresAtMillis -> expiresAtMillis <= now);
+                RevocationBloomFilter rebuilt = new RevocationBloomFilter(bloomBits);
+                for (String tokenId : revokedTokens.keySet()) {
+                    rebuilt.add(tokenId);
+                }
+                bloomFilter = rebuilt;
+            }
+        } catch (RuntimeException e) {
+            // Never let an exception cancel the scheduled purge
+            logger.error("Token revocation purge failed", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (purgeExecutor != null) {
+            purgeExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.company.ra.service;
+
+import java.util.List;
+
+/**
+ * Immutable result of verifying a JWT: the principal and the claims the
+ * service relies on, extracted once from a token whose signature checked out
+ */
+public final class VerifiedToken {
+
+    private final String subject;
+    private final List<String> roles;
+    private final long expiresAtMillis;
+    private final String tokenId;
+
+    public VerifiedToken(String subject, List<String> roles, long expiresAtMillis, String tokenId) {
+        this.subject = subject;
+        this.roles = roles != null ? List.copyOf(roles) : List.of();
+        this.expiresAtMillis = expiresAtMillis;
+        this.tokenId = tokenId;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public List<String> getRoles() {
+        return roles;
+    }
+
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    /**
+     * Get the token's jti claim
+     *
+     * @return Token ID or null if the token carries none
+     */
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    public boolean isExpired(long nowMillis) {
+        return nowMillis >= expiresAtMillis;
+    }
+}
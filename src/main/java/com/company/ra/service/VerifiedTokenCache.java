@@ -0,0 +1,147 @@
+package com.company.ra.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache of verified tokens keyed by the SHA-256 digest of the token
+ *
+ * Keying by digest keeps raw bearer tokens out of the heap-resident map and
+ * makes keys a fixed 32 bytes. An entry is valid only until the token's own
+ * exp; expired entries are dropped on lookup and purged when the cache
+ * fills. If purging is not enough, an arbitrary eighth of the entries is
+ * evicted, so the cache never exceeds its configured size.
+ */
+public class VerifiedTokenCache {
+
+    private final int maxSize;
+    private final Map<TokenDigest, VerifiedToken> entries = new ConcurrentHashMap<>();
+    private final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(VerifiedTokenCache::newDigest);
+
+    /**
+     * @param maxSize Maximum cached tokens (0 disables caching)
+     */
+    public VerifiedTokenCache(int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+    }
+
+    /**
+     * Look up a previously verified token
+     *
+     * @param token Raw JWT
+     * @return VerifiedToken or null if not cached or expired
+     */
+    public VerifiedToken get(String token) {
+        if (maxSize == 0) {
+            return null;
+        }
+        TokenDigest key = digest(token);
+        VerifiedToken verified = entries.get(key);
+        if (verified != null && verified.isExpired(System.currentTimeMillis())) {
+            entries.remove(key, verified);
+            return null;
+        }
+        return verified;
+    }
+
+    /**
+     * Cache a verified token until its expiry
+     *
+     * @param token Raw JWT
+     * @param verified Verification result
+     */
+    public void put(String token, VerifiedToken verified) {
+        if (maxSize == 0) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            makeRoom();
+        }
+        entries.put(digest(token), verified);
+    }
+
+    /**
+     * Drop a token from the cache
+     *
+     * @param token Raw JWT
+     */
+    public void invalidate(String token) {
+        if (maxSize > 0) {
+            entries.remove(digest(token));
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private void makeRoom() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(verified -> verified.isExpired(now));
+
+        int excess = entries.size() - maxSize + Math.max(1, maxSize / 8);
+        Iterator<TokenDigest> keys = entries.keySet().iterator();
+        while (excess-- > 0 && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private TokenDigest digest(String token) {
+        MessageDigest digest = digests.get();
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        return new TokenDigest(hash.getLong(), hash.getLong(), hash.getLong(), hash.getLong());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * 256-bit token digest held as four longs
+     */
+    private static final class TokenDigest {
+        private final long h0;
+        private final long h1;
+        private final long h2;
+        private final long h3;
+
+        private TokenDigest(long h0, long h1, long h2, long h3) {
+            this.h0 = h0;
+            this.h1 = h1;
+            this.h2 = h2;
+            this.h3 = h3;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof TokenDigest)) {
+                return false;
+            }
+            TokenDigest that = (TokenDigest) other;
+            return h0 == that.h0 && h1 == that.h1 && h2 == that.h2 && h3 == that.h3;
+        }
+
+        @Override
+        public int hashCode() {
+            // Already uniformly distributed
+            return (int) h0;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.ad.poc;
+
+import com.ad.poc.model.AdUser;
+import com.ad.poc.repository.AdUserLdapRepository;
+import com.company.ra.config.DirectoryFederation;
+import com.company.ra.config.LdapOperationGovernor;
+import com.company.ra.service.EmbeddedAdDirectory;
+import com.unboundid.ldap.sdk.Entry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The ad-users application context, which scans com.ad.poc only, against an in-memory directory.
+ */
+@SpringBootTest(classes = AdPocApplication.class, properties = {
+        "spring.datasource.url=jdbc:h2:mem:ad-poc",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+class AdPocApplicationTest {
+
+    private static EmbeddedAdDirectory directory;
+    private static EmbeddedAdDirectory otherForest;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Autowired
+    private AdUserLdapRepository repository;
+
+    @DynamicPropertySource
+    static void ldapProperties(DynamicPropertyRegistry registry) throws Exception {
+        directory = EmbeddedAdDirectory.start(EmbeddedAdDirectory.Spec.of(20, 10, 2));
+        registry.add("spring.ldap.urls", directory::getUrl);
+        registry.add("spring.ldap.base", () -> EmbeddedAdDirectory.BASE_DN);
+        registry.add("spring.ldap.username", () -> EmbeddedAdDirectory.ADMIN_DN);
+        registry.add("spring.ldap.password", () -> EmbeddedAdDirectory.ADMIN_PASSWORD);
+
+        // The same directory as one forest, and a second forest with a user of its own
+        otherForest = EmbeddedAdDirectory.start(EmbeddedAdDirectory.Spec.of(5, 4, 1));
+        Entry user = new Entry("CN=Zora Forest,OU=Users," + EmbeddedAdDirectory.BASE_DN);
+        user.addAttribute("objectClass", "top", "person", "organizationalPerson", "user");
+        user.addAttribute("objectCategory", "person");
+        user.addAttribute("cn", "Zora Forest");
+        user.addAttribute("sAMAccountName", "zforest");
+        user.addAttribute("userPrincipalName", "zforest@emea.company.com");
+        user.addAttribute("displayName", "Forest, Zora");
+        user.addAttribute("department", directory.department(0));
+        otherForest.getServer().add(user);
+        addForest(registry, 0, "corp", directory);
+        addForest(registry, 1, "emea", otherForest);
+    }
+
+    private static void addForest(DynamicPropertyRegistry registry, int index, String name,
+                                  EmbeddedAdDirectory forest) {
+        String prefix = "ldap.federation.forests[" + index + "].";
+        registry.add(prefix + "name", () -> name);
+        registry.add(prefix + "url", forest::getUrl);
+        registry.add(prefix + "base-dn", () -> EmbeddedAdDirectory.USERS_DN);
+        registry.add(prefix + "username", () -> EmbeddedAdDirectory.ADMIN_DN);
+        registry.add(prefix + "password", () -> EmbeddedAdDirectory.ADMIN_PASSWORD);
+    }
+
+    @AfterAll
+    static void stopDirectory() {
+        directory.close();
+        otherForest.close();
+    }
+
+    @Test
+    void contextLoads_withItsOwnDirectoryBeans() {
+        assertEquals(2, context.getBean(DirectoryFederation.class).getForests().size());
+        assertNotNull(context.getBean(LdapOperationGovernor.class));
+
+        AdUser user = repository.findBySamAccountName(directory.samAccountName(0));
+        assertNotNull(user);
+        assertEquals(directory.department(0), user.getDepartment());
+    }
+
+    @Test
+    void search_shouldFanOutAcrossForests() {
+        List<AdUser> users = repository.search(directory.department(0));
+
+        List<String> names = users.stream().map(AdUser::getSamAccountName).toList();
+        assertTrue(names.contains(directory.samAccountName(0)));
+        assertTrue(names.contains("zforest"));
+        for (DirectoryFederation.Forest forest : context.getBean(DirectoryFederation.class).getForests()) {
+            assertEquals(1, forest.getCount(DirectoryFederation.Outcome.HIT), forest.getName());
+        }
+    }
+}
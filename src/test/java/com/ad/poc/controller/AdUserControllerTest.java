@@ -1,7 +1,10 @@
 package com.ad.poc.controller;
 
 import com.ad.poc.dto.AdUserDto;
+import com.ad.poc.dto.AdUserPageDto;
 import com.ad.poc.dto.LoginRequest;
+import com.ad.poc.dto.BulkJobDto;
+import com.ad.poc.service.AdUserBulkService;
 import com.ad.poc.service.AdUserService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
@@ -12,14 +15,20 @@ import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -35,6 +44,9 @@ class AdUserControllerTest {
     @MockitoBean
     private AdUserService adUserService;
 
+    @MockitoBean
+    private AdUserBulkService adUserBulkService;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     private AdUserDto sampleDto;
@@ -83,6 +95,19 @@ class AdUserControllerTest {
                 .andExpect(jsonPath("$.user").doesNotExist());
     }
 
+    @Test
+    void login_shouldReturn503WhenDirectoryUnavailable() throws Exception {
+        when(adUserService.authenticate("jdoe", "secret123")).thenThrow(
+                new org.springframework.ldap.ServiceUnavailableException(
+                        new javax.naming.ServiceUnavailableException("No LDAP bind connection free after 2000 ms")));
+
+        mockMvc.perform(post("/api/v1/ad-users/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new LoginRequest("jdoe", "secret123"))))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+    }
+
     @Test
     void login_shouldReturn400WhenUsernameBlank() throws Exception {
         LoginRequest request = new LoginRequest("", "secret123");
@@ -158,10 +183,12 @@ class AdUserControllerTest {
                 "asmith", "Alice", "Smith", "Alice Smith", "asmith@company.com",
                 null, null, null, null, null, null, null, false
         );
-        when(adUserService.listAll()).thenReturn(Arrays.asList(sampleDto, second));
+        when(adUserService.listPage(null, null, null, 1000))
+                .thenReturn(new AdUserPageDto(Arrays.asList(sampleDto, second), null, null));
 
         mockMvc.perform(get("/api/v1/ad-users"))
                 .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Link"))
                 .andExpect(jsonPath("$", hasSize(2)))
                 .andExpect(jsonPath("$[0].samAccountName", is("jdoe")))
                 .andExpect(jsonPath("$[1].samAccountName", is("asmith")));
@@ -169,7 +196,8 @@ class AdUserControllerTest {
 
     @Test
     void listAll_withDepartmentFilter_shouldReturnFilteredList() throws Exception {
-        when(adUserService.getByDepartment("Engineering")).thenReturn(List.of(sampleDto));
+        when(adUserService.listPage("Engineering", null, null, 1000))
+                .thenReturn(new AdUserPageDto(List.of(sampleDto), null, null));
 
         mockMvc.perform(get("/api/v1/ad-users").param("department", "Engineering"))
                 .andExpect(status().isOk())
@@ -179,13 +207,145 @@ class AdUserControllerTest {
 
     @Test
     void listAll_shouldReturnEmptyListWhenNoUsers() throws Exception {
-        when(adUserService.listAll()).thenReturn(Collections.emptyList());
+        when(adUserService.listPage(null, null, null, 1000))
+                .thenReturn(new AdUserPageDto(Collections.emptyList(), null, null));
 
         mockMvc.perform(get("/api/v1/ad-users"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", hasSize(0)));
     }
 
+    @Test
+    void listAll_shouldLinkNextPageByCursor() throws Exception {
+        when(adUserService.listPage(null, "YWJj", null, 1))
+                .thenReturn(new AdUserPageDto(List.of(sampleDto), "amRvZQ", null));
+
+        mockMvc.perform(get("/api/v1/ad-users").param("cursor", "YWJj").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "amRvZQ"))
+                .andExpect(header().string("Link", allOf(
+                        containsString("cursor=amRvZQ"), containsString("limit=1"), containsString("rel=\"next\""))))
+                .andExpect(jsonPath("$", hasSize(1)));
+    }
+
+    @Test
+    void listAll_shouldLinkNextPageByOffset() throws Exception {
+        when(adUserService.listPage(null, null, 10, 5))
+                .thenReturn(new AdUserPageDto(List.of(sampleDto), null, 15));
+
+        mockMvc.perform(get("/api/v1/ad-users").param("offset", "10").param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Link", containsString("offset=15")));
+    }
+
+    @Test
+    void listAll_shouldReturn400ForInvalidPaging() throws Exception {
+        mockMvc.perform(get("/api/v1/ad-users").param("limit", "1001"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/ad-users").param("offset", "-1"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/ad-users").param("offset", String.valueOf(Integer.MAX_VALUE)))
+                .andExpect(status().isBadRequest());
+
+        when(adUserService.listPage(any(), any(), any(), anyInt()))
+                .thenThrow(new IllegalArgumentException("Use either cursor or offset, not both"));
+        mockMvc.perform(get("/api/v1/ad-users").param("cursor", "YWJj").param("offset", "1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void listAll_shouldStreamNdjsonWhenRequested() throws Exception {
+        AdUserDto second = new AdUserDto(
+                "asmith", "Alice", "Smith", "Alice Smith", "asmith@company.com",
+                null, null, null, null, null, null, null, false
+        );
+        when(adUserService.streamAll(null)).thenReturn(Stream.of(sampleDto, second));
+
+        MvcResult result = mockMvc.perform(get("/api/v1/ad-users").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("jdoe", objectMapper.readTree(lines[0]).get("samAccountName").asText());
+        assertEquals("asmith", objectMapper.readTree(lines[1]).get("samAccountName").asText());
+        verify(adUserService, never()).listPage(any(), any(), any(), anyInt());
+    }
+
+    // ---- BULK INSERT ----
+
+    @Test
+    void bulkCreate_shouldAcceptJsonAndReturnJobLocation() throws Exception {
+        when(adUserBulkService.submit(anyList())).thenReturn(runningJob(2));
+
+        mockMvc.perform(post("/api/v1/ad-users/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(sampleDto, sampleDto))))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", containsString("/api/v1/ad-users/bulk/job-1")))
+                .andExpect(jsonPath("$.state", is("RUNNING")))
+                .andExpect(jsonPath("$.total", is(2)));
+    }
+
+    @Test
+    void bulkCreate_shouldParseCsv() throws Exception {
+        when(adUserBulkService.getMaxItems()).thenReturn(100);
+        when(adUserBulkService.submit(anyList())).thenReturn(runningJob(1));
+
+        mockMvc.perform(post("/api/v1/ad-users/bulk")
+                        .contentType("text/csv")
+                        .content("samAccountName,firstName,lastName,mail\njdoe,John,Doe,jdoe@company.com\n"))
+                .andExpect(status().isAccepted());
+
+        verify(adUserBulkService).submit(argThat(users -> users.size() == 1
+                && "jdoe".equals(users.get(0).samAccountName())
+                && "jdoe@company.com".equals(users.get(0).email())));
+    }
+
+    @Test
+    void bulkCreate_shouldReturn400WhenRejected() throws Exception {
+        when(adUserBulkService.submit(anyList())).thenThrow(new IllegalArgumentException("No users to provision"));
+
+        mockMvc.perform(post("/api/v1/ad-users/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void bulkUpdate_shouldAcceptJsonAndReturnJobLocation() throws Exception {
+        when(adUserBulkService.submitUpdates(anyList())).thenReturn(runningJob(2));
+
+        mockMvc.perform(put("/api/v1/ad-users/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(sampleDto, sampleDto))))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", containsString("/api/v1/ad-users/bulk/job-1")));
+
+        verify(adUserBulkService, never()).submit(anyList());
+    }
+
+    @Test
+    void bulkStatus_shouldReturnJobOr404() throws Exception {
+        when(adUserBulkService.getJob("job-1", true)).thenReturn(Optional.of(runningJob(2)));
+        when(adUserBulkService.getJob("missing", true)).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/v1/ad-users/bulk/job-1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id", is("job-1")));
+        mockMvc.perform(get("/api/v1/ad-users/bulk/missing"))
+                .andExpect(status().isNotFound());
+    }
+
+    private static BulkJobDto runningJob(int total) {
+        return new BulkJobDto("job-1", BulkJobDto.State.RUNNING, total, 0, 0, 0, 0, 0,
+                Instant.now(), null, List.of());
+    }
+
     // ---- SEARCH ----
 
     @Test
@@ -207,6 +367,26 @@ class AdUserControllerTest {
                 .andExpect(jsonPath("$", hasSize(0)));
     }
 
+    @Test
+    void search_shouldUseIndexInIndexMode() throws Exception {
+        when(adUserService.searchIndex("jo", 5)).thenReturn(List.of(sampleDto));
+
+        mockMvc.perform(get("/api/v1/ad-users/search").param("q", "jo").param("mode", "index").param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].samAccountName", is("jdoe")));
+        verify(adUserService, never()).search(any());
+    }
+
+    @Test
+    void search_shouldReturn400ForInvalidModeOrLimit() throws Exception {
+        mockMvc.perform(get("/api/v1/ad-users/search").param("q", "jo").param("mode", "fuzzy"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/v1/ad-users/search").param("q", "jo").param("mode", "index").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(adUserService);
+    }
+
     // ---- READ (GET BY SAM ACCOUNT NAME) ----
 
     @Test
@@ -249,6 +429,27 @@ class AdUserControllerTest {
                 .andExpect(jsonPath("$.email", is("jdoe-new@company.com")));
     }
 
+    @Test
+    void update_shouldReturn409WhenChangedConcurrently() throws Exception {
+        when(adUserService.update(eq("jdoe"), any(AdUserDto.class)))
+                .thenThrow(new IllegalStateException("AD user 'jdoe' was changed concurrently"));
+
+        mockMvc.perform(put("/api/v1/ad-users/jdoe")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(sampleDto)))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void getBySamAccountName_shouldReturn503WhenLdapThrottled() throws Exception {
+        when(adUserService.getBySamAccountName("jdoe")).thenThrow(new org.springframework.ldap.ServiceUnavailableException(
+                new javax.naming.ServiceUnavailableException("LDAP search throttled to protect the directory")));
+
+        mockMvc.perform(get("/api/v1/ad-users/jdoe"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+    }
+
     // ---- DELETE ----
 
     @Test
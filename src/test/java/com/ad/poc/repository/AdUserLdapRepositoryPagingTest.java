@@ -0,0 +1,154 @@
+package com.ad.poc.repository;
+
+import com.ad.poc.model.AdUser;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ldap.core.LdapTemplate;
+import org.springframework.ldap.core.support.LdapContextSource;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Paged and streaming listing against an in-memory directory.
+ */
+class AdUserLdapRepositoryPagingTest {
+
+    private static final String BASE = "DC=company,DC=com";
+    private static final int USERS = 25;
+
+    private InMemoryDirectoryServer server;
+    private AdUserLdapRepository repository;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE);
+        config.setSchema(null);
+        config.setCustomRootDSEAttributes(List.of(
+                new Attribute("highestCommittedUSN", "1030"),
+                new Attribute("dsServiceName", "CN=DC1")));
+        server = new InMemoryDirectoryServer(config);
+        server.add(new Entry(BASE, new Attribute("objectClass", "domain")));
+        server.add(new Entry("OU=Users," + BASE, new Attribute("objectClass", "organizationalUnit")));
+        for (int i = 0; i < USERS; i++) {
+            Entry user = user(String.format("user%02d", i), i % 5 == 0 ? "Engineering" : "Sales");
+            // Without a schema uSNChanged compares as a string, so keep the test USNs at four digits
+            user.addAttribute("uSNChanged", String.valueOf(1000 + i));
+            server.add(user);
+        }
+        server.startListening();
+
+        LdapContextSource contextSource = new LdapContextSource();
+        contextSource.setUrl("ldap://localhost:" + server.getListenPort());
+        contextSource.setBase(BASE);
+        contextSource.setAnonymousReadOnly(true);
+        contextSource.setPooled(false);
+        contextSource.afterPropertiesSet();
+        repository = new AdUserLdapRepository(new LdapTemplate(contextSource));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.shutDown(true);
+    }
+
+    @Test
+    void streamAll_shouldReturnEveryUserAcrossPages() {
+        try (Stream<AdUser> users = repository.streamAll(null, 4)) {
+            assertEquals(USERS, users.map(AdUser::getSamAccountName).distinct().count());
+        }
+        assertEquals(USERS, repository.findAll().size());
+    }
+
+    @Test
+    void streamAll_shouldFilterByDepartment() {
+        try (Stream<AdUser> users = repository.streamAll("Engineering", 2)) {
+            List<AdUser> engineers = users.collect(Collectors.toList());
+            assertEquals(5, engineers.size());
+            assertTrue(engineers.stream().allMatch(user -> "Engineering".equals(user.getDepartment())));
+        }
+    }
+
+    @Test
+    void streamAll_shouldFetchPagesLazily() {
+        try (Stream<AdUser> users = repository.streamAll(null, 5)) {
+            assertEquals(3, users.limit(3).count());
+        }
+    }
+
+    @Test
+    void findPageAfter_shouldWalkUsersInSamAccountNameOrder() {
+        List<AdUser> first = repository.findPageAfter(null, null, 8);
+        assertEquals(9, first.size());
+        assertEquals("user00", first.get(0).getSamAccountName());
+        assertEquals("user07", first.get(7).getSamAccountName());
+
+        List<AdUser> last = repository.findPageAfter(null, "user23", 8);
+        assertEquals(1, last.size());
+        assertEquals("user24", last.get(0).getSamAccountName());
+    }
+
+    @Test
+    void findPage_shouldSkipToOffset() {
+        List<AdUser> page = repository.findPage(null, 20, 4);
+        assertEquals(5, page.size());
+
+        assertEquals(2, repository.findPage(null, 23, 4).size());
+        assertTrue(repository.findPage(null, 30, 4).isEmpty());
+    }
+
+    @Test
+    void findPage_shouldRejectOffsetBeyondTheLimit() {
+        assertThrows(IllegalArgumentException.class,
+                () -> repository.findPage(null, Integer.MAX_VALUE, AdUserLdapRepository.MAX_PAGE_SIZE));
+        assertThrows(IllegalArgumentException.class, () -> repository.findPage(null, -1, 4));
+    }
+
+    @Test
+    void streamChanges_shouldReturnUsersChangedAfterTheMarkOfTheSameServer() {
+        AdUserLdapRepository.ChangeMark mark;
+        try (AdUserLdapRepository.UserChanges changes = repository.streamChanges(null)) {
+            assertTrue(changes.full());
+            assertEquals(USERS, changes.users().count());
+            mark = changes.mark();
+        }
+        assertEquals(new AdUserLdapRepository.ChangeMark("CN=DC1", 1030), mark);
+
+        try (AdUserLdapRepository.UserChanges changes =
+                     repository.streamChanges(new AdUserLdapRepository.ChangeMark("CN=DC1", 1019))) {
+            assertFalse(changes.full());
+            assertEquals(List.of("user20", "user21", "user22", "user23", "user24"),
+                    changes.users().map(AdUser::getSamAccountName).sorted().collect(Collectors.toList()));
+        }
+
+        // USNs of another domain controller, or of one restored to an earlier state, mean nothing here
+        try (AdUserLdapRepository.UserChanges changes =
+                     repository.streamChanges(new AdUserLdapRepository.ChangeMark("CN=DC2", 1019))) {
+            assertTrue(changes.full());
+            assertEquals(USERS, changes.users().count());
+        }
+        try (AdUserLdapRepository.UserChanges changes =
+                     repository.streamChanges(new AdUserLdapRepository.ChangeMark("CN=DC1", 2000))) {
+            assertTrue(changes.full());
+        }
+    }
+
+    private static Entry user(String samAccountName, String department) {
+        Entry entry = new Entry("CN=" + samAccountName + ",OU=Users," + BASE);
+        entry.addAttribute("objectClass", "user");
+        entry.addAttribute("objectCategory", "person");
+        entry.addAttribute("cn", samAccountName);
+        entry.addAttribute("sAMAccountName", samAccountName);
+        entry.addAttribute("department", department);
+        entry.addAttribute("userAccountControl", "512");
+        return entry;
+    }
+}
@@ -7,13 +7,17 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ldap.NameNotFoundException;
 import org.springframework.ldap.core.AttributesMapper;
+import org.springframework.ldap.core.ContextMapper;
 import org.springframework.ldap.core.DirContextAdapter;
-import org.springframework.ldap.core.DirContextOperations;
 import org.springframework.ldap.core.LdapTemplate;
 import org.springframework.ldap.query.LdapQuery;
+import org.springframework.ldap.support.LdapNameBuilder;
 
 import javax.naming.Name;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.ModificationItem;
 import java.util.Collections;
 import java.util.List;
 
@@ -43,33 +47,12 @@ class AdUserLdapRepositoryTest {
         sampleUser.setLastName("Doe");
         sampleUser.setEmail("jdoe@company.com");
         sampleUser.setDepartment("Engineering");
-    }
-
-    @Test
-    void findAll_shouldSearchWithUserObjectClass() {
-        when(ldapTemplate.search(any(LdapQuery.class), any(AttributesMapper.class)))
-                .thenReturn(List.of(sampleUser));
-
-        List<AdUser> result = repository.findAll();
-
-        assertEquals(1, result.size());
-        assertEquals("jdoe", result.get(0).getSamAccountName());
-        verify(ldapTemplate).search(any(LdapQuery.class), any(AttributesMapper.class));
-    }
-
-    @Test
-    void findAll_shouldReturnEmptyWhenNoUsers() {
-        when(ldapTemplate.search(any(LdapQuery.class), any(AttributesMapper.class)))
-                .thenReturn(Collections.emptyList());
-
-        List<AdUser> result = repository.findAll();
-
-        assertTrue(result.isEmpty());
+        sampleUser.setDn(LdapNameBuilder.newInstance("OU=Users").add("CN", "John Doe").build());
     }
 
     @Test
     void findBySamAccountName_shouldReturnUserWhenFound() {
-        when(ldapTemplate.search(any(LdapQuery.class), any(AttributesMapper.class)))
+        when(ldapTemplate.search(any(LdapQuery.class), any(ContextMapper.class)))
                 .thenReturn(List.of(sampleUser));
 
         AdUser result = repository.findBySamAccountName("jdoe");
@@ -80,7 +63,7 @@ class AdUserLdapRepositoryTest {
 
     @Test
     void findBySamAccountName_shouldReturnNullWhenNotFound() {
-        when(ldapTemplate.search(any(LdapQuery.class), any(AttributesMapper.class)))
+        when(ldapTemplate.search(any(LdapQuery.class), any(ContextMapper.class)))
                 .thenReturn(Collections.emptyList());
 
         AdUser result = repository.findBySamAccountName("nonexistent");
@@ -141,32 +124,72 @@ class AdUserLdapRepositoryTest {
     }
 
     @Test
-    void update_shouldLookupAndModifyAttributes() {
-        // findBySamAccountName returns the existing user with a DN
-        when(ldapTemplate.search(any(LdapQuery.class), any(AttributesMapper.class)))
+    void update_shouldModifyOnlyChangedAttributesInOneRequest() {
+        when(ldapTemplate.search(any(LdapQuery.class), any(ContextMapper.class)))
                 .thenReturn(List.of(sampleUser));
 
-        DirContextOperations mockContext = mock(DirContextOperations.class);
-        when(ldapTemplate.lookupContext(any(Name.class))).thenReturn(mockContext);
-        doNothing().when(ldapTemplate).modifyAttributes(any(DirContextOperations.class));
-
         AdUser updatedUser = new AdUser();
         updatedUser.setDisplayName("John Updated");
         updatedUser.setFirstName("John");
         updatedUser.setLastName("Doe");
         updatedUser.setEmail("jdoe-new@company.com");
 
+        AdUserLdapRepository.UpdateResult result = repository.update("jdoe", updatedUser);
+
+        ArgumentCaptor<ModificationItem[]> items = ArgumentCaptor.forClass(ModificationItem[].class);
+        verify(ldapTemplate).modifyAttributes(eq(sampleUser.getDn()), items.capture());
+        assertEquals(2, items.getValue().length);
+        assertEquals(DirContext.REPLACE_ATTRIBUTE, items.getValue()[0].getModificationOp());
+        assertEquals("displayName", items.getValue()[0].getAttribute().getID());
+        assertEquals("mail", items.getValue()[1].getAttribute().getID());
+        verify(ldapTemplate, never()).lookupContext(any(Name.class));
+        assertTrue(result.modified());
+        assertEquals("jdoe-new@company.com", result.user().getEmail());
+        assertEquals("Engineering", result.user().getDepartment());
+    }
+
+    @Test
+    void update_shouldUseRememberedEntryAndConfirmUnchangedUsers() {
+        when(ldapTemplate.search(any(LdapQuery.class), any(ContextMapper.class)))
+                .thenReturn(List.of(sampleUser));
+        repository.findBySamAccountName("jdoe");
+
+        AdUser sameUser = new AdUser();
+        sameUser.setDisplayName("John Doe");
+        sameUser.setDepartment("Engineering");
+        AdUserLdapRepository.UpdateResult unchanged = repository.update("JDOE", sameUser);
+
+        AdUser newTitle = new AdUser();
+        newTitle.setTitle("Lead");
+        repository.update("jdoe", newTitle);
+
+        assertFalse(unchanged.modified());
+        // The initial lookup, and one to confirm the unchanged user; the title edit searched nothing
+        verify(ldapTemplate, times(2)).search(any(LdapQuery.class), any(ContextMapper.class));
+        verify(ldapTemplate, times(1)).modifyAttributes(eq(sampleUser.getDn()), any(ModificationItem[].class));
+    }
+
+    @Test
+    void update_shouldLookUpAgainWhenRememberedDnIsStale() {
+        AdUser moved = new AdUser();
+        moved.setSamAccountName("jdoe");
+        moved.setDn(LdapNameBuilder.newInstance("OU=Users").add("OU", "Sales").add("CN", "John Doe").build());
+        when(ldapTemplate.search(any(LdapQuery.class), any(ContextMapper.class)))
+                .thenReturn(List.of(sampleUser), List.of(moved));
+        repository.findBySamAccountName("jdoe");
+        doThrow(new NameNotFoundException(new javax.naming.NameNotFoundException()))
+                .when(ldapTemplate).modifyAttributes(eq(sampleUser.getDn()), any(ModificationItem[].class));
+
+        AdUser updatedUser = new AdUser();
+        updatedUser.setTitle("Lead");
         repository.update("jdoe", updatedUser);
 
-        verify(ldapTemplate).lookupContext(any(Name.class));
-        verify(mockContext).setAttributeValue("displayName", "John Updated");
-        verify(mockContext).setAttributeValue("mail", "jdoe-new@company.com");
-        verify(ldapTemplate).modifyAttributes(mockContext);
+        verify(ldapTemplate).modifyAttributes(eq(moved.getDn()), any(ModificationItem[].class));
     }
 
     @Test
     void update_shouldThrowWhenUserNotFound() {
-        when(ldapTemplate.search(any(LdapQuery.class), any(AttributesMapper.class)))
+        when(ldapTemplate.search(any(LdapQuery.class), any(ContextMapper.class)))
                 .thenReturn(Collections.emptyList());
 
         AdUser updatedUser = new AdUser();
@@ -178,19 +201,31 @@ class AdUserLdapRepositoryTest {
 
     @Test
     void delete_shouldUnbindUserDn() {
-        when(ldapTemplate.search(any(LdapQuery.class), any(AttributesMapper.class)))
+        when(ldapTemplate.search(any(LdapQuery.class), any(ContextMapper.class)))
                 .thenReturn(List.of(sampleUser));
 
         doNothing().when(ldapTemplate).unbind(any(Name.class));
 
         repository.delete("jdoe");
 
-        verify(ldapTemplate).unbind(any(Name.class));
+        verify(ldapTemplate).unbind(sampleUser.getDn());
+    }
+
+    @Test
+    void delete_shouldUseRememberedDn() {
+        when(ldapTemplate.search(any(LdapQuery.class), any(ContextMapper.class)))
+                .thenReturn(List.of(sampleUser));
+        repository.findBySamAccountName("jdoe");
+
+        repository.delete("jdoe");
+
+        verify(ldapTemplate, times(1)).search(any(LdapQuery.class), any(ContextMapper.class));
+        verify(ldapTemplate).unbind(sampleUser.getDn());
     }
 
     @Test
     void delete_shouldThrowWhenUserNotFound() {
-        when(ldapTemplate.search(any(LdapQuery.class), any(AttributesMapper.class)))
+        when(ldapTemplate.search(any(LdapQuery.class), any(ContextMapper.class)))
                 .thenReturn(Collections.emptyList());
 
         assertThrows(IllegalArgumentException.class,
@@ -0,0 +1,237 @@
+package com.ad.poc.repository;
+
+import com.ad.poc.model.AdUser;
+import com.company.ra.config.LdapOperationGovernor;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedModifyRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSearchRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ldap.core.LdapTemplate;
+import org.springframework.ldap.core.support.LdapContextSource;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Diff-only updates, the assertion control and batched lookups against an in-memory directory.
+ */
+class AdUserLdapRepositoryUpdateTest {
+
+    private static final String BASE = "DC=company,DC=com";
+    private static final int USERS = 150;
+
+    private InMemoryDirectoryServer server;
+    private LdapContextSource contextSource;
+    private final AtomicInteger searches = new AtomicInteger();
+    private final List<List<Modification>> modifies = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE);
+        config.setSchema(null);
+        config.addInMemoryOperationInterceptor(new InMemoryOperationInterceptor() {
+            @Override
+            public void processSearchRequest(InMemoryInterceptedSearchRequest request) {
+                searches.incrementAndGet();
+            }
+
+            @Override
+            public void processModifyRequest(InMemoryInterceptedModifyRequest request) {
+                modifies.add(request.getRequest().getModifications());
+            }
+        });
+        server = new InMemoryDirectoryServer(config);
+        server.add(new Entry(BASE, new Attribute("objectClass", "domain")));
+        server.add(new Entry("OU=Users," + BASE, new Attribute("objectClass", "organizationalUnit")));
+        for (int i = 0; i < USERS; i++) {
+            server.add(user(String.format("user%03d", i)));
+        }
+        server.startListening();
+
+        contextSource = new LdapContextSource();
+        contextSource.setUrl("ldap://localhost:" + server.getListenPort());
+        contextSource.setBase(BASE);
+        contextSource.setAnonymousReadOnly(true);
+        contextSource.setPooled(false);
+        contextSource.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.shutDown(true);
+    }
+
+    @Test
+    void update_shouldSendOneModifyWithChangedAttributesOnly() throws Exception {
+        AdUserLdapRepository repository = repository(false);
+        AdUser edit = edit("Sales", "Engineer");
+
+        AdUserLdapRepository.UpdateResult result = repository.update("user001", edit);
+
+        assertTrue(result.modified());
+        assertEquals("Sales", result.user().getDepartment());
+        assertEquals(1, searches.get());
+        assertEquals(1, modifies.size());
+        assertEquals(List.of("department"), modifies.get(0).stream()
+                .map(Modification::getAttributeName).collect(Collectors.toList()));
+        assertEquals(ModificationType.REPLACE, modifies.get(0).get(0).getModificationType());
+        assertEquals("Sales", server.getEntry("CN=user001,OU=Users," + BASE).getAttributeValue("department"));
+
+        // Remembered after the first edit; an unchanged result is confirmed with one more search
+        assertFalse(repository.update("user001", edit).modified());
+        assertEquals(2, searches.get());
+        repository.update("user001", edit("Sales", "Lead"));
+        assertEquals(2, searches.get());
+        assertEquals(2, modifies.size());
+    }
+
+    @Test
+    void update_shouldReadAgainBeforeReportingRememberedUserUnchanged() throws Exception {
+        AdUserLdapRepository repository = repository(false);
+        repository.findBySamAccountName("user005");
+        server.modify("CN=user005,OU=Users," + BASE,
+                new Modification(ModificationType.REPLACE, "department", "Finance"));
+
+        AdUserLdapRepository.UpdateResult result = repository.update("user005", edit("Engineering", null));
+
+        assertTrue(result.modified());
+        assertEquals(1, modifies.size());
+        assertEquals("Engineering",
+                server.getEntry("CN=user005,OU=Users," + BASE).getAttributeValue("department"));
+    }
+
+    @Test
+    void update_withAssertionControl_shouldApplyUnchangedEntries() throws Exception {
+        AdUserLdapRepository repository = repository(true);
+
+        repository.update("user002", edit("Sales", null));
+        // Absent attribute asserted with (!(telephoneNumber=*))
+        AdUser phone = new AdUser();
+        phone.setPhoneNumber("+49 30 1234");
+        repository.update("user002", phone);
+
+        Entry entry = server.getEntry("CN=user002,OU=Users," + BASE);
+        assertEquals("Sales", entry.getAttributeValue("department"));
+        assertEquals("+49 30 1234", entry.getAttributeValue("telephoneNumber"));
+    }
+
+    @Test
+    void update_withAssertionControl_shouldRefuseConcurrentChange() throws Exception {
+        AdUserLdapRepository repository = repository(true);
+        assertNotNull(repository.findBySamAccountName("user003"));
+        server.modify("CN=user003,OU=Users," + BASE,
+                new Modification(ModificationType.REPLACE, "department", "Finance"));
+
+        assertThrows(IllegalStateException.class, () -> repository.update("user003", edit("Sales", null)));
+        assertEquals("Finance", server.getEntry("CN=user003,OU=Users," + BASE).getAttributeValue("department"));
+
+        // Forgotten after the conflict, so a retry works on the current entry
+        repository.update("user003", edit("Sales", null));
+        assertEquals("Sales", server.getEntry("CN=user003,OU=Users," + BASE).getAttributeValue("department"));
+    }
+
+    @Test
+    void update_shouldFollowUserMovedSinceRemembered() throws Exception {
+        AdUserLdapRepository repository = repository(false);
+        repository.findBySamAccountName("user004");
+        server.add(new Entry("OU=Sales,OU=Users," + BASE, new Attribute("objectClass", "organizationalUnit")));
+        server.modifyDN("CN=user004,OU=Users," + BASE, "CN=user004", true, "OU=Sales,OU=Users," + BASE);
+
+        repository.update("user004", edit("Sales", null));
+
+        assertEquals("Sales",
+                server.getEntry("CN=user004,OU=Sales,OU=Users," + BASE).getAttributeValue("department"));
+    }
+
+    @Test
+    void preload_shouldLookUpUsersInBatchesAndSkipSearchesOnEdit() throws Exception {
+        AdUserLdapRepository repository = repository(false);
+        List<String> names = IntStream.range(0, 120).mapToObj(i -> String.format("user%03d", i))
+                .collect(Collectors.toList());
+
+        assertEquals(120, repository.preload(names));
+        assertEquals(2, searches.get());
+
+        for (String name : names) {
+            repository.update(name, edit("Sales", null));
+        }
+        repository.delete("user000");
+
+        assertEquals(2, searches.get());
+        assertEquals(120, modifies.size());
+        assertNull(server.getEntry("CN=user000,OU=Users," + BASE));
+        // Remembered users are searched for again, together with the rest
+        assertEquals(1, repository.preload(List.of("user001", "nobody")));
+        assertEquals(3, searches.get());
+    }
+
+    @Test
+    void preload_shouldRefreshRememberedUsers() throws Exception {
+        AdUserLdapRepository repository = repository(true);
+        repository.preload(List.of("user006"));
+        server.modify("CN=user006,OU=Users," + BASE,
+                new Modification(ModificationType.REPLACE, "department", "Finance"));
+
+        repository.preload(List.of("user006"));
+
+        // The assertion control would refuse an edit based on the old department
+        repository.update("user006", edit("Sales", null));
+        assertEquals("Sales", server.getEntry("CN=user006,OU=Users," + BASE).getAttributeValue("department"));
+    }
+
+    @Test
+    void findBySamAccountName_shouldEvictOldestWhenFull() throws Exception {
+        AdUserLdapRepository repository = new AdUserLdapRepository(new LdapTemplate(contextSource),
+                Duration.ofMinutes(5), 3, false, null, LdapOperationGovernor.unlimited());
+        for (int i = 0; i < 4; i++) {
+            repository.findBySamAccountName(String.format("user%03d", i));
+        }
+        searches.set(0);
+
+        for (int i = 1; i < 4; i++) {
+            repository.update(String.format("user%03d", i), edit("Sales", null));
+        }
+        assertEquals(0, searches.get());
+        repository.update("user000", edit("Sales", null));
+        assertEquals(1, searches.get());
+    }
+
+    private AdUserLdapRepository repository(boolean assertionControl) {
+        return new AdUserLdapRepository(new LdapTemplate(contextSource), Duration.ofMinutes(5), 1000,
+                assertionControl, null, LdapOperationGovernor.unlimited());
+    }
+
+    private static AdUser edit(String department, String title) {
+        AdUser user = new AdUser();
+        user.setDepartment(department);
+        user.setTitle(title);
+        user.setDisplayName("Display Name");
+        return user;
+    }
+
+    private static Entry user(String samAccountName) {
+        Entry entry = new Entry("CN=" + samAccountName + ",OU=Users," + BASE);
+        entry.addAttribute("objectClass", "user");
+        entry.addAttribute("objectCategory", "person");
+        entry.addAttribute("cn", samAccountName);
+        entry.addAttribute("sAMAccountName", samAccountName);
+        entry.addAttribute("displayName", "Display Name");
+        entry.addAttribute("department", "Engineering");
+        entry.addAttribute("title", "Engineer");
+        return entry;
+    }
+}
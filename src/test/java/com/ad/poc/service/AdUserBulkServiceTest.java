@@ -0,0 +1,247 @@
+package com.ad.poc.service;
+
+import com.ad.poc.dto.AdUserDto;
+import com.ad.poc.dto.BulkItemResultDto;
+import com.ad.poc.dto.BulkJobDto;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.ldap.NameAlreadyBoundException;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class AdUserBulkServiceTest {
+
+    @Mock
+    private AdUserService adUserService;
+
+    @Mock
+    private Validator validator;
+
+    private AdUserBulkService bulkService;
+
+    @BeforeEach
+    void setUp() {
+        when(validator.validate(any(AdUserDto.class))).thenReturn(Collections.emptySet());
+        bulkService = new AdUserBulkService(adUserService, validator, 4, 0, 100, Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        bulkService.shutdown();
+    }
+
+    @Test
+    void submit_shouldReportPerItemResults() throws Exception {
+        AdUserDto existing = user("existing");
+        AdUserDto broken = user("broken");
+        when(adUserService.createIfAbsent(any())).thenReturn(true);
+        when(adUserService.createIfAbsent(existing)).thenReturn(false);
+        when(adUserService.createIfAbsent(broken)).thenThrow(new NameAlreadyBoundException(null));
+
+        BulkJobDto job = bulkService.submit(List.of(user("new1"), existing, broken, user("new2")));
+
+        BulkJobDto done = awaitCompletion(job.id());
+        assertEquals(BulkJobDto.State.COMPLETED, done.state());
+        assertEquals(4, done.processed());
+        assertEquals(2, done.created());
+        assertEquals(1, done.skipped());
+        assertEquals(1, done.failed());
+        assertEquals(List.of(BulkItemResultDto.Status.CREATED, BulkItemResultDto.Status.SKIPPED,
+                        BulkItemResultDto.Status.FAILED, BulkItemResultDto.Status.CREATED),
+                done.results().stream().map(BulkItemResultDto::status).collect(Collectors.toList()));
+    }
+
+    @Test
+    void submit_shouldSkipDuplicatesWithinRequest() throws Exception {
+        when(adUserService.createIfAbsent(any())).thenReturn(true);
+
+        BulkJobDto job = bulkService.submit(List.of(user("jdoe"), user("JDOE")));
+
+        BulkJobDto done = awaitCompletion(job.id());
+        assertEquals(1, done.created());
+        assertEquals(1, done.skipped());
+        verify(adUserService, times(1)).createIfAbsent(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void submit_shouldFailInvalidItemsWithoutCallingLdap() throws Exception {
+        AdUserDto invalid = user("bad");
+        ConstraintViolation<AdUserDto> violation = mock(ConstraintViolation.class);
+        when(violation.getMessage()).thenReturn("Email must be valid");
+        when(validator.validate(invalid)).thenReturn(Set.of(violation));
+
+        BulkJobDto done = awaitCompletion(bulkService.submit(List.of(invalid)).id());
+
+        assertEquals(1, done.failed());
+        assertEquals("Email must be valid", done.results().get(0).error());
+        verifyNoInteractions(adUserService);
+    }
+
+    @Test
+    void submit_shouldNotExceedWorkerCount() throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        when(adUserService.createIfAbsent(any())).thenAnswer(invocation -> {
+            peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+            Thread.sleep(5);
+            active.decrementAndGet();
+            return true;
+        });
+
+        BulkJobDto job = bulkService.submit(IntStream.range(0, 40)
+                .mapToObj(i -> user("user" + i))
+                .collect(Collectors.toList()));
+
+        assertEquals(40, awaitCompletion(job.id()).created());
+        assertTrue(peak.get() <= 4, "peak concurrency " + peak.get());
+    }
+
+    @Test
+    void submit_shouldThrottleCreates() throws Exception {
+        AdUserBulkService throttled = new AdUserBulkService(adUserService, validator, 4, 100, 100, Duration.ofHours(1));
+        try {
+            when(adUserService.createIfAbsent(any())).thenReturn(true);
+            long started = System.nanoTime();
+
+            BulkJobDto job = throttled.submit(IntStream.range(0, 21)
+                    .mapToObj(i -> user("user" + i))
+                    .collect(Collectors.toList()));
+            awaitCompletion(throttled, job.id());
+
+            // 21 creates at 100/s need at least 200 ms
+            assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(190));
+        } finally {
+            throttled.shutdown();
+        }
+    }
+
+    @Test
+    void cancel_shouldFailItemsNotYetStarted() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(adUserService.createIfAbsent(any())).thenAnswer(invocation -> {
+            release.await();
+            return true;
+        });
+
+        BulkJobDto job = bulkService.submit(IntStream.range(0, 10)
+                .mapToObj(i -> user("user" + i))
+                .collect(Collectors.toList()));
+        bulkService.cancel(job.id());
+        release.countDown();
+
+        BulkJobDto done = awaitCompletion(job.id());
+        assertEquals(BulkJobDto.State.CANCELLED, done.state());
+        assertEquals(10, done.processed());
+        assertTrue(done.failed() >= 6);
+    }
+
+    @Test
+    void cancel_shouldCompleteJobWhoseItemsHadAllStarted() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        when(adUserService.createIfAbsent(any())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return true;
+        });
+
+        BulkJobDto job = bulkService.submit(List.of(user("alice"), user("bob")));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        bulkService.cancel(job.id());
+        release.countDown();
+
+        BulkJobDto done = awaitCompletion(job.id());
+        assertEquals(BulkJobDto.State.COMPLETED, done.state());
+        assertEquals(2, done.created());
+    }
+
+    @Test
+    void submitUpdates_shouldPreloadUsersThenReportPerItemResults() throws Exception {
+        AdUserDto unchanged = user("same");
+        AdUserDto missing = user("missing");
+        when(adUserService.updateIfChanged(any())).thenReturn(true);
+        when(adUserService.updateIfChanged(unchanged)).thenReturn(false);
+        when(adUserService.updateIfChanged(missing)).thenThrow(new IllegalArgumentException("User not found: missing"));
+
+        BulkJobDto job = bulkService.submitUpdates(List.of(user("jdoe"), unchanged, missing, user("JDOE")));
+
+        BulkJobDto done = awaitCompletion(job.id());
+        assertEquals(1, done.updated());
+        assertEquals(2, done.skipped());
+        assertEquals(1, done.failed());
+        assertEquals(List.of(BulkItemResultDto.Status.UPDATED, BulkItemResultDto.Status.SKIPPED,
+                        BulkItemResultDto.Status.FAILED, BulkItemResultDto.Status.SKIPPED),
+                done.results().stream().map(BulkItemResultDto::status).collect(Collectors.toList()));
+        assertEquals("User not found: missing", done.results().get(2).error());
+        InOrder order = inOrder(adUserService);
+        order.verify(adUserService).preload(List.of("jdoe", "same", "missing"));
+        order.verify(adUserService, times(3)).updateIfChanged(any());
+        verify(adUserService, never()).createIfAbsent(any());
+    }
+
+    @Test
+    void submitUpdates_shouldStillEditUsersWhenPreloadFails() throws Exception {
+        doThrow(new IllegalStateException("directory unavailable")).when(adUserService).preload(any());
+        when(adUserService.updateIfChanged(any())).thenReturn(true);
+
+        BulkJobDto done = awaitCompletion(bulkService.submitUpdates(List.of(user("a"), user("b"))).id());
+
+        assertEquals(2, done.updated());
+    }
+
+    @Test
+    void submit_shouldRejectEmptyOrOversizedRequests() {
+        assertThrows(IllegalArgumentException.class, () -> bulkService.submit(List.of()));
+        assertThrows(IllegalArgumentException.class, () -> bulkService.submitUpdates(List.of()));
+        assertThrows(IllegalArgumentException.class, () -> bulkService.submit(IntStream.range(0, 101)
+                .mapToObj(i -> user("user" + i))
+                .collect(Collectors.toList())));
+        assertTrue(bulkService.getJob("unknown", true).isEmpty());
+    }
+
+    private BulkJobDto awaitCompletion(String id) throws InterruptedException {
+        return awaitCompletion(bulkService, id);
+    }
+
+    private static BulkJobDto awaitCompletion(AdUserBulkService service, String id) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            BulkJobDto job = service.getJob(id, true).orElseThrow();
+            if (job.state() != BulkJobDto.State.RUNNING) {
+                return job;
+            }
+            Thread.sleep(10);
+        }
+        fail("Bulk job did not finish");
+        return null;
+    }
+
+    private static AdUserDto user(String samAccountName) {
+        return new AdUserDto(samAccountName, "First", "Last", null, samAccountName + "@company.com",
+                "Engineering", null, null, null, null, null, null, false);
+    }
+}
@@ -0,0 +1,60 @@
+package com.ad.poc.service;
+
+import com.ad.poc.dto.AdUserDto;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdUserCsvReaderTest {
+
+    @Test
+    void readAll_shouldMapColumnsByFieldOrAttributeName() throws Exception {
+        String csv = "sAMAccountName,givenName,sn,Department,mail,ignored\r\n"
+                + "jdoe,John,Doe,Engineering,jdoe@company.com,x\r\n"
+                + "asmith,Alice,Smith,,,\r\n";
+
+        List<AdUserDto> users = new AdUserCsvReader(new StringReader(csv)).readAll(10);
+
+        assertEquals(2, users.size());
+        assertEquals("jdoe", users.get(0).samAccountName());
+        assertEquals("John", users.get(0).firstName());
+        assertEquals("Doe", users.get(0).lastName());
+        assertEquals("Engineering", users.get(0).department());
+        assertEquals("jdoe@company.com", users.get(0).email());
+        assertNull(users.get(1).department());
+    }
+
+    @Test
+    void readAll_shouldHandleQuotedFields() throws Exception {
+        String csv = "samAccountName,displayName,title\n"
+                + "jdoe,\"Doe, John\",\"Senior \"\"Lead\"\"\nEngineer\"\n";
+
+        List<AdUserDto> users = new AdUserCsvReader(new StringReader(csv)).readAll(10);
+
+        assertEquals(1, users.size());
+        assertEquals("Doe, John", users.get(0).displayName());
+        assertEquals("Senior \"Lead\"\nEngineer", users.get(0).title());
+    }
+
+    @Test
+    void readAll_shouldSkipByteOrderMark() throws Exception {
+        String csv = "\uFEFFsamAccountName,department\njdoe,Engineering\n";
+
+        List<AdUserDto> users = new AdUserCsvReader(new StringReader(csv)).readAll(10);
+
+        assertEquals(1, users.size());
+        assertEquals("jdoe", users.get(0).samAccountName());
+        assertEquals("Engineering", users.get(0).department());
+    }
+
+    @Test
+    void readAll_shouldRejectMissingSamColumnAndTooManyRows() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new AdUserCsvReader(new StringReader("firstName,lastName\nJohn,Doe\n")).readAll(10));
+        assertThrows(IllegalArgumentException.class,
+                () -> new AdUserCsvReader(new StringReader("samAccountName\na\nb\nc\n")).readAll(2));
+    }
+}
@@ -0,0 +1,180 @@
+package com.ad.poc.service;
+
+import com.ad.poc.model.AdUser;
+import com.ad.poc.repository.AdUserLdapRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AdUserSearchIndexTest {
+
+    private static final AdUserLdapRepository.ChangeMark MARK = new AdUserLdapRepository.ChangeMark("CN=DC1", 1000);
+
+    @Mock
+    private AdUserLdapRepository ldapRepository;
+
+    private AdUserSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new AdUserSearchIndex(ldapRepository, true, Duration.ofMinutes(1), Duration.ofHours(1));
+    }
+
+    @Test
+    void search_shouldReturnNothingBeforeFirstLoad() {
+        assertFalse(index.isReady());
+        assertTrue(index.search("john", 10).isEmpty());
+    }
+
+    @Test
+    void search_shouldRankExactAndPrefixMatchesFirst() {
+        load(user("ajohnson", "Alice Johnson", "Sales"),
+                user("john", "John Smith", "Engineering"),
+                user("jdoe", "John Doe", "Engineering"),
+                user("bjones", "Bob Jones", "Johnstown Office"));
+
+        List<String> results = sams(index.search("John", 10));
+
+        // Exact sAMAccountName, then displayName prefixes, then word prefix and department
+        assertEquals(List.of("john", "jdoe", "ajohnson", "bjones"), results);
+    }
+
+    @Test
+    void search_shouldMatchSubstringsAcrossFields() {
+        load(user("jdoe", "John Doe", "Engineering"),
+                user("asmith", "Alice Smith", "Sales"));
+
+        assertEquals(List.of("jdoe"), sams(index.search("gineer", 10)));
+        assertEquals(List.of("asmith"), sams(index.search("asmith@company", 10)));
+        assertTrue(index.search("nobody", 10).isEmpty());
+    }
+
+    @Test
+    void search_shouldUsePrefixesForShortQueries() {
+        load(user("jdoe", "John Doe", "Engineering"),
+                user("asmith", "Alice Smith", "Sales"),
+                user("bjones", "Bob Jones", "Sales"));
+
+        assertEquals(List.of("jdoe", "bjones"), sams(index.search("j", 10)));
+        assertEquals(List.of("asmith"), sams(index.search("sm", 10)));
+    }
+
+    @Test
+    void search_shouldHonourLimit() {
+        load(IntStream.range(0, 50)
+                .mapToObj(i -> user(String.format("user%02d", i), "User " + i, "Sales"))
+                .toArray(AdUser[]::new));
+
+        List<String> results = sams(index.search("user", 5));
+
+        assertEquals(List.of("user00", "user01", "user02", "user03", "user04"), results);
+        assertEquals(50, index.search("sales", 1000).size());
+    }
+
+    @Test
+    void refresh_shouldApplyChangedUsersIncrementally() {
+        load(user("jdoe", "John Doe", "Engineering"));
+        AdUserLdapRepository.ChangeMark next = new AdUserLdapRepository.ChangeMark("CN=DC1", 1005);
+        when(ldapRepository.streamChanges(MARK)).thenReturn(new AdUserLdapRepository.UserChanges(next, false,
+                Stream.of(user("jdoe", "John Doe", "Marketing"), user("asmith", "Alice Smith", "Sales"))));
+        when(ldapRepository.streamChanges(next)).thenReturn(
+                new AdUserLdapRepository.UserChanges(next, false, Stream.empty()));
+
+        index.refresh();
+        index.refresh();
+
+        assertEquals(2, index.size());
+        assertEquals(List.of("jdoe"), sams(index.search("marketing", 10)));
+        assertTrue(index.search("engineering", 10).isEmpty());
+        verify(ldapRepository, times(1)).streamChanges(null);
+    }
+
+    @Test
+    void refresh_shouldKeepChangesMadeWhileTheDirectoryIsReloaded() {
+        load(user("jdoe", "John Doe", "Engineering"), user("asmith", "Alice Smith", "Sales"));
+        // The domain controller changed, so the directory is read in full again; meanwhile a
+        // user is created and another deleted through this service
+        Stream<AdUser> directory = Stream.of(user("jdoe", "John Doe", "Engineering"),
+                user("asmith", "Alice Smith", "Sales")).peek(user -> {
+                    if (user.getSamAccountName().equals("jdoe")) {
+                        index.upsert(user("bnew", "Bob New", "Sales"));
+                        index.remove("asmith");
+                    }
+                });
+        when(ldapRepository.streamChanges(MARK)).thenReturn(new AdUserLdapRepository.UserChanges(
+                new AdUserLdapRepository.ChangeMark("CN=DC2", 50), true, directory));
+
+        index.refresh();
+
+        assertEquals(List.of("bnew"), sams(index.search("sales", 10)));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void upsert_shouldRebuildTheSnapshotOnlyAfterManyChanges() {
+        load(user("jdoe", "John Doe", "Engineering"));
+
+        for (int i = 0; i < AdUserSearchIndex.MAX_CHANGES; i++) {
+            index.upsert(user(String.format("user%04d", i), "User " + i, "Sales"));
+        }
+        assertEquals(AdUserSearchIndex.MAX_CHANGES, changesBesideSnapshot());
+        assertEquals(List.of("user0000", "user0001"), sams(index.search("user", 2)));
+
+        index.upsert(user("last", "Last User", "Sales"));
+        assertEquals(0, changesBesideSnapshot());
+        assertEquals(AdUserSearchIndex.MAX_CHANGES + 2, index.size());
+        assertEquals(List.of("last"), sams(index.search("last", 10)));
+    }
+
+    @Test
+    void upsertAndRemove_shouldUpdateIndexWithoutDirectoryRead() {
+        load(user("jdoe", "John Doe", "Engineering"));
+
+        index.upsert(user("asmith", "Alice Smith", "Sales"));
+        assertEquals(List.of("asmith"), sams(index.search("alice", 10)));
+
+        index.remove("JDOE");
+        assertTrue(index.search("john", 10).isEmpty());
+        assertEquals(1, index.size());
+    }
+
+    private void load(AdUser... users) {
+        when(ldapRepository.streamChanges(null))
+                .thenReturn(new AdUserLdapRepository.UserChanges(MARK, true, Stream.of(users)));
+        index.refresh();
+        assertTrue(index.isReady());
+    }
+
+    private int changesBesideSnapshot() {
+        Object view = ReflectionTestUtils.getField(index, "view");
+        return ((Map<?, ?>) ReflectionTestUtils.getField(view, "changes")).size();
+    }
+
+    private static List<String> sams(List<AdUser> users) {
+        return users.stream().map(AdUser::getSamAccountName).collect(Collectors.toList());
+    }
+
+    private static AdUser user(String samAccountName, String displayName, String department) {
+        AdUser user = new AdUser();
+        user.setSamAccountName(samAccountName);
+        user.setDisplayName(displayName);
+        user.setEmail(samAccountName + "@company.com");
+        user.setDepartment(department);
+        user.setTitle("Staff");
+        return user;
+    }
+}
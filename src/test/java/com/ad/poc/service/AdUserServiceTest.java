@@ -1,21 +1,35 @@
 package com.ad.poc.service;
 
 import com.ad.poc.dto.AdUserDto;
+import com.ad.poc.dto.AdUserPageDto;
 import com.ad.poc.model.AdUser;
 import com.ad.poc.repository.AdUserLdapRepository;
+import com.company.ra.config.LdapGovernorProperties;
+import com.company.ra.config.LdapOperationGovernor;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.ldap.NameAlreadyBoundException;
 
+import javax.naming.CommunicationException;
+import javax.naming.ServiceUnavailableException;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -25,6 +39,12 @@ class AdUserServiceTest {
     @Mock
     private AdUserLdapRepository ldapRepository;
 
+    @Mock
+    private AdUserSearchIndex searchIndex;
+
+    @Mock
+    private LdapBindAuthenticator bindAuthenticator;
+
     private AdUserService adUserService;
 
     private AdUser sampleAdUser;
@@ -32,7 +52,8 @@ class AdUserServiceTest {
 
     @BeforeEach
     void setUp() {
-        adUserService = new AdUserService(ldapRepository, "ldap://ad.company.com:389");
+        adUserService = new AdUserService(ldapRepository, searchIndex, bindAuthenticator,
+                Duration.ofMinutes(5), 100);
 
         sampleAdUser = new AdUser();
         sampleAdUser.setSamAccountName("jdoe");
@@ -97,6 +118,56 @@ class AdUserServiceTest {
         assertEquals("Engineering", result.get(0).department());
     }
 
+    @Test
+    void streamAll_shouldMapUsersAndCloseRepositoryStream() {
+        AtomicBoolean closed = new AtomicBoolean();
+        when(ldapRepository.streamAll("Engineering"))
+                .thenReturn(Stream.of(sampleAdUser).onClose(() -> closed.set(true)));
+
+        try (Stream<AdUserDto> users = adUserService.streamAll("Engineering")) {
+            assertEquals(List.of("jdoe"), users.map(AdUserDto::samAccountName).collect(Collectors.toList()));
+        }
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void listPage_shouldReturnCursorWhenMoreUsersExist() {
+        AdUser secondUser = new AdUser();
+        secondUser.setSamAccountName("jsmith");
+        when(ldapRepository.findPageAfter(null, null, 1)).thenReturn(List.of(sampleAdUser, secondUser));
+
+        AdUserPageDto page = adUserService.listPage(null, null, null, 1);
+
+        assertEquals(1, page.items().size());
+        assertEquals("jdoe", page.items().get(0).samAccountName());
+        assertNull(page.nextOffset());
+
+        when(ldapRepository.findPageAfter(null, "jdoe", 1)).thenReturn(List.of(secondUser));
+        AdUserPageDto next = adUserService.listPage(null, page.nextCursor(), null, 1);
+
+        assertEquals("jsmith", next.items().get(0).samAccountName());
+        assertFalse(next.hasNext());
+    }
+
+    @Test
+    void listPage_shouldReturnNextOffsetWhenMoreUsersExist() {
+        when(ldapRepository.findPage("Engineering", 10, 1)).thenReturn(List.of(sampleAdUser, sampleAdUser));
+
+        AdUserPageDto page = adUserService.listPage("Engineering", null, 10, 1);
+
+        assertEquals(1, page.items().size());
+        assertEquals(11, page.nextOffset());
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    void listPage_shouldRejectCursorWithOffset() {
+        assertThrows(IllegalArgumentException.class,
+                () -> adUserService.listPage(null, AdUserService.encodeCursor("jdoe"), 10, 1));
+        assertThrows(IllegalArgumentException.class, () -> adUserService.listPage(null, "not base64!", null, 1));
+        verifyNoInteractions(ldapRepository);
+    }
+
     // ---- SEARCH ----
 
     @Test
@@ -119,6 +190,31 @@ class AdUserServiceTest {
         assertTrue(result.isEmpty());
     }
 
+    @Test
+    void searchIndex_shouldServeFromIndexWhenReady() {
+        when(searchIndex.isReady()).thenReturn(true);
+        when(searchIndex.search("jo", 5)).thenReturn(List.of(sampleAdUser));
+
+        List<AdUserDto> result = adUserService.searchIndex("jo", 5);
+
+        assertEquals(1, result.size());
+        assertEquals("jdoe", result.get(0).samAccountName());
+        verifyNoInteractions(ldapRepository);
+    }
+
+    @Test
+    void searchIndex_shouldFallBackToDirectoryUntilIndexIsReady() {
+        AdUser other = new AdUser();
+        other.setSamAccountName("jsmith");
+        when(searchIndex.isReady()).thenReturn(false);
+        when(ldapRepository.search("j")).thenReturn(List.of(sampleAdUser, other));
+
+        List<AdUserDto> result = adUserService.searchIndex("j", 1);
+
+        assertEquals(1, result.size());
+        verify(searchIndex, never()).search(any(), anyInt());
+    }
+
     @Test
     void getBySamAccountName_shouldReturnUserWhenFound() {
         when(ldapRepository.findBySamAccountName("jdoe")).thenReturn(sampleAdUser);
@@ -156,6 +252,7 @@ class AdUserServiceTest {
         assertEquals("jdoe", result.samAccountName());
         assertEquals("John Doe", result.displayName());
         verify(ldapRepository).create(any(AdUser.class));
+        verify(searchIndex).upsert(sampleAdUser);
     }
 
     @Test
@@ -191,6 +288,38 @@ class AdUserServiceTest {
         ));
     }
 
+    @Test
+    void createIfAbsent_shouldCreateWithoutReadingBack() {
+        when(ldapRepository.findBySamAccountName("jdoe")).thenReturn(null);
+
+        assertTrue(adUserService.createIfAbsent(sampleDto));
+
+        verify(ldapRepository, times(1)).findBySamAccountName("jdoe");
+        verify(ldapRepository).create(any(AdUser.class));
+        verify(searchIndex).upsert(argThat(user -> "jdoe".equals(user.getSamAccountName())));
+    }
+
+    @Test
+    void createIfAbsent_shouldSkipExistingUser() {
+        when(ldapRepository.findBySamAccountName("jdoe")).thenReturn(sampleAdUser);
+
+        assertFalse(adUserService.createIfAbsent(sampleDto));
+
+        verify(ldapRepository, never()).create(any());
+        verifyNoInteractions(searchIndex);
+    }
+
+    @Test
+    void createIfAbsent_shouldSkipUserCreatedSinceTheLookup() {
+        when(ldapRepository.findBySamAccountName("jdoe")).thenReturn(null);
+        doThrow(new NameAlreadyBoundException(new javax.naming.NameAlreadyBoundException("Entry Already Exists")))
+                .when(ldapRepository).create(any(AdUser.class));
+
+        assertFalse(adUserService.createIfAbsent(sampleDto));
+
+        verifyNoInteractions(searchIndex);
+    }
+
     // ---- UPDATE ----
 
     @Test
@@ -203,8 +332,8 @@ class AdUserServiceTest {
         updatedAdUser.setEmail("jdoe-new@company.com");
         updatedAdUser.setDepartment("Management");
 
-        doNothing().when(ldapRepository).update(eq("jdoe"), any(AdUser.class));
-        when(ldapRepository.findBySamAccountName("jdoe")).thenReturn(updatedAdUser);
+        when(ldapRepository.update(eq("jdoe"), any(AdUser.class)))
+                .thenReturn(new AdUserLdapRepository.UpdateResult(updatedAdUser, true));
 
         AdUserDto updateDto = new AdUserDto(
                 "jdoe", "John", "Doe", "John Updated", "jdoe-new@company.com",
@@ -216,6 +345,19 @@ class AdUserServiceTest {
         assertEquals("John Updated", result.displayName());
         assertEquals("Management", result.department());
         verify(ldapRepository).update(eq("jdoe"), any(AdUser.class));
+        // The updated entry comes from the repository, not from a read-back
+        verify(ldapRepository, never()).findBySamAccountName(any());
+        verify(searchIndex).upsert(updatedAdUser);
+    }
+
+    @Test
+    void updateIfChanged_shouldReportUnchangedUsersWithoutTouchingIndex() {
+        when(ldapRepository.update(eq("jdoe"), any(AdUser.class)))
+                .thenReturn(new AdUserLdapRepository.UpdateResult(sampleAdUser, false));
+
+        assertFalse(adUserService.updateIfChanged(sampleDto));
+
+        verifyNoInteractions(searchIndex);
     }
 
     @Test
@@ -313,6 +455,96 @@ class AdUserServiceTest {
 
     // ---- AUTHENTICATE ----
 
+    @Test
+    void authenticate_shouldBindAsUserDn() throws Exception {
+        when(ldapRepository.findBySamAccountName("jdoe")).thenReturn(sampleAdUser);
+        when(bindAuthenticator.authenticate("CN=John Doe,OU=Users,DC=company,DC=com", "secret")).thenReturn(true);
+
+        Optional<AdUserDto> result = adUserService.authenticate("jdoe", "secret");
+
+        assertTrue(result.isPresent());
+        assertEquals("jdoe", result.get().samAccountName());
+    }
+
+    @Test
+    void authenticate_shouldReturnEmptyOnWrongPassword() throws Exception {
+        when(ldapRepository.findBySamAccountName("jdoe")).thenReturn(sampleAdUser);
+        when(bindAuthenticator.authenticate(anyString(), eq("wrong"))).thenReturn(false);
+
+        assertTrue(adUserService.authenticate("jdoe", "wrong").isEmpty());
+    }
+
+    @Test
+    void authenticate_shouldReuseDnOfRecentLogin() throws Exception {
+        when(ldapRepository.findBySamAccountName("jdoe")).thenReturn(sampleAdUser);
+        when(bindAuthenticator.authenticate(anyString(), eq("secret"))).thenReturn(true);
+
+        assertTrue(adUserService.authenticate("jdoe", "secret").isPresent());
+        assertTrue(adUserService.authenticate("JDOE", "secret").isPresent());
+
+        verify(ldapRepository, times(1)).findBySamAccountName(anyString());
+        verify(bindAuthenticator, times(2)).authenticate("CN=John Doe,OU=Users,DC=company,DC=com", "secret");
+    }
+
+    @Test
+    void authenticate_shouldLookUpAgainWhenCachedDnIsStale() throws Exception {
+        AdUser moved = new AdUser();
+        moved.setSamAccountName("jdoe");
+        moved.setDistinguishedName("CN=John Doe,OU=Moved,DC=company,DC=com");
+        when(ldapRepository.findBySamAccountName("jdoe")).thenReturn(sampleAdUser, moved);
+        when(bindAuthenticator.authenticate("CN=John Doe,OU=Users,DC=company,DC=com", "secret"))
+                .thenReturn(true, false);
+        when(bindAuthenticator.authenticate("CN=John Doe,OU=Moved,DC=company,DC=com", "secret")).thenReturn(true);
+
+        assertTrue(adUserService.authenticate("jdoe", "secret").isPresent());
+        Optional<AdUserDto> result = adUserService.authenticate("jdoe", "secret");
+
+        assertTrue(result.isPresent());
+        assertEquals("CN=John Doe,OU=Moved,DC=company,DC=com", result.get().distinguishedName());
+        verify(ldapRepository, times(2)).findBySamAccountName("jdoe");
+    }
+
+    @Test
+    void authenticate_shouldFailWithServiceUnavailableWhenDirectoryUnavailable() throws Exception {
+        when(ldapRepository.findBySamAccountName("jdoe")).thenReturn(sampleAdUser);
+        when(bindAuthenticator.authenticate(anyString(), anyString()))
+                .thenThrow(new ServiceUnavailableException("pool exhausted"))
+                .thenThrow(new CommunicationException("connection refused"));
+
+        assertThrows(org.springframework.ldap.ServiceUnavailableException.class,
+                () -> adUserService.authenticate("jdoe", "secret"));
+        assertThrows(org.springframework.ldap.ServiceUnavailableException.class,
+                () -> adUserService.authenticate("jdoe", "secret"));
+    }
+
+    @Test
+    void authenticate_shouldFailWithServiceUnavailableWhenTheBindIsThrottled() throws Exception {
+        LdapGovernorProperties limits = new LdapGovernorProperties();
+        limits.setBind(new LdapGovernorProperties.Limit(0.001, 1));
+        limits.setInteractiveMaxWait(Duration.ZERO);
+        LdapOperationGovernor governor = new LdapOperationGovernor(limits);
+        governor.acquire(LdapOperationGovernor.OperationClass.BIND);  // spend the burst
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("ldapOperationGovernor", governor);
+        // The governor refuses the bind before a connection is opened, so no server is needed
+        LdapBindAuthenticator throttled = new LdapBindAuthenticator("ldap://localhost:1", 2,
+                Duration.ofSeconds(1), Duration.ofMinutes(5), true, Duration.ofSeconds(1), Duration.ofSeconds(1),
+                beanFactory.getBeanProvider(MeterRegistry.class),
+                beanFactory.getBeanProvider(LdapOperationGovernor.class));
+        AdUserService service = new AdUserService(ldapRepository, searchIndex, throttled,
+                Duration.ofMinutes(5), 100);
+        when(ldapRepository.findBySamAccountName("jdoe")).thenReturn(sampleAdUser);
+
+        try {
+            org.springframework.ldap.ServiceUnavailableException e = assertThrows(
+                    org.springframework.ldap.ServiceUnavailableException.class,
+                    () -> service.authenticate("jdoe", "secret"));
+            assertTrue(e.getMessage().contains("throttled"));
+        } finally {
+            throttled.close();
+        }
+    }
+
     @Test
     void authenticate_shouldReturnEmptyWhenUserNotFound() {
         when(ldapRepository.findBySamAccountName("unknown")).thenReturn(null);
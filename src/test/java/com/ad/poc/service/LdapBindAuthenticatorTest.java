@@ -0,0 +1,185 @@
+package com.ad.poc.service;
+
+import com.company.ra.config.LdapGovernorProperties;
+import com.company.ra.config.LdapOperationGovernor;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.listener.InMemoryExtendedOperationHandler;
+import com.unboundid.ldap.listener.InMemoryRequestHandler;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.ExtendedRequest;
+import com.unboundid.ldap.sdk.ExtendedResult;
+import com.unboundid.ldap.sdk.ResultCode;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import javax.naming.ServiceUnavailableException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Bind authentication against an in-memory directory (which has no fast bind).
+ */
+class LdapBindAuthenticatorTest {
+
+    private static final String BASE = "DC=company,DC=com";
+    private static final String USER_DN = "CN=John Doe,OU=Users," + BASE;
+
+    private InMemoryDirectoryServer server;
+    private SimpleMeterRegistry meterRegistry;
+    private LdapBindAuthenticator authenticator;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE);
+        startServer(config);
+    }
+
+    private void startServer(InMemoryDirectoryServerConfig config) throws Exception {
+        config.setSchema(null);
+        server = new InMemoryDirectoryServer(config);
+        server.add(new Entry(BASE, new Attribute("objectClass", "domain")));
+        server.add(new Entry("OU=Users," + BASE, new Attribute("objectClass", "organizationalUnit")));
+        server.add(new Entry(USER_DN,
+                new Attribute("objectClass", "user"),
+                new Attribute("sAMAccountName", "jdoe"),
+                new Attribute("userPassword", "secret")));
+        server.startListening();
+
+        meterRegistry = new SimpleMeterRegistry();
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("meterRegistry", meterRegistry);
+        authenticator = new LdapBindAuthenticator("ldap://localhost:" + server.getListenPort(), 2,
+                Duration.ofSeconds(1), Duration.ofMinutes(5), true, Duration.ofSeconds(5), Duration.ofSeconds(5),
+                beanFactory.getBeanProvider(MeterRegistry.class),
+                beanFactory.getBeanProvider(LdapOperationGovernor.class));
+    }
+
+    private void restartServer(InMemoryDirectoryServerConfig config) throws Exception {
+        tearDown();
+        startServer(config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        authenticator.close();
+        server.shutDown(true);
+    }
+
+    @Test
+    void authenticate_shouldAcceptCorrectPasswordAndRejectWrongOne() throws Exception {
+        assertTrue(authenticator.authenticate(USER_DN, "secret"));
+        assertFalse(authenticator.authenticate(USER_DN, "wrong"));
+        assertFalse(authenticator.authenticate("CN=Nobody,OU=Users," + BASE, "secret"));
+        assertTrue(authenticator.authenticate(USER_DN, "secret"));
+    }
+
+    @Test
+    void authenticate_shouldRejectBlankPasswordWithoutBinding() throws Exception {
+        assertFalse(authenticator.authenticate(USER_DN, ""));
+        assertFalse(authenticator.authenticate(USER_DN, null));
+        assertEquals(0, authenticator.getIdleConnections());
+    }
+
+    @Test
+    void authenticate_shouldReuseOneConnectionForSequentialBinds() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            authenticator.authenticate(USER_DN, i % 2 == 0 ? "secret" : "wrong");
+        }
+
+        assertEquals(1, authenticator.getIdleConnections());
+        // The in-memory server rejects the fast bind request, so connections are restored instead
+        assertFalse(authenticator.isFastBind());
+    }
+
+    @Test
+    void authenticate_shouldKeepFastBindWhenTheRequestFailsTransiently() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE);
+        config.addExtendedOperationHandler(new InMemoryExtendedOperationHandler() {
+            @Override
+            public String getExtendedOperationHandlerName() {
+                return "Fast bind";
+            }
+
+            @Override
+            public List<String> getSupportedExtendedRequestOIDs() {
+                return List.of(LdapBindAuthenticator.FAST_BIND_OID);
+            }
+
+            @Override
+            public ExtendedResult processExtendedOperation(InMemoryRequestHandler handler, int messageID,
+                                                           ExtendedRequest request) {
+                // The first request finds the server busy
+                ResultCode result = requests.incrementAndGet() == 1 ? ResultCode.BUSY : ResultCode.SUCCESS;
+                return new ExtendedResult(messageID, result, null, null, null, null, null, null);
+            }
+        });
+        restartServer(config);
+
+        assertTrue(authenticator.authenticate(USER_DN, "secret"));
+        assertFalse(authenticator.authenticate(USER_DN, "wrong"));
+
+        assertTrue(authenticator.isFastBind());
+        assertEquals(2, requests.get());
+        assertEquals(1, authenticator.getIdleConnections());
+    }
+
+    @Test
+    void authenticate_shouldRecordBindLatencyByOutcome() throws Exception {
+        authenticator.authenticate(USER_DN, "secret");
+        authenticator.authenticate(USER_DN, "wrong");
+        authenticator.authenticate(USER_DN, "secret");
+
+        assertEquals(2, meterRegistry.get("ad.auth.bind").tag("outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get("ad.auth.bind").tag("outcome", "failure").timer().count());
+    }
+
+    @Test
+    void authenticate_shouldFailWithServiceUnavailableWhenTheGovernorRefusesTheBind() throws Exception {
+        LdapGovernorProperties limits = new LdapGovernorProperties();
+        limits.setBind(new LdapGovernorProperties.Limit(0.001, 1));
+        limits.setInteractiveMaxWait(Duration.ZERO);
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("ldapOperationGovernor", new LdapOperationGovernor(limits));
+        authenticator.close();
+        authenticator = new LdapBindAuthenticator("ldap://localhost:" + server.getListenPort(), 2,
+                Duration.ofSeconds(1), Duration.ofMinutes(5), true, Duration.ofSeconds(5), Duration.ofSeconds(5),
+                beanFactory.getBeanProvider(MeterRegistry.class),
+                beanFactory.getBeanProvider(LdapOperationGovernor.class));
+
+        assertTrue(authenticator.authenticate(USER_DN, "secret"));
+
+        // The burst is spent: the next bind is refused before it reaches the directory
+        ServiceUnavailableException e = assertThrows(ServiceUnavailableException.class,
+                () -> authenticator.authenticate(USER_DN, "secret"));
+        assertTrue(e.getMessage().contains("throttled"));
+        assertEquals(1, authenticator.getIdleConnections());
+    }
+
+    @Test
+    void authenticate_shouldReconnectAfterServerRestart() throws Exception {
+        assertTrue(authenticator.authenticate(USER_DN, "secret"));
+        int port = server.getListenPort();
+        server.shutDown(true);
+        server.startListening();
+        assertEquals(port, server.getListenPort());
+
+        boolean authenticated;
+        try {
+            authenticated = authenticator.authenticate(USER_DN, "secret");
+        } catch (javax.naming.NamingException e) {
+            // The dropped connection is discarded; the next attempt opens a new one
+            authenticated = authenticator.authenticate(USER_DN, "secret");
+        }
+        assertTrue(authenticated);
+    }
+}
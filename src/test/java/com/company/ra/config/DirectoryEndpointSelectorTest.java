@@ -0,0 +1,175 @@
+package com.company.ra.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectoryEndpointSelectorTest {
+
+    private static final long MS = 1_000_000L;
+
+    private DirectoryEndpointProperties properties;
+    private AtomicReference<List<String>> urls;
+    private DirectoryEndpointSelector selector;
+
+    @BeforeEach
+    void setUp() {
+        properties = new DirectoryEndpointProperties();
+        properties.setEjectionTime(Duration.ZERO);
+        urls = new AtomicReference<>(List.of("ldap://dc1:389", "ldap://dc2:389", "ldap://dc3:389"));
+        selector = new DirectoryEndpointSelector("test", urls::get, properties);
+    }
+
+    @Test
+    void select_shouldPreferUnmeasuredThenFastestServer() {
+        endpoint(0).recordSuccess(20 * MS);
+        endpoint(1).recordSuccess(5 * MS);
+
+        assertEquals("ldap://dc3:389", selector.select().get(0).getUrl());
+
+        endpoint(2).recordSuccess(50 * MS);
+        assertEquals(List.of("ldap://dc2:389", "ldap://dc1:389", "ldap://dc3:389"), urls(selector.select()));
+    }
+
+    @Test
+    void select_shouldSpreadLoadOverServersWithinLatencyTolerance() {
+        endpoint(0).recordSuccess(10 * MS);
+        endpoint(1).recordSuccess(12 * MS);
+        endpoint(2).recordSuccess(40 * MS);
+
+        Set<String> first = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            first.add(selector.select().get(0).getUrl());
+        }
+
+        assertEquals(Set.of("ldap://dc1:389", "ldap://dc2:389"), first);
+    }
+
+    @Test
+    void recordFailure_shouldEjectAfterConsecutiveFailuresAndOfferServerLast() {
+        endpoint(0).recordSuccess(1 * MS);
+        endpoint(1).recordSuccess(5 * MS);
+        endpoint(2).recordSuccess(5 * MS);
+
+        for (int i = 0; i < properties.getFailureThreshold(); i++) {
+            assertFalse(endpoint(0).isEjected());
+            endpoint(0).recordFailure();
+        }
+
+        assertTrue(endpoint(0).isEjected());
+        List<DirectoryEndpointSelector.Endpoint> order = selector.select();
+        assertEquals("ldap://dc1:389", order.get(2).getUrl());
+        assertEquals(3, order.size());
+        assertFalse(selector.isUsable(endpoint(0)));
+    }
+
+    @Test
+    void recordFailure_shouldEjectOnHighErrorRate() {
+        properties.setFailureThreshold(100);
+        selector = new DirectoryEndpointSelector("test", urls::get, properties);
+
+        for (int i = 0; i < 20 && !endpoint(0).isEjected(); i++) {
+            endpoint(0).recordFailure();
+            endpoint(0).recordSuccess(MS);
+            endpoint(0).recordFailure();
+        }
+
+        assertTrue(endpoint(0).isEjected());
+        assertTrue(endpoint(0).getErrorRate() > properties.getErrorRateThreshold());
+    }
+
+    @Test
+    void probeEjected_shouldRestoreServersThatAnswer() {
+        endpoint(0).recordSuccess(MS);
+        ejectAll();
+        List<String> probed = new ArrayList<>();
+
+        selector.probeEjected(endpoint -> {
+            probed.add(endpoint.getUrl());
+            if (!endpoint.getUrl().contains("dc2")) {
+                throw new IllegalStateException("down");
+            }
+        });
+
+        assertEquals(3, probed.size());
+        assertFalse(endpoint(1).isEjected());
+        assertTrue(endpoint(0).isEjected());
+        assertEquals("ldap://dc2:389", selector.select().get(0).getUrl());
+    }
+
+    @Test
+    void probeEjected_shouldWaitForEjectionTime() {
+        properties.setEjectionTime(Duration.ofHours(1));
+        ejectAll();
+
+        selector.probeEjected(endpoint -> fail("probed too early"));
+
+        assertTrue(endpoint(0).isEjected());
+    }
+
+    @Test
+    void isUsable_shouldRejectServersMuchSlowerThanFastest() {
+        endpoint(0).recordSuccess(2 * MS);
+        endpoint(1).recordSuccess(5 * MS);
+        endpoint(2).recordSuccess(20 * MS);
+
+        assertTrue(selector.isUsable(endpoint(1)));
+        assertFalse(selector.isUsable(endpoint(2)));
+    }
+
+    @Test
+    void refreshEndpoints_shouldKeepStatisticsOfRetainedServers() {
+        endpoint(1).recordSuccess(7 * MS);
+        DirectoryEndpointSelector.Endpoint dc2 = endpoint(1);
+
+        urls.set(List.of("ldap://dc2:389", "ldap://dc4:389"));
+        selector.refreshEndpoints();
+
+        assertEquals(List.of("ldap://dc2:389", "ldap://dc4:389"), urls(selector.getEndpoints()));
+        assertSame(dc2, selector.getEndpoints().get(0));
+        assertEquals(7 * MS, dc2.getLatencyNanos(), 1);
+    }
+
+    @Test
+    void refreshEndpoints_shouldKeepServersWhenResolutionFails() {
+        List<String> failing = new ArrayList<>(List.of("ldap://dc1:389"));
+        selector = new DirectoryEndpointSelector("test", () -> {
+            if (failing.isEmpty()) {
+                throw new IllegalStateException("DNS down");
+            }
+            return failing;
+        }, properties);
+
+        failing.clear();
+        selector.refreshEndpoints();
+
+        assertEquals(List.of("ldap://dc1:389"), urls(selector.getEndpoints()));
+        assertThrows(IllegalStateException.class, () -> new DirectoryEndpointSelector("test", List::of, properties));
+    }
+
+    private void ejectAll() {
+        for (DirectoryEndpointSelector.Endpoint endpoint : selector.getEndpoints()) {
+            for (int i = 0; i < properties.getFailureThreshold(); i++) {
+                endpoint.recordFailure();
+            }
+        }
+    }
+
+    private DirectoryEndpointSelector.Endpoint endpoint(int index) {
+        return selector.getEndpoints().get(index);
+    }
+
+    private static List<String> urls(List<DirectoryEndpointSelector.Endpoint> endpoints) {
+        List<String> urls = new ArrayList<>();
+        endpoints.forEach(endpoint -> urls.add(endpoint.getUrl()));
+        return urls;
+    }
+}
@@ -0,0 +1,201 @@
+package com.company.ra.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ldap.core.ContextSource;
+
+import javax.naming.NamingException;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.DirContext;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DirectoryFederationTest {
+
+    private DirectoryFederation federation;
+
+    @AfterEach
+    void tearDown() {
+        if (federation != null) {
+            federation.shutdown();
+        }
+    }
+
+    @Test
+    void route_shouldSendKnownUpnSuffixesToTheirForestOnly() throws Exception {
+        federation = new DirectoryFederation(List.of(
+            forest("corp", Duration.ofSeconds(1), "company.com"),
+            forest("emea", Duration.ofSeconds(1), "emea.company.com")), 4);
+
+        assertEquals(List.of("emea"), names(federation.route("jdoe@EMEA.company.com")));
+        assertEquals(List.of("emea"), names(federation.route("jdoe@de.emea.company.com")));
+        assertEquals(List.of("corp"), names(federation.route("jdoe@company.com")));
+        assertEquals(List.of("corp", "emea"), names(federation.route("jdoe@partner.org")));
+        assertEquals(List.of("corp", "emea"), names(federation.route("jdoe")));
+    }
+
+    @Test
+    void constructor_shouldRejectSuffixClaimedByTwoForests() throws Exception {
+        List<DirectoryFederation.Forest> forests = List.of(
+            forest("corp", Duration.ofSeconds(1), "company.com"),
+            forest("emea", Duration.ofSeconds(1), "Company.com"));
+
+        assertThrows(IllegalArgumentException.class, () -> new DirectoryFederation(forests, 4));
+    }
+
+    @Test
+    void findFirst_shouldQueryOnlyTheRoutedForest() throws Exception {
+        federation = new DirectoryFederation(List.of(
+            forest("corp", Duration.ofSeconds(1), "company.com"),
+            forest("emea", Duration.ofSeconds(1), "emea.company.com")), 4);
+
+        String result = federation.findFirst("jdoe@emea.company.com", answers(Map.of("emea", "jdoe-emea")));
+
+        assertEquals("jdoe-emea", result);
+        assertEquals(0, federation.getForests().get(0).getCount(DirectoryFederation.Outcome.MISS));
+        assertEquals(1, federation.getForests().get(1).getCount(DirectoryFederation.Outcome.HIT));
+    }
+
+    @Test
+    void findFirst_shouldPreferEarlierForestAndNotWaitForLaterOnes() throws Exception {
+        federation = new DirectoryFederation(List.of(
+            forest("a", Duration.ofSeconds(5)),
+            forest("b", Duration.ofSeconds(5)),
+            forest("c", Duration.ofSeconds(5))), 4);
+        DirectoryFederation.ForestQuery<String> query = (forest, context) -> switch (forest.getName()) {
+            case "a" -> null;
+            case "b" -> {
+                Thread.sleep(100);
+                yield "jdoe-b";
+            }
+            default -> {
+                Thread.sleep(2000);
+                yield "jdoe-c";
+            }
+        };
+
+        long start = System.nanoTime();
+        String result = federation.findFirst("jdoe", query);
+
+        assertEquals("jdoe-b", result);
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1500);
+    }
+
+    @Test
+    void findFirst_shouldSkipForestThatTimesOut() throws Exception {
+        federation = new DirectoryFederation(List.of(
+            forest("slow", Duration.ofMillis(200)),
+            forest("fast", Duration.ofSeconds(5))), 4);
+        DirectoryFederation.ForestQuery<String> query = (forest, context) -> {
+            if (forest.getName().equals("slow")) {
+                Thread.sleep(3000);
+            }
+            return "jdoe-" + forest.getName();
+        };
+
+        long start = System.nanoTime();
+        String result = federation.findFirst("jdoe", query);
+
+        assertEquals("jdoe-fast", result);
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1500);
+        assertEquals(1, federation.getForests().get(0).getCount(DirectoryFederation.Outcome.TIMEOUT));
+    }
+
+    @Test
+    void findFirst_shouldCountTimedOutQueryOnceWhenItFinishesLater() throws Exception {
+        federation = new DirectoryFederation(List.of(
+            forest("slow", Duration.ofMillis(100)),
+            forest("fast", Duration.ofSeconds(5))), 4);
+        CountDownLatch slowDone = new CountDownLatch(1);
+        DirectoryFederation.ForestQuery<String> query = (forest, context) -> {
+            if (forest.getName().equals("slow")) {
+                Thread.sleep(300);
+                slowDone.countDown();
+            }
+            return "jdoe-" + forest.getName();
+        };
+
+        assertEquals("jdoe-fast", federation.findFirst("jdoe", query));
+        assertTrue(slowDone.await(5, TimeUnit.SECONDS));
+        // Give the slow query time to return past the point where it would record a hit
+        Thread.sleep(200);
+
+        DirectoryFederation.Forest slow = federation.getForests().get(0);
+        assertEquals(1, slow.getCount(DirectoryFederation.Outcome.TIMEOUT));
+        assertEquals(0, slow.getCount(DirectoryFederation.Outcome.HIT));
+    }
+
+    @Test
+    void findFirst_shouldFailRatherThanReportUnknownWhenForestDidNotAnswer() throws Exception {
+        federation = new DirectoryFederation(List.of(
+            forest("a", Duration.ofSeconds(1)),
+            forest("b", Duration.ofSeconds(1))), 4);
+        DirectoryFederation.ForestQuery<String> query = (forest, context) -> {
+            if (forest.getName().equals("b")) {
+                throw new NamingException("connection refused");
+            }
+            return null;
+        };
+
+        ServiceUnavailableException e = assertThrows(ServiceUnavailableException.class,
+            () -> federation.findFirst("jdoe", query));
+        assertTrue(e.getMessage().contains("[b]"));
+        assertNull(federation.findFirst("jdoe", (forest, context) -> null));
+    }
+
+    @Test
+    void searchAll_shouldMergeForestsDropDuplicatesAndReportFailures() throws Exception {
+        federation = new DirectoryFederation(List.of(
+            forest("a", Duration.ofSeconds(1)),
+            forest("b", Duration.ofSeconds(1)),
+            forest("c", Duration.ofMillis(200))), 4);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        federation.bindTo(registry);
+        DirectoryFederation.ForestQuery<List<String>> query = (forest, context) -> switch (forest.getName()) {
+            case "a" -> List.of("anna@company.com", "ben@company.com");
+            case "b" -> List.of("BEN@company.com", "clara@emea.company.com");
+            default -> {
+                Thread.sleep(3000);
+                yield List.of("david@apac.company.com");
+            }
+        };
+
+        DirectoryFederation.Merged<String> merged = federation.searchAll(query,
+            name -> name.toLowerCase(Locale.ROOT));
+
+        assertEquals(List.of("anna@company.com", "ben@company.com", "clara@emea.company.com"), merged.results());
+        assertEquals(List.of("c"), merged.failedForests());
+        assertFalse(merged.isComplete());
+        assertEquals(List.of("a", "b", "c"), List.copyOf(merged.latencies().keySet()));
+        assertEquals(Duration.ofMillis(200), merged.latencies().get("c"));
+        assertEquals(1, registry.get("ra.ad.forest.requests").tag("forest", "c").tag("outcome", "timeout")
+            .timer().count());
+        assertEquals(1, registry.get("ra.ad.forest.requests").tag("forest", "a").tag("outcome", "hit")
+            .timer().count());
+    }
+
+    private static DirectoryFederation.ForestQuery<String> answers(Map<String, String> byForest) {
+        return (forest, context) -> byForest.get(forest.getName());
+    }
+
+    private static DirectoryFederation.Forest forest(String name, Duration timeout, String... upnSuffixes)
+            throws Exception {
+        ContextSource contextSource = mock(ContextSource.class);
+        when(contextSource.getReadOnlyContext()).thenAnswer(invocation -> mock(DirContext.class));
+        return new DirectoryFederation.Forest(name, "DC=" + name + ",DC=com", List.of(upnSuffixes), timeout,
+            contextSource, () -> { });
+    }
+
+    private static List<String> names(List<DirectoryFederation.Forest> forests) {
+        return forests.stream().map(DirectoryFederation.Forest::getName).toList();
+    }
+}
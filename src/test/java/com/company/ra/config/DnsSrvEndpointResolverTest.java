@@ -0,0 +1,35 @@
+package com.company.ra.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DnsSrvEndpointResolverTest {
+
+    @Test
+    void toUrls_shouldOrderByPriorityThenWeight() {
+        List<String> urls = DnsSrvEndpointResolver.toUrls(List.of(
+                "10 100 389 dc3.company.com.",
+                "0 50 389 dc2.company.com.",
+                "0 100 389 dc1.company.com.",
+                "0 0 389 ."), "ldap");
+
+        assertEquals(List.of("ldap://dc1.company.com:389", "ldap://dc2.company.com:389", "ldap://dc3.company.com:389"),
+                urls);
+    }
+
+    @Test
+    void toUrls_shouldUseSchemeAndPortFromRecord() {
+        assertEquals(List.of("ldaps://dc1.company.com:636"),
+                DnsSrvEndpointResolver.toUrls(List.of("0 100 636 dc1.company.com."), "ldaps"));
+    }
+
+    @Test
+    void of_shouldSplitUrlList() throws Exception {
+        assertEquals(List.of("ldap://dc1:389", "ldap://dc2:389"),
+                DirectoryEndpointResolver.of(" ldap://dc1:389, ldap://dc2:389 ").resolve());
+        assertThrows(IllegalArgumentException.class, () -> DirectoryEndpointResolver.of(" "));
+    }
+}
@@ -0,0 +1,298 @@
+package com.company.ra.config;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSearchRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ldap.core.LdapTemplate;
+import org.springframework.ldap.core.support.LdapContextSource;
+import org.springframework.ldap.pool2.validation.DefaultDirContextValidator;
+import org.springframework.ldap.pool2.validation.DirContextValidator;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Failover and latency-aware routing between two in-memory directory servers.
+ */
+class FailoverContextSourceTest {
+
+    private static final String BASE = "DC=company,DC=com";
+
+    private InMemoryDirectoryServer first;
+    private InMemoryDirectoryServer second;
+    private volatile long firstDelayMillis;
+    private DirectoryEndpointProperties properties;
+    private DirectoryEndpointSelector selector;
+    private FailoverContextSource contextSource;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        first = server(new InMemoryOperationInterceptor() {
+            @Override
+            public void processSearchRequest(InMemoryInterceptedSearchRequest request) {
+                if (firstDelayMillis > 0) {
+                    try {
+                        Thread.sleep(firstDelayMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+        second = server(new InMemoryOperationInterceptor() {
+        });
+
+        properties = new DirectoryEndpointProperties();
+        properties.setFailureThreshold(2);
+        properties.setEjectionTime(Duration.ofMillis(50));
+        properties.setProbeInterval(Duration.ofMillis(25));
+        selector = new DirectoryEndpointSelector("test",
+                DirectoryEndpointResolver.of(url(first) + " " + url(second)), properties);
+        contextSource = new FailoverContextSource(selector, this::source);
+    }
+
+    @AfterEach
+    void tearDown() {
+        selector.stop();
+        first.shutDown(true);
+        second.shutDown(true);
+    }
+
+    @Test
+    void getReadOnlyContext_shouldRouteToFasterServer() throws Exception {
+        firstDelayMillis = 50;
+        // Faster convergence, so a cold-JVM first sample does not linger in the average
+        properties.setEwmaAlpha(0.5);
+        selector = new DirectoryEndpointSelector("test",
+                DirectoryEndpointResolver.of(url(first) + " " + url(second)), properties);
+        contextSource = new FailoverContextSource(selector, this::source);
+
+        int onSecond = 0;
+        for (int i = 0; i < 30; i++) {
+            DirContext context = contextSource.getReadOnlyContext();
+            try {
+                readBase(context);
+                if (i >= 20 && endpoint(context).getUrl().equals(url(second))) {
+                    onSecond++;
+                }
+            } finally {
+                context.close();
+            }
+        }
+
+        assertEquals(10, onSecond);
+        assertTrue(selector.getEndpoints().get(0).getLatencyNanos() > selector.getEndpoints().get(1).getLatencyNanos());
+    }
+
+    @Test
+    void getReadOnlyContext_shouldFailOverAndEjectUnreachableServer() throws Exception {
+        first.shutDown(true);
+
+        for (int i = 0; i < 5; i++) {
+            DirContext context = contextSource.getReadOnlyContext();
+            try {
+                readBase(context);
+                assertEquals(url(second), endpoint(context).getUrl());
+            } finally {
+                context.close();
+            }
+        }
+
+        DirectoryEndpointSelector.Endpoint firstEndpoint = selector.getEndpoints().get(0);
+        assertTrue(firstEndpoint.isEjected());
+        assertEquals(2, firstEndpoint.getErrors());
+    }
+
+    @Test
+    void start_shouldRestoreServerOnceProbeSucceeds() throws Exception {
+        first.shutDown(true);
+        for (int i = 0; i < 3; i++) {
+            contextSource.getReadOnlyContext().close();
+        }
+        DirectoryEndpointSelector.Endpoint firstEndpoint = selector.getEndpoints().get(0);
+        assertTrue(firstEndpoint.isEjected());
+
+        contextSource.start();
+        first.startListening();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (firstEndpoint.isEjected() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse(firstEndpoint.isEjected());
+    }
+
+    @Test
+    void getReadOnlyContext_shouldThrowWhenAllServersAreDown() {
+        first.shutDown(true);
+        second.shutDown(true);
+
+        assertThrows(org.springframework.ldap.CommunicationException.class, contextSource::getReadOnlyContext);
+    }
+
+    @Test
+    void operations_shouldCountCommunicationErrorsAgainstServer() throws Exception {
+        DirContext context = contextSource.getReadOnlyContext();
+        DirectoryEndpointSelector.Endpoint endpoint = endpoint(context);
+        (endpoint.getUrl().equals(url(first)) ? first : second).shutDown(true);
+
+        assertThrows(NamingException.class, () -> readBase(context));
+        context.close();
+
+        assertEquals(1, endpoint.getErrors());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void searchResults_shouldCountReadErrorsAgainstServer() throws Exception {
+        DirContext target = mock(DirContext.class);
+        NamingEnumeration<SearchResult> results = mock(NamingEnumeration.class);
+        when(results.hasMore()).thenReturn(true).thenThrow(new NamingException("LDAP response read timed out"));
+        when(target.search(anyString(), anyString(), any(SearchControls.class))).thenReturn(results);
+        FailoverContextSource mockedSource = new FailoverContextSource(selector, url -> {
+            LdapContextSource source = mock(LdapContextSource.class);
+            when(source.getReadOnlyContext()).thenReturn(target);
+            return source;
+        });
+
+        DirContext context = mockedSource.getReadOnlyContext();
+        NamingEnumeration<SearchResult> enumeration = context.search("", "(objectClass=*)", new SearchControls());
+        assertTrue(enumeration.hasMore());
+        assertThrows(NamingException.class, enumeration::hasMore);
+
+        assertEquals(1, endpoint(context).getErrors());
+    }
+
+    @Test
+    void pagedSearch_shouldBeTimedApartFromOtherOperations() throws Exception {
+        LdapContext context = (LdapContext) contextSource.getReadOnlyContext();
+        DirectoryEndpointSelector.Endpoint endpoint = endpoint(context);
+        double latency = endpoint.getLatencyNanos();
+
+        context.setRequestControls(new Control[] {new PagedResultsControl(10, Control.CRITICAL)});
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+        context.search("", "(objectClass=*)", controls).close();
+        context.close();
+
+        assertEquals(latency, endpoint.getLatencyNanos());
+        assertTrue(endpoint.getBulkLatencyNanos() > 0);
+    }
+
+    @Test
+    void getReadOnlyContext_withEndpoint_shouldStayOnThatServerUntilEjected() throws Exception {
+        DirectoryEndpointSelector.Endpoint pinned = selector.prefer(url(second));
+        assertEquals(url(second), pinned.getUrl());
+        for (int i = 0; i < 3; i++) {
+            DirContext context = contextSource.getReadOnlyContext(pinned);
+            assertSame(pinned, endpoint(context));
+            context.close();
+        }
+
+        second.shutDown(true);
+        for (int i = 0; i < properties.getFailureThreshold(); i++) {
+            assertThrows(org.springframework.ldap.CommunicationException.class,
+                    () -> contextSource.getReadOnlyContext(pinned));
+        }
+
+        assertEquals(url(first), selector.prefer(url(second)).getUrl());
+    }
+
+    @Test
+    void isServerFailure_shouldSeparateConnectionErrorsFromLdapResults() {
+        assertTrue(FailoverContextSource.isServerFailure(new javax.naming.CommunicationException("connection closed")));
+        assertTrue(FailoverContextSource.isServerFailure(new NamingException("LDAP response read timed out, timeout used: 10 ms.")));
+        assertTrue(FailoverContextSource.isServerFailure(new NamingException("LDAP connection has been closed")));
+        assertFalse(FailoverContextSource.isServerFailure(new javax.naming.NameNotFoundException("[LDAP: error code 32]")));
+        assertFalse(FailoverContextSource.isServerFailure(new javax.naming.SizeLimitExceededException()));
+        assertFalse(FailoverContextSource.isServerFailure(new javax.naming.PartialResultException()));
+        assertFalse(FailoverContextSource.isServerFailure(new javax.naming.InterruptedNamingException()));
+    }
+
+    @Test
+    void validator_shouldRetireConnectionsToEjectedServer() throws Exception {
+        DirContextValidator validator = contextSource.validator((type, context) -> true);
+        DirContext context = contextSource.getReadOnlyContext();
+        DirectoryEndpointSelector.Endpoint endpoint = endpoint(context);
+
+        assertTrue(validator.validateDirContext(null, context));
+        for (int i = 0; i < properties.getFailureThreshold(); i++) {
+            endpoint.recordFailure();
+        }
+
+        assertFalse(validator.validateDirContext(null, context));
+        context.close();
+    }
+
+    @Test
+    void ldapTemplate_shouldKeepWorkingThroughPoolWhenServerGoesDown() throws Exception {
+        LdapPoolProperties poolProperties = new LdapPoolProperties();
+        poolProperties.setMaxTotal(2);
+        PooledLdapContextSource pool = new PooledLdapContextSource("test", contextSource, poolProperties);
+        pool.setDirContextValidator(contextSource.validator(new DefaultDirContextValidator()));
+        LdapTemplate ldapTemplate = new LdapTemplate(pool);
+        try {
+            assertNotNull(ldapTemplate.lookup(""));
+            first.shutDown(true);
+
+            for (int i = 0; i < 5; i++) {
+                assertNotNull(ldapTemplate.lookup(""));
+            }
+        } finally {
+            pool.destroy();
+        }
+    }
+
+    private LdapContextSource source(String url) {
+        LdapContextSource source = new LdapContextSource();
+        source.setUrl(url);
+        source.setBase(BASE);
+        source.setAnonymousReadOnly(true);
+        source.setPooled(false);
+        source.afterPropertiesSet();
+        return source;
+    }
+
+    private static void readBase(DirContext context) throws NamingException {
+        SearchControls controls = new SearchControls();
+        controls.setSearchScope(SearchControls.OBJECT_SCOPE);
+        context.search("", "(objectClass=*)", controls).close();
+    }
+
+    private static DirectoryEndpointSelector.Endpoint endpoint(DirContext context) {
+        return ((FailoverContextSource.EndpointBound) context).getEndpoint();
+    }
+
+    private static String url(InMemoryDirectoryServer server) {
+        return "ldap://localhost:" + server.getListenPort();
+    }
+
+    private static InMemoryDirectoryServer server(InMemoryOperationInterceptor interceptor) throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE);
+        config.setSchema(null);
+        config.addInMemoryOperationInterceptor(interceptor);
+        InMemoryDirectoryServer server = new InMemoryDirectoryServer(config);
+        server.add(new Entry(BASE, new Attribute("objectClass", "domain")));
+        server.startListening();
+        return server;
+    }
+}
@@ -0,0 +1,198 @@
+package com.company.ra.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import javax.naming.ServiceUnavailableException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.company.ra.config.LdapOperationGovernor.Admission.IMMEDIATE;
+import static com.company.ra.config.LdapOperationGovernor.Admission.QUEUED;
+import static com.company.ra.config.LdapOperationGovernor.Admission.THROTTLED;
+import static com.company.ra.config.LdapOperationGovernor.OperationClass.BIND;
+import static com.company.ra.config.LdapOperationGovernor.OperationClass.MODIFY;
+import static com.company.ra.config.LdapOperationGovernor.OperationClass.SEARCH;
+import static com.company.ra.config.LdapOperationGovernor.Priority.BACKGROUND;
+import static com.company.ra.config.LdapOperationGovernor.Priority.INTERACTIVE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LdapOperationGovernorTest {
+
+    @Test
+    void acquire_shouldPassBurstAndThenQueueAtTheConfiguredRate() throws Exception {
+        LdapOperationGovernor governor = governor(new LdapGovernorProperties.Limit(100, 5));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 8; i++) {
+            governor.acquire(SEARCH);
+        }
+
+        // Three tokens at 100/s take about 30 ms
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 20);
+        assertEquals(5, governor.getCount(SEARCH, INTERACTIVE, IMMEDIATE));
+        assertEquals(3, governor.getCount(SEARCH, INTERACTIVE, QUEUED));
+    }
+
+    @Test
+    void acquire_shouldThrottleOnceTheDeadlinePasses() throws Exception {
+        LdapGovernorProperties properties = properties(new LdapGovernorProperties.Limit(1, 1));
+        properties.setInteractiveMaxWait(Duration.ofMillis(50));
+        LdapOperationGovernor governor = new LdapOperationGovernor(properties);
+
+        governor.acquire(SEARCH);
+        long start = System.nanoTime();
+        ServiceUnavailableException e = assertThrows(ServiceUnavailableException.class,
+            () -> governor.acquire(SEARCH));
+
+        long waited = Duration.ofNanos(System.nanoTime() - start).toMillis();
+        assertTrue(waited >= 40 && waited < 900, "waited " + waited + " ms");
+        assertTrue(e.getMessage().contains("search"));
+        assertEquals(1, governor.getCount(SEARCH, INTERACTIVE, THROTTLED));
+        assertEquals(0, governor.getQueueLength(SEARCH));
+    }
+
+    @Test
+    void acquire_shouldKeepClassesApart() throws Exception {
+        LdapGovernorProperties properties = properties(new LdapGovernorProperties.Limit(0.001, 1));
+        properties.setInteractiveMaxWait(Duration.ZERO);
+        LdapOperationGovernor governor = new LdapOperationGovernor(properties);
+
+        governor.acquire(SEARCH);
+        governor.acquire(BIND);
+        governor.acquire(MODIFY);
+
+        assertThrows(ServiceUnavailableException.class, () -> governor.acquire(SEARCH));
+        assertThrows(ServiceUnavailableException.class, () -> governor.acquire(MODIFY));
+    }
+
+    @Test
+    void background_shouldLeaveReserveOfBurstToInteractiveOperations() throws Exception {
+        LdapGovernorProperties properties = properties(new LdapGovernorProperties.Limit(0.001, 10));
+        properties.setBackgroundReserve(0.2);
+        properties.setBackgroundMaxWait(Duration.ZERO);
+        properties.setInteractiveMaxWait(Duration.ZERO);
+        LdapOperationGovernor governor = new LdapOperationGovernor(properties);
+
+        List<Exception> errors = new CopyOnWriteArrayList<>();
+        LdapOperationGovernor.background(() -> {
+            assertEquals(BACKGROUND, LdapOperationGovernor.currentPriority());
+            try {
+                for (int i = 0; i < 10; i++) {
+                    governor.acquire(SEARCH);
+                }
+            } catch (Exception e) {
+                errors.add(e);
+            }
+        }).run();
+
+        assertEquals(INTERACTIVE, LdapOperationGovernor.currentPriority());
+        assertEquals(1, errors.size());
+        assertEquals(8, governor.getCount(SEARCH, BACKGROUND, IMMEDIATE));
+        governor.acquire(SEARCH);
+        governor.acquire(SEARCH);
+        assertEquals(2, governor.getCount(SEARCH, INTERACTIVE, IMMEDIATE));
+    }
+
+    @Test
+    void acquire_shouldServeQueuedInteractiveOperationsBeforeBackgroundOnes() throws Exception {
+        LdapGovernorProperties properties = properties(new LdapGovernorProperties.Limit(5, 1));
+        properties.setInteractiveMaxWait(Duration.ofSeconds(5));
+        properties.setBackgroundMaxWait(Duration.ofSeconds(5));
+        LdapOperationGovernor governor = new LdapOperationGovernor(properties);
+        governor.acquire(SEARCH);
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> background = executor.submit(LdapOperationGovernor.background(() -> {
+                try {
+                    governor.acquire(SEARCH);
+                    order.add("background");
+                } catch (Exception e) {
+                    order.add("background failed");
+                }
+            }));
+            awaitQueueLength(governor, 1);
+            Future<?> interactive = executor.submit(() -> {
+                governor.acquire(SEARCH);
+                order.add("interactive");
+                return null;
+            });
+            interactive.get(5, TimeUnit.SECONDS);
+            background.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(List.of("interactive", "background"), order);
+        assertEquals(1, governor.getCount(SEARCH, BACKGROUND, QUEUED));
+    }
+
+    @Test
+    void withPriority_shouldCarryPriorityToAnotherThread() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals(BACKGROUND, executor.submit(LdapOperationGovernor.withPriority(BACKGROUND,
+                LdapOperationGovernor::currentPriority)).get());
+            assertEquals(INTERACTIVE, executor.submit(LdapOperationGovernor::currentPriority).get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void unlimited_shouldNeverWait() throws Exception {
+        LdapOperationGovernor governor = LdapOperationGovernor.unlimited();
+        for (int i = 0; i < 10_000; i++) {
+            governor.acquire(MODIFY);
+        }
+        assertEquals(0, governor.getCount(MODIFY, INTERACTIVE, IMMEDIATE));
+    }
+
+    @Test
+    void bindTo_shouldPublishThrottledAndQueuedOperations() throws Exception {
+        LdapGovernorProperties properties = properties(new LdapGovernorProperties.Limit(100, 1));
+        properties.setInteractiveMaxWait(Duration.ofSeconds(1));
+        properties.setMaxQueue(0);
+        LdapOperationGovernor governor = new LdapOperationGovernor(properties);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        governor.bindTo(registry);
+
+        governor.acquire(BIND);
+        assertThrows(ServiceUnavailableException.class, () -> governor.acquire(BIND));
+
+        assertEquals(1, registry.get("ra.ldap.governor.operations").tag("operation", "bind")
+            .tag("priority", "interactive").tag("result", "immediate").functionCounter().count());
+        assertEquals(1, registry.get("ra.ldap.governor.operations").tag("operation", "bind")
+            .tag("priority", "interactive").tag("result", "throttled").functionCounter().count());
+        assertEquals(0, registry.get("ra.ldap.governor.queue").tag("operation", "bind").gauge().value());
+        assertEquals(0, registry.get("ra.ldap.governor.wait").tag("operation", "bind")
+            .tag("priority", "interactive").functionTimer().count());
+    }
+
+    private static void awaitQueueLength(LdapOperationGovernor governor, int length) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (governor.getQueueLength(SEARCH) < length && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(length, governor.getQueueLength(SEARCH));
+    }
+
+    private static LdapOperationGovernor governor(LdapGovernorProperties.Limit limit) {
+        return new LdapOperationGovernor(properties(limit));
+    }
+
+    private static LdapGovernorProperties properties(LdapGovernorProperties.Limit limit) {
+        LdapGovernorProperties properties = new LdapGovernorProperties();
+        properties.setSearch(limit);
+        properties.setBind(new LdapGovernorProperties.Limit(limit.getRate(), limit.getBurst()));
+        properties.setModify(new LdapGovernorProperties.Limit(limit.getRate(), limit.getBurst()));
+        return properties;
+    }
+}
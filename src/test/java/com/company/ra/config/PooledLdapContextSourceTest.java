@@ -0,0 +1,106 @@
+package com.company.ra.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.ldap.core.ContextSource;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class PooledLdapContextSourceTest {
+
+    private ContextSource target;
+    private PooledLdapContextSource pool;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        target = mock(ContextSource.class);
+        when(target.getReadOnlyContext()).thenAnswer(invocation -> healthyContext());
+        when(target.getReadWriteContext()).thenAnswer(invocation -> healthyContext());
+
+        LdapPoolProperties properties = new LdapPoolProperties();
+        properties.setMinIdle(1);
+        properties.setMaxIdle(2);
+        properties.setMaxTotal(2);
+        properties.setMaxWait(Duration.ofMillis(50));
+        pool = new PooledLdapContextSource("test", target, properties);
+        meterRegistry = new SimpleMeterRegistry();
+        pool.bindTo(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        pool.destroy();
+    }
+
+    @Test
+    void warmUp_shouldOpenMinIdleConnectionsPerContextType() {
+        pool.warmUp();
+
+        assertEquals(2, pool.getNumIdle());
+        assertEquals(0, pool.getNumActive());
+    }
+
+    @Test
+    void getReadOnlyContext_shouldReuseReturnedConnection() throws Exception {
+        DirContext first = pool.getReadOnlyContext();
+        assertEquals(1, pool.getNumActive());
+        first.close();
+
+        pool.getReadOnlyContext().close();
+
+        verify(target, times(1)).getReadOnlyContext();
+        assertEquals(0, pool.getNumActive());
+        assertEquals(1, pool.getNumIdle());
+        assertEquals(2, meterRegistry.get("ldap.pool.borrow.wait").timer().count());
+    }
+
+    @Test
+    void getReadOnlyContext_shouldTimeOutWhenPoolExhausted() throws Exception {
+        DirContext first = pool.getReadOnlyContext();
+        DirContext second = pool.getReadOnlyContext();
+
+        assertThrows(DataAccessResourceFailureException.class, pool::getReadOnlyContext);
+        assertEquals(1, pool.getBorrowTimeouts());
+        assertEquals(2.0, meterRegistry.get("ldap.pool.active").gauge().value());
+
+        first.close();
+        pool.getReadOnlyContext().close();
+        second.close();
+    }
+
+    @Test
+    void getReadOnlyContext_shouldReplaceConnectionFailingValidation() throws Exception {
+        DirContext flaky = healthyContext();
+        when(target.getReadOnlyContext()).thenReturn(flaky).thenAnswer(invocation -> healthyContext());
+        pool.getReadOnlyContext().close();
+        when(flaky.search(anyString(), anyString(), any(SearchControls.class)))
+            .thenThrow(new CommunicationException("connection reset"));
+
+        pool.getReadOnlyContext().close();
+
+        verify(flaky).close();
+        verify(target, times(2)).getReadOnlyContext();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static DirContext healthyContext() throws Exception {
+        DirContext context = mock(DirContext.class);
+        NamingEnumeration<Object> rootDse = mock(NamingEnumeration.class);
+        when(rootDse.hasMore()).thenReturn(true);
+        when(context.search(anyString(), anyString(), any(SearchControls.class))).thenAnswer(invocation -> rootDse);
+        return context;
+    }
+}
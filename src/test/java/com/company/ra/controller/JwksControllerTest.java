@@ -0,0 +1,25 @@
+package com.company.ra.controller;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwksControllerTest {
+
+    private static final String ETAG = "\"3q2-7w\"";
+
+    @Test
+    void matches_shouldAcceptWeakListedAndWildcardETags() {
+        assertTrue(JwksController.matches(ETAG, ETAG));
+        assertTrue(JwksController.matches("W/" + ETAG, ETAG));
+        assertTrue(JwksController.matches("\"other\", W/" + ETAG, ETAG));
+        assertTrue(JwksController.matches("*", ETAG));
+    }
+
+    @Test
+    void matches_shouldRejectOtherOrMissingETags() {
+        assertFalse(JwksController.matches(null, ETAG));
+        assertFalse(JwksController.matches("", ETAG));
+        assertFalse(JwksController.matches("\"other\", W/\"another\"", ETAG));
+    }
+}
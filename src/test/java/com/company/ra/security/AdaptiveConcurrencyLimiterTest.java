@@ -0,0 +1,87 @@
+package com.company.ra.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long BASE_RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    void tryAcquire_shouldRejectBeyondLimitWithoutQueue() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 0, 0);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+        assertEquals(1, limiter.getRejected());
+    }
+
+    @Test
+    void tryAcquire_shouldHandQueuedRequestTheReleasedSlot() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 10, 1, 5_000);
+        assertTrue(limiter.tryAcquire());
+
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(limiter::tryAcquire);
+        while (limiter.getQueued() == 0) {
+            Thread.onSpinWait();
+        }
+        limiter.release(BASE_RTT, false);
+
+        assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    void release_shouldGrowLimitWhileLatencyIsStable() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100, 0, 0);
+
+        for (int i = 0; i < 50; i++) {
+            saturateAndComplete(limiter, BASE_RTT);
+        }
+
+        assertTrue(limiter.getLimit() > 10, "limit was " + limiter.getLimit());
+    }
+
+    @Test
+    void release_shouldShrinkLimitWhenLatencyRises() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(50, 1, 100, 0, 0);
+        saturateAndComplete(limiter, BASE_RTT);
+        int before = limiter.getLimit();
+
+        for (int i = 0; i < 20; i++) {
+            saturateAndComplete(limiter, BASE_RTT * 10);
+        }
+
+        assertTrue(limiter.getLimit() < before, "limit was " + limiter.getLimit());
+    }
+
+    @Test
+    void release_shouldBackOffOnDrops() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 2, 100, 0, 0);
+
+        for (int i = 0; i < 30; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(BASE_RTT, true);
+        }
+
+        assertEquals(2, limiter.getLimit());
+    }
+
+    /**
+     * Fill every slot, then complete one request with the given latency
+     */
+    private static void saturateAndComplete(AdaptiveConcurrencyLimiter limiter, long rttNanos) {
+        while (limiter.tryAcquire()) {
+            // fill up to the current limit
+        }
+        limiter.release(rttNanos, false);
+        while (limiter.getInFlight() > 0) {
+            limiter.release(0, false);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.company.ra.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimitRegistryTest {
+
+    @Test
+    void resolveGroup_shouldMapExpensiveEndpoints() {
+        assertEquals("csr", ConcurrencyLimitRegistry.resolveGroup("POST", "/api/v1/certificates/requests"));
+        assertEquals("auth", ConcurrencyLimitRegistry.resolveGroup("POST", "/api/v1/auth/login"));
+        assertEquals("download",
+            ConcurrencyLimitRegistry.resolveGroup("GET", "/api/v1/certificates/requests/REQ-1/certificate"));
+    }
+
+    @Test
+    void resolveGroup_shouldLeaveOtherEndpointsUnlimited() {
+        assertNull(ConcurrencyLimitRegistry.resolveGroup("GET", "/actuator/health"));
+        assertNull(ConcurrencyLimitRegistry.resolveGroup("GET", "/api/v1/certificates/requests"));
+        assertNull(ConcurrencyLimitRegistry.resolveGroup("GET", "/api/v1/certificates/requests/REQ-1"));
+        assertNull(ConcurrencyLimitRegistry.resolveGroup("GET", "/api/v1/certificates/requests/a/b/certificate"));
+        assertNull(ConcurrencyLimitRegistry.resolveGroup("POST", "/api/v1/auth/verify"));
+        // Served by the ad-users application, which does not register the filter
+        assertNull(ConcurrencyLimitRegistry.resolveGroup("POST", "/api/v1/ad-users/login"));
+    }
+}
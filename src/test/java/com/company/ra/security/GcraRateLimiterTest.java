@@ -0,0 +1,80 @@
+package com.company.ra.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GcraRateLimiterTest {
+
+    private static final GcraRateLimiter.Rate TEN_PER_SECOND = GcraRateLimiter.Rate.of(10, 1000);
+
+    @Test
+    void tryAcquire_shouldAllowBurstThenReject() {
+        GcraRateLimiter limiter = new GcraRateLimiter(64);
+        long key = limiter.hash("10.0.0.1");
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, limiter.tryAcquire(key, TEN_PER_SECOND, 1, now));
+        }
+
+        long retryAfter = limiter.tryAcquire(key, TEN_PER_SECOND, 1, now);
+        assertEquals(100, retryAfter);
+    }
+
+    @Test
+    void tryAcquire_shouldReadmitAfterEmissionInterval() {
+        GcraRateLimiter limiter = new GcraRateLimiter(64);
+        long key = limiter.hash("10.0.0.1");
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire(key, TEN_PER_SECOND, 1, now);
+        }
+
+        assertTrue(limiter.tryAcquire(key, TEN_PER_SECOND, 1, now + 50) > 0);
+        assertEquals(0, limiter.tryAcquire(key, TEN_PER_SECOND, 1, now + 100));
+    }
+
+    @Test
+    void tryAcquire_shouldTrackKeysIndependently() {
+        GcraRateLimiter limiter = new GcraRateLimiter(64);
+        long now = System.currentTimeMillis();
+        long first = limiter.hash("10.0.0.1");
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire(first, TEN_PER_SECOND, 1, now);
+        }
+
+        assertTrue(limiter.tryAcquire(first, TEN_PER_SECOND, 1, now) > 0);
+        assertEquals(0, limiter.tryAcquire(limiter.hash("10.0.0.2"), TEN_PER_SECOND, 1, now));
+    }
+
+    @Test
+    void tryAcquire_shouldChargeCost() {
+        GcraRateLimiter limiter = new GcraRateLimiter(64);
+        long key = limiter.hash("10.0.0.1");
+        long now = System.currentTimeMillis();
+
+        assertEquals(0, limiter.tryAcquire(key, TEN_PER_SECOND, 8, now));
+        assertTrue(limiter.tryAcquire(key, TEN_PER_SECOND, 3, now) > 0);
+        assertEquals(0, limiter.tryAcquire(key, TEN_PER_SECOND, 2, now));
+    }
+
+    @Test
+    void tryAcquire_shouldStayWithinCapacityAndKeepHeavyHitter() {
+        GcraRateLimiter limiter = new GcraRateLimiter(16);
+        long now = System.currentTimeMillis();
+        long heavy = limiter.hash("attacker");
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire(heavy, TEN_PER_SECOND, 1, now);
+        }
+
+        // Spray far more keys than the table can hold
+        for (int i = 0; i < 10_000; i++) {
+            limiter.tryAcquire(limiter.hash("spoofed-" + i), TEN_PER_SECOND, 1, now);
+        }
+
+        assertEquals(16, limiter.capacity());
+        assertTrue(limiter.evictions() > 0);
+        assertTrue(limiter.tryAcquire(heavy, TEN_PER_SECOND, 1, now) > 0);
+    }
+}
@@ -0,0 +1,173 @@
+package com.company.ra.security;
+
+import com.company.ra.dto.ADUserAttributes;
+import com.company.ra.service.JWTTokenService;
+import com.company.ra.service.NonceService;
+import com.company.ra.service.RevocationChannel;
+import com.company.ra.service.SigningKeyService;
+import com.company.ra.service.TokenRevocationService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.Key;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * JMH measurement of the per-request cost of JWT authentication: the previous
+ * filter body (three parser builds and signature checks per request) against
+ * JWTAuthenticationFilter with and without the verified-token cache.
+ *
+ * Run with: mvn test-compile, then
+ * java -cp target/test-classes:&lt;test classpath&gt; com.company.ra.security.JWTAuthenticationFilterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JWTAuthenticationFilterBenchmark {
+
+    private static final String SECRET = "a-shared-jwt-secret-that-is-long-enough-for-hs256";
+
+    private String token;
+    private Key signingKey;
+    private JWTAuthenticationFilter cachedFilter;
+    private JWTAuthenticationFilter uncachedFilter;
+
+    private NonceService nonceService;
+    private TokenRevocationService revocationService;
+    private SigningKeyService signingKeyService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        nonceService = new NonceService();
+        ReflectionTestUtils.setField(nonceService, "bufferCapacity", 8);
+        nonceService.init();
+        revocationService = new TokenRevocationService();
+        ReflectionTestUtils.setField(revocationService, "revocationChannel", new RevocationChannel() {
+            @Override
+            public void publish(Revocation revocation) {
+            }
+
+            @Override
+            public void subscribe(Consumer<Revocation> listener) {
+            }
+        });
+        ReflectionTestUtils.setField(revocationService, "bloomBits", 1 << 20);
+        ReflectionTestUtils.setField(revocationService, "purgeInterval", Duration.ofHours(1));
+        revocationService.init();
+        signingKeyService = new SigningKeyService();
+        ReflectionTestUtils.setField(signingKeyService, "algorithm", SigningKeyService.ALGORITHM_HS256);
+        signingKeyService.init();
+        JWTTokenService cachedService = newTokenService(10_000);
+        JWTTokenService uncachedService = newTokenService(0);
+        cachedFilter = newFilter(cachedService);
+        uncachedFilter = newFilter(uncachedService);
+        signingKey = Keys.hmacShaKeyFor(SECRET.getBytes());
+
+        ADUserAttributes user = new ADUserAttributes("jdoe", "John Doe", "jdoe@company.com");
+        user.setRoles(List.of("RA_OFFICER", "END_ENTITY"));
+        token = cachedService.generateToken(user);
+    }
+
+    @Benchmark
+    public Object legacyTripleParse() {
+        MockHttpServletRequest request = newRequest();
+        legacyAuthenticate(request);
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    @Benchmark
+    public Object filterUncached() throws Exception {
+        MockHttpServletRequest request = newRequest();
+        uncachedFilter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    @Benchmark
+    public Object filterCached() throws Exception {
+        MockHttpServletRequest request = newRequest();
+        cachedFilter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(JWTAuthenticationFilterBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+
+    private MockHttpServletRequest newRequest() {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/certificates/requests");
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+
+    /**
+     * Copy of the previous filter body: validateToken, extractUsername and
+     * extractRoles each built a parser and verified the signature
+     */
+    @SuppressWarnings("unchecked")
+    private void legacyAuthenticate(MockHttpServletRequest request) {
+        String jwt = request.getHeader("Authorization").substring("Bearer ".length());
+        Jwts.parserBuilder().setSigningKey(signingKey).build().parseClaimsJws(jwt);
+        Claims usernameClaims = Jwts.parserBuilder().setSigningKey(signingKey).build().parseClaimsJws(jwt).getBody();
+        Claims roleClaims = Jwts.parserBuilder().setSigningKey(signingKey).build().parseClaimsJws(jwt).getBody();
+        List<String> roles = (List<String>) roleClaims.get("roles");
+        List<SimpleGrantedAuthority> authorities = roles.stream()
+            .map(role -> new SimpleGrantedAuthority("ROLE_" + role))
+            .collect(Collectors.toList());
+        UsernamePasswordAuthenticationToken authentication =
+            new UsernamePasswordAuthenticationToken(usernameClaims.getSubject(), null, authorities);
+        authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+    }
+
+    private JWTTokenService newTokenService(int cacheSize) {
+        JWTTokenService service = new JWTTokenService();
+        ReflectionTestUtils.setField(service, "jwtSecret", SECRET);
+        ReflectionTestUtils.setField(service, "jwtExpirationSeconds", 86400L);
+        ReflectionTestUtils.setField(service, "jwtIssuer", "RA-Service");
+        ReflectionTestUtils.setField(service, "verifiedTokenCacheSize", cacheSize);
+        ReflectionTestUtils.setField(service, "nonceService", nonceService);
+        ReflectionTestUtils.setField(service, "tokenRevocationService", revocationService);
+        ReflectionTestUtils.setField(service, "signingKeyService", signingKeyService);
+        service.init();
+        return service;
+    }
+
+    private static JWTAuthenticationFilter newFilter(JWTTokenService service) {
+        JWTAuthenticationFilter filter = new JWTAuthenticationFilter();
+        ReflectionTestUtils.setField(filter, "jwtTokenService", service);
+        return filter;
+    }
+}
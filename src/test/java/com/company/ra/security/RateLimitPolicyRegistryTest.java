@@ -0,0 +1,97 @@
+package com.company.ra.security;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimitPolicyRegistryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private RateLimitPolicyRegistry registry;
+
+    @AfterEach
+    void tearDown() {
+        if (registry != null) {
+            registry.shutdown();
+        }
+    }
+
+    @Test
+    void init_shouldUseLegacyBudgetWithoutConfiguredPolicies() {
+        registry = newRegistry(null);
+
+        RoutePolicyTable.Rule rule = registry.resolve("GET", "/api/v1/certificates/requests");
+
+        assertEquals("standard", rule.getPolicy());
+        assertEquals(100, rule.getRate().getLimit());
+    }
+
+    @Test
+    void reloadIfChanged_shouldInstallPoliciesFromFile() throws IOException {
+        Path policyFile = tempDir.resolve("rate-limit.yml");
+        writePolicy(policyFile, 20, 0);
+        registry = newRegistry(policyFile);
+
+        assertEquals(20, registry.resolve("POST", "/api/v1/certificates/requests").getCost());
+
+        writePolicy(policyFile, 50, 5_000);
+        assertTrue(registry.reloadIfChanged());
+        assertEquals(50, registry.resolve("POST", "/api/v1/certificates/requests").getCost());
+        assertFalse(registry.reloadIfChanged());
+    }
+
+    @Test
+    void reloadIfChanged_shouldKeepPoliciesWhenFileIsInvalid() throws IOException {
+        Path policyFile = tempDir.resolve("rate-limit.yml");
+        writePolicy(policyFile, 20, 0);
+        registry = newRegistry(policyFile);
+
+        Files.writeString(policyFile, "rate-limit:\n  routes:\n    - pattern: /x\n      policy: missing\n");
+        Files.setLastModifiedTime(policyFile, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+
+        assertFalse(registry.reloadIfChanged());
+        assertEquals(20, registry.resolve("POST", "/api/v1/certificates/requests").getCost());
+    }
+
+    private RateLimitPolicyRegistry newRegistry(Path policyFile) {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setMaxTrackedClients(64);
+        properties.setReloadInterval(Duration.ofHours(1));
+        if (policyFile != null) {
+            properties.setPolicyFile(policyFile.toString());
+        }
+        RateLimitPolicyRegistry policyRegistry = new RateLimitPolicyRegistry();
+        ReflectionTestUtils.setField(policyRegistry, "properties", properties);
+        policyRegistry.init();
+        return policyRegistry;
+    }
+
+    private static void writePolicy(Path file, int csrCost, long modifiedOffsetMillis) throws IOException {
+        Files.writeString(file, String.join("\n",
+            "rate-limit:",
+            "  default-policy: api",
+            "  policies:",
+            "    api:",
+            "      limit: 200",
+            "      period: 1m",
+            "  routes:",
+            "    - method: POST",
+            "      pattern: /api/v1/certificates/requests",
+            "      policy: api",
+            "      cost: " + csrCost,
+            ""));
+        // Filesystem timestamps can be coarse; make each write visibly newer
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + modifiedOffsetMillis));
+    }
+}
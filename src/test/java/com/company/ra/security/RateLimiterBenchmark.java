@@ -0,0 +1,110 @@
+package com.company.ra.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JMH contention benchmark of the GCRA limiter against the previous
+ * per-IP synchronized token bucket map, at 1 to 64 threads.
+ *
+ * Each operation admits one request for a client drawn from a pool of
+ * 1024 addresses, plus one hot address that every thread hits.
+ *
+ * Run with: mvn test-compile, then
+ * java -cp target/test-classes:&lt;test classpath&gt; com.company.ra.security.RateLimiterBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimiterBenchmark {
+
+    private static final int CLIENTS = 1024;
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+    private static final GcraRateLimiter.Rate RATE = GcraRateLimiter.Rate.of(100, 60_000);
+
+    private String[] clients;
+    private GcraRateLimiter gcra;
+    private Map<String, LegacyBucket> legacyBuckets;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        clients = new String[CLIENTS];
+        for (int i = 0; i < CLIENTS; i++) {
+            clients[i] = "10.0." + (i >> 8) + "." + (i & 0xff);
+        }
+        gcra = new GcraRateLimiter(65536);
+        legacyBuckets = new ConcurrentHashMap<>();
+    }
+
+    @Benchmark
+    public long gcraSpread() {
+        return gcra.tryAcquire(clients[ThreadLocalRandom.current().nextInt(CLIENTS)], RATE, 1);
+    }
+
+    @Benchmark
+    public long gcraHotKey() {
+        return gcra.tryAcquire(clients[0], RATE, 1);
+    }
+
+    @Benchmark
+    public boolean legacySpread() {
+        String client = clients[ThreadLocalRandom.current().nextInt(CLIENTS)];
+        return legacyBuckets.computeIfAbsent(client, k -> new LegacyBucket()).tryConsume();
+    }
+
+    @Benchmark
+    public boolean legacyHotKey() {
+        return legacyBuckets.computeIfAbsent(clients[0], k -> new LegacyBucket()).tryConsume();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : THREAD_COUNTS) {
+            new Runner(new OptionsBuilder()
+                .include(RateLimiterBenchmark.class.getSimpleName())
+                .threads(threads)
+                .build()).run();
+        }
+    }
+
+    /**
+     * Copy of the previous RateLimitingFilter bucket, kept as the baseline
+     */
+    static final class LegacyBucket {
+        private final AtomicInteger tokenCount = new AtomicInteger(100);
+        private long lastRefillTimestamp = System.currentTimeMillis();
+
+        synchronized boolean tryConsume() {
+            long now = System.currentTimeMillis();
+            if (now - lastRefillTimestamp >= 60_000) {
+                tokenCount.set(100);
+                lastRefillTimestamp = now;
+            }
+            if (tokenCount.get() > 0) {
+                tokenCount.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
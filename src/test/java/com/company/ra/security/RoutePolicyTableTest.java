@@ -0,0 +1,80 @@
+package com.company.ra.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutePolicyTableTest {
+
+    @Test
+    void resolve_shouldPreferLiteralOverWildcardOverRemainder() {
+        RoutePolicyTable table = RoutePolicyTable.compile(properties(
+            new RateLimitProperties.Route("POST", "/api/v1/certificates/requests", "api", 20),
+            new RateLimitProperties.Route("GET", "/api/v1/certificates/requests/{requestId}", "api", 1),
+            new RateLimitProperties.Route("GET", "/api/v1/certificates/requests/{requestId}/certificate", "api", 5),
+            new RateLimitProperties.Route(null, "/api/v1/auth/**", "auth", 1)));
+
+        assertEquals(20, table.resolve("POST", "/api/v1/certificates/requests").getCost());
+        assertEquals(1, table.resolve("GET", "/api/v1/certificates/requests/REQ-1").getCost());
+        assertEquals(5, table.resolve("GET", "/api/v1/certificates/requests/REQ-1/certificate").getCost());
+        assertEquals("auth", table.resolve("POST", "/api/v1/auth/login").getPolicy());
+    }
+
+    @Test
+    void resolve_shouldFallBackToDefaultPolicy() {
+        RoutePolicyTable table = RoutePolicyTable.compile(properties(
+            new RateLimitProperties.Route("POST", "/api/v1/certificates/requests", "api", 20)));
+
+        RoutePolicyTable.Rule rule = table.resolve("GET", "/api/v1/certificates/requests");
+
+        assertEquals("api", rule.getPolicy());
+        assertEquals(1, rule.getCost());
+    }
+
+    @Test
+    void resolve_shouldBacktrackFromLiteralToWildcard() {
+        RoutePolicyTable table = RoutePolicyTable.compile(properties(
+            new RateLimitProperties.Route("GET", "/api/v1/certificates/requests", "api", 2),
+            new RateLimitProperties.Route("GET", "/api/v1/certificates/*/certificate", "api", 7)));
+
+        assertEquals(7, table.resolve("GET", "/api/v1/certificates/requests/certificate").getCost());
+    }
+
+    @Test
+    void resolve_shouldReturnNullForUnlimitedRoute() {
+        RoutePolicyTable table = RoutePolicyTable.compile(properties(
+            new RateLimitProperties.Route(null, "/actuator/health/**", null, 1)));
+
+        assertNull(table.resolve("GET", "/actuator/health"));
+        assertNull(table.resolve("GET", "/actuator/health/liveness"));
+    }
+
+    @Test
+    void compile_shouldRejectUnknownPolicy() {
+        assertThrows(IllegalArgumentException.class, () -> RoutePolicyTable.compile(properties(
+            new RateLimitProperties.Route("GET", "/x", "missing", 1))));
+    }
+
+    @Test
+    void compile_shouldRejectCostAboveBurst() {
+        assertThrows(IllegalArgumentException.class, () -> RoutePolicyTable.compile(properties(
+            new RateLimitProperties.Route("POST", "/api/v1/auth/verify/batch", "auth", 11))));
+        assertEquals(10, RoutePolicyTable.compile(properties(
+            new RateLimitProperties.Route("POST", "/api/v1/auth/verify/batch", "auth", 10)))
+            .resolve("POST", "/api/v1/auth/verify/batch").getCost());
+    }
+
+    private static RateLimitProperties properties(RateLimitProperties.Route... routes) {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setDefaultPolicy("api");
+        properties.setPolicies(Map.of(
+            "api", new RateLimitProperties.Policy(100, Duration.ofMinutes(1), null),
+            "auth", new RateLimitProperties.Policy(30, Duration.ofMinutes(1), 10)));
+        properties.setRoutes(List.of(routes));
+        return properties;
+    }
+}
@@ -0,0 +1,112 @@
+package com.company.ra.service;
+
+import com.company.ra.config.ADGroupProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ADGroupIndexTest {
+
+    private static final String ADMINS_SID = "S-1-5-21-1004336348-1177238915-682003330-1105";
+    private static final String STAFF_SID = "S-1-5-21-1004336348-1177238915-682003330-1106";
+    private static final String BUILTIN_SID = "S-1-5-32-544";
+
+    @Test
+    void resolveDns_shouldUseBuiltInMappingWhenNoneConfigured() {
+        ADGroupIndex index = new ADGroupIndex(new ADGroupProperties());
+
+        ADGroupIndex.Resolution groups = index.resolveDns(List.of(
+            "CN=PKI-RA-Officers,OU=Groups,DC=company,DC=com", "CN=Staff\\, Berlin,OU=Groups,DC=company,DC=com"));
+
+        assertEquals(Set.of("PKI-RA-Officers", "Staff, Berlin"), groups.getGroupNames());
+        assertEquals(List.of("RA_OFFICER", "END_ENTITY"), index.roles(groups.getRoleBits(), groups.isMember()));
+    }
+
+    @Test
+    void resolveDns_shouldMatchConfiguredNamesDnsAndSids() {
+        ADGroupProperties properties = new ADGroupProperties();
+        properties.setRoles(Map.of(
+            "RA_ADMIN", List.of("cn=ra admins,ou=groups,dc=company,dc=com"),
+            "AUDITOR", List.of("Auditors", BUILTIN_SID)));
+        ADGroupIndex index = new ADGroupIndex(properties);
+
+        assertNotEquals(0, index.roleBits(null, "CN=RA Admins,OU=Groups,DC=company,DC=com", "RA Admins"));
+        assertEquals(index.roleBits(null, null, "AUDITORS"), index.roleBits(BUILTIN_SID, null, null));
+        assertEquals(0, index.roleBits(null, null, "PKI-RA-Admins"));
+        assertEquals(List.of(), index.roles(0, false));
+    }
+
+    @Test
+    void resolve_shouldCacheGroupsAndResolveOnlyMissingSids() throws Exception {
+        ADGroupIndex index = new ADGroupIndex(new ADGroupProperties());
+        AtomicInteger calls = new AtomicInteger();
+        List<String> requested = new ArrayList<>();
+        ADGroupIndex.Resolver resolver = sids -> {
+            calls.incrementAndGet();
+            requested.addAll(sids);
+            List<ADGroupIndex.Group> groups = new ArrayList<>();
+            if (sids.contains(ADMINS_SID)) {
+                groups.add(new ADGroupIndex.Group(ADMINS_SID, "CN=PKI-RA-Admins,DC=company,DC=com", "PKI-RA-Admins"));
+            }
+            if (sids.contains(STAFF_SID)) {
+                groups.add(new ADGroupIndex.Group(STAFF_SID, "CN=Staff,DC=company,DC=com", "Staff"));
+            }
+            return groups;
+        };
+
+        ADGroupIndex.Resolution first = index.resolve(List.of(ADMINS_SID, BUILTIN_SID), resolver);
+        ADGroupIndex.Resolution second = index.resolve(List.of(ADMINS_SID, STAFF_SID, BUILTIN_SID), resolver);
+
+        assertEquals(Set.of("PKI-RA-Admins"), first.getGroupNames());
+        assertEquals(List.of("RA_ADMIN", "END_ENTITY"), index.roles(first.getRoleBits(), first.isMember()));
+        assertEquals(Set.of("PKI-RA-Admins", "Staff"), second.getGroupNames());
+        assertEquals(2, calls.get());
+        assertEquals(List.of(ADMINS_SID, BUILTIN_SID, STAFF_SID), requested);
+        assertEquals(3, index.size());
+        assertEquals(2, index.getHits());
+        assertEquals(3, index.getMisses());
+    }
+
+    @Test
+    void resolve_shouldReloadExpiredGroups() throws Exception {
+        ADGroupProperties properties = new ADGroupProperties();
+        properties.setCacheTtl(Duration.ZERO);
+        ADGroupIndex index = new ADGroupIndex(properties);
+        AtomicInteger calls = new AtomicInteger();
+
+        index.resolve(List.of(STAFF_SID), sids -> {
+            calls.incrementAndGet();
+            return List.of();
+        });
+        index.resolve(List.of(STAFF_SID), sids -> {
+            calls.incrementAndGet();
+            return List.of();
+        });
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void sids_shouldRoundTripBetweenBinaryStringAndFilterForms() {
+        byte[] binary = {
+            1, 5, 0, 0, 0, 0, 0, 5,
+            21, 0, 0, 0, (byte) 0xdc, (byte) 0xf4, (byte) 0xdc, 0x3b,
+            (byte) 0x83, 0x3d, 0x2b, 0x46, (byte) 0x82, (byte) 0x8b, (byte) 0xa6, 0x28,
+            0x51, 0x04, 0, 0
+        };
+
+        assertEquals(ADMINS_SID, ADGroupIndex.formatSid(binary));
+        StringBuilder expected = new StringBuilder();
+        for (byte b : binary) {
+            expected.append(String.format("\\%02x", b & 0xff));
+        }
+        assertEquals(expected.toString(), ADGroupIndex.sidFilterValue(ADMINS_SID));
+    }
+}
@@ -0,0 +1,158 @@
+package com.company.ra.service;
+
+import com.company.ra.dto.ADUserAttributes;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ADUserAttributesCacheTest {
+
+    @Test
+    void get_shouldCacheFoundAndUnknownUsers() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        ADUserAttributesCache cache = newCache(username -> {
+            loads.incrementAndGet();
+            return "jdoe".equals(username) ? user(username) : null;
+        }, Duration.ofMinutes(5), Duration.ZERO);
+
+        ADUserAttributes first = cache.get("jdoe");
+        assertSame(first, cache.get(" JDoe "));
+        assertNull(cache.get("nobody"));
+        assertNull(cache.get("nobody"));
+
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void get_shouldExpireNegativeEntriesAfterNegativeTtl() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        ADUserAttributesCache cache = new ADUserAttributesCache(username -> {
+            loads.incrementAndGet();
+            return null;
+        }, Duration.ofMinutes(5), Duration.ofMillis(50), Duration.ZERO, 100, Runnable::run);
+
+        assertNull(cache.get("disabled"));
+        assertNull(cache.get("disabled"));
+        Thread.sleep(80);
+        assertNull(cache.get("disabled"));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_shouldCoalesceConcurrentMissesIntoOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ADUserAttributesCache cache = newCache(username -> {
+            loads.incrementAndGet();
+            release.await(5, TimeUnit.SECONDS);
+            return user(username);
+        }, Duration.ofMinutes(5), Duration.ZERO);
+
+        ExecutorService executor = Executors.newFixedThreadPool(50);
+        try {
+            List<Future<ADUserAttributes>> results = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                results.add(executor.submit(() -> cache.get("jdoe")));
+            }
+            Thread.sleep(100);
+            release.countDown();
+
+            ADUserAttributes expected = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<ADUserAttributes> result : results) {
+                assertSame(expected, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void get_shouldNotCacheLoadFailures() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        ADUserAttributesCache cache = newCache(username -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IllegalStateException("directory unavailable");
+            }
+            return user(username);
+        }, Duration.ofMinutes(5), Duration.ZERO);
+
+        assertThrows(IllegalStateException.class, () -> cache.get("jdoe"));
+        assertNotNull(cache.get("jdoe"));
+        assertEquals(1, cache.getLoadFailures());
+    }
+
+    @Test
+    void get_shouldRefreshAheadOfExpiryWithoutBlocking() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        ADUserAttributesCache cache = newCache(username -> {
+            loads.incrementAndGet();
+            return user(username);
+        }, Duration.ofMinutes(5), Duration.ofMinutes(5));
+
+        ADUserAttributes first = cache.get("jdoe");
+        // Entry is inside the refresh-ahead window: served, then reloaded on the (inline) executor
+        assertSame(first, cache.get("jdoe"));
+        ADUserAttributes refreshed = cache.get("jdoe");
+
+        assertNotSame(first, refreshed);
+        assertEquals(3, loads.get());
+        assertEquals(2, cache.getRefreshes());
+    }
+
+    @Test
+    void get_shouldReloadEntriesOlderThanMaxAge() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        ADUserAttributesCache cache = newCache(username -> {
+            loads.incrementAndGet();
+            return user(username);
+        }, Duration.ofMinutes(5), Duration.ZERO);
+
+        cache.get("jdoe");
+        Thread.sleep(20);
+        cache.get("jdoe", Duration.ofMinutes(1));
+        cache.get("jdoe", Duration.ofMillis(10));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidate_shouldForceReload() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        ADUserAttributesCache cache = newCache(username -> {
+            loads.incrementAndGet();
+            return user(username);
+        }, Duration.ofMinutes(5), Duration.ZERO);
+
+        cache.get("jdoe");
+        cache.invalidate("JDOE");
+        cache.get("jdoe");
+        cache.invalidateAll();
+        cache.get("jdoe");
+
+        assertEquals(3, loads.get());
+        assertEquals(1, cache.size());
+    }
+
+    private static ADUserAttributesCache newCache(ADUserAttributesCache.Loader loader, Duration ttl,
+                                                  Duration refreshAhead) {
+        return new ADUserAttributesCache(loader, ttl, Duration.ofSeconds(30), refreshAhead, 100, Runnable::run);
+    }
+
+    private static ADUserAttributes user(String username) {
+        return new ADUserAttributes(username, "John Doe", username + "@company.com");
+    }
+}
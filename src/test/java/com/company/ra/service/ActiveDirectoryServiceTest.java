@@ -0,0 +1,272 @@
+package com.company.ra.service;
+
+import com.company.ra.config.ADGroupProperties;
+import com.company.ra.config.LdapGovernorProperties;
+import com.company.ra.config.LdapOperationGovernor;
+import com.company.ra.dto.ADUserAttributes;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingEnumeration;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+class ActiveDirectoryServiceTest {
+
+    private static final String USER_DN = "CN=John Doe,OU=Engineering,O=Company,C=DE,DC=company,DC=com";
+
+    private ActiveDirectoryService service;
+    private DirContext context;
+    private DirectoryReplicaService replica;
+    private ADGroupProperties groupProperties;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        context = mock(DirContext.class);
+        replica = mock(DirectoryReplicaService.class);
+        service = spy(new ActiveDirectoryService());
+        ReflectionTestUtils.setField(service, "baseDn", "DC=company,DC=com");
+        ReflectionTestUtils.setField(service, "cacheMaxSize", 100);
+        ReflectionTestUtils.setField(service, "cacheTtl", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(service, "cacheNegativeTtl", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(service, "cacheRefreshAhead", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(service, "authMaxAge", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(service, "directoryReplicaService", replica);
+        groupProperties = new ADGroupProperties();
+        groupProperties.setMembership(ADGroupProperties.Membership.MEMBER_OF);
+        ReflectionTestUtils.setField(service, "groupProperties", groupProperties);
+        doReturn(context).when(service).createServiceContext();
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void authenticate_shouldFetchUserWithSingleSearch() throws Exception {
+        stubSearch(userAttributes("512"));
+
+        ADUserAttributes user = service.authenticate("jdoe@company.com", "response", new byte[32], new byte[16]);
+
+        assertNotNull(user);
+        assertEquals("jdoe@company.com", user.getUsername());
+        assertEquals("John Doe", user.getCommonName());
+        assertEquals("jdoe@company.com", user.getEmail());
+        assertEquals(USER_DN, user.getDistinguishedName());
+        assertEquals("Engineering", user.getOrganizationalUnit());
+        assertTrue(user.getRoles().containsAll(List.of("RA_OFFICER", "END_ENTITY")));
+
+        verify(context, times(1)).search(eq("DC=company,DC=com"), anyString(), any(SearchControls.class));
+        verify(context, never()).getAttributes(anyString(), any(String[].class));
+        assertEquals(1, service.getOperationCount());
+        assertEquals(1.0, service.getOperationsPerLogin());
+    }
+
+    @Test
+    void authenticate_shouldRejectDisabledAccount() throws Exception {
+        stubSearch(userAttributes("514"));
+
+        assertNull(service.authenticate("jdoe@company.com", "response", new byte[32], new byte[16]));
+        assertEquals(1, service.getOperationCount());
+    }
+
+    @Test
+    void authenticate_shouldRejectUnknownUserAndCacheTheMiss() throws Exception {
+        NamingEnumeration<SearchResult> empty = enumerationOf();
+        when(context.search(anyString(), anyString(), any(SearchControls.class))).thenReturn(empty);
+
+        assertNull(service.authenticate("nobody", "response", new byte[32], new byte[16]));
+        assertNull(service.getUserDetails("nobody"));
+        assertEquals(1, service.getOperationCount());
+    }
+
+    @Test
+    void getUserDetails_shouldServeRepeatedLookupsFromCache() throws Exception {
+        stubSearch(userAttributes("512"));
+
+        ADUserAttributes first = service.getUserDetails("jdoe@company.com");
+        ADUserAttributes second = service.getUserDetails("JDOE@company.com ");
+        ADUserAttributes login = service.authenticate("jdoe@company.com", "response", new byte[32], new byte[16]);
+
+        assertSame(first, second);
+        assertSame(first, login);
+        assertEquals(1, service.getOperationCount());
+        assertEquals(0.0, service.getOperationsPerLogin());
+
+        service.invalidateUser("jdoe@company.com");
+        stubSearch(userAttributes("512"));
+        assertNotSame(first, service.getUserDetails("jdoe@company.com"));
+        assertEquals(2, service.getOperationCount());
+    }
+
+    @Test
+    void authenticate_shouldReportAnUnavailableDirectoryInsteadOfRejectingTheUser() throws Exception {
+        doThrow(new CommunicationException("connection refused")).when(service).createServiceContext();
+
+        ServiceUnavailableException e = assertThrows(ServiceUnavailableException.class,
+            () -> service.authenticate("jdoe@company.com", "response", new byte[32], new byte[16]));
+        assertInstanceOf(CommunicationException.class, e.getRootCause());
+
+        doReturn(context).when(service).createServiceContext();
+        stubSearch(userAttributes("512"));
+        assertNotNull(service.authenticate("jdoe@company.com", "response", new byte[32], new byte[16]));
+    }
+
+    @Test
+    void authenticate_shouldReportALoginRefusedByTheGovernor() throws Exception {
+        LdapGovernorProperties limits = new LdapGovernorProperties();
+        limits.setSearch(new LdapGovernorProperties.Limit(0.001, 1));
+        limits.setInteractiveMaxWait(Duration.ZERO);
+        ReflectionTestUtils.setField(service, "ldapOperationGovernor", new LdapOperationGovernor(limits));
+        stubSearch(userAttributes("512"));
+
+        assertNotNull(service.authenticate("jdoe@company.com", "response", new byte[32], new byte[16]));
+        ServiceUnavailableException e = assertThrows(ServiceUnavailableException.class,
+            () -> service.authenticate("other@company.com", "response", new byte[32], new byte[16]));
+        assertTrue(e.getMessage().contains("throttled"));
+    }
+
+    @Test
+    void getUserDetails_shouldNotCacheDirectoryFailures() throws Exception {
+        when(context.search(anyString(), anyString(), any(SearchControls.class)))
+            .thenThrow(new CommunicationException("connection reset"));
+
+        assertNull(service.getUserDetails("jdoe@company.com"));
+        stubSearch(userAttributes("512"));
+
+        assertNotNull(service.getUserDetails("jdoe@company.com"));
+        assertEquals(2, service.getOperationCount());
+    }
+
+    @Test
+    void getUserDetails_shouldReadFreshReplicaWithoutLdap() throws Exception {
+        ADUserAttributes attrs = new ADUserAttributes();
+        attrs.setUsername("jdoe@company.com");
+        when(replica.isFresh()).thenReturn(true);
+        when(replica.findUser("jdoe@company.com"))
+            .thenReturn(new DirectoryReplicaService.ReplicaUser("guid", 1, true, false, attrs));
+        when(replica.findUser("disabled"))
+            .thenReturn(new DirectoryReplicaService.ReplicaUser("guid2", 1, false, false, new ADUserAttributes()));
+
+        assertSame(attrs, service.getUserDetails("jdoe@company.com"));
+        assertNull(service.getUserDetails("disabled"));
+        assertEquals(0, service.getOperationCount());
+
+        // Not replicated under this name: fall back to the directory
+        stubSearch(userAttributes("512"));
+        assertNotNull(service.getUserDetails("jdoe"));
+        assertEquals(1, service.getOperationCount());
+    }
+
+    @Test
+    void getUserDetails_shouldIgnoreStaleReplica() throws Exception {
+        when(replica.isFresh()).thenReturn(false);
+        stubSearch(userAttributes("512"));
+
+        assertNotNull(service.getUserDetails("jdoe@company.com"));
+        verify(replica, never()).findUser(anyString());
+        assertEquals(1, service.getOperationCount());
+    }
+
+    @Test
+    void getUserDetails_shouldResolveNestedGroupsFromTokenGroups() throws Exception {
+        groupProperties.setMembership(ADGroupProperties.Membership.TOKEN_GROUPS);
+        byte[] officersSid = sid(1105);
+        byte[] adminsSid = sid(1106);
+        stubSearch(userAttributes("512"));
+        BasicAttribute tokenGroups = new BasicAttribute("tokenGroups");
+        tokenGroups.add(officersSid);
+        tokenGroups.add(adminsSid);
+        Attributes tokenGroupsEntry = new BasicAttributes(true);
+        tokenGroupsEntry.put(tokenGroups);
+        doReturn(tokenGroupsEntry).when(context).getAttributes(eq(USER_DN), any(String[].class));
+        stubGroupSearch(group("PKI-RA-Officers", officersSid), group("PKI-RA-Admins", adminsSid));
+
+        ADUserAttributes user = service.getUserDetails("jdoe@company.com");
+
+        assertTrue(user.getAdGroups().containsAll(List.of("PKI-RA-Officers", "PKI-RA-Admins")));
+        assertTrue(user.getRoles().containsAll(List.of("RA_ADMIN", "RA_OFFICER", "END_ENTITY")));
+        // User search, tokenGroups read, one batched search for both unknown group SIDs
+        assertEquals(3, service.getOperationCount());
+
+        service.invalidateUser("jdoe@company.com");
+        stubSearch(userAttributes("512"));
+        assertTrue(service.getUserDetails("jdoe@company.com").getRoles().contains("RA_ADMIN"));
+        // Group metadata comes from the cache
+        assertEquals(5, service.getOperationCount());
+    }
+
+    private void stubGroupSearch(SearchResult... groups) throws Exception {
+        NamingEnumeration<SearchResult> results = enumerationOf(groups);
+        if (groups.length > 1) {
+            when(results.hasMore()).thenReturn(true, true, false);
+            when(results.next()).thenReturn(groups[0], groups[1]);
+        }
+        doReturn(results).when(context)
+            .search(anyString(), startsWith("(&(objectClass=group)"), any(SearchControls.class));
+    }
+
+    private static SearchResult group(String cn, byte[] sid) {
+        Attributes attributes = new BasicAttributes(true);
+        attributes.put("cn", cn);
+        attributes.put("objectSid", sid);
+        SearchResult result = new SearchResult("CN=" + cn + ",OU=Groups", null, attributes);
+        result.setNameInNamespace("CN=" + cn + ",OU=Groups,DC=company,DC=com");
+        return result;
+    }
+
+    private static byte[] sid(int rid) {
+        byte[] sid = {1, 5, 0, 0, 0, 0, 0, 5, 21, 0, 0, 0, 1, 0, 0, 0, 2, 0, 0, 0, 3, 0, 0, 0, 0, 0, 0, 0};
+        sid[24] = (byte) rid;
+        sid[25] = (byte) (rid >> 8);
+        return sid;
+    }
+
+    private void stubSearch(Attributes attributes) throws Exception {
+        SearchResult result = new SearchResult("CN=John Doe,OU=Engineering,O=Company,C=DE", null, attributes);
+        result.setNameInNamespace(USER_DN);
+        NamingEnumeration<SearchResult> results = enumerationOf(result);
+        doReturn(results).when(context).search(anyString(), startsWith("(|(userPrincipalName="), any(SearchControls.class));
+    }
+
+    private static Attributes userAttributes(String userAccountControl) {
+        Attributes attributes = new BasicAttributes(true);
+        attributes.put("cn", "John Doe");
+        attributes.put("mail", "jdoe@company.com");
+        attributes.put("userPrincipalName", "jdoe@company.com");
+        attributes.put("userAccountControl", userAccountControl);
+        BasicAttribute memberOf = new BasicAttribute("memberOf");
+        memberOf.add("CN=PKI-RA-Officers,OU=Groups,DC=company,DC=com");
+        attributes.put(memberOf);
+        return attributes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static NamingEnumeration<SearchResult> enumerationOf(SearchResult... results) throws Exception {
+        NamingEnumeration<SearchResult> enumeration = mock(NamingEnumeration.class);
+        when(enumeration.hasMore()).thenReturn(results.length > 0);
+        if (results.length > 0) {
+            when(enumeration.next()).thenReturn(results[0]);
+        }
+        return enumeration;
+    }
+}
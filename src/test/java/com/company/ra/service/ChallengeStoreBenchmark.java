@@ -0,0 +1,149 @@
+package com.company.ra.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH comparison of the timing-wheel ChallengeStore against the previous
+ * ConcurrentHashMap + full-scan implementation, at 10k, 100k and 1M live
+ * challenges.
+ *
+ * Run with: mvn test-compile, then
+ * java -cp target/test-classes:&lt;test classpath&gt; com.company.ra.service.ChallengeStoreBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChallengeStoreBenchmark {
+
+    private static final Duration EXPIRY = Duration.ofMinutes(5);
+    private static final byte[] CHALLENGE = new byte[32];
+    private static final byte[] SALT = new byte[16];
+
+    @Param({"10000", "100000", "1000000"})
+    public int liveChallenges;
+
+    private ChallengeStore wheelStore;
+    private LegacyChallengeStore legacyStore;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        wheelStore = new ChallengeStore(1000, 512, false);
+        legacyStore = new LegacyChallengeStore();
+        for (int i = 0; i < liveChallenges; i++) {
+            String id = "live-" + i;
+            wheelStore.store(id, CHALLENGE, SALT, EXPIRY, "user");
+            legacyStore.store(id, CHALLENGE, SALT, EXPIRY, "user");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        wheelStore.shutdown();
+    }
+
+    /**
+     * One challenge/login round trip: store, then retrieve and invalidate
+     */
+    @Benchmark
+    public Object wheelStoreAndConsume() {
+        String id = "bench-" + (sequence++);
+        wheelStore.store(id, CHALLENGE, SALT, EXPIRY, "user");
+        return wheelStore.consume(id);
+    }
+
+    @Benchmark
+    public Object legacyStoreAndConsume() {
+        String id = "bench-" + (sequence++);
+        legacyStore.store(id, CHALLENGE, SALT, EXPIRY, "user");
+        Object stored = legacyStore.retrieve(id);
+        legacyStore.invalidate(id);
+        return stored;
+    }
+
+    /**
+     * One expiry pass when nothing is due, which is the common case
+     */
+    @Benchmark
+    public int wheelExpiryTick() {
+        return wheelStore.advance(System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public int legacyExpiryScan() {
+        return legacyStore.cleanupExpiredChallenges();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(ChallengeStoreBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+
+    /**
+     * Copy of the previous map-scan implementation, kept as the baseline
+     */
+    static final class LegacyChallengeStore {
+
+        private final Map<String, Entry> challenges = new ConcurrentHashMap<>();
+
+        void store(String challengeId, byte[] challenge, byte[] salt, Duration expiry, String username) {
+            challenges.put(challengeId, new Entry(challenge, salt, username, Instant.now().plus(expiry)));
+        }
+
+        Entry retrieve(String challengeId) {
+            Entry entry = challenges.get(challengeId);
+            if (entry == null) {
+                return null;
+            }
+            if (Instant.now().isAfter(entry.expiresAt)) {
+                challenges.remove(challengeId);
+                return null;
+            }
+            return entry;
+        }
+
+        void invalidate(String challengeId) {
+            challenges.remove(challengeId);
+        }
+
+        int cleanupExpiredChallenges() {
+            int removed = 0;
+            Instant now = Instant.now();
+            for (Map.Entry<String, Entry> entry : challenges.entrySet()) {
+                if (entry.getValue().expiresAt.isBefore(now)) {
+                    challenges.remove(entry.getKey());
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
+        record Entry(byte[] challenge, byte[] salt, String username, Instant expiresAt) {
+        }
+    }
+}
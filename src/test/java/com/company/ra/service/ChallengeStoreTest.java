@@ -0,0 +1,125 @@
+package com.company.ra.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChallengeStoreTest {
+
+    private static final byte[] CHALLENGE = new byte[32];
+    private static final byte[] SALT = new byte[16];
+
+    private ChallengeStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new ChallengeStore(1000, 8, false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.shutdown();
+    }
+
+    @Test
+    void consume_shouldReturnChallengeOnlyOnce() {
+        store.store("c1", CHALLENGE, SALT, Duration.ofMinutes(5), "jdoe");
+
+        ChallengeStore.StoredChallenge first = store.consume("c1");
+        ChallengeStore.StoredChallenge second = store.consume("c1");
+
+        assertNotNull(first);
+        assertEquals("jdoe", first.getUsername());
+        assertNull(second);
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void restore_shouldMakeConsumedChallengeUsableUntilItExpires() {
+        store.store("c1", CHALLENGE, SALT, Duration.ofSeconds(2), "jdoe");
+        ChallengeStore.StoredChallenge consumed = store.consume("c1");
+
+        store.restore(consumed);
+
+        assertSame(consumed, store.consume("c1"));
+        store.restore(consumed);
+        assertEquals(1, store.advance(System.currentTimeMillis() + 3000));
+        assertNull(store.consume("c1"));
+    }
+
+    @Test
+    void consume_shouldRejectExpiredChallenge() {
+        store.store("c1", CHALLENGE, SALT, Duration.ofMillis(-1), "jdoe");
+
+        assertNull(store.consume("c1"));
+    }
+
+    @Test
+    void advance_shouldRemoveOnlyDueChallenges() {
+        long now = System.currentTimeMillis();
+        store.store("short", CHALLENGE, SALT, Duration.ofSeconds(2), "jdoe");
+        store.store("long", CHALLENGE, SALT, Duration.ofMinutes(5), "jdoe");
+
+        int removed = store.advance(now + 3000);
+
+        assertEquals(1, removed);
+        assertNull(store.retrieve("short"));
+        assertNotNull(store.retrieve("long"));
+    }
+
+    @Test
+    void advance_shouldKeepDeadlinesBeyondOneRevolution() {
+        long now = System.currentTimeMillis();
+        // 8 one-second buckets; a 20 second deadline wraps the wheel twice
+        store.store("wrapping", CHALLENGE, SALT, Duration.ofSeconds(20), "jdoe");
+
+        assertEquals(0, store.advance(now + 5_000));
+        assertEquals(0, store.advance(now + 12_000));
+        assertEquals(1, store.size());
+
+        assertEquals(1, store.advance(now + 21_000));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void advance_shouldExpireChallengesStoredWhileBucketsDrain() throws Exception {
+        ChallengeStore fastStore = new ChallengeStore(1, 4, false);
+        AtomicBoolean storing = new AtomicBoolean(true);
+        Thread ticker = new Thread(() -> {
+            while (storing.get()) {
+                fastStore.advance(System.currentTimeMillis());
+            }
+        });
+        ticker.start();
+        try {
+            for (int i = 0; i < 200_000; i++) {
+                fastStore.store("c" + i, CHALLENGE, SALT, Duration.ofMillis(i % 3), "jdoe");
+            }
+        } finally {
+            storing.set(false);
+            ticker.join();
+        }
+
+        // Two full revolutions, one millisecond at a time
+        long now = System.currentTimeMillis();
+        for (long tick = 1; tick <= 8; tick++) {
+            fastStore.advance(now + tick);
+        }
+        assertEquals(0, fastStore.size());
+        fastStore.shutdown();
+    }
+
+    @Test
+    void advance_shouldSkipInvalidatedChallenges() {
+        long now = System.currentTimeMillis();
+        store.store("c1", CHALLENGE, SALT, Duration.ofSeconds(1), "jdoe");
+        store.invalidate("c1");
+
+        assertEquals(0, store.advance(now + 2000));
+    }
+}
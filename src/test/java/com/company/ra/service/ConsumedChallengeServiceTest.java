@@ -0,0 +1,68 @@
+package com.company.ra.service;
+
+import com.company.ra.entity.ConsumedChallenge;
+import com.company.ra.repository.ConsumedChallengeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ConsumedChallengeServiceTest {
+
+    // Rows of the shared table, keyed like its primary key
+    private final Map<String, ConsumedChallenge> rows = new ConcurrentHashMap<>();
+    private ConsumedChallengeService node1;
+    private ConsumedChallengeService node2;
+
+    @BeforeEach
+    void setUp() {
+        ConsumedChallengeRepository repository = mock(ConsumedChallengeRepository.class);
+        when(repository.saveAndFlush(any(ConsumedChallenge.class))).thenAnswer(invocation -> {
+            ConsumedChallenge row = invocation.getArgument(0);
+            if (rows.putIfAbsent(row.getChallengeId(), row) != null) {
+                throw new DataIntegrityViolationException("duplicate key");
+            }
+            return row;
+        });
+        doAnswer(invocation -> rows.remove(invocation.<String>getArgument(0)))
+            .when(repository).deleteById(any());
+
+        node1 = node(repository);
+        node2 = node(repository);
+    }
+
+    @Test
+    void markConsumed_shouldRejectReplayOnAnyNode() {
+        long expiresAt = System.currentTimeMillis() + 60_000;
+
+        assertTrue(node1.markConsumed("c1", expiresAt));
+        assertFalse(node1.markConsumed("c1", expiresAt));
+        assertFalse(node2.markConsumed("c1", expiresAt));
+        assertTrue(node2.markConsumed("c2", expiresAt));
+    }
+
+    @Test
+    void release_shouldMakeChallengeUsableAgain() {
+        long expiresAt = System.currentTimeMillis() + 60_000;
+        node1.markConsumed("c1", expiresAt);
+
+        node1.release("c1");
+
+        assertTrue(node2.markConsumed("c1", expiresAt));
+    }
+
+    private static ConsumedChallengeService node(ConsumedChallengeRepository repository) {
+        ConsumedChallengeService service = new ConsumedChallengeService();
+        ReflectionTestUtils.setField(service, "consumedChallengeRepository", repository);
+        return service;
+    }
+}
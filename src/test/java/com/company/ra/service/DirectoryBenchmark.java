@@ -0,0 +1,267 @@
+package com.company.ra.service;
+
+import com.ad.poc.repository.AdUserLdapRepository;
+import com.company.ra.config.ADGroupProperties;
+import com.company.ra.config.LdapPoolProperties;
+import com.company.ra.config.PooledLdapContextSource;
+import com.company.ra.dto.ADUserAttributes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.util.Statistics;
+import org.springframework.ldap.core.LdapTemplate;
+import org.springframework.ldap.core.support.LdapContextSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.naming.directory.DirContext;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the directory layer against an {@link EmbeddedAdDirectory}
+ *
+ * Drives login lookups (ActiveDirectoryService, including tokenGroups
+ * resolution), nested group resolution on its own, AD user API lookups and
+ * keyword searches (AdUserLdapRepository) and LDAPService existence checks,
+ * all at a fixed number of threads, for random users of a synthetic
+ * directory. Every benchmark runs in throughput and sample-time mode, and
+ * main() ends with one line per benchmark: ops/s and p50/p99/p99.9 latency.
+ *
+ * The caching and poolSize parameters switch the RA's user and group caches
+ * and size its connection pool, so caching and pooling changes can be
+ * measured before and after on the same directory (same seed).
+ *
+ * Run with: mvn test-compile, then
+ * java -cp target/test-classes:target/classes:&lt;test classpath&gt; com.company.ra.service.DirectoryBenchmark
+ * Standard JMH options apply, e.g. -t 32 for concurrency, -p users=100000 -p caching=true
+ * for parameters, or DirectoryBenchmark.login to run one benchmark.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(8)
+@Fork(1)
+public class DirectoryBenchmark {
+
+    @Param("10000")
+    public int users;
+
+    @Param("500")
+    public int groups;
+
+    @Param("4")
+    public int nestingDepth;
+
+    @Param({"false", "true"})
+    public boolean caching;
+
+    @Param("16")
+    public int poolSize;
+
+    private EmbeddedAdDirectory directory;
+    private PooledLdapContextSource raPool;
+    private PooledLdapContextSource repositoryPool;
+    private ActiveDirectoryService activeDirectoryService;
+    private AdUserLdapRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = EmbeddedAdDirectory.start(EmbeddedAdDirectory.Spec.of(users, groups, nestingDepth));
+        raPool = pool(directory.contextSource(null), poolSize);
+        activeDirectoryService = activeDirectoryService(raPool, caching);
+        repositoryPool = pool(directory.contextSource(EmbeddedAdDirectory.BASE_DN), poolSize);
+        repository = new AdUserLdapRepository(new LdapTemplate(repositoryPool));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        activeDirectoryService.shutdown();
+        raPool.destroy();
+        repositoryPool.destroy();
+        directory.close();
+    }
+
+    /**
+     * RA login: user search plus tokenGroups read and group SID resolution, or the near-cache
+     */
+    @Benchmark
+    public Object login() throws Exception {
+        return activeDirectoryService.authenticate(directory.userPrincipalName(nextUser()), null, null, null);
+    }
+
+    /**
+     * Nested group resolution alone: tokenGroups read and SID to group lookup
+     */
+    @Benchmark
+    public Object groupResolution() throws Exception {
+        ADUserAttributes user = new ADUserAttributes();
+        user.setDistinguishedName(directory.userDn(nextUser()));
+        user.setAdGroups(new HashSet<>());
+        DirContext context = raPool.getReadOnlyContext();
+        try {
+            activeDirectoryService.resolveNestedGroups(context, user);
+        } finally {
+            context.close();
+        }
+        return user;
+    }
+
+    /**
+     * AD user API lookup by sAMAccountName
+     */
+    @Benchmark
+    public Object findUser() {
+        return repository.findBySamAccountName(directory.samAccountName(nextUser()));
+    }
+
+    /**
+     * AD user API keyword search (substring match over five attributes, about 20 hits)
+     */
+    @Benchmark
+    public Object searchUsers() {
+        int user = nextUser();
+        return repository.search((directory.firstName(user) + "." + directory.lastName(user)).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * LDAPService existence check on a per-thread connection
+     */
+    @Benchmark
+    public boolean checkUserExists(LdapServiceConnection connection) {
+        return connection.service.checkUserExists(directory.commonName(nextUser()));
+    }
+
+    /**
+     * One LDAPService (one connection) per benchmark thread, as LDAPService is not thread-safe
+     */
+    @State(Scope.Thread)
+    public static class LdapServiceConnection {
+
+        LDAPService service;
+
+        @Setup(Level.Trial)
+        public void open(DirectoryBenchmark benchmark) throws Exception {
+            service = new LDAPService(benchmark.directory.getUrl(), EmbeddedAdDirectory.ADMIN_DN,
+                EmbeddedAdDirectory.ADMIN_PASSWORD, EmbeddedAdDirectory.BASE_DN, false);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            service.close();
+        }
+    }
+
+    private int nextUser() {
+        return ThreadLocalRandom.current().nextInt(users);
+    }
+
+    /**
+     * Connection pool as configured by LdapPoolConfig, sized for the benchmark threads
+     *
+     * @param target Unpooled context source
+     * @param size Maximum connections
+     * @return Warmed-up pool
+     */
+    static PooledLdapContextSource pool(LdapContextSource target, int size) {
+        LdapPoolProperties properties = new LdapPoolProperties();
+        properties.setMaxTotal(size);
+        properties.setMaxIdle(size);
+        properties.setMinIdle(Math.min(size, 2));
+        PooledLdapContextSource pool = new PooledLdapContextSource("bench", target, properties);
+        pool.warmUp();
+        return pool;
+    }
+
+    /**
+     * ActiveDirectoryService wired as in the application, reading nested groups from tokenGroups
+     *
+     * @param pool Connection pool
+     * @param caching Whether the user near-cache and the group metadata cache are enabled
+     * @return Initialized service
+     */
+    static ActiveDirectoryService activeDirectoryService(PooledLdapContextSource pool, boolean caching) {
+        ADGroupProperties groupProperties = new ADGroupProperties();
+        groupProperties.setMembership(ADGroupProperties.Membership.TOKEN_GROUPS);
+        groupProperties.setCacheMaxSize(caching ? 10_000 : 0);
+
+        ActiveDirectoryService service = new ActiveDirectoryService();
+        ReflectionTestUtils.setField(service, "baseDn", EmbeddedAdDirectory.BASE_DN);
+        ReflectionTestUtils.setField(service, "contextSource", pool);
+        // Never synced, so every load goes to the directory
+        ReflectionTestUtils.setField(service, "directoryReplicaService", new DirectoryReplicaService());
+        ReflectionTestUtils.setField(service, "groupProperties", groupProperties);
+        ReflectionTestUtils.setField(service, "cacheMaxSize", caching ? 100_000 : 0);
+        ReflectionTestUtils.setField(service, "cacheTtl", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(service, "cacheNegativeTtl", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(service, "cacheRefreshAhead", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(service, "authMaxAge", Duration.ofMinutes(1));
+        service.init();
+        return service;
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(commandLine);
+        if (commandLine.getIncludes().isEmpty()) {
+            options.include(DirectoryBenchmark.class.getSimpleName());
+        }
+        printSummary(new Runner(options.build()).run());
+    }
+
+    /**
+     * One line per benchmark and parameter set: throughput and latency percentiles
+     */
+    private static void printSummary(Collection<RunResult> results) {
+        Map<String, double[]> rows = new LinkedHashMap<>();
+        for (RunResult result : results) {
+            BenchmarkParams params = result.getParams();
+            StringBuilder key = new StringBuilder(params.getBenchmark().substring(params.getBenchmark().lastIndexOf('.') + 1));
+            for (String param : params.getParamsKeys()) {
+                key.append(' ').append(param).append('=').append(params.getParam(param));
+            }
+            key.append(" threads=").append(params.getThreads());
+            double[] row = rows.computeIfAbsent(key.toString(), k -> new double[4]);
+            double unitsPerSecond = params.getTimeUnit().convert(1, TimeUnit.SECONDS);
+            if (params.getMode() == Mode.Throughput) {
+                row[0] = result.getPrimaryResult().getScore() * unitsPerSecond;
+            } else if (params.getMode() == Mode.SampleTime) {
+                Statistics statistics = result.getPrimaryResult().getStatistics();
+                double millisPerUnit = 1000.0 / unitsPerSecond;
+                row[1] = statistics.getPercentile(50) * millisPerUnit;
+                row[2] = statistics.getPercentile(99) * millisPerUnit;
+                row[3] = statistics.getPercentile(99.9) * millisPerUnit;
+            }
+        }
+        System.out.println();
+        System.out.printf(Locale.ROOT, "%-90s %12s %10s %10s %10s%n", "Benchmark", "ops/s", "p50 ms", "p99 ms", "p99.9 ms");
+        rows.forEach((key, row) -> System.out.printf(Locale.ROOT, "%-90s %12.1f %10.3f %10.3f %10.3f%n",
+            key, row[0], row[1], row[2], row[3]));
+    }
+}
@@ -0,0 +1,293 @@
+package com.company.ra.service;
+
+import com.company.ra.config.ADGroupProperties;
+import com.company.ra.config.DirectoryEndpointProperties;
+import com.company.ra.config.DirectoryEndpointResolver;
+import com.company.ra.config.DirectoryEndpointSelector;
+import com.company.ra.config.FailoverContextSource;
+import com.company.ra.config.LdapPoolProperties;
+import com.company.ra.config.PooledLdapContextSource;
+import com.company.ra.entity.DirectorySyncState;
+import com.company.ra.repository.DirectorySyncStateRepository;
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import com.unboundid.ldap.sdk.SearchScope;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.ldap.core.support.LdapContextSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class DirectorySyncServiceTest {
+
+    private static final String BASE = "DC=company,DC=com";
+    private static final String USERS = "OU=Users," + BASE;
+
+    private InMemoryDirectoryServer server;
+    private JdbcTemplate jdbcTemplate;
+    private DirectoryReplicaService replica;
+    private ActiveDirectoryService activeDirectoryService;
+    private DirectorySyncService syncService;
+    private final AtomicReference<DirectorySyncState> savedState = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+            + "username VARCHAR(100) NOT NULL UNIQUE, common_name VARCHAR(255) NOT NULL, email VARCHAR(255), "
+            + "organizational_unit VARCHAR(100), organization VARCHAR(100), country VARCHAR(50), "
+            + "enabled BOOLEAN NOT NULL, account_locked BOOLEAN NOT NULL, created_at TIMESTAMP NOT NULL, "
+            + "last_login_at TIMESTAMP, object_guid VARCHAR(36) UNIQUE, distinguished_name VARCHAR(500), "
+            + "usn_changed BIGINT, synced_at TIMESTAMP)");
+        jdbcTemplate.execute("CREATE TABLE user_roles (user_id BIGINT NOT NULL, role VARCHAR(255))");
+        jdbcTemplate.execute("CREATE TABLE user_ad_groups (user_id BIGINT NOT NULL, ad_group VARCHAR(255))");
+
+        replica = new DirectoryReplicaService();
+        ReflectionTestUtils.setField(replica, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(replica, "maxStaleness", Duration.ofMinutes(2));
+
+        DirectorySyncStateRepository stateRepository = mock(DirectorySyncStateRepository.class);
+        when(stateRepository.findById(anyString())).thenAnswer(invocation -> Optional.ofNullable(savedState.get()));
+        when(stateRepository.save(any(DirectorySyncState.class))).thenAnswer(invocation -> {
+            savedState.set(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+
+        // The in-memory directory has no constructed tokenGroups; use direct memberships
+        ADGroupProperties groupProperties = new ADGroupProperties();
+        groupProperties.setMembership(ADGroupProperties.Membership.MEMBER_OF);
+        activeDirectoryService = new ActiveDirectoryService();
+        ReflectionTestUtils.setField(activeDirectoryService, "groupProperties", groupProperties);
+        ReflectionTestUtils.setField(activeDirectoryService, "cacheTtl", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(activeDirectoryService, "cacheNegativeTtl", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(activeDirectoryService, "cacheRefreshAhead", Duration.ofMinutes(1));
+        activeDirectoryService.init();
+
+        syncService = new DirectorySyncService();
+        ReflectionTestUtils.setField(syncService, "activeDirectoryService", activeDirectoryService);
+        ReflectionTestUtils.setField(syncService, "directoryReplicaService", replica);
+        ReflectionTestUtils.setField(syncService, "syncStateRepository", stateRepository);
+        ReflectionTestUtils.setField(syncService, "fullInterval", Duration.ofHours(24));
+        ReflectionTestUtils.setField(syncService, "pageSize", 2);
+        ReflectionTestUtils.setField(syncService, "batchSize", 2);
+        ReflectionTestUtils.setField(syncService, "searchBase", USERS);
+        ReflectionTestUtils.setField(syncService, "filter", "(&(objectCategory=person)(objectClass=user))");
+
+        List<Entry> entries = new ArrayList<>();
+        entries.add(new Entry(BASE, new Attribute("objectClass", "domain")));
+        entries.add(new Entry(USERS, new Attribute("objectClass", "organizationalUnit")));
+        // Without a schema uSNChanged compares as a string, so keep the test USNs at four digits
+        entries.add(user("jdoe", "John Doe", "512", 1001, "PKI-RA-Officers"));
+        entries.add(user("asmith", "Alice Smith", "512", 1002, "PKI-RA-Admins"));
+        entries.add(user("bjones", "Bob Jones", "512", 1003));
+        startServer(entries, 1003, "CN=DC1");
+    }
+
+    @AfterEach
+    void tearDown() {
+        activeDirectoryService.shutdown();
+        server.shutDown(true);
+    }
+
+    @Test
+    void synchronize_shouldLoadAllUsersOnFirstRun() throws Exception {
+        assertEquals(3, syncService.synchronize());
+
+        assertEquals(3, count("SELECT COUNT(*) FROM users"));
+        DirectoryReplicaService.ReplicaUser jdoe = replica.findUser("jdoe@company.com");
+        assertNotNull(jdoe);
+        assertTrue(jdoe.isEnabled());
+        assertEquals(1001, jdoe.getUsnChanged());
+        assertEquals(36, jdoe.getObjectGuid().length());
+        assertEquals("John Doe", jdoe.getAttributes().getCommonName());
+        assertEquals("CN=John Doe," + USERS, jdoe.getAttributes().getDistinguishedName());
+        assertTrue(jdoe.getAttributes().getRoles().contains("RA_OFFICER"));
+        assertTrue(jdoe.getAttributes().getAdGroups().contains("PKI-RA-Officers"));
+
+        assertTrue(replica.isFresh());
+        assertEquals(1003, savedState.get().getHighestCommittedUsn());
+        assertEquals("CN=DC1", savedState.get().getServerId());
+        assertNotNull(savedState.get().getLastFullSyncAt());
+    }
+
+    @Test
+    void synchronize_shouldOnlyFetchEntriesChangedSinceLastRun() throws Exception {
+        syncService.synchronize();
+        server.modify("CN=John Doe," + USERS,
+            new Modification(ModificationType.REPLACE, "userAccountControl", "514"),
+            new Modification(ModificationType.REPLACE, "uSNChanged", "1004"));
+        server.add(user("cnew", "Carol New", "512", 1005, "PKI-Auditors"));
+        restartServer(1005, "CN=DC1");
+
+        assertEquals(2, syncService.synchronize());
+
+        assertFalse(replica.findUser("jdoe@company.com").isEnabled());
+        assertTrue(replica.findUser("cnew@company.com").getAttributes().getRoles().contains("AUDITOR"));
+        assertEquals(4, count("SELECT COUNT(*) FROM users"));
+        assertEquals(1005, savedState.get().getHighestCommittedUsn());
+    }
+
+    @Test
+    void synchronize_shouldRunFullSyncAndDisableDeletedUsersAfterServerChange() throws Exception {
+        syncService.synchronize();
+        server.delete("CN=Bob Jones," + USERS);
+        restartServer(1003, "CN=DC2");
+
+        assertEquals(2, syncService.synchronize());
+
+        assertFalse(replica.findUser("bjones@company.com").isEnabled());
+        assertTrue(replica.findUser("asmith@company.com").isEnabled());
+        assertEquals("CN=DC2", savedState.get().getServerId());
+    }
+
+    @Test
+    void synchronize_shouldStayOnOneServerWhenSeveralAreListed() throws Exception {
+        List<Entry> entries = new ArrayList<>(server.search(BASE, SearchScope.SUB, "(objectClass=*)")
+            .getSearchEntries());
+        entries.sort(Comparator.comparingInt(entry -> entry.getDN().length()));
+        InMemoryDirectoryServer other = server(entries, 1003, "CN=DC2");
+        DirectoryEndpointSelector selector = new DirectoryEndpointSelector("sync", DirectoryEndpointResolver.of(
+            "ldap://localhost:" + server.getListenPort() + " ldap://localhost:" + other.getListenPort()),
+            new DirectoryEndpointProperties());
+        PooledLdapContextSource pool = new PooledLdapContextSource("sync",
+            new FailoverContextSource(selector, this::contextSource), new LdapPoolProperties());
+        ReflectionTestUtils.setField(syncService, "contextSource", pool);
+        try {
+            syncService.synchronize();
+            String serverId = savedState.get().getServerId();
+            Instant fullSyncAt = savedState.get().getLastFullSyncAt();
+
+            for (int i = 0; i < 4; i++) {
+                syncService.synchronize();
+                assertEquals(serverId, savedState.get().getServerId());
+                assertEquals(fullSyncAt, savedState.get().getLastFullSyncAt());
+            }
+        } finally {
+            pool.destroy();
+            other.shutDown(true);
+        }
+    }
+
+    @Test
+    void synchronize_shouldAdoptExistingRowsAndReplaceRoles() throws Exception {
+        jdbcTemplate.update("INSERT INTO users (username, common_name, enabled, account_locked, created_at) "
+            + "VALUES ('asmith@company.com', 'Old Name', TRUE, FALSE, CURRENT_TIMESTAMP)");
+        long id = count("SELECT id FROM users WHERE username = 'asmith@company.com'");
+        jdbcTemplate.update("INSERT INTO user_roles (user_id, role) VALUES (?, 'AUDITOR')", id);
+
+        syncService.synchronize();
+
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+            "SELECT id, common_name, object_guid FROM users WHERE username = 'asmith@company.com'");
+        assertEquals(id, ((Number) row.get("ID")).longValue());
+        assertEquals("Alice Smith", row.get("COMMON_NAME"));
+        assertNotNull(row.get("OBJECT_GUID"));
+        List<String> roles = jdbcTemplate.queryForList(
+            "SELECT role FROM user_roles WHERE user_id = ?", String.class, id);
+        assertTrue(roles.contains("RA_ADMIN"));
+        assertFalse(roles.contains("AUDITOR"));
+    }
+
+    @Test
+    void formatGuid_shouldUseActiveDirectoryByteOrder() {
+        byte[] guid = {
+            0x33, 0x22, 0x11, 0x00, 0x55, 0x44, 0x77, 0x66,
+            (byte) 0x88, (byte) 0x99, (byte) 0xaa, (byte) 0xbb, (byte) 0xcc, (byte) 0xdd, (byte) 0xee, (byte) 0xff
+        };
+
+        assertEquals("00112233-4455-6677-8899-aabbccddeeff", DirectorySyncService.formatGuid(guid));
+    }
+
+    private void startServer(List<Entry> entries, long highestCommittedUsn, String serverId) throws Exception {
+        server = server(entries, highestCommittedUsn, serverId);
+        ReflectionTestUtils.setField(syncService, "contextSource",
+            contextSource("ldap://localhost:" + server.getListenPort()));
+    }
+
+    private static InMemoryDirectoryServer server(List<Entry> entries, long highestCommittedUsn, String serverId)
+            throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE);
+        config.setSchema(null);
+        config.setCustomRootDSEAttributes(List.of(
+            new Attribute("highestCommittedUSN", String.valueOf(highestCommittedUsn)),
+            new Attribute("dsServiceName", serverId)));
+        InMemoryDirectoryServer server = new InMemoryDirectoryServer(config);
+        server.addEntries(entries);
+        server.startListening();
+        return server;
+    }
+
+    private LdapContextSource contextSource(String url) {
+        LdapContextSource contextSource = new LdapContextSource();
+        contextSource.setUrl(url);
+        contextSource.setAnonymousReadOnly(true);
+        contextSource.setPooled(false);
+        contextSource.setBaseEnvironmentProperties(Map.of("java.naming.ldap.attributes.binary", "objectGUID"));
+        contextSource.afterPropertiesSet();
+        return contextSource;
+    }
+
+    // The root DSE is fixed per server, so a new USN or DC means a new server with the same entries
+    private void restartServer(long highestCommittedUsn, String serverId) throws Exception {
+        List<Entry> entries = new ArrayList<>(server.search(BASE, SearchScope.SUB, "(objectClass=*)")
+            .getSearchEntries());
+        entries.sort(Comparator.comparingInt(entry -> entry.getDN().length()));
+        server.shutDown(true);
+        startServer(entries, highestCommittedUsn, serverId);
+    }
+
+    private long count(String sql) {
+        return jdbcTemplate.queryForObject(sql, Long.class);
+    }
+
+    private static Entry user(String sam, String cn, String userAccountControl, long usnChanged, String... groups) {
+        Entry entry = new Entry("CN=" + cn + "," + USERS);
+        entry.addAttribute("objectClass", "user");
+        entry.addAttribute("objectCategory", "person");
+        entry.addAttribute("cn", cn);
+        entry.addAttribute("sAMAccountName", sam);
+        entry.addAttribute("userPrincipalName", sam + "@company.com");
+        entry.addAttribute("mail", sam + "@company.com");
+        entry.addAttribute("userAccountControl", userAccountControl);
+        entry.addAttribute("uSNChanged", String.valueOf(usnChanged));
+        entry.addAttribute("objectGUID", uuidBytes(UUID.randomUUID()));
+        for (String group : groups) {
+            entry.addAttribute("memberOf", "CN=" + group + ",OU=Groups," + BASE);
+        }
+        return entry;
+    }
+
+    private static byte[] uuidBytes(UUID uuid) {
+        byte[] bytes = new byte[16];
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (msb >>> (56 - 8 * i));
+            bytes[8 + i] = (byte) (lsb >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,457 @@
+package com.company.ra.service;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedSearchEntry;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.ReadOnlySearchRequest;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.schema.Schema;
+import org.springframework.ldap.core.support.LdapContextSource;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * In-memory directory shaped like Active Directory, for benchmarks and integration tests
+ *
+ * Loads the AD schema subset from ad-schema.ldif and a synthetic, seeded
+ * directory: users spread over one OU per department under OU=Users, and
+ * groups under OU=Groups nested nesting-depth levels deep. Users are direct
+ * members of groups at the deepest level; group-in-group links point one
+ * level up, some groups having two parents. memberOf is stored as AD would
+ * compute it, and tokenGroups (every group a user is in, transitively, plus
+ * Domain Users) is added to base-scope reads that ask for it, as in AD.
+ * The first groups at the top level are the PKI-* groups of the default
+ * role mapping, so role resolution is exercised as well.
+ */
+public final class EmbeddedAdDirectory implements AutoCloseable {
+
+    public static final String BASE_DN = "DC=company,DC=com";
+    public static final String USERS_DN = "OU=Users," + BASE_DN;
+    public static final String GROUPS_DN = "OU=Groups," + BASE_DN;
+    public static final String ADMIN_DN = "CN=Administrator,CN=Users," + BASE_DN;
+    public static final String ADMIN_PASSWORD = "Bench-Passw0rd";
+    public static final String DOMAIN = "company.com";
+
+    static final String DOMAIN_SID = "S-1-5-21-1004336348-1177238915-682003330";
+    static final int DOMAIN_USERS_RID = 513;
+    private static final int USER_RID_BASE = 1000;
+    private static final int GROUP_RID_BASE = 1_000_000;
+
+    private static final String[] ROLE_GROUPS = {"PKI-RA-Admins", "PKI-RA-Officers", "PKI-RA-Operators", "PKI-Auditors"};
+    private static final String[] DEPARTMENTS = {"Engineering", "Sales", "Finance", "Marketing", "Support",
+        "Legal", "Operations", "Research", "Human Resources", "IT"};
+    private static final String[] FIRST_NAMES = {"Anna", "Ben", "Clara", "David", "Emma", "Felix", "Greta", "Hugo",
+        "Ida", "Jonas", "Klara", "Leon", "Mia", "Noah", "Olga", "Paul", "Rosa", "Simon", "Tara", "Uwe"};
+    private static final String[] LAST_NAMES = {"Schmidt", "Mueller", "Schneider", "Fischer", "Weber", "Meyer",
+        "Wagner", "Becker", "Schulz", "Hoffmann", "Koch", "Richter", "Klein", "Wolf", "Neumann", "Schwarz",
+        "Braun", "Zimmermann", "Krueger", "Hartmann", "Lange", "Werner", "Krause", "Lehmann", "Koehler"};
+    private static final DateTimeFormatter GENERALIZED_TIME =
+        DateTimeFormatter.ofPattern("yyyyMMddHHmmss'.0Z'").withZone(ZoneOffset.UTC);
+
+    /**
+     * Directory size and shape
+     *
+     * @param users Number of users
+     * @param departments Number of department OUs under OU=Users
+     * @param groups Number of groups, including the four PKI-* role groups
+     * @param nestingDepth Group levels; 1 means no nesting
+     * @param groupsPerUser Direct group memberships per user
+     * @param disabledEvery Every n-th user is disabled (0 for none)
+     * @param seed Random seed, so runs compare like with like
+     */
+    public record Spec(int users, int departments, int groups, int nestingDepth, int groupsPerUser,
+                       int disabledEvery, long seed) {
+
+        public Spec {
+            if (users < 1 || departments < 1 || nestingDepth < 1 || groupsPerUser < 0) {
+                throw new IllegalArgumentException("Invalid directory spec");
+            }
+            if (groups < Math.max(ROLE_GROUPS.length, nestingDepth)) {
+                throw new IllegalArgumentException("Need at least " + Math.max(ROLE_GROUPS.length, nestingDepth)
+                    + " groups");
+            }
+        }
+
+        public static Spec defaults() {
+            return new Spec(10_000, 20, 500, 4, 5, 50, 42);
+        }
+
+        public static Spec of(int users, int groups, int nestingDepth) {
+            Spec defaults = defaults();
+            return new Spec(users, defaults.departments(), groups, nestingDepth, defaults.groupsPerUser(),
+                defaults.disabledEvery(), defaults.seed());
+        }
+    }
+
+    private final Spec spec;
+    private final InMemoryDirectoryServer server;
+    // Group indexes per level, top level first
+    private final int[][] levels;
+    private final List<Set<Integer>> parents = new ArrayList<>();
+    private final List<Set<Integer>> ancestors = new ArrayList<>();
+    private final int[][] userGroups;
+    // Normalized user DN -> binary tokenGroups values
+    private final Map<String, byte[][]> tokenGroups = new HashMap<>();
+
+    private EmbeddedAdDirectory(Spec spec) throws Exception {
+        this.spec = spec;
+        this.levels = new int[spec.nestingDepth()][];
+        this.userGroups = new int[spec.users()][];
+
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+        config.setSchema(Schema.mergeSchemas(Schema.getDefaultStandardSchema(), loadAdSchema()));
+        config.addAdditionalBindCredentials(ADMIN_DN, ADMIN_PASSWORD);
+        config.addInMemoryOperationInterceptor(new TokenGroupsInterceptor());
+        config.setMaxSizeLimit(0);
+        // Attributes AD indexes; without these every lookup scans the whole directory
+        config.setEqualityIndexAttributes("cn", "sAMAccountName", "userPrincipalName", "mail", "objectSid", "member");
+        server = new InMemoryDirectoryServer(config);
+        server.addEntries(generate());
+    }
+
+    /**
+     * Generate the directory and start listening on a free port
+     *
+     * @param spec Size and shape
+     * @return Running directory
+     */
+    public static EmbeddedAdDirectory start(Spec spec) throws Exception {
+        EmbeddedAdDirectory directory = new EmbeddedAdDirectory(spec);
+        directory.server.startListening();
+        return directory;
+    }
+
+    private static Schema loadAdSchema() throws Exception {
+        try (InputStream in = EmbeddedAdDirectory.class.getResourceAsStream("ad-schema.ldif")) {
+            if (in == null) {
+                throw new IllegalStateException("ad-schema.ldif not found on the test classpath");
+            }
+            return Schema.getSchema(in);
+        }
+    }
+
+    private List<Entry> generate() throws LDAPException {
+        Random random = new Random(spec.seed());
+        String now = GENERALIZED_TIME.format(Instant.parse("2025-01-01T00:00:00Z"));
+        List<Entry> entries = new ArrayList<>();
+        entries.add(new Entry(BASE_DN, attrs("objectClass", "top", "domain"), attrs("dc", "company")));
+        entries.add(new Entry(USERS_DN, attrs("objectClass", "top", "organizationalUnit"), attrs("ou", "Users")));
+        entries.add(new Entry(GROUPS_DN, attrs("objectClass", "top", "organizationalUnit"), attrs("ou", "Groups")));
+        for (int d = 0; d < spec.departments(); d++) {
+            entries.add(new Entry(departmentDn(d), attrs("objectClass", "top", "organizationalUnit"),
+                attrs("ou", departmentName(d))));
+        }
+
+        // Group levels and parent links, then transitive ancestors (each group's parents are one level up)
+        int groups = spec.groups();
+        for (int level = 0; level < levels.length; level++) {
+            int from = level * groups / levels.length;
+            int to = (level + 1) * groups / levels.length;
+            levels[level] = new int[to - from];
+            for (int g = from; g < to; g++) {
+                levels[level][g - from] = g;
+            }
+        }
+        for (int level = 0; level < levels.length; level++) {
+            for (int g : levels[level]) {
+                Set<Integer> groupParents = new TreeSet<>();
+                if (level > 0) {
+                    int[] above = levels[level - 1];
+                    groupParents.add(above[random.nextInt(above.length)]);
+                    if (g % 7 == 0) {
+                        groupParents.add(above[random.nextInt(above.length)]);
+                    }
+                }
+                parents.add(groupParents);
+                Set<Integer> groupAncestors = new TreeSet<>();
+                groupAncestors.add(g);
+                for (int parent : groupParents) {
+                    groupAncestors.addAll(ancestors.get(parent));
+                }
+                ancestors.add(groupAncestors);
+            }
+        }
+
+        // Users, members of random groups at the deepest level
+        int[] leaves = levels[levels.length - 1];
+        List<List<String>> members = new ArrayList<>();
+        for (int g = 0; g < groups; g++) {
+            members.add(new ArrayList<>());
+        }
+        for (int u = 0; u < spec.users(); u++) {
+            Set<Integer> direct = new TreeSet<>();
+            while (direct.size() < Math.min(spec.groupsPerUser(), leaves.length)) {
+                direct.add(leaves[random.nextInt(leaves.length)]);
+            }
+            userGroups[u] = direct.stream().mapToInt(Integer::intValue).toArray();
+
+            Entry user = new Entry(userDn(u));
+            user.addAttribute("objectClass", "top", "person", "organizationalPerson", "user");
+            user.addAttribute("objectCategory", "person");
+            user.addAttribute("cn", commonName(u));
+            user.addAttribute("sAMAccountName", samAccountName(u));
+            user.addAttribute("userPrincipalName", userPrincipalName(u));
+            user.addAttribute("givenName", firstName(u));
+            user.addAttribute("sn", lastName(u));
+            user.addAttribute("displayName", lastName(u) + ", " + firstName(u));
+            user.addAttribute("mail", firstName(u).toLowerCase() + "." + lastName(u).toLowerCase() + "." + u + "@" + DOMAIN);
+            user.addAttribute("department", department(u));
+            user.addAttribute("title", u % 10 == 0 ? "Manager" : "Specialist");
+            user.addAttribute("company", "Company");
+            user.addAttribute("telephoneNumber", String.format("+49 30 %07d", u));
+            user.addAttribute("userAccountControl", isDisabled(u) ? "514" : "512");
+            user.addAttribute("objectSid", sid(USER_RID_BASE + u));
+            user.addAttribute("objectGUID", guid(random));
+            user.addAttribute("distinguishedName", userDn(u));
+            user.addAttribute("whenCreated", now);
+            user.addAttribute("whenChanged", now);
+            user.addAttribute("uSNChanged", String.valueOf(10_000 + u));
+            for (int g : userGroups[u]) {
+                user.addAttribute("memberOf", groupDn(g));
+                members.get(g).add(userDn(u));
+            }
+            entries.add(user);
+
+            Set<Integer> all = new LinkedHashSet<>();
+            for (int g : userGroups[u]) {
+                all.addAll(ancestors.get(g));
+            }
+            byte[][] values = new byte[all.size() + 1][];
+            int i = 0;
+            values[i++] = sid(DOMAIN_USERS_RID);
+            for (int g : all) {
+                values[i++] = sid(GROUP_RID_BASE + g);
+            }
+            tokenGroups.put(new DN(userDn(u)).toNormalizedString(), values);
+        }
+
+        for (int g = 0; g < groups; g++) {
+            for (int parent : parents.get(g)) {
+                members.get(parent).add(groupDn(g));
+            }
+        }
+        entries.add(group("Domain Users", DOMAIN_USERS_RID, List.of(), Set.of(), random, now));
+        for (int g = 0; g < groups; g++) {
+            entries.add(group(groupName(g), GROUP_RID_BASE + g, members.get(g), parents.get(g), random, now));
+        }
+        return entries;
+    }
+
+    private Entry group(String name, int rid, List<String> members, Set<Integer> memberOf, Random random, String now) {
+        String dn = "CN=" + name + "," + GROUPS_DN;
+        Entry group = new Entry(dn);
+        group.addAttribute("objectClass", "top", "group");
+        group.addAttribute("objectCategory", "group");
+        group.addAttribute("cn", name);
+        group.addAttribute("sAMAccountName", name);
+        // Global security group
+        group.addAttribute("groupType", "-2147483646");
+        group.addAttribute("objectSid", sid(rid));
+        group.addAttribute("objectGUID", guid(random));
+        group.addAttribute("distinguishedName", dn);
+        group.addAttribute("whenCreated", now);
+        group.addAttribute("whenChanged", now);
+        if (!members.isEmpty()) {
+            group.addAttribute("member", members);
+        }
+        for (int parent : memberOf) {
+            group.addAttribute("memberOf", groupDn(parent));
+        }
+        return group;
+    }
+
+    private static com.unboundid.ldap.sdk.Attribute attrs(String name, String... values) {
+        return new com.unboundid.ldap.sdk.Attribute(name, values);
+    }
+
+    /**
+     * Binary SID in the directory's domain
+     *
+     * @param rid Relative ID
+     * @return SID bytes as stored in objectSid and tokenGroups
+     */
+    static byte[] sid(int rid) {
+        String[] parts = (DOMAIN_SID + "-" + rid).split("-");
+        int count = parts.length - 3;
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 4 * count);
+        buffer.put((byte) Integer.parseInt(parts[1]));
+        buffer.put((byte) count);
+        long authority = Long.parseLong(parts[2]);
+        for (int i = 5; i >= 0; i--) {
+            buffer.put((byte) (authority >>> (8 * i)));
+        }
+        for (int i = 0; i < count; i++) {
+            long subAuthority = Long.parseLong(parts[3 + i]);
+            for (int b = 0; b < 4; b++) {
+                buffer.put((byte) (subAuthority >>> (8 * b)));
+            }
+        }
+        return buffer.array();
+    }
+
+    private static byte[] guid(Random random) {
+        byte[] guid = new byte[16];
+        random.nextBytes(guid);
+        return guid;
+    }
+
+    public Spec getSpec() {
+        return spec;
+    }
+
+    public InMemoryDirectoryServer getServer() {
+        return server;
+    }
+
+    public String getUrl() {
+        return "ldap://localhost:" + server.getListenPort();
+    }
+
+    /**
+     * Unpooled service-account context source set up like the production one
+     * (SIDs and GUIDs read as bytes)
+     *
+     * @param base Base DN for relative names, or null for absolute names as used by the RA
+     * @return Initialized context source
+     */
+    public LdapContextSource contextSource(String base) {
+        LdapContextSource source = new LdapContextSource();
+        source.setUrl(getUrl());
+        if (base != null) {
+            source.setBase(base);
+        }
+        source.setUserDn(ADMIN_DN);
+        source.setPassword(ADMIN_PASSWORD);
+        source.setPooled(false);
+        source.setBaseEnvironmentProperties(
+            Map.of("java.naming.ldap.attributes.binary", "objectGUID objectSid tokenGroups"));
+        source.afterPropertiesSet();
+        return source;
+    }
+
+    public String samAccountName(int user) {
+        return String.format("u%06d", user);
+    }
+
+    public String userPrincipalName(int user) {
+        return samAccountName(user) + "@" + DOMAIN;
+    }
+
+    public String commonName(int user) {
+        return firstName(user) + " " + lastName(user) + " " + user;
+    }
+
+    public String userDn(int user) {
+        return "CN=" + commonName(user) + "," + departmentDn(user % spec.departments());
+    }
+
+    public String firstName(int user) {
+        return FIRST_NAMES[user % FIRST_NAMES.length];
+    }
+
+    public String lastName(int user) {
+        return LAST_NAMES[(user / FIRST_NAMES.length) % LAST_NAMES.length];
+    }
+
+    public String department(int user) {
+        return departmentName(user % spec.departments());
+    }
+
+    public boolean isDisabled(int user) {
+        return spec.disabledEvery() > 0 && user % spec.disabledEvery() == spec.disabledEvery() - 1;
+    }
+
+    public String groupName(int group) {
+        return group < ROLE_GROUPS.length ? ROLE_GROUPS[group] : String.format("grp-%05d", group);
+    }
+
+    public String groupDn(int group) {
+        return "CN=" + groupName(group) + "," + GROUPS_DN;
+    }
+
+    /**
+     * Direct group memberships of a user (memberOf)
+     */
+    public Set<String> directGroupNames(int user) {
+        Set<String> names = new TreeSet<>();
+        for (int g : userGroups[user]) {
+            names.add(groupName(g));
+        }
+        return names;
+    }
+
+    /**
+     * Every group a user is in through nesting, as AD's tokenGroups would list it (without Domain Users)
+     */
+    public Set<String> transitiveGroupNames(int user) {
+        Set<String> names = new TreeSet<>();
+        for (int g : userGroups[user]) {
+            for (int ancestor : ancestors.get(g)) {
+                names.add(groupName(ancestor));
+            }
+        }
+        return names;
+    }
+
+    private String departmentName(int department) {
+        return department < DEPARTMENTS.length ? DEPARTMENTS[department] : "Department " + (department + 1);
+    }
+
+    private String departmentDn(int department) {
+        return "OU=" + departmentName(department) + "," + USERS_DN;
+    }
+
+    @Override
+    public void close() {
+        server.shutDown(true);
+    }
+
+    /**
+     * Adds the constructed tokenGroups attribute to base-scope reads of users that request it
+     */
+    private final class TokenGroupsInterceptor extends InMemoryOperationInterceptor {
+
+        @Override
+        public void processSearchEntry(InMemoryInterceptedSearchEntry result) {
+            ReadOnlySearchRequest request = result.getRequest();
+            if (request.getScope() != SearchScope.BASE || !requests(request, "tokenGroups")) {
+                return;
+            }
+            try {
+                byte[][] values = tokenGroups.get(result.getSearchEntry().getParsedDN().toNormalizedString());
+                if (values != null) {
+                    Entry entry = result.getSearchEntry().duplicate();
+                    entry.setAttribute("tokenGroups", values);
+                    result.setSearchEntry(entry);
+                }
+            } catch (LDAPException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private boolean requests(ReadOnlySearchRequest request, String attribute) {
+            for (String requested : request.getAttributeList()) {
+                if (requested.equalsIgnoreCase(attribute)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.company.ra.service;
+
+import com.ad.poc.model.AdUser;
+import com.ad.poc.repository.AdUserLdapRepository;
+import com.company.ra.config.PooledLdapContextSource;
+import com.company.ra.dto.ADUserAttributes;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.ldap.core.LdapTemplate;
+import org.springframework.ldap.core.support.LdapContextSource;
+
+import javax.naming.directory.Attribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The benchmark directory behaves like AD for the code under benchmark
+ */
+class EmbeddedAdDirectoryTest {
+
+    private static final int USERS = 200;
+
+    private static EmbeddedAdDirectory directory;
+    private static PooledLdapContextSource pool;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        directory = EmbeddedAdDirectory.start(EmbeddedAdDirectory.Spec.of(USERS, 40, 3));
+        pool = DirectoryBenchmark.pool(directory.contextSource(null), 4);
+    }
+
+    @AfterAll
+    static void tearDown() throws Exception {
+        pool.destroy();
+        directory.close();
+    }
+
+    @Test
+    void start_shouldGenerateUsersAndGroups() throws Exception {
+        assertEquals(USERS, directory.getServer().search(EmbeddedAdDirectory.USERS_DN,
+            com.unboundid.ldap.sdk.SearchScope.SUB, "(&(objectClass=user)(objectCategory=person))").getEntryCount());
+        // 40 generated groups plus Domain Users
+        assertEquals(41, directory.getServer().search(EmbeddedAdDirectory.GROUPS_DN,
+            com.unboundid.ldap.sdk.SearchScope.ONE, "(objectClass=group)").getEntryCount());
+        assertTrue(directory.transitiveGroupNames(7).containsAll(directory.directGroupNames(7)));
+        assertTrue(directory.transitiveGroupNames(7).size() > directory.directGroupNames(7).size());
+    }
+
+    @Test
+    void tokenGroups_shouldListTransitiveGroupsOnBaseReads() throws Exception {
+        DirContext context = pool.getReadOnlyContext();
+        try {
+            Attribute tokenGroups = context.getAttributes(directory.userDn(7), new String[] {"tokenGroups"})
+                .get("tokenGroups");
+            Set<String> sids = new TreeSet<>();
+            for (int i = 0; i < tokenGroups.size(); i++) {
+                sids.add(ADGroupIndex.formatSid((byte[]) tokenGroups.get(i)));
+            }
+            assertEquals(directory.transitiveGroupNames(7).size() + 1, sids.size());
+            assertTrue(sids.contains(EmbeddedAdDirectory.DOMAIN_SID + "-" + EmbeddedAdDirectory.DOMAIN_USERS_RID));
+
+            // Not returned by subtree searches, as in AD
+            SearchControls controls = new SearchControls();
+            controls.setSearchScope(SearchControls.SUBTREE_SCOPE);
+            controls.setReturningAttributes(new String[] {"tokenGroups"});
+            var results = context.search(EmbeddedAdDirectory.USERS_DN,
+                "(sAMAccountName=" + directory.samAccountName(7) + ")", controls);
+            assertNull(results.next().getAttributes().get("tokenGroups"));
+            results.close();
+        } finally {
+            context.close();
+        }
+    }
+
+    @Test
+    void activeDirectoryService_shouldResolveNestedGroupsAndRoles() throws Exception {
+        ActiveDirectoryService service = DirectoryBenchmark.activeDirectoryService(pool, false);
+        try {
+            int user = 7;
+            ADUserAttributes attributes = service.authenticate(directory.userPrincipalName(user), null, null, null);
+
+            assertNotNull(attributes);
+            assertEquals(directory.userPrincipalName(user), attributes.getUsername());
+            assertEquals(directory.userDn(user), attributes.getDistinguishedName());
+            assertTrue(attributes.getAdGroups().containsAll(directory.transitiveGroupNames(user)));
+            assertTrue(attributes.getRoles().contains("END_ENTITY"));
+            Set<String> roleGroups = new HashSet<>(directory.transitiveGroupNames(user));
+            roleGroups.retainAll(Set.of("PKI-RA-Admins", "PKI-RA-Officers", "PKI-RA-Operators", "PKI-Auditors"));
+            assertEquals(roleGroups.size() + 1, attributes.getRoles().size());
+            // Search, tokenGroups read, group SID lookup
+            assertEquals(3, service.getOperationCount());
+
+            assertNull(service.authenticate(directory.userPrincipalName(49), null, null, null));
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void adUserRepository_shouldFindAndSearchUsers() {
+        LdapContextSource source = directory.contextSource(EmbeddedAdDirectory.BASE_DN);
+        AdUserLdapRepository repository = new AdUserLdapRepository(new LdapTemplate(source));
+
+        AdUser user = repository.findBySamAccountName(directory.samAccountName(12));
+        assertNotNull(user);
+        assertEquals(directory.department(12), user.getDepartment());
+
+        List<AdUser> found = repository.search(directory.firstName(12).toLowerCase() + "." + directory.lastName(12).toLowerCase());
+        assertFalse(found.isEmpty());
+        assertTrue(found.stream().allMatch(u -> directory.firstName(12).equals(u.getFirstName())));
+    }
+
+    @Test
+    void ldapService_shouldCheckAndAddUsersUnderAdSchema() throws Exception {
+        LDAPService service = new LDAPService(directory.getUrl(), EmbeddedAdDirectory.ADMIN_DN,
+            EmbeddedAdDirectory.ADMIN_PASSWORD, EmbeddedAdDirectory.BASE_DN, false);
+        try {
+            assertTrue(service.checkUserExists(directory.commonName(3)));
+            assertFalse(service.checkUserExists("nobody"));
+            assertTrue(service.createOUIfNotExists("RA Users"));
+            // AD's person class does not require sn
+            assertTrue(service.addUser("bench-added", "Passw0rd!", "RA Users"), String.valueOf(service.getLastError()));
+            assertTrue(service.checkUserInOU("bench-added", "RA Users"));
+        } finally {
+            service.close();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.company.ra.service;
+
+import com.company.ra.dto.ADUserAttributes;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JWTTokenServiceTest {
+
+    private JWTTokenService jwtTokenService;
+
+    @BeforeEach
+    void setUp() {
+        jwtTokenService = newService(86400, 100);
+    }
+
+    @Test
+    void verify_shouldReturnPrincipalFromToken() {
+        String token = jwtTokenService.generateToken(user());
+
+        VerifiedToken verified = jwtTokenService.verify(token);
+
+        assertNotNull(verified);
+        assertEquals("jdoe", verified.getSubject());
+        assertEquals(List.of("RA_OFFICER", "END_ENTITY"), verified.getRoles());
+        assertTrue(verified.getExpiresAtMillis() > System.currentTimeMillis());
+    }
+
+    @Test
+    void verify_shouldServeRepeatedTokenFromCache() {
+        String token = jwtTokenService.generateToken(user());
+
+        VerifiedToken first = jwtTokenService.verify(token);
+        VerifiedToken second = jwtTokenService.verify(token);
+
+        assertSame(first, second);
+        assertEquals("jdoe", jwtTokenService.extractUsername(token));
+        assertEquals(List.of("RA_OFFICER", "END_ENTITY"), jwtTokenService.extractRoles(token));
+    }
+
+    @Test
+    void verify_shouldRejectTamperedToken() {
+        String token = jwtTokenService.generateToken(user());
+        int signatureStart = token.lastIndexOf('.') + 1;
+        char flipped = token.charAt(signatureStart) == 'A' ? 'B' : 'A';
+        String tampered = token.substring(0, signatureStart) + flipped + token.substring(signatureStart + 1);
+
+        assertNull(jwtTokenService.verify(tampered));
+        assertFalse(jwtTokenService.validateToken(tampered));
+        assertEquals(List.of(), jwtTokenService.extractRoles(tampered));
+    }
+
+    @Test
+    void invalidateToken_shouldRejectCachedTokenAfterLogout() {
+        String token = jwtTokenService.generateToken(user());
+        VerifiedToken verified = jwtTokenService.verify(token);
+        assertNotNull(verified.getTokenId());
+
+        assertTrue(jwtTokenService.invalidateToken(token));
+
+        assertNull(jwtTokenService.verify(token));
+        assertNotNull(jwtTokenService.verify(jwtTokenService.generateToken(user())));
+    }
+
+    @Test
+    void verify_shouldNotServeCachedTokenPastExpiry() throws InterruptedException {
+        JWTTokenService shortLived = newService(2, 100);
+        String token = shortLived.generateToken(user());
+        assertNotNull(shortLived.verify(token));
+
+        Thread.sleep(2100);
+
+        assertNull(shortLived.verify(token));
+    }
+
+    @Test
+    void verifyAll_shouldReturnResultsInRequestOrder() {
+        JWTTokenService parallel = newService(86400, 100);
+        ReflectionTestUtils.setField(parallel, "batchParallelism", 4);
+        parallel.init();
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            tokens.add(parallel.generateToken(user("user" + i)));
+        }
+        String revoked = parallel.generateToken(user());
+        parallel.invalidateToken(revoked);
+        tokens.add(revoked);
+        tokens.add("not-a-jwt");
+        tokens.add(null);
+        tokens.add(tokens.get(3));
+
+        List<VerifiedToken> results = parallel.verifyAll(tokens);
+
+        assertEquals(tokens.size(), results.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("user" + i, results.get(i).getSubject());
+        }
+        assertNull(results.get(20));
+        assertNull(results.get(21));
+        assertNull(results.get(22));
+        assertSame(results.get(3), results.get(23));
+        parallel.shutdown();
+    }
+
+    @Test
+    void verifyAll_shouldReportAFailingTokenAsInvalidWithoutFailingTheBatch() {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tokens.add(jwtTokenService.generateToken(user("user" + i)));
+        }
+        String failingId = jwtTokenService.verify(tokens.get(5)).getTokenId();
+        JWTTokenService parallel = newService(86400, 100);
+        TokenRevocationService revocations = mock(TokenRevocationService.class);
+        when(revocations.isRevoked(failingId)).thenThrow(new IllegalStateException("revocation store unavailable"));
+        ReflectionTestUtils.setField(parallel, "tokenRevocationService", revocations);
+        ReflectionTestUtils.setField(parallel, "batchParallelism", 4);
+        parallel.init();
+
+        List<VerifiedToken> results = parallel.verifyAll(tokens);
+
+        for (int i = 0; i < 8; i++) {
+            if (i == 5) {
+                assertNull(results.get(i));
+            } else {
+                assertEquals("user" + i, results.get(i).getSubject());
+            }
+        }
+        parallel.shutdown();
+    }
+
+    @Test
+    void verifyAll_shouldShareCacheWithSingleVerify() {
+        String token = jwtTokenService.generateToken(user());
+        VerifiedToken single = jwtTokenService.verify(token);
+
+        List<VerifiedToken> results = jwtTokenService.verifyAll(List.of(token, token));
+
+        assertSame(single, results.get(0));
+        assertSame(single, results.get(1));
+        assertSame(results.get(0), jwtTokenService.verify(token));
+    }
+
+    @Test
+    void es256_shouldSignWithKidAndVerifyAcrossRotation() {
+        SigningKeyService signingKeyService = SigningKeyServiceTest.newService(SigningKeyService.ALGORITHM_ES256);
+        JWTTokenService es256 = newService(86400, 100, signingKeyService);
+        String token = es256.generateToken(user());
+        String header = new String(Base64.getUrlDecoder().decode(token.substring(0, token.indexOf('.'))));
+
+        assertTrue(header.contains("\"alg\":\"ES256\""));
+        assertTrue(header.contains("\"kid\":\"" + signingKeyService.getActiveKey().getKid() + "\""));
+        assertEquals("jdoe", es256.verify(token).getSubject());
+
+        signingKeyService.rotate();
+        JWTTokenService afterRotation = newService(86400, 100, signingKeyService);
+
+        assertNotNull(afterRotation.verify(token));
+        assertNotNull(afterRotation.verify(afterRotation.generateToken(user())));
+        signingKeyService.shutdown();
+    }
+
+    @Test
+    void es256_shouldAcceptHs256TokensOnlyDuringMigration() {
+        String hs256Token = jwtTokenService.generateToken(user());
+        SigningKeyService signingKeyService = SigningKeyServiceTest.newService(SigningKeyService.ALGORITHM_ES256);
+
+        assertNotNull(newService(86400, 100, signingKeyService).verify(hs256Token));
+
+        ReflectionTestUtils.setField(signingKeyService, "acceptHs256", false);
+        assertNull(newService(86400, 100, signingKeyService).verify(hs256Token));
+        signingKeyService.shutdown();
+    }
+
+    @Test
+    void es256_shouldRejectTokenFromUnknownKey() {
+        SigningKeyService issuerKeys = SigningKeyServiceTest.newService(SigningKeyService.ALGORITHM_ES256);
+        SigningKeyService otherKeys = SigningKeyServiceTest.newService(SigningKeyService.ALGORITHM_ES256);
+        String token = newService(86400, 100, issuerKeys).generateToken(user());
+
+        assertNull(newService(86400, 100, otherKeys).verify(token));
+        issuerKeys.shutdown();
+        otherKeys.shutdown();
+    }
+
+    private static JWTTokenService newService(long expirationSeconds, int cacheSize) {
+        return newService(expirationSeconds, cacheSize,
+            SigningKeyServiceTest.newService(SigningKeyService.ALGORITHM_HS256));
+    }
+
+    private static JWTTokenService newService(long expirationSeconds, int cacheSize,
+                                              SigningKeyService signingKeyService) {
+        JWTTokenService service = new JWTTokenService();
+        ReflectionTestUtils.setField(service, "jwtSecret", "a-shared-jwt-secret-that-is-long-enough-for-hs256");
+        ReflectionTestUtils.setField(service, "jwtExpirationSeconds", expirationSeconds);
+        ReflectionTestUtils.setField(service, "jwtIssuer", "RA-Service");
+        ReflectionTestUtils.setField(service, "verifiedTokenCacheSize", cacheSize);
+        ReflectionTestUtils.setField(service, "nonceService", nonceService());
+        ReflectionTestUtils.setField(service, "tokenRevocationService",
+            TokenRevocationServiceTest.newService(new TokenRevocationServiceTest.InMemoryRevocationChannel()));
+        ReflectionTestUtils.setField(service, "signingKeyService", signingKeyService);
+        service.init();
+        return service;
+    }
+
+    private static NonceService nonceService() {
+        NonceService nonceService = new NonceService();
+        ReflectionTestUtils.setField(nonceService, "bufferCapacity", 8);
+        nonceService.init();
+        return nonceService;
+    }
+
+    private static ADUserAttributes user() {
+        return user("jdoe");
+    }
+
+    private static ADUserAttributes user(String username) {
+        ADUserAttributes user = new ADUserAttributes();
+        user.setUsername(username);
+        user.setCommonName("John Doe");
+        user.setEmail("jdoe@company.com");
+        user.setRoles(List.of("RA_OFFICER", "END_ENTITY"));
+        return user;
+    }
+}
@@ -0,0 +1,80 @@
+package com.company.ra.service;
+
+import com.company.ra.entity.RevokedToken;
+import com.company.ra.repository.RevokedTokenRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JdbcRevocationChannelTest {
+
+    private final List<RevokedToken> rows = new ArrayList<>();
+    private final List<String> delivered = new ArrayList<>();
+    private JdbcRevocationChannel channel;
+
+    @BeforeEach
+    void setUp() {
+        RevokedTokenRepository repository = mock(RevokedTokenRepository.class);
+        when(repository.findByExpiresAtAfter(any())).thenAnswer(invocation -> List.copyOf(rows));
+        when(repository.findByIdGreaterThanOrderByIdAsc(anyLong())).thenAnswer(invocation -> {
+            long from = invocation.getArgument(0);
+            return rows.stream().filter(row -> row.getId() > from).toList();
+        });
+
+        channel = new JdbcRevocationChannel();
+        ReflectionTestUtils.setField(channel, "revokedTokenRepository", repository);
+        // Polled by the test only
+        ReflectionTestUtils.setField(channel, "pollInterval", Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        channel.shutdown();
+    }
+
+    @Test
+    void poll_shouldDeliverRowsCommittedAfterAHigherId() {
+        commit(1);
+        channel.subscribe(revocation -> delivered.add(revocation.getTokenId()));
+
+        // 2 is still in flight while 3 commits
+        commit(3);
+        channel.poll();
+        commit(2);
+        channel.poll();
+        channel.poll();
+
+        assertEquals(List.of("jti-1", "jti-3", "jti-2"), delivered);
+    }
+
+    @Test
+    void subscribe_shouldWaitForRowsBelowTheNewestLoaded() {
+        commit(1);
+        commit(3);
+        channel.subscribe(revocation -> delivered.add(revocation.getTokenId()));
+
+        commit(2);
+        channel.poll();
+
+        assertEquals(List.of("jti-1", "jti-3", "jti-2"), delivered);
+    }
+
+    private void commit(long id) {
+        RevokedToken row = new RevokedToken("jti-" + id, Instant.now().plusSeconds(60), "jdoe");
+        row.setId(id);
+        rows.add(row);
+        rows.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+    }
+}
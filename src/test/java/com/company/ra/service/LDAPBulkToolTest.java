@@ -0,0 +1,271 @@
+package com.company.ra.service;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.listener.interceptor.InMemoryInterceptedModifyRequest;
+import com.unboundid.ldap.listener.interceptor.InMemoryOperationInterceptor;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ResultCode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LDAPBulkToolTest {
+
+    private static final String BASE_DN = "dc=corp,dc=local";
+    private static final String ADMIN_DN = "cn=Administrator,cn=Users,dc=corp,dc=local";
+    private static final String ADMIN_PASSWORD = "secret";
+
+    private InMemoryDirectoryServer server;
+    private String url;
+    private volatile boolean rejectPasswords;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(BASE_DN);
+        config.setSchema(null);
+        config.addAdditionalBindCredentials(ADMIN_DN, ADMIN_PASSWORD);
+        config.addInMemoryOperationInterceptor(new InMemoryOperationInterceptor() {
+            @Override
+            public void processModifyRequest(InMemoryInterceptedModifyRequest request) throws LDAPException {
+                for (Modification modification : request.getRequest().getModifications()) {
+                    if (rejectPasswords && modification.getAttributeName().equalsIgnoreCase("unicodePwd")) {
+                        throw new LDAPException(ResultCode.CONSTRAINT_VIOLATION, "password does not meet policy");
+                    }
+                }
+            }
+        });
+        server = new InMemoryDirectoryServer(config);
+        server.add(new Entry("dn: dc=corp,dc=local", "objectClass: domain", "dc: corp"));
+        server.add(new Entry("dn: ou=RA Users,dc=corp,dc=local", "objectClass: organizationalUnit", "ou: RA Users"));
+        server.add(new Entry("dn: ou=Other,dc=corp,dc=local", "objectClass: organizationalUnit", "ou: Other"));
+        server.add(new Entry("dn: cn=alice,ou=RA Users,dc=corp,dc=local", "objectClass: user", "cn: alice",
+            "sAMAccountName: alice"));
+        server.add(new Entry("dn: cn=carol,ou=Other,dc=corp,dc=local", "objectClass: user", "cn: carol",
+            "sAMAccountName: carol"));
+        server.startListening();
+        url = "ldap://localhost:" + server.getListenPort();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.shutDown(true);
+    }
+
+    @Test
+    void run_shouldProcessRowsOnParallelConnectionsInInputOrder() throws Exception {
+        List<LDAPBulkTool.Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            tasks.add(new LDAPBulkTool.Task(i + 1, LDAPBulkTool.Operation.ADD, "user" + i, "pw" + i, "RA Users"));
+        }
+        tasks.add(new LDAPBulkTool.Task(41, LDAPBulkTool.Operation.CHECK, "alice", null, "RA Users"));
+        tasks.add(new LDAPBulkTool.Task(42, LDAPBulkTool.Operation.CHECK, "nobody", null, "RA Users"));
+        tasks.add(new LDAPBulkTool.Task(43, LDAPBulkTool.Operation.CHECK_OU, "carol", null, "RA Users"));
+        tasks.add(new LDAPBulkTool.Task(44, LDAPBulkTool.Operation.CHECK_OU, "carol", null, "Other"));
+        tasks.add(new LDAPBulkTool.Task(45, LDAPBulkTool.Operation.ADD, "alice", "pw", "RA Users"));
+
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        List<LDAPBulkTool.Result> results;
+        System.setOut(new PrintStream(captured, true, StandardCharsets.UTF_8));
+        try {
+            results = new LDAPBulkTool(this::open, 4).run(tasks);
+        } finally {
+            System.setOut(stdout);
+        }
+
+        assertEquals(45, results.size());
+        for (int i = 0; i < 45; i++) {
+            assertEquals(i + 1, results.get(i).task().line());
+        }
+        for (int i = 0; i < 40; i++) {
+            assertFalse(results.get(i).isError(), results.get(i).error());
+            assertTrue(results.get(i).result());
+            assertNotNull(server.getEntry("cn=user" + i + ",ou=RA Users,dc=corp,dc=local"));
+        }
+        assertTrue(results.get(40).result());
+        assertFalse(results.get(41).result());
+        assertFalse(results.get(41).isError());
+        assertFalse(results.get(42).result());
+        assertTrue(results.get(43).result());
+        assertTrue(results.get(44).isError());
+        assertTrue(results.get(44).error().startsWith("NameAlreadyBoundException"));
+        assertEquals("user7@corp.local",
+            server.getEntry("cn=user7,ou=RA Users,dc=corp,dc=local").getAttributeValue("userPrincipalName"));
+        assertEquals("512",
+            server.getEntry("cn=user7,ou=RA Users,dc=corp,dc=local").getAttributeValue("userAccountControl"));
+        // Quiet services print nothing
+        assertEquals("", captured.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void run_shouldReportRowsAsErrorsWhenServerIsUnreachable() throws Exception {
+        server.shutDown(true);
+        List<LDAPBulkTool.Task> tasks = List.of(
+            new LDAPBulkTool.Task(1, LDAPBulkTool.Operation.CHECK, "alice", null, "RA Users"),
+            new LDAPBulkTool.Task(2, LDAPBulkTool.Operation.CHECK, "bob", null, "RA Users"));
+
+        List<LDAPBulkTool.Result> results = new LDAPBulkTool(this::open, 2).run(tasks);
+
+        assertTrue(results.stream().allMatch(LDAPBulkTool.Result::isError));
+        assertTrue(results.get(0).error().startsWith("Connection failed"));
+        assertEquals(2, LDAPBulkTool.summarize(results, 1).failed());
+    }
+
+    @Test
+    void readTasks_shouldParseHeaderQuotesAndDefaultOu() throws Exception {
+        String csv = "operation,username,password,ou\n"
+            + "check,alice\n"
+            + "\n"
+            + "add,\"smith, j\",\"p\"\"w\",Sales\n"
+            + "CHECK-OU,bob,,\n";
+
+        List<LDAPBulkTool.Task> tasks = LDAPBulkTool.readTasks(new StringReader(csv), "RA Users");
+
+        assertEquals(3, tasks.size());
+        assertEquals(new LDAPBulkTool.Task(2, LDAPBulkTool.Operation.CHECK, "alice", null, "RA Users"), tasks.get(0));
+        assertEquals(new LDAPBulkTool.Task(4, LDAPBulkTool.Operation.ADD, "smith, j", "p\"w", "Sales"), tasks.get(1));
+        assertEquals(new LDAPBulkTool.Task(5, LDAPBulkTool.Operation.CHECK_OU, "bob", null, "RA Users"), tasks.get(2));
+    }
+
+    @Test
+    void readTasks_shouldKeepQuotedLineBreaksInOneRow() throws Exception {
+        String csv = "add,bob,\"pw\r\nwith break\",Sales\r\n"
+            + "check,alice\r\n";
+
+        List<LDAPBulkTool.Task> tasks = LDAPBulkTool.readTasks(new StringReader(csv), "RA Users");
+
+        assertEquals(new LDAPBulkTool.Task(1, LDAPBulkTool.Operation.ADD, "bob", "pw\r\nwith break", "Sales"),
+            tasks.get(0));
+        assertEquals(new LDAPBulkTool.Task(3, LDAPBulkTool.Operation.CHECK, "alice", null, "RA Users"), tasks.get(1));
+        IllegalArgumentException noPassword = assertThrows(IllegalArgumentException.class,
+            () -> LDAPBulkTool.readTasks(new StringReader(csv + "add,\"x\ny\"\n"), "RA Users"));
+        assertEquals("Line 4: password is required for add", noPassword.getMessage());
+    }
+
+    @Test
+    void readTasks_shouldRejectInvalidRowsWithLineNumber() {
+        IllegalArgumentException unknown = assertThrows(IllegalArgumentException.class,
+            () -> LDAPBulkTool.readTasks(new StringReader("check,alice\ndelete,bob\n"), "RA Users"));
+        assertTrue(unknown.getMessage().startsWith("Line 2: unknown operation"));
+
+        IllegalArgumentException noPassword = assertThrows(IllegalArgumentException.class,
+            () -> LDAPBulkTool.readTasks(new StringReader("add,bob\n"), "RA Users"));
+        assertEquals("Line 1: password is required for add", noPassword.getMessage());
+    }
+
+    @Test
+    void writeResults_shouldWriteOneCsvRowPerResult() throws Exception {
+        LDAPBulkTool.Task check = new LDAPBulkTool.Task(1, LDAPBulkTool.Operation.CHECK, "alice", null, "RA Users");
+        LDAPBulkTool.Task add = new LDAPBulkTool.Task(2, LDAPBulkTool.Operation.ADD, "smith, j", "pw", "RA Users");
+        StringWriter writer = new StringWriter();
+
+        LDAPBulkTool.writeResults(List.of(
+            new LDAPBulkTool.Result(check, true, 1_500_000, null),
+            new LDAPBulkTool.Result(add, false, 2_000_000, "NamingException: \"busy\"")), writer);
+
+        assertEquals("line,operation,username,ou,status,result,latency_ms,error\n"
+            + "1,check,alice,,OK,true,1.500,\n"
+            + "2,add,\"smith, j\",RA Users,ERROR,,2.000,\"NamingException: \"\"busy\"\"\"\n", writer.toString());
+    }
+
+    @Test
+    void summarize_shouldComputeThroughputAndPercentiles() {
+        LDAPBulkTool.Task task = new LDAPBulkTool.Task(1, LDAPBulkTool.Operation.CHECK, "alice", null, "RA Users");
+        List<LDAPBulkTool.Result> results = new ArrayList<>();
+        for (int i = 100; i >= 1; i--) {
+            results.add(new LDAPBulkTool.Result(task, true, i * 1_000_000L, i == 1 ? "error" : null));
+        }
+
+        LDAPBulkTool.Summary summary = LDAPBulkTool.summarize(results, 2_000_000_000L);
+
+        assertEquals(100, summary.total());
+        assertEquals(1, summary.failed());
+        assertEquals(50.0, summary.throughput(), 0.001);
+        assertEquals(50.0, summary.percentileMillis(50), 0.001);
+        assertEquals(99.0, summary.percentileMillis(99), 0.001);
+        assertEquals(100.0, summary.percentileMillis(100), 0.001);
+    }
+
+    @Test
+    void run_shouldReadInputAndWriteResultFile(@TempDir Path dir) throws Exception {
+        Path input = dir.resolve("users.csv");
+        Files.writeString(input, "operation,username,password,ou\ncheck,alice\nadd,dave,pw\ncheck,nobody\n");
+        Path output = dir.resolve("out.csv");
+
+        int exit = LDAPBulkTool.run(new String[] {"--input=" + input, "--output=" + output, "--url=" + url,
+            "--bind-dn=" + ADMIN_DN, "--password=" + ADMIN_PASSWORD, "--base-dn=" + BASE_DN, "--threads=2"});
+
+        assertEquals(0, exit);
+        List<String> lines = Files.readAllLines(output);
+        assertEquals(4, lines.size());
+        assertTrue(lines.get(1).startsWith("2,check,alice,,OK,true,"));
+        assertTrue(lines.get(2).startsWith("3,add,dave,RA Users,OK,true,"));
+        assertTrue(lines.get(3).startsWith("4,check,nobody,,OK,false,"));
+        assertNotNull(server.getEntry("cn=dave,ou=RA Users,dc=corp,dc=local"));
+        assertEquals(2, LDAPBulkTool.run(new String[] {"--output=" + output}));
+    }
+
+    @Test
+    void run_shouldRejectInvalidNumericOptions(@TempDir Path dir) throws Exception {
+        Path input = dir.resolve("users.csv");
+        Files.writeString(input, "check,alice\n");
+
+        for (String option : new String[] {"--threads=eight", "--threads=0", "--max-rate=fast", "--max-rate=-1"}) {
+            assertEquals(2, LDAPBulkTool.run(new String[] {"--input=" + input, "--url=" + url, option}), option);
+        }
+    }
+
+    @Test
+    void addUser_shouldEscapeNamesInTheDn() throws Exception {
+        LDAPService service = open();
+        try {
+            assertTrue(service.addUser("smith, j", "pw", "RA Users"));
+            assertNotNull(server.getEntry("cn=smith\\, j,ou=RA Users,dc=corp,dc=local"));
+            // Part of the name, not a different parent
+            assertTrue(service.addUser("eve,ou=Other", "pw", "RA Users"));
+            assertNull(server.getEntry("cn=eve,ou=Other,dc=corp,dc=local"));
+            assertNotNull(server.getEntry("cn=eve\\,ou\\=Other,ou=RA Users,dc=corp,dc=local"));
+        } finally {
+            service.close();
+        }
+    }
+
+    @Test
+    void addUser_shouldRemoveTheUserWhenThePasswordIsRejected() throws Exception {
+        rejectPasswords = true;
+        LDAPService service = open();
+        try {
+            assertFalse(service.addUser("dave", "weak", "RA Users"));
+            assertTrue(service.getLastError().getMessage().contains("password does not meet policy"));
+            assertNull(server.getEntry("cn=dave,ou=RA Users,dc=corp,dc=local"));
+
+            // A rerun creates the user
+            rejectPasswords = false;
+            assertTrue(service.addUser("dave", "strong", "RA Users"));
+            assertEquals("512",
+                server.getEntry("cn=dave,ou=RA Users,dc=corp,dc=local").getAttributeValue("userAccountControl"));
+        } finally {
+            service.close();
+        }
+    }
+
+    private LDAPService open() throws Exception {
+        return new LDAPService(url, ADMIN_DN, ADMIN_PASSWORD, BASE_DN, false);
+    }
+}
@@ -0,0 +1,66 @@
+package com.company.ra.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NonceServiceTest {
+
+    private NonceService nonceService;
+
+    @BeforeEach
+    void setUp() {
+        nonceService = new NonceService();
+        ReflectionTestUtils.setField(nonceService, "bufferCapacity", 8);
+        nonceService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        nonceService.shutdown();
+    }
+
+    @Test
+    void init_shouldPrefillBuffers() {
+        assertEquals(8, nonceService.getChallengeBufferDepth());
+    }
+
+    @Test
+    void nextChallenge_shouldReturnDistinctValuesOfExpectedSize() {
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            byte[] challenge = nonceService.nextChallenge();
+            assertEquals(NonceService.CHALLENGE_SIZE, challenge.length);
+            assertTrue(seen.add(Arrays.toString(challenge)));
+        }
+        assertEquals(NonceService.SALT_SIZE, nonceService.nextSalt().length);
+    }
+
+    @Test
+    void nextChallenge_shouldGenerateInlineWhenBufferIsEmpty() {
+        nonceService.shutdown();
+        for (int i = 0; i < 8; i++) {
+            nonceService.nextChallenge();
+        }
+
+        assertEquals(NonceService.CHALLENGE_SIZE, nonceService.nextChallenge().length);
+        assertEquals(1, nonceService.getRefillStalls());
+    }
+
+    @Test
+    void nextUUID_shouldBeVersion4() {
+        UUID uuid = nonceService.nextUUID();
+
+        assertEquals(4, uuid.version());
+        assertEquals(2, uuid.variant());
+        assertNotEquals(uuid, nonceService.nextUUID());
+    }
+}
@@ -0,0 +1,88 @@
+package com.company.ra.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SealedChallengeServiceTest {
+
+    private SealedChallengeService service;
+    private NonceService nonceService;
+
+    private final byte[] challenge = new byte[32];
+    private final byte[] salt = new byte[16];
+
+    @BeforeEach
+    void setUp() {
+        nonceService = new NonceService();
+        ReflectionTestUtils.setField(nonceService, "bufferCapacity", 16);
+        nonceService.init();
+        service = newService("a-shared-jwt-secret-that-is-long-enough-for-hs256");
+        Arrays.fill(challenge, (byte) 7);
+        Arrays.fill(salt, (byte) 3);
+    }
+
+    @Test
+    void unseal_shouldRestoreSealedChallenge() {
+        String id = UUID.randomUUID().toString();
+        long expiresAt = System.currentTimeMillis() + 60_000;
+
+        String token = service.seal(id, challenge, salt, "jdoe@company.com", expiresAt);
+        ChallengeStore.StoredChallenge opened = service.unseal(token);
+
+        assertNotNull(opened);
+        assertEquals(id, opened.getChallengeId());
+        assertEquals("jdoe@company.com", opened.getUsername());
+        assertArrayEquals(challenge, opened.getChallenge());
+        assertArrayEquals(salt, opened.getSalt());
+        assertEquals(expiresAt, opened.getExpiresAtMillis());
+    }
+
+    @Test
+    void unseal_shouldWorkOnAnotherNodeWithSameSecret() {
+        SealedChallengeService otherNode = newService("a-shared-jwt-secret-that-is-long-enough-for-hs256");
+        String token = service.seal(UUID.randomUUID().toString(), challenge, salt, "jdoe",
+            System.currentTimeMillis() + 60_000);
+
+        assertNotNull(otherNode.unseal(token));
+    }
+
+    @Test
+    void unseal_shouldRejectTamperedToken() {
+        String token = service.seal(UUID.randomUUID().toString(), challenge, salt, "jdoe",
+            System.currentTimeMillis() + 60_000);
+        byte[] raw = Base64.getUrlDecoder().decode(token);
+        raw[raw.length - 1] ^= 0x01;
+
+        assertNull(service.unseal(Base64.getUrlEncoder().withoutPadding().encodeToString(raw)));
+    }
+
+    @Test
+    void unseal_shouldRejectExpiredToken() {
+        String token = service.seal(UUID.randomUUID().toString(), challenge, salt, "jdoe",
+            System.currentTimeMillis() - 1);
+
+        assertNull(service.unseal(token));
+    }
+
+    @Test
+    void unseal_shouldRejectGarbage() {
+        assertNull(service.unseal("not-a-token"));
+        assertNull(service.unseal(UUID.randomUUID().toString()));
+    }
+
+    private SealedChallengeService newService(String jwtSecret) {
+        SealedChallengeService sealedChallengeService = new SealedChallengeService();
+        ReflectionTestUtils.setField(sealedChallengeService, "sealingKeyBase64", "");
+        ReflectionTestUtils.setField(sealedChallengeService, "jwtSecret", jwtSecret);
+        ReflectionTestUtils.setField(sealedChallengeService, "nonceService", nonceService);
+        sealedChallengeService.init();
+        return sealedChallengeService;
+    }
+}
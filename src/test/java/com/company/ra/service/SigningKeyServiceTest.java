@@ -0,0 +1,154 @@
+package com.company.ra.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SigningKeyServiceTest {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private SigningKeyService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void hs256_shouldPublishNoKeys() throws Exception {
+        service = newService(SigningKeyService.ALGORITHM_HS256);
+
+        assertFalse(service.isAsymmetric());
+        assertTrue(service.acceptsHs256());
+        assertEquals(0, objectMapper.readTree(service.getJwksJson()).get("keys").size());
+    }
+
+    @Test
+    void es256_shouldPublishActiveAndPendingKeysByThumbprint() throws Exception {
+        service = newService(SigningKeyService.ALGORITHM_ES256);
+        SigningKeyService.SigningKey active = service.getActiveKey();
+
+        assertEquals(SigningKeyService.thumbprint((ECPublicKey) active.getPublicKey()), active.getKid());
+        assertEquals(43, active.getKid().length());
+        assertSame(active.getPublicKey(), service.resolveVerificationKey(active.getKid()));
+        assertNull(service.resolveVerificationKey("unknown"));
+        assertNull(service.resolveVerificationKey(null));
+
+        JsonNode keys = objectMapper.readTree(service.getJwksJson()).get("keys");
+        assertEquals(2, keys.size());
+        JsonNode jwk = keys.get(0);
+        assertEquals("EC", jwk.get("kty").asText());
+        assertEquals("P-256", jwk.get("crv").asText());
+        assertEquals("ES256", jwk.get("alg").asText());
+        assertEquals(active.getKid(), jwk.get("kid").asText());
+        assertEquals(43, jwk.get("x").asText().length());
+        assertEquals(43, jwk.get("y").asText().length());
+    }
+
+    @Test
+    void rotate_shouldActivatePublishedKeyAndKeepRetiredKeyVerifying() throws Exception {
+        service = newService(SigningKeyService.ALGORITHM_ES256);
+        SigningKeyService.SigningKey first = service.getActiveKey();
+        String firstETag = service.getJwksETag();
+        JsonNode keysBefore = objectMapper.readTree(service.getJwksJson()).get("keys");
+        String pendingKid = keysBefore.get(1).get("kid").asText();
+
+        service.rotate();
+
+        SigningKeyService.SigningKey second = service.getActiveKey();
+        assertEquals(pendingKid, second.getKid());
+        assertNotNull(service.resolveVerificationKey(first.getKid()));
+        assertNotEquals(firstETag, service.getJwksETag());
+        assertEquals(3, objectMapper.readTree(service.getJwksJson()).get("keys").size());
+    }
+
+    @Test
+    void keystore_shouldSignWithActiveAliasAndPublishAllEntries(@TempDir Path dir) throws Exception {
+        char[] password = "changeit".toCharArray();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, password);
+        KeyPair current = ecKeyPair();
+        KeyPair previous = ecKeyPair();
+        keyStore.setKeyEntry("jwt-2026", current.getPrivate(), password, new Certificate[] {selfSigned(current)});
+        keyStore.setKeyEntry("jwt-2025", previous.getPrivate(), password, new Certificate[] {selfSigned(previous)});
+        Path path = dir.resolve("jwt-signing.p12");
+        try (OutputStream out = Files.newOutputStream(path)) {
+            keyStore.store(out, password);
+        }
+
+        service = new SigningKeyService();
+        ReflectionTestUtils.setField(service, "algorithm", SigningKeyService.ALGORITHM_ES256);
+        ReflectionTestUtils.setField(service, "keystorePath", path.toString());
+        ReflectionTestUtils.setField(service, "keystorePassword", "changeit");
+        ReflectionTestUtils.setField(service, "activeAlias", "jwt-2026");
+        service.init();
+
+        assertEquals(SigningKeyService.thumbprint((ECPublicKey) current.getPublic()), service.getActiveKey().getKid());
+        assertNotNull(service.resolveVerificationKey(
+            SigningKeyService.thumbprint((ECPublicKey) previous.getPublic())));
+        assertEquals(2, objectMapper.readTree(service.getJwksJson()).get("keys").size());
+    }
+
+    @Test
+    void es256_withoutKeystore_shouldRefuseToStartUnlessSingleNode() {
+        SigningKeyService multiNode = new SigningKeyService();
+        ReflectionTestUtils.setField(multiNode, "algorithm", SigningKeyService.ALGORITHM_ES256);
+        ReflectionTestUtils.setField(multiNode, "keystorePath", "");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, multiNode::init);
+        assertTrue(e.getMessage().contains("jwt.signing.single-node"));
+    }
+
+    static SigningKeyService newService(String algorithm) {
+        SigningKeyService service = new SigningKeyService();
+        ReflectionTestUtils.setField(service, "algorithm", algorithm);
+        ReflectionTestUtils.setField(service, "acceptHs256", true);
+        ReflectionTestUtils.setField(service, "keystorePath", "");
+        ReflectionTestUtils.setField(service, "singleNode", true);
+        ReflectionTestUtils.setField(service, "rotationInterval", Duration.ofHours(24));
+        ReflectionTestUtils.setField(service, "jwtExpirationSeconds", 86400L);
+        service.init();
+        return service;
+    }
+
+    private static KeyPair ecKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        return generator.generateKeyPair();
+    }
+
+    private static X509Certificate selfSigned(KeyPair keyPair) throws Exception {
+        X500Name name = new X500Name("CN=RA JWT Signing");
+        Date now = new Date();
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(name, BigInteger.ONE, now,
+            new Date(now.getTime() + 86_400_000L), name, keyPair.getPublic());
+        return new JcaX509CertificateConverter().getCertificate(
+            builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate())));
+    }
+}
@@ -0,0 +1,112 @@
+package com.company.ra.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenRevocationServiceTest {
+
+    private InMemoryRevocationChannel channel;
+    private TokenRevocationService revocationService;
+
+    @BeforeEach
+    void setUp() {
+        channel = new InMemoryRevocationChannel();
+        revocationService = newService(channel);
+    }
+
+    @AfterEach
+    void tearDown() {
+        revocationService.shutdown();
+    }
+
+    @Test
+    void revoke_shouldRejectTokenAndPublish() {
+        long expiresAt = System.currentTimeMillis() + 60_000;
+
+        revocationService.revoke("jti-1", expiresAt, "jdoe");
+
+        assertTrue(revocationService.isRevoked("jti-1"));
+        assertFalse(revocationService.isRevoked("jti-2"));
+        assertFalse(revocationService.isRevoked(null));
+        assertEquals(1, channel.published.size());
+    }
+
+    @Test
+    void subscribe_shouldApplyRevocationsFromOtherNodes() {
+        channel.deliver(new RevocationChannel.Revocation("remote-jti", System.currentTimeMillis() + 60_000, "admin"));
+
+        assertTrue(revocationService.isRevoked("remote-jti"));
+    }
+
+    @Test
+    void purgeExpired_shouldForgetExpiredRevocations() throws InterruptedException {
+        revocationService.revoke("short", System.currentTimeMillis() + 50, "jdoe");
+        revocationService.revoke("long", System.currentTimeMillis() + 60_000, "jdoe");
+
+        Thread.sleep(100);
+        revocationService.purgeExpired();
+
+        assertFalse(revocationService.isRevoked("short"));
+        assertTrue(revocationService.isRevoked("long"));
+        assertEquals(1, revocationService.size());
+    }
+
+    @Test
+    void bloomFilter_shouldNeverMissAddedIds() {
+        RevocationBloomFilter filter = new RevocationBloomFilter(1 << 12);
+        for (int i = 0; i < 200; i++) {
+            filter.add("jti-" + i);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            assertTrue(filter.mightContain("jti-" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 200; i < 10_200; i++) {
+            if (filter.mightContain("jti-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 100, "false positives: " + falsePositives);
+    }
+
+    static TokenRevocationService newService(RevocationChannel channel) {
+        TokenRevocationService service = new TokenRevocationService();
+        ReflectionTestUtils.setField(service, "revocationChannel", channel);
+        ReflectionTestUtils.setField(service, "bloomBits", 1 << 16);
+        ReflectionTestUtils.setField(service, "purgeInterval", Duration.ofHours(1));
+        service.init();
+        return service;
+    }
+
+    /**
+     * Single-node channel: publications are recorded, deliveries are driven by the test
+     */
+    static class InMemoryRevocationChannel implements RevocationChannel {
+        final List<Revocation> published = new ArrayList<>();
+        private Consumer<Revocation> listener;
+
+        @Override
+        public void publish(Revocation revocation) {
+            published.add(revocation);
+        }
+
+        @Override
+        public void subscribe(Consumer<Revocation> listener) {
+            this.listener = listener;
+        }
+
+        void deliver(Revocation revocation) {
+            listener.accept(revocation);
+        }
+    }
+}